@@ -0,0 +1,59 @@
+package org.tron.common.crypto;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.bouncycastle.crypto.digests.SM3Digest;
+import org.tron.common.crypto.cryptohash.Keccak256;
+import org.tron.common.crypto.cryptohash.Keccak512;
+
+/**
+ * Per-thread digest engines, so hashing does not look up a provider and allocate a digest on
+ * every call.
+ *
+ * <p>Each accessor returns the calling thread's engine freshly reset. The engine is shared by
+ * every hash computed on that thread, so finish with it (digest or doFinal) before anything else
+ * on the thread hashes with the same algorithm, and never hand it to another thread.
+ */
+public final class Digests {
+
+  private static final ThreadLocal<Keccak256> KECCAK_256 = ThreadLocal.withInitial(Keccak256::new);
+  private static final ThreadLocal<Keccak512> KECCAK_512 = ThreadLocal.withInitial(Keccak512::new);
+  private static final ThreadLocal<MessageDigest> SHA_256 =
+      ThreadLocal.withInitial(Digests::newSha256);
+  private static final ThreadLocal<SM3Digest> SM3 = ThreadLocal.withInitial(SM3Digest::new);
+
+  private Digests() {
+  }
+
+  public static Keccak256 keccak256() {
+    Keccak256 digest = KECCAK_256.get();
+    digest.reset();
+    return digest;
+  }
+
+  public static Keccak512 keccak512() {
+    Keccak512 digest = KECCAK_512.get();
+    digest.reset();
+    return digest;
+  }
+
+  public static MessageDigest sha256() {
+    MessageDigest digest = SHA_256.get();
+    digest.reset();
+    return digest;
+  }
+
+  public static SM3Digest sm3() {
+    SM3Digest digest = SM3.get();
+    digest.reset();
+    return digest;
+  }
+
+  private static MessageDigest newSha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);  // Can't happen.
+    }
+  }
+}
@@ -61,7 +61,9 @@ import org.bouncycastle.jce.spec.ECPrivateKeySpec;
 import org.bouncycastle.jce.spec.ECPublicKeySpec;
 import org.bouncycastle.math.ec.ECAlgorithms;
 import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECMultiplier;
 import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
 import org.bouncycastle.util.BigIntegers;
 import org.bouncycastle.util.encoders.Base64;
 import org.bouncycastle.util.encoders.Hex;
@@ -97,6 +99,8 @@ public class ECKey implements Serializable, SignInterface {
       new BigInteger("fffffffffffffffffffffffffffffffebaaedce6af48a03bbfd25e8cd0364141", 16);
   private static final SecureRandom secureRandom;
   private static final long serialVersionUID = -728224901792295832L;
+  /** Keeps its comb table on the generator point, so it is built once per process. */
+  private static final ECMultiplier BASE_POINT_MULTIPLIER = new FixedPointCombMultiplier();
 
   static {
     // All clients must agree on the curve to use by agreement.
@@ -184,7 +188,7 @@ public class ECKey implements Serializable, SignInterface {
     if (isPrivateKey) {
       BigInteger pk = new BigInteger(1, key);
       this.privKey = privateKeyFromBigInteger(pk);
-      this.pub = CURVE.getG().multiply(pk);
+      this.pub = multiplyBase(pk);
     } else {
       this.privKey = null;
       this.pub = CURVE.getCurve().decodePoint(key);
@@ -281,6 +285,14 @@ public class ECKey implements Serializable, SignInterface {
     return CURVE.getCurve().decodePoint(compressed.getEncoded(false));
   }
 
+  /**
+   * Multiplies the generator by {@code k} using precomputed multiples of it instead of a generic
+   * double-and-add.
+   */
+  static ECPoint multiplyBase(BigInteger k) {
+    return BASE_POINT_MULTIPLIER.multiply(CURVE.getG(), k);
+  }
+
   /**
    * Creates an ECKey given the private key only.
    *
@@ -288,7 +300,7 @@ public class ECKey implements Serializable, SignInterface {
    * @return -
    */
   public static ECKey fromPrivate(BigInteger privKey) {
-    return new ECKey(privKey, CURVE.getG().multiply(privKey));
+    return new ECKey(privKey, multiplyBase(privKey));
   }
 
   /**
@@ -359,7 +371,7 @@ public class ECKey implements Serializable, SignInterface {
    * @return -
    */
   public static byte[] publicKeyFromPrivate(BigInteger privKey, boolean compressed) {
-    ECPoint point = CURVE.getG().multiply(privKey);
+    ECPoint point = multiplyBase(privKey);
     return point.getEncoded(compressed);
   }
 
@@ -899,6 +911,9 @@ public class ECKey implements Serializable, SignInterface {
    * @throws IllegalStateException if this ECKey does not have the private part.
    */
   public ECDSASignature sign(byte[] messageHash) {
+    if (privKey instanceof BCECPrivateKey) {
+      return signRecoverable(messageHash);
+    }
     ECDSASignature sig = doSign(messageHash);
     // Now we have to work backwards to figure out the recId needed to
     // recover the signature.
@@ -919,6 +934,45 @@ public class ECKey implements Serializable, SignInterface {
     return sig;
   }
 
+  /**
+   * Same deterministic (RFC 6979) signature as {@link #doSign}, but the nonce point R is kept so
+   * the recovery id comes from its coordinates instead of from trial public key recoveries.
+   */
+  private ECDSASignature signRecoverable(byte[] messageHash) {
+    if (messageHash.length != 32) {
+      throw new IllegalArgumentException(
+          "Expected 32 byte input to " + "ECDSA signature, not " + messageHash.length);
+    }
+    BigInteger n = CURVE.getN();
+    BigInteger d = ((BCECPrivateKey) privKey).getD();
+    BigInteger e = new BigInteger(1, messageHash);
+    HMacDSAKCalculator kCalculator = new HMacDSAKCalculator(new SHA256Digest());
+    kCalculator.init(n, d, messageHash);
+    while (true) {
+      BigInteger k = kCalculator.nextK();
+      ECPoint p = multiplyBase(k).normalize();
+      BigInteger x = p.getAffineXCoord().toBigInteger();
+      BigInteger r = x.mod(n);
+      if (r.signum() == 0) {
+        continue;
+      }
+      BigInteger s = k.modInverse(n).multiply(e.add(d.multiply(r))).mod(n);
+      if (s.signum() == 0) {
+        continue;
+      }
+      // bit 0: parity of R.y, bit 1: R.x overflowed the group order (recoverPubBytesFromSignature)
+      int recId = (p.getAffineYCoord().testBitZero() ? 1 : 0) | (x.compareTo(n) >= 0 ? 2 : 0);
+      if (s.compareTo(HALF_CURVE_ORDER) > 0) {
+        // -s is the signature for nonce -k, whose point is R mirrored on the x axis
+        s = n.subtract(s);
+        recId ^= 1;
+      }
+      ECDSASignature sig = new ECDSASignature(r, s);
+      sig.v = (byte) (recId + 27);
+      return sig;
+    }
+  }
+
   public BigInteger keyAgreement(ECPoint otherParty) {
     if (privKey == null) {
       throw new MissingPrivateKeyException();
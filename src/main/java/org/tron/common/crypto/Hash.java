@@ -20,11 +20,10 @@ package org.tron.common.crypto;
 
 import static java.util.Arrays.copyOfRange;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.Provider;
 import java.security.Security;
 import lombok.extern.slf4j.Slf4j;
+import org.tron.common.crypto.cryptohash.Keccak256;
+import org.tron.common.crypto.cryptohash.Keccak512;
 import org.tron.common.crypto.jce.TronCastleProvider;
 import org.tron.common.utils.ByteArray;
 import org.tron.walletserver.WalletApi;
@@ -32,30 +31,14 @@ import org.tron.walletserver.WalletApi;
 @Slf4j
 public class Hash {
 
-  private static final Provider CRYPTO_PROVIDER;
-
-  private static final String HASH_256_ALGORITHM_NAME;
-  private static final String HASH_512_ALGORITHM_NAME;
-
   static {
     Security.addProvider(TronCastleProvider.getInstance());
-    CRYPTO_PROVIDER = Security.getProvider("BC");
-    HASH_256_ALGORITHM_NAME = "TRON-KECCAK-256";
-    HASH_512_ALGORITHM_NAME = "TRON-KECCAK-512";
   }
 
   public static byte[] sha3(byte[] input) {
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME,
-          CRYPTO_PROVIDER);
-      digest.update(input);
-      return digest.digest();
-    } catch (NoSuchAlgorithmException e) {
-      System.out.println("Can't find such algorithm" + e);
-      throw new RuntimeException(e);
-    }
-
+    Keccak256 digest = Digests.keccak256();
+    digest.update(input);
+    return digest.digest();
   }
 
   /**
@@ -72,17 +55,10 @@ public class Hash {
 
 
   public static byte[] sha3(byte[] input1, byte[] input2) {
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME,
-          CRYPTO_PROVIDER);
-      digest.update(input1, 0, input1.length);
-      digest.update(input2, 0, input2.length);
-      return digest.digest();
-    } catch (NoSuchAlgorithmException e) {
-      System.out.println("Can't find such algorithm" + e);
-      throw new RuntimeException(e);
-    }
+    Keccak256 digest = Digests.keccak256();
+    digest.update(input1, 0, input1.length);
+    digest.update(input2, 0, input2.length);
+    return digest.digest();
   }
 
   /**
@@ -94,29 +70,30 @@ public class Hash {
    * @return - keccak hash of the chunk
    */
   public static byte[] sha3(byte[] input, int start, int length) {
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME,
-          CRYPTO_PROVIDER);
-      digest.update(input, start, length);
-      return digest.digest();
-    } catch (NoSuchAlgorithmException e) {
-      System.out.println("Can't find such algorithm" + e);
-      throw new RuntimeException(e);
-    }
+    Keccak256 digest = Digests.keccak256();
+    digest.update(input, start, length);
+    return digest.digest();
+  }
+
+  /**
+   * hashing chunk of the data into {@code out}, without allocating
+   *
+   * @param input - data for hash
+   * @param start - start of hashing chunk
+   * @param length - length of hashing chunk
+   * @param out - receives the 32 byte keccak hash of the chunk
+   * @param outOffset - where in {@code out} the hash starts
+   */
+  public static void sha3(byte[] input, int start, int length, byte[] out, int outOffset) {
+    Keccak256 digest = Digests.keccak256();
+    digest.update(input, start, length);
+    digest.digest(out, outOffset, digest.getDigestLength());
   }
 
   public static byte[] sha512(byte[] input) {
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(HASH_512_ALGORITHM_NAME,
-          CRYPTO_PROVIDER);
-      digest.update(input);
-      return digest.digest();
-    } catch (NoSuchAlgorithmException e) {
-      System.out.println("Can't find such algorithm" + e);
-      throw new RuntimeException(e);
-    }
+    Keccak512 digest = Digests.keccak512();
+    digest.update(input);
+    return digest.digest();
   }
 
   /**
@@ -155,7 +155,7 @@ public class SM3Hash implements Serializable, Comparable<SM3Hash>, HashInterface
    * @return the hash (in big-endian order)
    */
   public static byte[] hash(byte[] input, int offset, int length) {
-    SM3Digest digest = newDigest();
+    SM3Digest digest = Digests.sm3();
     digest.update(input, offset, length);
     byte[] eHash = new byte[digest.getDigestSize()];
 
@@ -163,6 +163,21 @@ public class SM3Hash implements Serializable, Comparable<SM3Hash>, HashInterface
     return eHash;
   }
 
+  /**
+   * Calculates the SM3 hash of the given byte range into {@code out}, without allocating.
+   *
+   * @param input the array containing the bytes to hash
+   * @param offset the offset within the array of the bytes to hash
+   * @param length the number of bytes to hash
+   * @param out the array receiving the {@link #LENGTH} hash bytes
+   * @param outOffset the offset within {@code out} to write the hash at
+   */
+  public static void hash(byte[] input, int offset, int length, byte[] out, int outOffset) {
+    SM3Digest digest = Digests.sm3();
+    digest.update(input, offset, length);
+    digest.doFinal(out, outOffset);
+  }
+
   /**
    * Calculates the SM3 hash of the given bytes, and then hashes the resulting hash again.
    *
@@ -182,7 +197,7 @@ public class SM3Hash implements Serializable, Comparable<SM3Hash>, HashInterface
    * @return the double-hash (in big-endian order)
    */
   public static byte[] hashTwice(byte[] input, int offset, int length) {
-    SM3Digest digest = newDigest();
+    SM3Digest digest = Digests.sm3();
     digest.update(input, offset, length);
     byte[] eHash = new byte[digest.getDigestSize()];
     digest.doFinal(eHash, 0);
@@ -198,7 +213,7 @@ public class SM3Hash implements Serializable, Comparable<SM3Hash>, HashInterface
    */
   public static byte[] hashTwice(
       byte[] input1, int offset1, int length1, byte[] input2, int offset2, int length2) {
-    SM3Digest digest = newDigest();
+    SM3Digest digest = Digests.sm3();
     digest.update(input1, offset1, length1);
     digest.update(input2, offset2, length2);
     byte[] eHash = new byte[digest.getDigestSize()];
@@ -29,6 +29,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
@@ -191,11 +192,11 @@ public class Sha256Sm3Hash implements Serializable, Comparable<Sha256Sm3Hash> {
    */
   public static byte[] hash( byte[] input, int offset, int length) {
     if (isEckey) {
-      MessageDigest digest = newDigest();
+      MessageDigest digest = Digests.sha256();
       digest.update(input, offset, length);
       return digest.digest();
     } else {
-      SM3Digest digest = newSM3Digest();
+      SM3Digest digest = Digests.sm3();
       digest.update(input, offset, length);
       byte[] eHash = new byte[digest.getDigestSize()];
       digest.doFinal(eHash, 0);
@@ -204,6 +205,31 @@ public class Sha256Sm3Hash implements Serializable, Comparable<Sha256Sm3Hash> {
 
   }
 
+  /**
+   * Calculates the SHA-256 hash of the given byte range into {@code out}, without allocating.
+   *
+   * @param input the array containing the bytes to hash
+   * @param offset the offset within the array of the bytes to hash
+   * @param length the number of bytes to hash
+   * @param out the array receiving the {@link #LENGTH} hash bytes
+   * @param outOffset the offset within {@code out} to write the hash at
+   */
+  public static void hash(byte[] input, int offset, int length, byte[] out, int outOffset) {
+    if (isEckey) {
+      MessageDigest digest = Digests.sha256();
+      digest.update(input, offset, length);
+      try {
+        digest.digest(out, outOffset, LENGTH);
+      } catch (DigestException e) {
+        throw new IllegalArgumentException(e);
+      }
+    } else {
+      SM3Digest digest = Digests.sm3();
+      digest.update(input, offset, length);
+      digest.doFinal(out, outOffset);
+    }
+  }
+
   /**
    * Calculates the SHA-256 hash of the given bytes, and then hashes the resulting hash again.
    *
@@ -224,11 +250,11 @@ public class Sha256Sm3Hash implements Serializable, Comparable<Sha256Sm3Hash> {
    */
   public static byte[] hashTwice( byte[] input, int offset, int length) {
     if (isEckey) {
-      MessageDigest digest = newDigest();
+      MessageDigest digest = Digests.sha256();
       digest.update(input, offset, length);
       return digest.digest(digest.digest());
     } else {
-      SM3Digest digest = newSM3Digest();
+      SM3Digest digest = Digests.sm3();
       digest.update(input, offset, length);
       byte[] eHash = new byte[digest.getDigestSize()];
       digest.doFinal(eHash, 0);
@@ -247,12 +273,12 @@ public class Sha256Sm3Hash implements Serializable, Comparable<Sha256Sm3Hash> {
   public static byte[] hashTwice( byte[] input1, int offset1, int length1,
                                  byte[] input2, int offset2, int length2) {
     if (isEckey) {
-      MessageDigest digest = newDigest();
+      MessageDigest digest = Digests.sha256();
       digest.update(input1, offset1, length1);
       digest.update(input2, offset2, length2);
       return digest.digest(digest.digest());
     } else {
-      SM3Digest digest = newSM3Digest();
+      SM3Digest digest = Digests.sm3();
       digest.update(input1, offset1, length1);
       digest.update(input2, offset2, length2);
       byte[] eHash = new byte[digest.getDigestSize()];
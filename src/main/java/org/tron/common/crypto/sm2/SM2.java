@@ -32,7 +32,9 @@ import org.bouncycastle.jce.spec.ECParameterSpec;
 import org.bouncycastle.jce.spec.ECPrivateKeySpec;
 import org.bouncycastle.math.ec.ECAlgorithms;
 import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECMultiplier;
 import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
 import org.bouncycastle.util.encoders.Base64;
 import org.bouncycastle.util.encoders.Hex;
 import org.tron.common.crypto.ECKey;
@@ -77,6 +79,8 @@ public class SM2 implements Serializable, SignInterface {
   private static ECPoint ecc_point_g;
 
   private static final SecureRandom secureRandom;
+  /** Keeps its comb table on the generator point, so it is built once per process. */
+  private static final ECMultiplier BASE_POINT_MULTIPLIER = new FixedPointCombMultiplier();
 
   static {
     secureRandom = new SecureRandom();
@@ -127,7 +131,7 @@ public class SM2 implements Serializable, SignInterface {
     if (isPrivateKey) {
       BigInteger pk = new BigInteger(1, key);
       this.privKey = privateKeyFromBigInteger(pk);
-      this.pub = ecc_param.getG().multiply(pk);
+      this.pub = multiplyBase(pk);
     } else {
       this.privKey = null;
       this.pub = ecc_param.getCurve().decodePoint(key);
@@ -227,6 +231,14 @@ public class SM2 implements Serializable, SignInterface {
     return ecc_param.getCurve().decodePoint(compressed.getEncoded(false));
   }
 
+  /**
+   * Multiplies the generator by {@code k} using precomputed multiples of it instead of a generic
+   * double-and-add.
+   */
+  static ECPoint multiplyBase(BigInteger k) {
+    return BASE_POINT_MULTIPLIER.multiply(ecc_param.getG(), k);
+  }
+
   /**
    * Creates an SM2 given the private key only.
    *
@@ -234,7 +246,7 @@ public class SM2 implements Serializable, SignInterface {
    * @return -
    */
   public static SM2 fromPrivate(BigInteger privKey) {
-    return new SM2(privKey, ecc_param.getG().multiply(privKey));
+    return new SM2(privKey, multiplyBase(privKey));
   }
 
   /**
@@ -306,7 +318,7 @@ public class SM2 implements Serializable, SignInterface {
    * @return -
    */
   public static byte[] publicKeyFromPrivate(BigInteger privKey, boolean compressed) {
-    ECPoint point = ecc_param.getG().multiply(privKey);
+    ECPoint point = multiplyBase(privKey);
     return point.getEncoded(compressed);
   }
 
@@ -485,26 +497,7 @@ public class SM2 implements Serializable, SignInterface {
     }
     // No decryption of private key required.
     SM2Signer signer = getSigner();
-    BigInteger[] componets = signer.generateHashSignature(messageHash);
-
-    SM2Signature sig = new SM2.SM2Signature(componets[0], componets[1]);
-    // Now we have to work backwards to figure out the recId needed to
-    // recover the signature.
-    int recId = -1;
-    byte[] thisKey = this.pub.getEncoded(/* compressed */ false);
-    for (int i = 0; i < 4; i++) {
-      byte[] k = recoverPubBytesFromSignature(i, sig, messageHash);
-      if (k != null && Arrays.equals(k, thisKey)) {
-        recId = i;
-        break;
-      }
-    }
-    if (recId == -1) {
-      throw new RuntimeException(
-          "Could not construct a recoverable key" + ". This should never happen.");
-    }
-    sig.v = (byte) (recId + 27);
-    return sig;
+    return toRecoverable(signer.generateRecoverableHashSignature(messageHash));
   }
 
   /**
@@ -534,26 +527,16 @@ public class SM2 implements Serializable, SignInterface {
    * @throws IllegalStateException if this ECKey does not have the private part.
    */
   public SM2Signature signMessage(byte[] message, @Nullable String userID) {
-    SM2Signature sig = signMsg(message, userID);
-    // Now we have to work backwards to figure out the recId needed to
-    // recover the signature.
-    int recId = -1;
-    byte[] thisKey = this.pub.getEncoded(/* compressed */ false);
-
-    SM2Signer signer = getSigner();
-    byte[] messageHash = signer.generateSM3Hash(message);
-    for (int i = 0; i < 4; i++) {
-      byte[] k = recoverPubBytesFromSignature(i, sig, messageHash);
-      if (k != null && Arrays.equals(k, thisKey)) {
-        recId = i;
-        break;
-      }
-    }
-    if (recId == -1) {
-      throw new RuntimeException(
-          "Could not construct a recoverable key" + ". This should never happen.");
+    if (null == message) {
+      throw new IllegalArgumentException("Expected signature message of " + "SM2 is null");
     }
-    sig.v = (byte) (recId + 27);
+    SM2Signer signer = getSigner();
+    return toRecoverable(signer.generateRecoverableSignature(message));
+  }
+
+  private static SM2Signature toRecoverable(BigInteger[] components) {
+    SM2Signature sig = new SM2.SM2Signature(components[0], components[1]);
+    sig.v = (byte) (components[2].intValue() + 27);
     return sig;
   }
 
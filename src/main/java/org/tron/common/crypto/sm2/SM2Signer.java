@@ -56,7 +56,8 @@ public class SM2Signer implements ECConstants {
         ecParams = ecKey.getParameters();
         kCalculator.init(ecParams.getN(), new SecureRandom());
       }
-      pubPoint = ecParams.getG().multiply(((ECPrivateKeyParameters) ecKey).getD()).normalize();
+      pubPoint = createBasePointMultiplier()
+          .multiply(ecParams.getG(), ((ECPrivateKeyParameters) ecKey).getD()).normalize();
     } else {
       ecKey = (ECKeyParameters) baseParam;
       ecParams = ecKey.getParameters();
@@ -104,6 +105,28 @@ public class SM2Signer implements ECConstants {
    * @return
    */
   public BigInteger[] generateHashSignature(byte[] hash) {
+    BigInteger[] signature = generateRecoverableHashSignature(hash);
+    return new BigInteger[] {signature[0], signature[1]};
+  }
+
+  /**
+   * generate the signature for the message, together with its recovery id
+   *
+   * @param message plaintext
+   * @return {r, s, recId}
+   */
+  public BigInteger[] generateRecoverableSignature(byte[] message) {
+    return generateRecoverableHashSignature(generateSM3Hash(message));
+  }
+
+  /**
+   * generate the signature from the 32 byte hash, together with the recovery id read off the
+   * point kG, which {@link SM2#recoverPubBytesFromSignature} would otherwise have to search for
+   *
+   * @param hash
+   * @return {r, s, recId}
+   */
+  public BigInteger[] generateRecoverableHashSignature(byte[] hash) {
     if (hash.length != 32) {
       throw new IllegalArgumentException(
           "Expected 32 byte input to " + "ECDSA signature, not " + hash.length);
@@ -113,6 +136,7 @@ public class SM2Signer implements ECConstants {
     BigInteger d = ((ECPrivateKeyParameters) ecKey).getD();
 
     BigInteger r, s;
+    int recId;
 
     ECMultiplier basePointMultiplier = createBasePointMultiplier();
 
@@ -128,7 +152,9 @@ public class SM2Signer implements ECConstants {
         ECPoint p = basePointMultiplier.multiply(ecParams.getG(), k).normalize();
 
         // A5
-        r = e.add(p.getAffineXCoord().toBigInteger()).mod(n);
+        BigInteger x1 = p.getAffineXCoord().toBigInteger();
+        r = e.add(x1).mod(n);
+        recId = (p.getAffineYCoord().testBitZero() ? 1 : 0) | (x1.compareTo(n) >= 0 ? 2 : 0);
       } while (r.equals(ZERO) || r.add(k).equals(n));
 
       // A6
@@ -139,7 +165,7 @@ public class SM2Signer implements ECConstants {
     } while (s.equals(ZERO));
 
     // A7
-    return new BigInteger[] {r, s};
+    return new BigInteger[] {r, s, BigInteger.valueOf(recId)};
   }
 
   /**
@@ -181,7 +207,7 @@ public class SM2Signer implements ECConstants {
       return false;
     } else {
       // B6
-      ECPoint x1y1 = ecParams.getG().multiply(s);
+      ECPoint x1y1 = createBasePointMultiplier().multiply(ecParams.getG(), s);
       x1y1 = x1y1.add(q.multiply(t)).normalize();
 
       // B7
@@ -222,7 +248,7 @@ public class SM2Signer implements ECConstants {
       return false;
     } else {
       // B6
-      ECPoint x1y1 = ecParams.getG().multiply(s);
+      ECPoint x1y1 = createBasePointMultiplier().multiply(ecParams.getG(), s);
       x1y1 = x1y1.add(q.multiply(t)).normalize();
 
       // B7
@@ -0,0 +1,751 @@
+package org.tron.common.utils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import org.bouncycastle.util.encoders.Hex;
+import org.tron.common.crypto.Hash;
+import org.tron.protos.contract.SmartContractOuterClass.SmartContract;
+import org.tron.walletserver.WalletApi;
+
+/**
+ * A contract function compiled from its signature, encoding calls to it and decoding what it
+ * returns.
+ *
+ * <p>Unlike {@link AbiUtil}, which parses the signature and the arguments as JSON on every call,
+ * the signature is parsed once into a tree of types, cached by signature, and typed Java values
+ * are written straight into a single array sized beforehand. Values map to types as follows:
+ * <ul>
+ * <li>{@code intN}, {@code uintN} and {@code trcToken}: any {@link Number} or a decimal or
+ * {@code 0x} hex string; decoded as {@link BigInteger}</li>
+ * <li>{@code address}: a base58check or hex string, or the 20 or 21 bytes; decoded as a base58check
+ * string</li>
+ * <li>{@code bool}: a {@link Boolean}, {@code "true"}, {@code "false"}, {@code "1"} or
+ * {@code "0"}, or a {@link Number} that is 0 or 1; decoded as a {@link Boolean}</li>
+ * <li>{@code bytesN} and {@code bytes}: a byte array or a hex string; decoded as a byte array</li>
+ * <li>{@code string}: a {@link String}; decoded as a {@link String}</li>
+ * <li>arrays and tuples: a {@link List} or an array of their elements; decoded as a
+ * {@link List}</li>
+ * </ul>
+ * Illegal values and malformed return data throw {@link IllegalArgumentException}.
+ */
+public final class AbiCodec {
+
+  private static final int WORD = 32;
+  private static final Pattern HEX_ADDRESS =
+      Pattern.compile("^(0x)?([0-9a-fA-F]{2})?[0-9a-fA-F]{40}$");
+  private static final Map<String, AbiCodec> CACHE = new ConcurrentHashMap<>();
+
+  private final String signature;
+  private final byte[] selector;
+  private final TupleType inputs;
+  private final TupleType outputs;
+
+  private AbiCodec(String name, TupleType inputs, TupleType outputs) {
+    this.signature = name + inputs.name();
+    this.selector = Arrays.copyOf(Hash.sha3(signature.getBytes(StandardCharsets.UTF_8)), 4);
+    this.inputs = inputs;
+    this.outputs = outputs;
+  }
+
+  /**
+   * The function of {@code methodSign}, like {@code "transfer(address,uint256)"}, returning
+   * nothing that is decoded.
+   */
+  public static AbiCodec of(String methodSign) {
+    return of(methodSign, "");
+  }
+
+  /**
+   * The function of {@code methodSign} returning {@code returnTypes}, like {@code "uint256,bool"},
+   * or {@code "(uint256,bool)"} for a single tuple.
+   */
+  public static AbiCodec of(String methodSign, String returnTypes) {
+    return CACHE.computeIfAbsent(methodSign + "|" + returnTypes, key -> {
+      String sign = methodSign.replaceAll("\\s", "");
+      int open = sign.indexOf('(');
+      if (open <= 0 || !sign.endsWith(")")) {
+        throw new IllegalArgumentException("Invalid method signature " + methodSign);
+      }
+      return new AbiCodec(sign.substring(0, open), (TupleType) parseType(sign.substring(open)),
+          (TupleType) parseType("(" + returnTypes.replaceAll("\\s", "") + ")"));
+    });
+  }
+
+  /**
+   * The function described by an ABI entry.
+   */
+  public static AbiCodec of(SmartContract.ABI.Entry entry) {
+    return of(entry.getName() + "(" + paramTypes(entry.getInputsList()) + ")",
+        paramTypes(entry.getOutputsList()));
+  }
+
+  /**
+   * The functions of a contract's ABI by signature, like {@code "balanceOf(address)"}, but for
+   * those taking or returning tuples, whose components the ABI does not describe.
+   */
+  public static Map<String, AbiCodec> functions(SmartContract.ABI abi) {
+    Map<String, AbiCodec> functions = new LinkedHashMap<>();
+    for (SmartContract.ABI.Entry entry : abi.getEntrysList()) {
+      if (entry.getType() != SmartContract.ABI.Entry.EntryType.Function) {
+        continue;
+      }
+      try {
+        AbiCodec codec = of(entry);
+        functions.put(codec.getSignature(), codec);
+      } catch (IllegalArgumentException e) {
+        // tuple parameters are not spelled out in the ABI proto, so such functions are left out
+      }
+    }
+    return functions;
+  }
+
+  private static String paramTypes(List<SmartContract.ABI.Entry.Param> params) {
+    StringBuilder types = new StringBuilder();
+    for (SmartContract.ABI.Entry.Param param : params) {
+      if (types.length() != 0) {
+        types.append(',');
+      }
+      types.append(param.getType());
+    }
+    return types.toString();
+  }
+
+  /**
+   * The canonical signature the selector is hashed from.
+   */
+  public String getSignature() {
+    return signature;
+  }
+
+  public byte[] getSelector() {
+    return selector.clone();
+  }
+
+  /**
+   * The call data: the selector and the encoded arguments.
+   */
+  public byte[] encode(Object... args) {
+    List<Object> values = Arrays.asList(args);
+    byte[] data = new byte[4 + inputs.size(values)];
+    System.arraycopy(selector, 0, data, 0, 4);
+    inputs.encode(values, data, 4);
+    return data;
+  }
+
+  /**
+   * The encoded arguments alone, as for a constructor.
+   */
+  public byte[] encodeArguments(Object... args) {
+    List<Object> values = Arrays.asList(args);
+    byte[] data = new byte[inputs.size(values)];
+    inputs.encode(values, data, 0);
+    return data;
+  }
+
+  /**
+   * The values returned, one per return type, from a {@code constant_result}.
+   */
+  public List<Object> decode(byte[] returnData) {
+    return inputsOrOutputs(outputs, returnData, 0);
+  }
+
+  /**
+   * The arguments of call data to this function.
+   */
+  public List<Object> decodeInput(byte[] data) {
+    if (data.length < 4 || !Arrays.equals(selector, Arrays.copyOf(data, 4))) {
+      throw new IllegalArgumentException("Not a call to " + signature);
+    }
+    return inputsOrOutputs(inputs, data, 4);
+  }
+
+  private static List<Object> inputsOrOutputs(TupleType type, byte[] data, int offset) {
+    @SuppressWarnings("unchecked")
+    List<Object> values = (List<Object>) type.decode(data, offset, data.length);
+    return values;
+  }
+
+  @Override
+  public String toString() {
+    return signature + (outputs.components.isEmpty() ? "" : " returns " + outputs.name());
+  }
+
+  private static Type parseType(String type) {
+    if (type.endsWith("]")) {
+      int open = type.lastIndexOf('[');
+      if (open <= 0) {
+        throw new IllegalArgumentException("Invalid ABI type " + type);
+      }
+      String length = type.substring(open + 1, type.length() - 1);
+      return new ArrayType(parseType(type.substring(0, open)),
+          length.isEmpty() ? -1 : Integer.parseInt(length));
+    }
+    if (type.startsWith("(") && type.endsWith(")")) {
+      List<Type> components = new ArrayList<>();
+      int depth = 0;
+      int start = 1;
+      for (int i = 1; i < type.length() - 1; i++) {
+        char c = type.charAt(i);
+        if (c == '(') {
+          depth++;
+        } else if (c == ')') {
+          depth--;
+        } else if (c == ',' && depth == 0) {
+          components.add(parseType(type.substring(start, i)));
+          start = i + 1;
+        }
+      }
+      if (start < type.length() - 1) {
+        components.add(parseType(type.substring(start, type.length() - 1)));
+      }
+      return new TupleType(components);
+    }
+    switch (type) {
+      case "address":
+        return new AddressType();
+      case "bool":
+        return new BoolType();
+      case "string":
+        return new BytesType(true);
+      case "bytes":
+        return new BytesType(false);
+      case "trcToken":
+        return new NumberType("trcToken", 256, false);
+      case "uint":
+      case "int":
+        return new NumberType(type + "256", 256, type.equals("int"));
+      default:
+        break;
+    }
+    try {
+      if (type.startsWith("bytes")) {
+        return new FixedBytesType(Integer.parseInt(type.substring(5)));
+      }
+      if (type.startsWith("uint")) {
+        return new NumberType(type, Integer.parseInt(type.substring(4)), false);
+      }
+      if (type.startsWith("int")) {
+        return new NumberType(type, Integer.parseInt(type.substring(3)), true);
+      }
+    } catch (NumberFormatException e) {
+      // not a sized type
+    }
+    throw new IllegalArgumentException("Unsupported ABI type " + type);
+  }
+
+  private static void checkLength(byte[] data, int offset, int length, int limit) {
+    if (offset < 0 || length < 0 || offset > limit - length) {
+      throw new IllegalArgumentException("ABI data too short");
+    }
+  }
+
+  private static int readLength(byte[] data, int offset, int limit) {
+    checkLength(data, offset, WORD, limit);
+    BigInteger value = new BigInteger(1, Arrays.copyOfRange(data, offset, offset + WORD));
+    if (value.bitLength() > 31) {
+      throw new IllegalArgumentException("ABI offset or length out of range");
+    }
+    return value.intValue();
+  }
+
+  private static void writeInt(long value, byte[] out, int offset) {
+    for (int i = 0; i < 8; i++) {
+      out[offset + WORD - 1 - i] = (byte) (value >>> (8 * i));
+    }
+  }
+
+  private static List<?> elements(Object value) {
+    if (value instanceof List) {
+      return (List<?>) value;
+    }
+    if (value instanceof Object[]) {
+      return Arrays.asList((Object[]) value);
+    }
+    throw new IllegalArgumentException("Expected a list, got " + value);
+  }
+
+  private static byte[] bytes(Object value) {
+    if (value instanceof byte[]) {
+      return (byte[]) value;
+    }
+    if (value instanceof String) {
+      String hex = (String) value;
+      if (hex.startsWith("0x")) {
+        hex = hex.substring(2);
+      }
+      if (hex.length() % 2 != 0) {
+        hex = "0" + hex;
+      }
+      try {
+        return Hex.decode(hex);
+      } catch (RuntimeException e) {
+        throw new IllegalArgumentException("Invalid hex " + value);
+      }
+    }
+    throw new IllegalArgumentException("Expected bytes, got " + value);
+  }
+
+  private abstract static class Type {
+
+    abstract String name();
+
+    abstract boolean isDynamic();
+
+    /**
+     * The size of a static type, or of the offset to a dynamic one, within its parent.
+     */
+    int headSize() {
+      return WORD;
+    }
+
+    /**
+     * The size of the whole encoding of {@code value}.
+     */
+    int size(Object value) {
+      return WORD;
+    }
+
+    /**
+     * Writes the encoding of {@code value} at {@code offset}, returning where it ends.
+     */
+    abstract int encode(Object value, byte[] out, int offset);
+
+    /**
+     * Decodes the value encoded at {@code offset}, reading no further than {@code limit}.
+     */
+    abstract Object decode(byte[] data, int offset, int limit);
+  }
+
+  private static class NumberType extends Type {
+
+    private final String name;
+    private final int bits;
+    private final boolean signed;
+
+    NumberType(String name, int bits, boolean signed) {
+      if (bits < 8 || bits > 256 || bits % 8 != 0) {
+        throw new IllegalArgumentException("Unsupported ABI type " + name);
+      }
+      this.name = name;
+      this.bits = bits;
+      this.signed = signed;
+    }
+
+    @Override
+    String name() {
+      return name;
+    }
+
+    @Override
+    boolean isDynamic() {
+      return false;
+    }
+
+    @Override
+    int encode(Object value, byte[] out, int offset) {
+      if (value instanceof Long || value instanceof Integer || value instanceof Short
+          || value instanceof Byte) {
+        long number = ((Number) value).longValue();
+        if (number < 0) {
+          if (!signed) {
+            throw new IllegalArgumentException(name + " cannot be negative: " + number);
+          }
+          Arrays.fill(out, offset, offset + WORD, (byte) 0xff);
+        }
+        if (bits < 64 && (signed ? number >> (bits - 1) != 0 && number >> (bits - 1) != -1
+            : number >>> bits != 0)) {
+          throw new IllegalArgumentException(value + " does not fit " + name);
+        }
+        writeInt(number, out, offset);
+        return offset + WORD;
+      }
+      BigInteger number = toBigInteger(value);
+      if (number.signum() < 0 && !signed
+          || number.bitLength() > (signed ? bits - 1 : bits)) {
+        throw new IllegalArgumentException(value + " does not fit " + name);
+      }
+      byte[] bytes = number.toByteArray();
+      int length = Math.min(bytes.length, WORD);
+      if (number.signum() < 0) {
+        Arrays.fill(out, offset, offset + WORD - length, (byte) 0xff);
+      }
+      System.arraycopy(bytes, bytes.length - length, out, offset + WORD - length, length);
+      return offset + WORD;
+    }
+
+    private static BigInteger toBigInteger(Object value) {
+      if (value instanceof BigInteger) {
+        return (BigInteger) value;
+      }
+      if (value instanceof Number) {
+        return new BigDecimal(value.toString()).toBigIntegerExact();
+      }
+      if (value instanceof String) {
+        String number = ((String) value).trim();
+        if (number.startsWith("0x")) {
+          return new BigInteger(number.substring(2), 16);
+        }
+        return new BigInteger(number);
+      }
+      throw new IllegalArgumentException("Expected a number, got " + value);
+    }
+
+    @Override
+    Object decode(byte[] data, int offset, int limit) {
+      checkLength(data, offset, WORD, limit);
+      byte[] word = Arrays.copyOfRange(data, offset, offset + WORD);
+      return signed ? new BigInteger(word) : new BigInteger(1, word);
+    }
+  }
+
+  private static class AddressType extends Type {
+
+    @Override
+    String name() {
+      return "address";
+    }
+
+    @Override
+    boolean isDynamic() {
+      return false;
+    }
+
+    @Override
+    int encode(Object value, byte[] out, int offset) {
+      byte[] address;
+      if (value instanceof byte[]) {
+        address = (byte[]) value;
+      } else if (value instanceof String && !HEX_ADDRESS.matcher((String) value).matches()) {
+        address = WalletApi.decodeFromBase58Check((String) value);
+      } else {
+        address = bytes(value);
+      }
+      if (address == null || (address.length != 20 && address.length != 21)) {
+        throw new IllegalArgumentException("Invalid address " + value);
+      }
+      // only the 20 bytes after the 0x41 prefix, as the TVM reads them
+      System.arraycopy(address, address.length - 20, out, offset + WORD - 20, 20);
+      return offset + WORD;
+    }
+
+    @Override
+    Object decode(byte[] data, int offset, int limit) {
+      checkLength(data, offset, WORD, limit);
+      byte[] address = new byte[21];
+      address[0] = WalletApi.getAddressPreFixByte();
+      System.arraycopy(data, offset + WORD - 20, address, 1, 20);
+      return WalletApi.encode58Check(address);
+    }
+  }
+
+  private static class BoolType extends Type {
+
+    @Override
+    String name() {
+      return "bool";
+    }
+
+    @Override
+    boolean isDynamic() {
+      return false;
+    }
+
+    @Override
+    int encode(Object value, byte[] out, int offset) {
+      out[offset + WORD - 1] = (byte) (toBoolean(value) ? 1 : 0);
+      return offset + WORD;
+    }
+
+    private static boolean toBoolean(Object value) {
+      if (value instanceof Boolean) {
+        return (Boolean) value;
+      }
+      if (value instanceof Number) {
+        BigDecimal number = new BigDecimal(value.toString());
+        if (number.signum() == 0 || number.compareTo(BigDecimal.ONE) == 0) {
+          return number.signum() != 0;
+        }
+      } else if ("true".equals(value) || "1".equals(value)) {
+        return true;
+      } else if ("false".equals(value) || "0".equals(value)) {
+        return false;
+      }
+      throw new IllegalArgumentException("Expected a bool, got " + value);
+    }
+
+    @Override
+    Object decode(byte[] data, int offset, int limit) {
+      checkLength(data, offset, WORD, limit);
+      return data[offset + WORD - 1] != 0;
+    }
+  }
+
+  private static class FixedBytesType extends Type {
+
+    private final int length;
+
+    FixedBytesType(int length) {
+      if (length < 1 || length > WORD) {
+        throw new IllegalArgumentException("Unsupported ABI type bytes" + length);
+      }
+      this.length = length;
+    }
+
+    @Override
+    String name() {
+      return "bytes" + length;
+    }
+
+    @Override
+    boolean isDynamic() {
+      return false;
+    }
+
+    @Override
+    int encode(Object value, byte[] out, int offset) {
+      byte[] bytes = bytes(value);
+      if (bytes.length > length) {
+        throw new IllegalArgumentException(bytes.length + " bytes do not fit " + name());
+      }
+      System.arraycopy(bytes, 0, out, offset, bytes.length);
+      return offset + WORD;
+    }
+
+    @Override
+    Object decode(byte[] data, int offset, int limit) {
+      checkLength(data, offset, WORD, limit);
+      return Arrays.copyOfRange(data, offset, offset + length);
+    }
+  }
+
+  private static class BytesType extends Type {
+
+    private final boolean string;
+
+    BytesType(boolean string) {
+      this.string = string;
+    }
+
+    @Override
+    String name() {
+      return string ? "string" : "bytes";
+    }
+
+    @Override
+    boolean isDynamic() {
+      return true;
+    }
+
+    private byte[] toBytes(Object value) {
+      return string && value instanceof String
+          ? ((String) value).getBytes(StandardCharsets.UTF_8) : bytes(value);
+    }
+
+    @Override
+    int size(Object value) {
+      return WORD + (toBytes(value).length + WORD - 1) / WORD * WORD;
+    }
+
+    @Override
+    int encode(Object value, byte[] out, int offset) {
+      byte[] bytes = toBytes(value);
+      writeInt(bytes.length, out, offset);
+      System.arraycopy(bytes, 0, out, offset + WORD, bytes.length);
+      return offset + WORD + (bytes.length + WORD - 1) / WORD * WORD;
+    }
+
+    @Override
+    Object decode(byte[] data, int offset, int limit) {
+      int length = readLength(data, offset, limit);
+      checkLength(data, offset + WORD, length, limit);
+      byte[] bytes = Arrays.copyOfRange(data, offset + WORD, offset + WORD + length);
+      return string ? new String(bytes, StandardCharsets.UTF_8) : bytes;
+    }
+  }
+
+  private static class TupleType extends Type {
+
+    private final List<Type> components;
+    private final boolean dynamic;
+    private final int headSize;
+
+    TupleType(List<Type> components) {
+      this.components = components;
+      boolean anyDynamic = false;
+      int heads = 0;
+      for (Type component : components) {
+        anyDynamic |= component.isDynamic();
+        heads += component.headSize();
+      }
+      this.dynamic = anyDynamic;
+      this.headSize = heads;
+    }
+
+    @Override
+    String name() {
+      StringBuilder name = new StringBuilder("(");
+      for (Type component : components) {
+        if (name.length() > 1) {
+          name.append(',');
+        }
+        name.append(component.name());
+      }
+      return name.append(')').toString();
+    }
+
+    @Override
+    boolean isDynamic() {
+      return dynamic;
+    }
+
+    @Override
+    int headSize() {
+      return dynamic ? WORD : headSize;
+    }
+
+    private List<?> values(Object value) {
+      List<?> values = elements(value);
+      if (values.size() != components.size()) {
+        throw new IllegalArgumentException("Expected " + components.size() + " values for "
+            + name() + ", got " + values.size());
+      }
+      return values;
+    }
+
+    @Override
+    int size(Object value) {
+      List<?> values = values(value);
+      int size = headSize;
+      for (int i = 0; i < components.size(); i++) {
+        if (components.get(i).isDynamic()) {
+          size += components.get(i).size(values.get(i));
+        }
+      }
+      return size;
+    }
+
+    @Override
+    int encode(Object value, byte[] out, int offset) {
+      return encodeSequence(components, values(value), out, offset, headSize);
+    }
+
+    @Override
+    Object decode(byte[] data, int offset, int limit) {
+      return decodeSequence(components, data, offset, limit);
+    }
+  }
+
+  private static class ArrayType extends Type {
+
+    private final Type element;
+    private final int length;
+
+    ArrayType(Type element, int length) {
+      this.element = element;
+      this.length = length;
+    }
+
+    @Override
+    String name() {
+      return element.name() + "[" + (length < 0 ? "" : String.valueOf(length)) + "]";
+    }
+
+    @Override
+    boolean isDynamic() {
+      return length < 0 || element.isDynamic();
+    }
+
+    @Override
+    int headSize() {
+      return isDynamic() ? WORD : length * element.headSize();
+    }
+
+    private List<?> values(Object value) {
+      List<?> values = elements(value);
+      if (length >= 0 && values.size() != length) {
+        throw new IllegalArgumentException("Expected " + length + " values for " + name()
+            + ", got " + values.size());
+      }
+      return values;
+    }
+
+    @Override
+    int size(Object value) {
+      List<?> values = values(value);
+      int size = (length < 0 ? WORD : 0) + values.size() * element.headSize();
+      if (element.isDynamic()) {
+        for (Object item : values) {
+          size += element.size(item);
+        }
+      }
+      return size;
+    }
+
+    @Override
+    int encode(Object value, byte[] out, int offset) {
+      List<?> values = values(value);
+      if (length < 0) {
+        writeInt(values.size(), out, offset);
+        offset += WORD;
+      }
+      return encodeSequence(Collections.nCopies(values.size(), element), values, out, offset,
+          values.size() * element.headSize());
+    }
+
+    @Override
+    Object decode(byte[] data, int offset, int limit) {
+      int count = length;
+      if (count < 0) {
+        count = readLength(data, offset, limit);
+        offset += WORD;
+        // each element takes at least a word, which bounds the count by the data
+        if (count > (limit - offset) / WORD) {
+          throw new IllegalArgumentException("ABI data too short");
+        }
+      }
+      return decodeSequence(Collections.nCopies(count, element), data, offset, limit);
+    }
+  }
+
+  private static int encodeSequence(List<Type> types, List<?> values, byte[] out, int offset,
+      int headSize) {
+    int head = offset;
+    int tail = offset + headSize;
+    for (int i = 0; i < types.size(); i++) {
+      Type type = types.get(i);
+      Object value = values.get(i);
+      if (type.isDynamic()) {
+        writeInt(tail - offset, out, head);
+        tail = type.encode(value, out, tail);
+      } else {
+        type.encode(value, out, head);
+      }
+      head += type.headSize();
+    }
+    return tail;
+  }
+
+  private static List<Object> decodeSequence(List<Type> types, byte[] data, int offset,
+      int limit) {
+    List<Object> values = new ArrayList<>(types.size());
+    int head = offset;
+    for (Type type : types) {
+      if (type.isDynamic()) {
+        values.add(type.decode(data, offset + readLength(data, head, limit), limit));
+      } else {
+        values.add(type.decode(data, head, limit));
+      }
+      head += type.headSize();
+    }
+    return values;
+  }
+}
@@ -23,23 +23,19 @@ import static org.tron.common.utils.ByteUtil.EMPTY_BYTE_ARRAY;
 import static org.tron.common.utils.ByteUtil.isNullOrZeroArray;
 import static org.tron.common.utils.ByteUtil.isSingleZero;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.Provider;
 import java.security.Security;
 import java.util.Arrays;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.math.ec.ECPoint;
+import org.tron.common.crypto.Digests;
+import org.tron.common.crypto.cryptohash.Keccak256;
+import org.tron.common.crypto.cryptohash.Keccak512;
 import org.tron.common.crypto.jce.TronCastleProvider;
 
 @Slf4j(topic = "crypto")
 public class Hash {
 
   public static final byte[] EMPTY_TRIE_HASH;
-  private static final Provider CRYPTO_PROVIDER;
-  private static final String HASH_256_ALGORITHM_NAME;
-  private static final String HASH_512_ALGORITHM_NAME;
-  private static final String ALGORITHM_NOT_FOUND = "Can't find such algorithm";
   /**
    * [0x80] If a string is 0-55 bytes long, the RLP encoding consists of a single byte with value
    * 0x80 plus the length of the string followed by the string. The range of the first byte is thus
@@ -66,38 +62,20 @@ public class Hash {
 
   static {
     Security.addProvider(TronCastleProvider.getInstance());
-    CRYPTO_PROVIDER = Security.getProvider("BC");
-    HASH_256_ALGORITHM_NAME = "TRON-KECCAK-256";
-    HASH_512_ALGORITHM_NAME = "TRON-KECCAK-512";
     EMPTY_TRIE_HASH = sha3(encodeElement(EMPTY_BYTE_ARRAY));
   }
 
   public static byte[] sha3(byte[] input) {
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME,
-          CRYPTO_PROVIDER);
-      digest.update(input);
-      return digest.digest();
-    } catch (NoSuchAlgorithmException e) {
-      logger.error(ALGORITHM_NOT_FOUND, e);
-      throw new RuntimeException(e);
-    }
-
+    Keccak256 digest = Digests.keccak256();
+    digest.update(input);
+    return digest.digest();
   }
 
   public static byte[] sha3(byte[] input1, byte[] input2) {
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME,
-          CRYPTO_PROVIDER);
-      digest.update(input1, 0, input1.length);
-      digest.update(input2, 0, input2.length);
-      return digest.digest();
-    } catch (NoSuchAlgorithmException e) {
-      logger.error(ALGORITHM_NOT_FOUND, e);
-      throw new RuntimeException(e);
-    }
+    Keccak256 digest = Digests.keccak256();
+    digest.update(input1, 0, input1.length);
+    digest.update(input2, 0, input2.length);
+    return digest.digest();
   }
 
   /**
@@ -109,29 +87,30 @@ public class Hash {
    * @return - keccak hash of the chunk
    */
   public static byte[] sha3(byte[] input, int start, int length) {
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME,
-          CRYPTO_PROVIDER);
-      digest.update(input, start, length);
-      return digest.digest();
-    } catch (NoSuchAlgorithmException e) {
-      logger.error(ALGORITHM_NOT_FOUND, e);
-      throw new RuntimeException(e);
-    }
+    Keccak256 digest = Digests.keccak256();
+    digest.update(input, start, length);
+    return digest.digest();
+  }
+
+  /**
+   * hashing chunk of the data into {@code out}, without allocating
+   *
+   * @param input - data for hash
+   * @param start - start of hashing chunk
+   * @param length - length of hashing chunk
+   * @param out - receives the 32 byte keccak hash of the chunk
+   * @param outOffset - where in {@code out} the hash starts
+   */
+  public static void sha3(byte[] input, int start, int length, byte[] out, int outOffset) {
+    Keccak256 digest = Digests.keccak256();
+    digest.update(input, start, length);
+    digest.digest(out, outOffset, digest.getDigestLength());
   }
 
   public static byte[] sha512(byte[] input) {
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(HASH_512_ALGORITHM_NAME,
-          CRYPTO_PROVIDER);
-      digest.update(input);
-      return digest.digest();
-    } catch (NoSuchAlgorithmException e) {
-      logger.error(ALGORITHM_NOT_FOUND, e);
-      throw new RuntimeException(e);
-    }
+    Keccak512 digest = Digests.keccak512();
+    digest.update(input);
+    return digest.digest();
   }
 
 
@@ -0,0 +1,68 @@
+package org.tron.common.utils;
+
+import com.google.protobuf.ByteString;
+import org.tron.common.crypto.Sha256Sm3Hash;
+import org.tron.common.crypto.SignInterface;
+import org.tron.protos.Protocol.Transaction;
+
+/**
+ * A transaction together with the serialized bytes of its raw data and its txid, so signing,
+ * printing and broadcasting it do not serialize and hash the raw data again.
+ *
+ * <p>Signatures are not part of the raw data, so {@link #sign} keeps both cached values. Any
+ * other change to the transaction needs a new envelope from {@link #of}.
+ */
+public class TransactionEnvelope {
+
+  private final Transaction transaction;
+  private final byte[] rawBytes;
+  private volatile byte[] txid;
+
+  private TransactionEnvelope(Transaction transaction, byte[] rawBytes, byte[] txid) {
+    this.transaction = transaction;
+    this.rawBytes = rawBytes;
+    this.txid = txid;
+  }
+
+  public static TransactionEnvelope of(Transaction transaction) {
+    return new TransactionEnvelope(transaction, transaction.getRawData().toByteArray(), null);
+  }
+
+  public Transaction getTransaction() {
+    return transaction;
+  }
+
+  /**
+   * Returns the serialized raw data, without defensively copying. Therefore do NOT modify the
+   * returned array.
+   */
+  public byte[] getRawBytes() {
+    return rawBytes;
+  }
+
+  /**
+   * Returns the txid, the SHA-256 (or SM3) hash of the raw data, without defensively copying.
+   * Therefore do NOT modify the returned array.
+   */
+  public byte[] getTxid() {
+    byte[] id = txid;
+    if (id == null) {
+      id = Sha256Sm3Hash.hash(rawBytes);
+      txid = id;
+    }
+    return id;
+  }
+
+  public String getTxidHex() {
+    return ByteArray.toHexString(getTxid());
+  }
+
+  /**
+   * Appends the signature of {@code key} over the txid.
+   */
+  public TransactionEnvelope sign(SignInterface key) {
+    ByteString signature = ByteString.copyFrom(key.sign(getTxid()).toByteArray());
+    return new TransactionEnvelope(
+        transaction.toBuilder().addSignature(signature).build(), rawBytes, txid);
+  }
+}
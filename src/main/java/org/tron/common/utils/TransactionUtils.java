@@ -24,7 +24,6 @@ import org.tron.common.crypto.ECKey;
 import org.tron.common.crypto.ECKey.ECDSASignature;
 import org.tron.common.crypto.Sha256Sm3Hash;
 import org.tron.common.crypto.SignInterface;
-import org.tron.common.crypto.SignatureInterface;
 import org.tron.core.exception.CancelException;
 import org.tron.protos.Protocol.Transaction;
 import org.tron.protos.contract.AccountContract.AccountCreateContract;
@@ -53,10 +52,7 @@ public class TransactionUtils {
    * @return byte[] the hash of the transaction's data bytes which have no id
    */
   public static byte[] getHash(Transaction transaction) {
-    Transaction.Builder tmp = transaction.toBuilder();
-    // tmp.clearId();
-
-    return Sha256Sm3Hash.hash(tmp.build().toByteArray());
+    return Sha256Sm3Hash.hash(transaction.toByteArray());
   }
 
   public static byte[] getOwner(Transaction.Contract contract) {
@@ -204,7 +200,7 @@ public class TransactionUtils {
     assert (signedTransaction.getSignatureCount()
         == signedTransaction.getRawData().getContractCount());
     List<Transaction.Contract> listContract = signedTransaction.getRawData().getContractList();
-    byte[] hash = Sha256Sm3Hash.hash(signedTransaction.getRawData().toByteArray());
+    byte[] hash = TransactionEnvelope.of(signedTransaction).getTxid();
     int count = signedTransaction.getSignatureCount();
     if (count == 0) {
       return false;
@@ -228,13 +224,7 @@ public class TransactionUtils {
   }
 
   public static Transaction sign(Transaction transaction, SignInterface myKey) {
-    Transaction.Builder transactionBuilderSigned = transaction.toBuilder();
-    byte[] hash = Sha256Sm3Hash.hash(transaction.getRawData().toByteArray());
-    SignatureInterface signature = myKey.sign(hash);
-    ByteString bsSign = ByteString.copyFrom(signature.toByteArray());
-    transactionBuilderSigned.addSignature(bsSign);
-    transaction = transactionBuilderSigned.build();
-    return transaction;
+    return TransactionEnvelope.of(transaction).sign(myKey).getTransaction();
   }
 
   public static Transaction setTimestamp(Transaction transaction) {
@@ -39,7 +39,6 @@ import java.util.Scanner;
 
 import org.tron.api.GrpcAPI.*;
 import org.tron.common.crypto.Hash;
-import org.tron.common.crypto.Sha256Sm3Hash;
 import org.tron.keystore.StringUtils;
 import org.tron.walletserver.WalletApi;
 import org.tron.protos.Protocol.Block;
@@ -285,8 +284,12 @@ public class Utils {
   }
 
   public static byte[] generateContractAddress(Transaction trx, byte[] ownerAddress) {
+    return generateContractAddress(TransactionEnvelope.of(trx), ownerAddress);
+  }
+
+  public static byte[] generateContractAddress(TransactionEnvelope trx, byte[] ownerAddress) {
     // get tx hash
-    byte[] txRawDataHash = Sha256Sm3Hash.of(trx.getRawData().toByteArray()).getBytes();
+    byte[] txRawDataHash = trx.getTxid();
 
     // combine
     byte[] combined = new byte[txRawDataHash.length + ownerAddress.length];
@@ -603,10 +606,9 @@ public class Utils {
     JSONObject rawData = JSONObject.parseObject(jsonTransaction.get("raw_data").toString());
     rawData.put("contract", contracts);
     jsonTransaction.put("raw_data", rawData);
-    String rawDataHex = ByteArray.toHexString(transaction.getRawData().toByteArray());
-    jsonTransaction.put("raw_data_hex", rawDataHex);
-    String txID = ByteArray.toHexString(Sha256Sm3Hash.hash(transaction.getRawData().toByteArray()));
-    jsonTransaction.put("txID", txID);
+    TransactionEnvelope envelope = TransactionEnvelope.of(transaction);
+    jsonTransaction.put("raw_data_hex", ByteArray.toHexString(envelope.getRawBytes()));
+    jsonTransaction.put("txID", envelope.getTxidHex());
     return jsonTransaction;
   }
 
@@ -0,0 +1,233 @@
+package org.tron.core.zen;
+
+import com.typesafe.config.Config;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.core.config.Configuration;
+import org.tron.core.exception.ZksnarkException;
+import org.tron.core.zen.NoteDecryptor.DecryptedNote;
+import org.tron.walletserver.SingleFlight;
+
+/**
+ * Finds the notes of a viewing key by trial-decrypting shielded outputs on this machine, so the
+ * viewing key never leaves it and scanning is bound by local cores rather than by what a node
+ * serves per request.
+ *
+ * <p>The outputs of a block range come from an {@link OutputSource}. The outputs of the last
+ * {@code localCacheBlocks} blocks are kept, and concurrent fetches of the same range are
+ * coalesced, so the viewing keys of a wallet, which scan the same windows, fetch them once. The
+ * outputs of a window are split over {@code localThreads} threads for decryption.
+ */
+@Slf4j(topic = "shielded")
+public class LocalNoteScanner {
+
+  private static boolean enabled = false;
+  private static int threads = Runtime.getRuntime().availableProcessors();
+  private static int cacheBlocks = 2000;
+
+  static {
+    Config config = Configuration.getByPath("config.conf");
+    if (config.hasPath("shieldedScan.local")) {
+      enabled = config.getBoolean("shieldedScan.local");
+    }
+    if (config.hasPath("shieldedScan.localThreads")) {
+      threads = Math.max(1, config.getInt("shieldedScan.localThreads"));
+    }
+    if (config.hasPath("shieldedScan.localCacheBlocks")) {
+      cacheBlocks = Math.max(0, config.getInt("shieldedScan.localCacheBlocks"));
+    }
+  }
+
+  /**
+   * Whether notes are to be found here instead of by the fullnodes.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public interface OutputSource {
+
+    /**
+     * Fetches the shielded outputs of blocks [start, end), in chain order.
+     */
+    List<ShieldedOutput> outputs(long start, long end) throws Exception;
+  }
+
+  @Getter
+  public static class ShieldedOutput {
+
+    private final long blockNum;
+    private final byte[] txId;
+    // of the output in its transaction
+    private final int index;
+    // of the note commitment in the tree, or -1 where the source does not know it
+    private final long position;
+    private final byte[] cm;
+    private final byte[] epk;
+    private final byte[] cEnc;
+
+    public ShieldedOutput(long blockNum, byte[] txId, int index, long position, byte[] cm,
+        byte[] epk, byte[] cEnc) {
+      this.blockNum = blockNum;
+      this.txId = txId;
+      this.index = index;
+      this.position = position;
+      this.cm = cm;
+      this.epk = epk;
+      this.cEnc = cEnc;
+    }
+  }
+
+  @Getter
+  public static class FoundNote {
+
+    private final ShieldedOutput output;
+    private final DecryptedNote note;
+
+    FoundNote(ShieldedOutput output, DecryptedNote note) {
+      this.output = output;
+      this.note = note;
+    }
+  }
+
+  private final OutputSource source;
+  private final int parallelism;
+  private final ExecutorService fetchExecutor;
+  private final ExecutorService decryptExecutor;
+  private final SingleFlight<String, List<ShieldedOutput>> fetchFlight = new SingleFlight<>();
+  private final Map<Long, List<ShieldedOutput>> cache =
+      new LinkedHashMap<Long, List<ShieldedOutput>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, List<ShieldedOutput>> eldest) {
+          return size() > cacheBlocks;
+        }
+      };
+
+  public LocalNoteScanner(OutputSource source) {
+    this(source, threads);
+  }
+
+  public LocalNoteScanner(OutputSource source, int parallelism) {
+    this.source = source;
+    this.parallelism = Math.max(1, parallelism);
+    AtomicInteger fetchThreads = new AtomicInteger();
+    this.fetchExecutor = Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, "shielded-fetch-" + fetchThreads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    AtomicInteger decryptThreads = new AtomicInteger();
+    this.decryptExecutor = Executors.newFixedThreadPool(this.parallelism, r -> {
+      Thread thread = new Thread(r, "shielded-decrypt-" + decryptThreads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Starts looking for the notes of {@code ivk} in blocks [start, end).
+   *
+   * @return the notes found, in chain order
+   */
+  public CompletableFuture<List<FoundNote>> scan(byte[] ivk, long start, long end) {
+    return outputs(start, end).thenCompose(outputs -> decrypt(ivk, outputs));
+  }
+
+  private CompletableFuture<List<ShieldedOutput>> outputs(long start, long end) {
+    List<ShieldedOutput> cached = cached(start, end);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+    return fetchFlight.executeAsync(start + "-" + end, () -> CompletableFuture.supplyAsync(() -> {
+      try {
+        List<ShieldedOutput> outputs = source.outputs(start, end);
+        store(start, end, outputs);
+        return outputs;
+      } catch (Exception e) {
+        throw new CompletionException(e);
+      }
+    }, fetchExecutor));
+  }
+
+  private CompletableFuture<List<FoundNote>> decrypt(byte[] ivk, List<ShieldedOutput> outputs) {
+    if (outputs.isEmpty()) {
+      return CompletableFuture.completedFuture(Collections.emptyList());
+    }
+    int chunks = Math.min(parallelism, outputs.size());
+    int chunkSize = (outputs.size() + chunks - 1) / chunks;
+    List<CompletableFuture<List<FoundNote>>> parts = new ArrayList<>();
+    for (int from = 0; from < outputs.size(); from += chunkSize) {
+      List<ShieldedOutput> chunk = outputs.subList(from,
+          Math.min(from + chunkSize, outputs.size()));
+      parts.add(CompletableFuture.supplyAsync(() -> decryptAll(ivk, chunk), decryptExecutor));
+    }
+    return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+      List<FoundNote> found = new ArrayList<>();
+      for (CompletableFuture<List<FoundNote>> part : parts) {
+        found.addAll(part.join());
+      }
+      return found;
+    });
+  }
+
+  private static List<FoundNote> decryptAll(byte[] ivk, List<ShieldedOutput> outputs) {
+    List<FoundNote> found = new ArrayList<>();
+    try {
+      for (ShieldedOutput output : outputs) {
+        DecryptedNote note = NoteDecryptor.tryDecrypt(ivk, output.getEpk(), output.getCEnc(),
+            output.getCm());
+        if (note != null) {
+          found.add(new FoundNote(output, note));
+        }
+      }
+    } catch (ZksnarkException e) {
+      throw new CompletionException(e);
+    }
+    return found;
+  }
+
+  private synchronized List<ShieldedOutput> cached(long start, long end) {
+    if (end - start > cacheBlocks) {
+      return null;
+    }
+    List<ShieldedOutput> outputs = new ArrayList<>();
+    for (long blockNum = start; blockNum < end; blockNum++) {
+      List<ShieldedOutput> block = cache.get(blockNum);
+      if (block == null) {
+        return null;
+      }
+      outputs.addAll(block);
+    }
+    return outputs;
+  }
+
+  private synchronized void store(long start, long end, List<ShieldedOutput> outputs) {
+    if (end - start > cacheBlocks) {
+      return;
+    }
+    Map<Long, List<ShieldedOutput>> blocks = new LinkedHashMap<>();
+    for (long blockNum = start; blockNum < end; blockNum++) {
+      blocks.put(blockNum, new ArrayList<>());
+    }
+    for (ShieldedOutput output : outputs) {
+      List<ShieldedOutput> block = blocks.get(output.getBlockNum());
+      if (block != null) {
+        block.add(output);
+      }
+    }
+    cache.putAll(blocks);
+    logger.debug("Fetched {} shielded outputs of blocks [{}, {})", outputs.size(), start, end);
+  }
+}
@@ -0,0 +1,497 @@
+package org.tron.core.zen;
+
+import com.google.protobuf.ByteString;
+import com.typesafe.config.Config;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+import org.tron.common.zksnark.JLibrustzcash;
+import org.tron.common.zksnark.LibrustzcashParam.MerkleHashParams;
+import org.tron.core.config.Configuration;
+import org.tron.core.exception.ZksnarkException;
+import org.tron.core.zen.LocalNoteScanner.ShieldedOutput;
+import org.tron.protos.contract.ShieldContract.IncrementalMerkleTree;
+import org.tron.protos.contract.ShieldContract.IncrementalMerkleVoucher;
+import org.tron.protos.contract.ShieldContract.IncrementalMerkleVoucherInfo;
+import org.tron.protos.contract.ShieldContract.OutputPoint;
+import org.tron.protos.contract.ShieldContract.PedersenHash;
+
+/**
+ * The note commitment tree of the chain, kept here as its frontier, and the witnesses of the
+ * wallet's unspent notes, so that spending a note needs no voucher from a fullnode.
+ *
+ * <p>Every note commitment is appended in chain order, block by block, from {@code startBlock}
+ * on, which must be before the chain's first shielded transaction. A witness is started when the
+ * commitment of an owned note is appended and then follows every later commitment, as the
+ * fullnode's vouchers do. All witnesses are at the same block, so the vouchers of a transfer
+ * share an anchor, the root of the tree at the end of that block.
+ */
+public class MerkleWitnessTracker {
+
+  public static final int DEPTH = 32;
+
+  private static boolean enabled = false;
+  private static long startBlock = 0;
+  private static int batchBlocks = 1000;
+
+  static {
+    Config config = Configuration.getByPath("config.conf");
+    if (config.hasPath("shieldedWitness.local")) {
+      enabled = config.getBoolean("shieldedWitness.local");
+    }
+    if (config.hasPath("shieldedWitness.startBlock")) {
+      startBlock = Math.max(0, config.getLong("shieldedWitness.startBlock"));
+    }
+    if (config.hasPath("shieldedWitness.batchBlocks")) {
+      batchBlocks = Math.max(1, config.getInt("shieldedWitness.batchBlocks"));
+    }
+  }
+
+  /**
+   * Whether the witnesses of notes are to be kept here instead of asked from the fullnodes.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * How many blocks of outputs to fetch at a time while catching up.
+   */
+  public static int getBatchBlocks() {
+    return batchBlocks;
+  }
+
+  public interface Hasher {
+
+    byte[] uncommitted() throws ZksnarkException;
+
+    /**
+     * The parent of {@code left} and {@code right} at {@code depth}, 0 being the leaves.
+     */
+    byte[] combine(byte[] left, byte[] right, int depth) throws ZksnarkException;
+  }
+
+  /**
+   * The Pedersen hash of the Sapling note commitment tree.
+   */
+  public static final Hasher PEDERSEN = new Hasher() {
+    @Override
+    public byte[] uncommitted() throws ZksnarkException {
+      byte[] result = new byte[32];
+      JLibrustzcash.librustzcashTreeUncommitted(result);
+      return result;
+    }
+
+    @Override
+    public byte[] combine(byte[] left, byte[] right, int depth) throws ZksnarkException {
+      byte[] result = new byte[32];
+      JLibrustzcash.librustzcashMerkleHash(new MerkleHashParams(depth, left, right, result));
+      return result;
+    }
+  };
+
+  private final Hasher hasher;
+  private final long firstBlock;
+  private byte[][] emptyRoots;
+  private long nextBlock;
+  private Tree frontier = new Tree();
+  // the witnesses by note index
+  private final Map<Long, Witness> witnesses = new TreeMap<>();
+
+  public MerkleWitnessTracker() {
+    this(PEDERSEN, startBlock);
+  }
+
+  public MerkleWitnessTracker(Hasher hasher, long firstBlock) {
+    this.hasher = hasher;
+    this.firstBlock = firstBlock;
+    this.nextBlock = firstBlock;
+  }
+
+  /**
+   * The block the next commitments appended are from; those of the blocks before it are in.
+   */
+  public synchronized long getNextBlock() {
+    return nextBlock;
+  }
+
+  /**
+   * Puts back the state saved from {@link #getFrontier} and {@link #getWitnesses}.
+   */
+  public synchronized void restore(long nextBlock, IncrementalMerkleTree frontier,
+      Map<Long, IncrementalMerkleVoucher> witnesses) {
+    this.nextBlock = nextBlock;
+    this.frontier = treeFromProto(frontier);
+    this.witnesses.clear();
+    for (Map.Entry<Long, IncrementalMerkleVoucher> entry : witnesses.entrySet()) {
+      this.witnesses.put(entry.getKey(), witnessFromProto(entry.getValue()));
+    }
+  }
+
+  /**
+   * Appends the commitments of block {@code blockNum}, which must be the next block.
+   *
+   * @param outputs the shielded outputs of the block, in chain order
+   * @param owned the note index of an output's note if it is the wallet's, else null
+   */
+  public synchronized void appendBlock(long blockNum, List<ShieldedOutput> outputs,
+      Function<ShieldedOutput, Long> owned) throws ZksnarkException {
+    if (blockNum != nextBlock) {
+      throw new IllegalArgumentException(
+          "Block " + blockNum + " is not the next block " + nextBlock);
+    }
+    for (ShieldedOutput output : outputs) {
+      byte[] cm = output.getCm();
+      for (Witness witness : witnesses.values()) {
+        witness.append(cm);
+      }
+      frontier.append(cm);
+      Long noteIndex = owned.apply(output);
+      if (noteIndex != null) {
+        witnesses.put(noteIndex, new Witness(frontier.copy(),
+            OutputPoint.newBuilder().setHash(ByteString.copyFrom(output.getTxId()))
+                .setIndex(output.getIndex()).build()));
+      }
+    }
+    nextBlock = blockNum + 1;
+  }
+
+  /**
+   * Stops following a note, once spent.
+   */
+  public synchronized boolean forget(long noteIndex) {
+    return witnesses.remove(noteIndex) != null;
+  }
+
+  public synchronized boolean hasWitness(long noteIndex) {
+    return witnesses.containsKey(noteIndex);
+  }
+
+  public synchronized void clear() {
+    nextBlock = firstBlock;
+    frontier = new Tree();
+    witnesses.clear();
+  }
+
+  /**
+   * The root of the tree as of {@link #getNextBlock}.
+   */
+  public synchronized byte[] root() throws ZksnarkException {
+    return frontier.root(DEPTH, new ArrayDeque<>());
+  }
+
+  public synchronized IncrementalMerkleTree getFrontier() {
+    return frontier.toProto();
+  }
+
+  /**
+   * The witnesses by note index, without root.
+   */
+  public synchronized Map<Long, IncrementalMerkleVoucher> getWitnesses() {
+    Map<Long, IncrementalMerkleVoucher> result = new HashMap<>();
+    for (Map.Entry<Long, Witness> entry : witnesses.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().toProto());
+    }
+    return result;
+  }
+
+  /**
+   * The vouchers and authentication paths of notes, as a fullnode returns them.
+   *
+   * @return empty unless every note has a witness
+   */
+  public synchronized Optional<IncrementalMerkleVoucherInfo> getVoucherInfo(
+      List<Long> noteIndexes) throws ZksnarkException {
+    IncrementalMerkleVoucherInfo.Builder info = IncrementalMerkleVoucherInfo.newBuilder();
+    for (long noteIndex : noteIndexes) {
+      Witness witness = witnesses.get(noteIndex);
+      if (witness == null) {
+        return Optional.empty();
+      }
+      info.addVouchers(witness.toProto().toBuilder().setRt(ByteString.copyFrom(witness.root())));
+      info.addPaths(ByteString.copyFrom(witness.encodePath()));
+    }
+    return Optional.of(info.build());
+  }
+
+  private byte[] emptyRoot(int depth) throws ZksnarkException {
+    if (emptyRoots == null) {
+      byte[][] roots = new byte[DEPTH + 1][];
+      roots[0] = hasher.uncommitted();
+      for (int d = 1; d <= DEPTH; d++) {
+        roots[d] = hasher.combine(roots[d - 1], roots[d - 1], d - 1);
+      }
+      emptyRoots = roots;
+    }
+    return emptyRoots[depth];
+  }
+
+  private byte[] next(Deque<byte[]> filler, int depth) throws ZksnarkException {
+    return filler.isEmpty() ? emptyRoot(depth) : filler.poll();
+  }
+
+  private static PedersenHash toHash(byte[] hash) {
+    PedersenHash.Builder builder = PedersenHash.newBuilder();
+    if (hash != null) {
+      builder.setContent(ByteString.copyFrom(hash));
+    }
+    return builder.build();
+  }
+
+  private static byte[] fromHash(PedersenHash hash) {
+    return hash.getContent().isEmpty() ? null : hash.getContent().toByteArray();
+  }
+
+  /**
+   * The frontier of a tree: its last leaves and, for every level above, the root of the last
+   * full subtree to the left if it is not yet combined, as Zcash's incremental tree.
+   */
+  private class Tree {
+
+    private byte[] left;
+    private byte[] right;
+    private final List<byte[]> parents = new ArrayList<>();
+
+    Tree copy() {
+      Tree copy = new Tree();
+      copy.left = left;
+      copy.right = right;
+      copy.parents.addAll(parents);
+      return copy;
+    }
+
+    long size() {
+      long size = (left != null ? 1 : 0) + (right != null ? 1 : 0);
+      for (int i = 0; i < parents.size(); i++) {
+        if (parents.get(i) != null) {
+          size += 1L << (i + 1);
+        }
+      }
+      return size;
+    }
+
+    boolean isComplete(int depth) {
+      if (left == null || right == null || parents.size() != depth - 1) {
+        return false;
+      }
+      for (byte[] parent : parents) {
+        if (parent == null) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    void append(byte[] leaf) throws ZksnarkException {
+      if (isComplete(DEPTH)) {
+        throw new ZksnarkException("The note commitment tree is full");
+      }
+      if (left == null) {
+        left = leaf;
+      } else if (right == null) {
+        right = leaf;
+      } else {
+        byte[] combined = hasher.combine(left, right, 0);
+        left = leaf;
+        right = null;
+        for (int i = 0; i < DEPTH; i++) {
+          if (i == parents.size()) {
+            parents.add(combined);
+            break;
+          }
+          if (parents.get(i) == null) {
+            parents.set(i, combined);
+            break;
+          }
+          combined = hasher.combine(parents.get(i), combined, i + 1);
+          parents.set(i, null);
+        }
+      }
+    }
+
+    /**
+     * The depth of the next subtree to fill, after skipping {@code skip} empty ones.
+     */
+    int nextDepth(int skip) {
+      if (left == null) {
+        if (skip == 0) {
+          return 0;
+        }
+        skip--;
+      }
+      if (right == null) {
+        if (skip == 0) {
+          return 0;
+        }
+        skip--;
+      }
+      int depth = 1;
+      for (byte[] parent : parents) {
+        if (parent == null) {
+          if (skip == 0) {
+            return depth;
+          }
+          skip--;
+        }
+        depth++;
+      }
+      return depth + skip;
+    }
+
+    byte[] root(int depth, Deque<byte[]> filler) throws ZksnarkException {
+      byte[] root = hasher.combine(left != null ? left : next(filler, 0),
+          right != null ? right : next(filler, 0), 0);
+      int d = 1;
+      for (byte[] parent : parents) {
+        root = parent != null ? hasher.combine(parent, root, d)
+            : hasher.combine(root, next(filler, d), d);
+        d++;
+      }
+      for (; d < depth; d++) {
+        root = hasher.combine(root, next(filler, d), d);
+      }
+      return root;
+    }
+
+    /**
+     * The siblings of the last leaf from the leaves up.
+     */
+    List<byte[]> path(Deque<byte[]> filler) throws ZksnarkException {
+      List<byte[]> path = new ArrayList<>(DEPTH);
+      path.add(right != null ? left : next(filler, 0));
+      int d = 1;
+      for (byte[] parent : parents) {
+        path.add(parent != null ? parent : next(filler, d));
+        d++;
+      }
+      for (; d < DEPTH; d++) {
+        path.add(next(filler, d));
+      }
+      return path;
+    }
+
+    IncrementalMerkleTree toProto() {
+      IncrementalMerkleTree.Builder builder = IncrementalMerkleTree.newBuilder()
+          .setLeft(toHash(left))
+          .setRight(toHash(right));
+      for (byte[] parent : parents) {
+        builder.addParents(toHash(parent));
+      }
+      return builder.build();
+    }
+  }
+
+  /**
+   * The tree as it was when a note was appended, and what was appended since: the roots of the
+   * subtrees filled to the right of the note, and the subtree being filled.
+   */
+  private class Witness {
+
+    private final Tree tree;
+    private final List<byte[]> filled = new ArrayList<>();
+    private Tree cursor;
+    private int cursorDepth;
+    private final OutputPoint outputPoint;
+
+    Witness(Tree tree, OutputPoint outputPoint) {
+      this.tree = tree;
+      this.outputPoint = outputPoint;
+    }
+
+    void append(byte[] leaf) throws ZksnarkException {
+      if (cursor != null) {
+        cursor.append(leaf);
+        if (cursor.isComplete(cursorDepth)) {
+          filled.add(cursor.root(cursorDepth, new ArrayDeque<>()));
+          cursor = null;
+        }
+        return;
+      }
+      cursorDepth = tree.nextDepth(filled.size());
+      if (cursorDepth >= DEPTH) {
+        throw new ZksnarkException("The note commitment tree is full");
+      }
+      if (cursorDepth == 0) {
+        filled.add(leaf);
+      } else {
+        cursor = new Tree();
+        cursor.append(leaf);
+      }
+    }
+
+    private Deque<byte[]> filler() throws ZksnarkException {
+      Deque<byte[]> filler = new ArrayDeque<>(filled);
+      if (cursor != null) {
+        filler.add(cursor.root(cursorDepth, new ArrayDeque<>()));
+      }
+      return filler;
+    }
+
+    byte[] root() throws ZksnarkException {
+      return tree.root(DEPTH, filler());
+    }
+
+    /**
+     * The authentication path as librustzcash reads it: the depth, then each sibling from the
+     * root down prefixed with its length, then the position in little-endian order.
+     */
+    byte[] encodePath() throws ZksnarkException {
+      List<byte[]> path = tree.path(filler());
+      ByteArrayOutputStream out = new ByteArrayOutputStream(1 + DEPTH * 33 + 8);
+      out.write(DEPTH);
+      for (int i = DEPTH - 1; i >= 0; i--) {
+        out.write(32);
+        out.write(path.get(i), 0, 32);
+      }
+      long position = tree.size() - 1;
+      for (int i = 0; i < 8; i++) {
+        out.write((int) (position >>> (8 * i)));
+      }
+      return out.toByteArray();
+    }
+
+    IncrementalMerkleVoucher toProto() {
+      IncrementalMerkleVoucher.Builder builder = IncrementalMerkleVoucher.newBuilder()
+          .setTree(tree.toProto())
+          .setCursorDepth(cursorDepth)
+          .setOutputPoint(outputPoint);
+      for (byte[] hash : filled) {
+        builder.addFilled(toHash(hash));
+      }
+      if (cursor != null) {
+        builder.setCursor(cursor.toProto());
+      }
+      return builder.build();
+    }
+  }
+
+  private Tree treeFromProto(IncrementalMerkleTree tree) {
+    Tree result = new Tree();
+    result.left = fromHash(tree.getLeft());
+    result.right = fromHash(tree.getRight());
+    for (PedersenHash parent : tree.getParentsList()) {
+      result.parents.add(fromHash(parent));
+    }
+    return result;
+  }
+
+  private Witness witnessFromProto(IncrementalMerkleVoucher voucher) {
+    Witness witness = new Witness(treeFromProto(voucher.getTree()),
+        voucher.getOutputPoint());
+    for (PedersenHash hash : voucher.getFilledList()) {
+      witness.filled.add(hash.getContent().toByteArray());
+    }
+    if (voucher.hasCursor()) {
+      witness.cursor = treeFromProto(voucher.getCursor());
+    }
+    witness.cursorDepth = (int) voucher.getCursorDepth();
+    return witness;
+  }
+}
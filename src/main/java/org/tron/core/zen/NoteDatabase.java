@@ -0,0 +1,421 @@
+package org.tron.core.zen;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.common.crypto.Digests;
+
+/**
+ * The notes of a shielded wallet in two files: a memory-mapped index of fixed-size records, one
+ * per note index, and a data file the encrypted notes are appended to.
+ *
+ * <p>An index record is {@code status, length, data offset, address tag, crc32} in 32 bytes, at
+ * {@code noteIndex * 32}, so note indexes, which count up from 0, find their record directly.
+ * Opening the database only reads the index; the notes stay encrypted in the data file until
+ * {@link #read} is called. The unspent and spent note indexes, and the note indexes of every
+ * payment address, are kept in memory from the index. Payment addresses are only stored as a
+ * keyed digest.
+ *
+ * <p>A stored note's index record is written without its status byte, which makes a record valid.
+ * {@link #sync} forces the data of the notes stored since the last sync to disk once, then writes
+ * their status bytes and forces the index, so a crash loses the notes stored since the last sync
+ * but never leaves a record pointing at missing data. Marking a note spent only rewrites its
+ * status.
+ *
+ * <p>Storing a note again appends its new data and leaves the old data behind. When that
+ * outweighs the live data, {@link #sync} and {@link #close} compact both files: the live notes
+ * and an index pointing at them are written to {@code .compact} files and forced, then a
+ * {@code .compacted} marker is created and the files are moved into place. Opening the database
+ * finishes the moves if the marker exists and otherwise drops the {@code .compact} files, so a
+ * crash leaves either the old or the new pair.
+ */
+@Slf4j(topic = "shielded")
+public class NoteDatabase implements Closeable {
+
+  public enum Status {
+    UNSPENT, SPENT
+  }
+
+  private static final int RECORD_SIZE = 32;
+  private static final int INITIAL_RECORDS = 4096;
+  private static final byte NONE = 0;
+  private static final byte UNSPENT = 1;
+  private static final byte SPENT = 2;
+  private static final int LENGTH = 4;
+  private static final int OFFSET = 8;
+  private static final int TAG = 16;
+  private static final int CRC = 24;
+  private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+
+  private final String prefix;
+  private final byte[] tagKey;
+  private FileChannel indexChannel;
+  private FileChannel dataChannel;
+  private MappedByteBuffer index;
+  private long dataSize;
+  // the data of the stored notes, the rest of the data file is superseded
+  private long liveBytes;
+  private final TreeSet<Long> unspent = new TreeSet<>();
+  private final TreeSet<Long> spent = new TreeSet<>();
+  private final Map<Long, TreeSet<Long>> byAddress = new HashMap<>();
+  // stored since the last sync, their status byte not yet written
+  private final Set<Long> unsynced = new HashSet<>();
+
+  private NoteDatabase(String prefix, byte[] tagKey) {
+    this.prefix = prefix;
+    this.tagKey = tagKey;
+  }
+
+  /**
+   * Opens {@code prefix.idx} and {@code prefix.dat}.
+   *
+   * @param tagKey the secret payment addresses are digested with
+   */
+  public static NoteDatabase open(String prefix, byte[] tagKey) throws IOException {
+    NoteDatabase database = new NoteDatabase(prefix, tagKey);
+    database.finishCompaction();
+    database.load();
+    return database;
+  }
+
+  private void load() throws IOException {
+    indexChannel = FileChannel.open(path(".idx"),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    dataChannel = FileChannel.open(path(".dat"),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    unspent.clear();
+    spent.clear();
+    unsynced.clear();
+    byAddress.clear();
+    liveBytes = 0;
+    dataSize = dataChannel.size();
+    long records = Math.max(INITIAL_RECORDS, indexChannel.size() / RECORD_SIZE);
+    index = indexChannel.map(MapMode.READ_WRITE, 0, records * RECORD_SIZE);
+    for (long noteIndex = 0; noteIndex < records; noteIndex++) {
+      int position = (int) (noteIndex * RECORD_SIZE);
+      byte status = index.get(position);
+      if (status == NONE) {
+        continue;
+      }
+      if (status != UNSPENT && status != SPENT
+          || index.getLong(position + OFFSET) + index.getInt(position + LENGTH) > dataSize) {
+        // written before its data reached the disk
+        logger.warn("Dropping the incomplete record of note {}", noteIndex);
+        index.put(position, NONE);
+        continue;
+      }
+      (status == UNSPENT ? unspent : spent).add(noteIndex);
+      byAddress.computeIfAbsent(index.getLong(position + TAG), k -> new TreeSet<>())
+          .add(noteIndex);
+      liveBytes += index.getInt(position + LENGTH);
+    }
+  }
+
+  /**
+   * Stores a note under {@code noteIndex}, replacing what was stored there.
+   */
+  public synchronized void put(long noteIndex, String paymentAddress, byte[] note,
+      Status status) throws IOException {
+    remove(noteIndex);
+    long offset = dataSize;
+    ByteBuffer buffer = ByteBuffer.wrap(note);
+    while (buffer.hasRemaining()) {
+      dataChannel.write(buffer, offset + buffer.position());
+    }
+    dataSize += note.length;
+    liveBytes += note.length;
+
+    ensureCapacity(noteIndex);
+    int position = (int) (noteIndex * RECORD_SIZE);
+    long tag = tag(paymentAddress);
+    CRC32 crc = new CRC32();
+    crc.update(note);
+    index.putInt(position + LENGTH, note.length);
+    index.putLong(position + OFFSET, offset);
+    index.putLong(position + TAG, tag);
+    index.putInt(position + CRC, (int) crc.getValue());
+    index.put(position, NONE);
+    unsynced.add(noteIndex);
+    (status == Status.UNSPENT ? unspent : spent).add(noteIndex);
+    byAddress.computeIfAbsent(tag, k -> new TreeSet<>()).add(noteIndex);
+  }
+
+  /**
+   * Changes the status of a stored note.
+   *
+   * @return false if there is no note under {@code noteIndex}
+   */
+  public synchronized boolean setStatus(long noteIndex, Status status) {
+    if (!contains(noteIndex)) {
+      return false;
+    }
+    unspent.remove(noteIndex);
+    spent.remove(noteIndex);
+    (status == Status.UNSPENT ? unspent : spent).add(noteIndex);
+    if (!unsynced.contains(noteIndex)) {
+      index.put((int) (noteIndex * RECORD_SIZE), status == Status.UNSPENT ? UNSPENT : SPENT);
+    }
+    return true;
+  }
+
+  public synchronized void remove(long noteIndex) {
+    if (!contains(noteIndex)) {
+      return;
+    }
+    int position = (int) (noteIndex * RECORD_SIZE);
+    unspent.remove(noteIndex);
+    spent.remove(noteIndex);
+    unsynced.remove(noteIndex);
+    TreeSet<Long> notes = byAddress.get(index.getLong(position + TAG));
+    if (notes != null) {
+      notes.remove(noteIndex);
+    }
+    index.put(position, NONE);
+    liveBytes -= index.getInt(position + LENGTH);
+  }
+
+  public synchronized boolean contains(long noteIndex) {
+    return unspent.contains(noteIndex) || spent.contains(noteIndex);
+  }
+
+  /**
+   * Reads a stored note.
+   *
+   * @return the note, or null if there is none under {@code noteIndex}
+   */
+  public synchronized byte[] read(long noteIndex) throws IOException {
+    if (!contains(noteIndex)) {
+      return null;
+    }
+    int position = (int) (noteIndex * RECORD_SIZE);
+    ByteBuffer note = ByteBuffer.allocate(index.getInt(position + LENGTH));
+    long offset = index.getLong(position + OFFSET);
+    while (note.hasRemaining()) {
+      if (dataChannel.read(note, offset + note.position()) < 0) {
+        throw new EOFException("Note " + noteIndex + " is past the end of the data file");
+      }
+    }
+    CRC32 crc = new CRC32();
+    crc.update(note.array());
+    if ((int) crc.getValue() != index.getInt(position + CRC)) {
+      throw new IOException("Note " + noteIndex + " is corrupt");
+    }
+    return note.array();
+  }
+
+  /**
+   * Returns up to {@code limit} note indexes with {@code status}, from {@code fromNoteIndex} on,
+   * in order.
+   */
+  public synchronized List<Long> noteIndexes(Status status, long fromNoteIndex, int limit) {
+    NavigableSet<Long> notes = (status == Status.UNSPENT ? unspent : spent)
+        .tailSet(fromNoteIndex, true);
+    List<Long> result = new ArrayList<>(Math.min(limit, notes.size()));
+    for (Long noteIndex : notes) {
+      if (result.size() >= limit) {
+        break;
+      }
+      result.add(noteIndex);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the indexes of the notes paid to {@code paymentAddress}, in order.
+   */
+  public synchronized List<Long> noteIndexes(String paymentAddress) {
+    TreeSet<Long> notes = byAddress.get(tag(paymentAddress));
+    return notes == null ? Collections.emptyList() : new ArrayList<>(notes);
+  }
+
+  public synchronized int count(Status status) {
+    return (status == Status.UNSPENT ? unspent : spent).size();
+  }
+
+  /**
+   * The note index after the highest one stored.
+   */
+  public synchronized long nextNoteIndex() {
+    long next = 0;
+    if (!unspent.isEmpty()) {
+      next = unspent.last() + 1;
+    }
+    if (!spent.isEmpty()) {
+      next = Math.max(next, spent.last() + 1);
+    }
+    return next;
+  }
+
+  /**
+   * Forces the notes stored since the last sync and the index to disk, then compacts the files if
+   * the data file is mostly superseded notes.
+   */
+  public synchronized void sync() throws IOException {
+    force();
+    compactIfWasteful();
+  }
+
+  private void force() throws IOException {
+    if (!unsynced.isEmpty()) {
+      dataChannel.force(false);
+      for (long noteIndex : unsynced) {
+        index.put((int) (noteIndex * RECORD_SIZE), spent.contains(noteIndex) ? SPENT : UNSPENT);
+      }
+      unsynced.clear();
+    }
+    index.force();
+  }
+
+  /**
+   * Rewrites the data file with only the stored notes, and the index to point at them.
+   */
+  public synchronized void compact() throws IOException {
+    force();
+    TreeSet<Long> live = new TreeSet<>(unspent);
+    live.addAll(spent);
+    ByteBuffer records = index.duplicate();
+    records.clear();
+    ByteBuffer compactedIndex = ByteBuffer.allocate(records.capacity()).put(records);
+    long offset = 0;
+    try (FileChannel out = FileChannel.open(path(".dat.compact"), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      for (long noteIndex : live) {
+        ByteBuffer note = ByteBuffer.wrap(read(noteIndex));
+        while (note.hasRemaining()) {
+          out.write(note, offset + note.position());
+        }
+        compactedIndex.putLong((int) (noteIndex * RECORD_SIZE) + OFFSET, offset);
+        offset += note.capacity();
+      }
+      out.force(false);
+    }
+    try (FileChannel out = FileChannel.open(path(".idx.compact"), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      compactedIndex.clear();
+      while (compactedIndex.hasRemaining()) {
+        out.write(compactedIndex);
+      }
+      out.force(false);
+    }
+    // from here on, opening the database completes the compaction
+    try (FileChannel marker = FileChannel.open(path(".compacted"), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE)) {
+      marker.force(false);
+    }
+    long before = dataSize;
+    indexChannel.close();
+    dataChannel.close();
+    try {
+      finishCompaction();
+    } finally {
+      load();
+    }
+    logger.debug("Compacted {}.dat from {} to {} bytes", prefix, before, dataSize);
+  }
+
+  public synchronized void clear() throws IOException {
+    for (int position = 0; position < index.capacity(); position += RECORD_SIZE) {
+      index.put(position, NONE);
+    }
+    index.force();
+    dataChannel.truncate(0);
+    dataChannel.force(false);
+    dataSize = 0;
+    liveBytes = 0;
+    unspent.clear();
+    spent.clear();
+    unsynced.clear();
+    byAddress.clear();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (indexChannel.isOpen()) {
+      force();
+      compactIfWasteful();
+      indexChannel.close();
+      dataChannel.close();
+    }
+  }
+
+  private void compactIfWasteful() throws IOException {
+    long garbage = dataSize - liveBytes;
+    if (garbage > liveBytes && garbage > MIN_COMPACT_BYTES) {
+      compact();
+    }
+  }
+
+  private void finishCompaction() throws IOException {
+    Path marker = path(".compacted");
+    if (Files.exists(marker)) {
+      // both .compact files were complete before the marker was created
+      move(path(".dat.compact"), path(".dat"));
+      move(path(".idx.compact"), path(".idx"));
+      Files.delete(marker);
+    } else {
+      Files.deleteIfExists(path(".dat.compact"));
+      Files.deleteIfExists(path(".idx.compact"));
+    }
+  }
+
+  private static void move(Path from, Path to) throws IOException {
+    if (!Files.exists(from)) {
+      // moved before a crash
+      return;
+    }
+    try {
+      Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private Path path(String suffix) {
+    return Paths.get(prefix + suffix);
+  }
+
+  private void ensureCapacity(long noteIndex) throws IOException {
+    long records = index.capacity() / RECORD_SIZE;
+    if (noteIndex < records) {
+      return;
+    }
+    while (records <= noteIndex) {
+      records *= 2;
+    }
+    if (records * RECORD_SIZE > Integer.MAX_VALUE) {
+      throw new IOException("Note index " + noteIndex + " is too large");
+    }
+    index.force();
+    index = indexChannel.map(MapMode.READ_WRITE, 0, records * RECORD_SIZE);
+  }
+
+  private long tag(String paymentAddress) {
+    MessageDigest digest = Digests.sha256();
+    digest.update(tagKey);
+    digest.update(paymentAddress.getBytes(StandardCharsets.UTF_8));
+    return ByteBuffer.wrap(digest.digest()).getLong();
+  }
+}
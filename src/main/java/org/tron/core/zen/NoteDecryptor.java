@@ -0,0 +1,145 @@
+package org.tron.core.zen;
+
+import com.google.protobuf.ByteString;
+import java.util.Arrays;
+import lombok.Getter;
+import org.tron.api.GrpcAPI.Note;
+import org.tron.common.zksnark.JLibrustzcash;
+import org.tron.common.zksnark.JLibsodium;
+import org.tron.common.zksnark.JLibsodiumParam.Black2bSaltPersonalParams;
+import org.tron.common.zksnark.JLibsodiumParam.Chacha20poly1305IetfDecryptParams;
+import org.tron.common.zksnark.LibrustzcashParam.ComputeCmParams;
+import org.tron.common.zksnark.LibrustzcashParam.IvkToPkdParams;
+import org.tron.common.zksnark.LibrustzcashParam.KaAgreeParams;
+import org.tron.core.exception.ZksnarkException;
+import org.tron.core.zen.address.DiversifierT;
+import org.tron.core.zen.address.KeyIo;
+import org.tron.core.zen.address.PaymentAddress;
+
+/**
+ * Trial decryption of shielded outputs with an incoming viewing key, as the fullnode does for
+ * {@code scanNoteByIvk}.
+ *
+ * <p>The key agreement of the ivk with the output's ephemeral key gives, through the Sapling KDF,
+ * the ChaCha20-Poly1305 key of {@code c_enc}. An output only belongs to the ivk if it decrypts and
+ * the note it holds commits to the output's note commitment.
+ */
+public class NoteDecryptor {
+
+  public static final int ENC_CIPHERTEXT_SIZE = 580;
+  static final int ENC_PLAINTEXT_SIZE = 564;
+  private static final byte NOTE_PLAINTEXT_LEAD_BYTE = 0x01;
+  private static final byte[] KDF_PERSONALIZATION = {'Z', 't', 'r', 'o', 'n', '_', 'S', 'a', 'p',
+      'l', 'i', 'n', 'g', 'K', 'D', 'F'};
+
+  private NoteDecryptor() {
+  }
+
+  /**
+   * Tries to decrypt an output with {@code ivk}.
+   *
+   * @param cm the note commitment of the output
+   * @return the note, or null if the output is not for {@code ivk}
+   */
+  public static DecryptedNote tryDecrypt(byte[] ivk, byte[] epk, byte[] cEnc, byte[] cm)
+      throws ZksnarkException {
+    if (epk.length != 32 || cm.length != 32 || cEnc.length < ENC_CIPHERTEXT_SIZE) {
+      return null;
+    }
+    byte[] sharedSecret = new byte[32];
+    if (!JLibrustzcash.librustzcashKaAgree(new KaAgreeParams(epk, ivk, sharedSecret))) {
+      return null;
+    }
+    byte[] key = kdf(sharedSecret, epk);
+
+    byte[] plaintext = new byte[ENC_PLAINTEXT_SIZE];
+    // every key encrypts one note, so the nonce is zero
+    if (JLibsodium.cryptoAeadChacha20poly1305IetfDecrypt(new Chacha20poly1305IetfDecryptParams(
+        plaintext, null, null, cEnc, ENC_CIPHERTEXT_SIZE, null, 0,
+        new byte[JLibsodium.CRYPTO_AEAD_CHACHA20POLY1305_IETF_NPUBBYTES], key)) != 0
+        || plaintext[0] != NOTE_PLAINTEXT_LEAD_BYTE) {
+      return null;
+    }
+
+    byte[] d = Arrays.copyOfRange(plaintext, 1, 12);
+    long value = 0;
+    for (int i = 19; i >= 12; i--) {
+      value = (value << 8) | (plaintext[i] & 0xff);
+    }
+    byte[] rcm = Arrays.copyOfRange(plaintext, 20, 52);
+    byte[] memo = Arrays.copyOfRange(plaintext, 52, ENC_PLAINTEXT_SIZE);
+    byte[] pkD = new byte[32];
+    if (value < 0 || !JLibrustzcash.librustzcashIvkToPkd(new IvkToPkdParams(ivk, d, pkD))) {
+      return null;
+    }
+    byte[] computedCm = new byte[32];
+    if (!JLibrustzcash.librustzcashComputeCm(
+        new ComputeCmParams(d, pkD, value, rcm, computedCm))
+        || !Arrays.equals(computedCm, cm)) {
+      return null;
+    }
+    return new DecryptedNote(d, pkD, value, rcm, memo);
+  }
+
+  /**
+   * The key {@code c_enc} is encrypted with, from the key agreement of the sender and recipient.
+   */
+  static byte[] kdf(byte[] sharedSecret, byte[] epk) throws ZksnarkException {
+    byte[] kdfInput = new byte[64];
+    System.arraycopy(sharedSecret, 0, kdfInput, 0, 32);
+    System.arraycopy(epk, 0, kdfInput, 32, 32);
+    byte[] key = new byte[32];
+    JLibsodium.cryptoGenerichashBlack2bSaltPersonal(new Black2bSaltPersonalParams(key, 32,
+        kdfInput, 64, null, 0, null, KDF_PERSONALIZATION));
+    return key;
+  }
+
+  /**
+   * The plaintext of {@code c_enc}.
+   */
+  static byte[] encodePlaintext(byte[] d, long value, byte[] rcm, byte[] memo) {
+    byte[] plaintext = new byte[ENC_PLAINTEXT_SIZE];
+    plaintext[0] = NOTE_PLAINTEXT_LEAD_BYTE;
+    System.arraycopy(d, 0, plaintext, 1, 11);
+    for (int i = 0; i < 8; i++) {
+      plaintext[12 + i] = (byte) (value >>> (8 * i));
+    }
+    System.arraycopy(rcm, 0, plaintext, 20, 32);
+    System.arraycopy(memo, 0, plaintext, 52, Math.min(memo.length, ENC_PLAINTEXT_SIZE - 52));
+    return plaintext;
+  }
+
+  @Getter
+  public static class DecryptedNote {
+
+    private final byte[] d;
+    private final byte[] pkD;
+    private final long value;
+    private final byte[] rcm;
+    private final byte[] memo;
+
+    DecryptedNote(byte[] d, byte[] pkD, long value, byte[] rcm, byte[] memo) {
+      this.d = d;
+      this.pkD = pkD;
+      this.value = value;
+      this.rcm = rcm;
+      this.memo = memo;
+    }
+
+    public String getPaymentAddress() {
+      return KeyIo.encodePaymentAddress(new PaymentAddress(new DiversifierT(d), pkD));
+    }
+
+    /**
+     * The note as the fullnode returns it from a scan.
+     */
+    public Note toNote() {
+      return Note.newBuilder()
+          .setPaymentAddress(getPaymentAddress())
+          .setValue(value)
+          .setRcm(ByteString.copyFrom(rcm))
+          .setMemo(ByteString.copyFrom(memo))
+          .build();
+    }
+  }
+}
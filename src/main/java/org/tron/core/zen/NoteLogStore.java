@@ -0,0 +1,333 @@
+package org.tron.core.zen;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A key-value store kept as an append-only log, for the scan checkpoints of a shielded
+ * wallet.
+ *
+ * <p>Every put or remove appends one record to a buffer in front of a single file channel, so a
+ * change costs one small write instead of rewriting the whole file. {@link #sync} writes the
+ * buffer out and forces it to disk once for everything appended since, so callers group the
+ * records of one logical change and sync at its end. A record is
+ * {@code length, type, key length, key, value, crc32}; on open the log is read once to build an
+ * index from key to the position of its latest value, and a torn or corrupt record at the tail,
+ * left by a crash, is cut off.
+ *
+ * <p>When superseded records outweigh the live ones, {@link #sync} compacts the log: the live
+ * records are written to a temporary file, forced, and moved over the log atomically, so a crash
+ * leaves either the old or the new log.
+ */
+@Slf4j(topic = "shielded")
+public class NoteLogStore implements Closeable {
+
+  private static final byte PUT = 1;
+  private static final byte REMOVE = 2;
+  // type, key length and crc
+  private static final int OVERHEAD = 1 + 2 + 4;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+
+  private final Path path;
+  private final Path compactPath;
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  private final Map<String, Location> index = new HashMap<>();
+  private FileChannel channel;
+  // the end of the log, including what is still buffered
+  private long size;
+  private long liveBytes;
+
+  private NoteLogStore(Path path) {
+    this.path = path;
+    this.compactPath = Paths.get(path.toString() + ".compact");
+  }
+
+  public static NoteLogStore open(String fileName) throws IOException {
+    NoteLogStore store = new NoteLogStore(Paths.get(fileName));
+    store.load();
+    return store;
+  }
+
+  private void load() throws IOException {
+    // a compaction that did not finish, the log itself is still complete
+    Files.deleteIfExists(compactPath);
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Channels.newInputStream(channel.position(0)), BUFFER_SIZE));
+    long offset = 0;
+    CRC32 crc = new CRC32();
+    while (true) {
+      byte[] record;
+      try {
+        int length = in.readInt();
+        if (length < OVERHEAD || offset + 4 + length > channel.size()) {
+          break;
+        }
+        record = new byte[length];
+        in.readFully(record);
+      } catch (EOFException e) {
+        break;
+      }
+      crc.reset();
+      crc.update(record, 0, record.length - 4);
+      if ((int) crc.getValue() != ByteBuffer.wrap(record, record.length - 4, 4).getInt()) {
+        break;
+      }
+      int keyLength = ByteBuffer.wrap(record, 1, 2).getShort() & 0xffff;
+      String key = new String(record, 3, keyLength, StandardCharsets.UTF_8);
+      long recordBytes = 4L + record.length;
+      Location old = record[0] == PUT
+          ? index.put(key, new Location(offset + 4 + 3 + keyLength,
+          record.length - OVERHEAD - keyLength, recordBytes))
+          : index.remove(key);
+      if (old != null) {
+        liveBytes -= old.recordBytes;
+      }
+      if (record[0] == PUT) {
+        liveBytes += recordBytes;
+      }
+      offset += recordBytes;
+    }
+    if (offset < channel.size()) {
+      logger.warn("Dropping {} bytes of incomplete records at the end of {}",
+          channel.size() - offset, path);
+      channel.truncate(offset);
+      channel.force(false);
+    }
+    size = offset;
+    channel.position(size);
+  }
+
+  public synchronized void put(String key, byte[] value) throws IOException {
+    long offset = size;
+    // index the record only once it is appended
+    long recordBytes = append(PUT, key, value);
+    Location old = index.put(key, new Location(offset + 4 + 3 + keyBytes(key).length,
+        value.length, recordBytes));
+    if (old != null) {
+      liveBytes -= old.recordBytes;
+    }
+    liveBytes += recordBytes;
+  }
+
+  public synchronized void remove(String key) throws IOException {
+    if (index.containsKey(key)) {
+      append(REMOVE, key, new byte[0]);
+      liveBytes -= index.remove(key).recordBytes;
+    }
+  }
+
+  public synchronized byte[] get(String key) throws IOException {
+    Location location = index.get(key);
+    return location == null ? null : read(location);
+  }
+
+  public synchronized boolean contains(String key) {
+    return index.containsKey(key);
+  }
+
+  /**
+   * Returns the live entries whose key starts with {@code prefix}, in the order they were
+   * written.
+   */
+  public synchronized Map<String, byte[]> readAll(String prefix) throws IOException {
+    List<Map.Entry<String, Location>> entries = new ArrayList<>();
+    for (Map.Entry<String, Location> entry : index.entrySet()) {
+      if (entry.getKey().startsWith(prefix)) {
+        entries.add(entry);
+      }
+    }
+    entries.sort((a, b) -> Long.compare(a.getValue().valueOffset, b.getValue().valueOffset));
+    Map<String, byte[]> values = new LinkedHashMap<>();
+    for (Map.Entry<String, Location> entry : entries) {
+      values.put(entry.getKey(), read(entry.getValue()));
+    }
+    return values;
+  }
+
+  /**
+   * Writes out what was appended since the last sync and forces it to disk, then compacts the
+   * log if it is mostly garbage.
+   */
+  public synchronized void sync() throws IOException {
+    flush();
+    channel.force(false);
+    long garbage = size - liveBytes;
+    if (garbage > liveBytes && garbage > MIN_COMPACT_BYTES) {
+      compact();
+    }
+  }
+
+  /**
+   * Rewrites the log with only the live records.
+   */
+  public synchronized void compact() throws IOException {
+    flush();
+    // in log order, so that readAll still returns the entries in the order they were written
+    List<Map.Entry<String, Location>> live = new ArrayList<>(index.entrySet());
+    live.sort((a, b) -> Long.compare(a.getValue().valueOffset, b.getValue().valueOffset));
+    Map<String, Location> compacted = new HashMap<>();
+    long offset = 0;
+    try (FileChannel out = FileChannel.open(compactPath, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer outBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+      for (Map.Entry<String, Location> entry : live) {
+        byte[] record = encode(PUT, entry.getKey(), read(entry.getValue()));
+        if (outBuffer.remaining() < record.length) {
+          writeFully(out, outBuffer);
+        }
+        if (record.length > outBuffer.capacity()) {
+          out.write(ByteBuffer.wrap(record));
+        } else {
+          outBuffer.put(record);
+        }
+        compacted.put(entry.getKey(), new Location(
+            offset + record.length - 4 - entry.getValue().valueLength,
+            entry.getValue().valueLength, record.length));
+        offset += record.length;
+      }
+      writeFully(out, outBuffer);
+      out.force(false);
+    }
+    channel.close();
+    boolean moved = false;
+    try {
+      try {
+        Files.move(compactPath, path, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(compactPath, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+      moved = true;
+    } finally {
+      // reopen whichever log is in place, so a failed move leaves the store usable
+      channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      channel.position(moved ? offset : size);
+      if (!moved) {
+        Files.deleteIfExists(compactPath);
+      }
+    }
+    logger.debug("Compacted {} from {} to {} bytes", path, size, offset);
+    index.clear();
+    index.putAll(compacted);
+    size = offset;
+    liveBytes = offset;
+  }
+
+  /**
+   * Removes every entry.
+   */
+  public synchronized void clear() throws IOException {
+    buffer.clear();
+    channel.truncate(0);
+    channel.force(false);
+    channel.position(0);
+    index.clear();
+    size = 0;
+    liveBytes = 0;
+  }
+
+  public synchronized long size() {
+    return size;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel.isOpen()) {
+      flush();
+      channel.force(false);
+      channel.close();
+    }
+  }
+
+  private long append(byte type, String key, byte[] value) throws IOException {
+    byte[] record = encode(type, key, value);
+    if (buffer.remaining() < record.length) {
+      flush();
+    }
+    if (record.length > buffer.capacity()) {
+      channel.write(ByteBuffer.wrap(record));
+    } else {
+      buffer.put(record);
+    }
+    size += record.length;
+    return record.length;
+  }
+
+  private void flush() throws IOException {
+    writeFully(channel, buffer);
+  }
+
+  private byte[] read(Location location) throws IOException {
+    // the value may still be buffered
+    flush();
+    ByteBuffer value = ByteBuffer.allocate(location.valueLength);
+    long position = location.valueOffset;
+    while (value.hasRemaining()) {
+      int read = channel.read(value, position);
+      if (read < 0) {
+        throw new EOFException("Record past the end of " + path);
+      }
+      position += read;
+    }
+    return value.array();
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private static byte[] keyBytes(String key) {
+    return key.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] encode(byte type, String key, byte[] value) {
+    byte[] keyBytes = keyBytes(key);
+    int length = OVERHEAD + keyBytes.length + value.length;
+    ByteBuffer record = ByteBuffer.allocate(4 + length);
+    record.putInt(length).put(type).putShort((short) keyBytes.length).put(keyBytes).put(value);
+    CRC32 crc = new CRC32();
+    crc.update(record.array(), 4, length - 4);
+    record.putInt((int) crc.getValue());
+    return record.array();
+  }
+
+  private static class Location {
+
+    private final long valueOffset;
+    private final int valueLength;
+    private final long recordBytes;
+
+    Location(long valueOffset, int valueLength, long recordBytes) {
+      this.valueOffset = valueOffset;
+      this.valueLength = valueLength;
+      this.recordBytes = recordBytes;
+    }
+  }
+}
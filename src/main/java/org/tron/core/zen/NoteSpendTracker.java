@@ -0,0 +1,235 @@
+package org.tron.core.zen;
+
+import com.typesafe.config.Config;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.api.GrpcAPI.BlockExtention;
+import org.tron.api.GrpcAPI.TransactionExtention;
+import org.tron.common.utils.ByteArrayWrapper;
+import org.tron.core.config.Configuration;
+import org.tron.protos.Protocol.Transaction;
+
+/**
+ * Keeps track of which unspent notes may have been spent, so that the node is not asked about
+ * every note on every block.
+ *
+ * <p>The nullifier of a note is computed once and cached. A note that the node confirmed unspent
+ * at some head can only have been spent by a transaction revealing its nullifier after that head.
+ * So while the gap is small, the new blocks are fetched once and searched for the cached
+ * nullifiers, and only notes whose nullifier shows up are asked about again. New notes, notes
+ * without a nullifier, larger gaps and notes not confirmed for {@code recheckBlocks} blocks are
+ * asked about directly, up to {@code parallelism} requests at a time.
+ */
+@Slf4j(topic = "shielded")
+public class NoteSpendTracker {
+
+  private static int parallelism = 8;
+  private static long maxBlockScan = 100;
+  // about an hour of blocks
+  private static long recheckBlocks = 1200;
+
+  static {
+    Config config = Configuration.getByPath("config.conf");
+    if (config.hasPath("shieldedSpend.parallelism")) {
+      parallelism = Math.max(1, config.getInt("shieldedSpend.parallelism"));
+    }
+    if (config.hasPath("shieldedSpend.maxBlockScan")) {
+      maxBlockScan = config.getLong("shieldedSpend.maxBlockScan");
+    }
+    if (config.hasPath("shieldedSpend.recheckBlocks")) {
+      recheckBlocks = config.getLong("shieldedSpend.recheckBlocks");
+    }
+  }
+
+  public interface SpendSource {
+
+    /**
+     * Computes the nullifier of a note, completing with null when it cannot be computed.
+     */
+    CompletableFuture<byte[]> nullifier(long noteIndex);
+
+    /**
+     * Asks the node whether a note is spent.
+     */
+    CompletableFuture<Boolean> isSpent(long noteIndex);
+
+    /**
+     * Hands {@code sink} every nullifier {@code transaction} may reveal. Values that are not
+     * nullifiers are harmless, a match is always confirmed with {@link #isSpent}.
+     */
+    void collectNullifiers(Transaction transaction, Consumer<byte[]> sink);
+  }
+
+  public interface BlockSource {
+
+    /**
+     * Streams the blocks of [start, end) in order.
+     */
+    Stream<BlockExtention> blocks(long start, long end);
+  }
+
+  private final SpendSource spendSource;
+  private final BlockSource blockSource;
+  private final Map<Long, NoteState> states = new ConcurrentHashMap<>();
+
+  public NoteSpendTracker(SpendSource spendSource, BlockSource blockSource) {
+    this.spendSource = spendSource;
+    this.blockSource = blockSource;
+  }
+
+  /**
+   * Checks the given unspent notes against the chain up to block {@code head}. Notes that could
+   * not be checked are tried again on the next call.
+   *
+   * @return the indexes of the notes found spent
+   */
+  public Set<Long> check(Collection<Long> unspent, long head) throws InterruptedException {
+    List<Long> notes = new ArrayList<>(unspent);
+    states.keySet().retainAll(notes);
+
+    List<Long> direct = new ArrayList<>();
+    Map<ByteArrayWrapper, Long> watched = new HashMap<>();
+    long from = head;
+    for (Long note : notes) {
+      NoteState state = states.computeIfAbsent(note, k -> new NoteState());
+      if (state.checkedHead >= head) {
+        continue;
+      }
+      if (state.nullifier == null || state.confirmedHead < 0
+          || head - state.confirmedHead > recheckBlocks) {
+        direct.add(note);
+      } else {
+        watched.put(new ByteArrayWrapper(state.nullifier), note);
+        from = Math.min(from, state.checkedHead);
+      }
+    }
+
+    if (!watched.isEmpty()) {
+      // one block fetch stands in for one request per watched note
+      if (head - from <= Math.min(maxBlockScan, watched.size())) {
+        direct.addAll(searchBlocks(watched, from, head));
+      } else {
+        direct.addAll(watched.values());
+      }
+    }
+    if (direct.isEmpty()) {
+      return new HashSet<>();
+    }
+
+    List<Long> missing = new ArrayList<>();
+    for (Long note : direct) {
+      if (states.get(note).nullifier == null) {
+        missing.add(note);
+      }
+    }
+    Map<Long, byte[]> nullifiers = runAll(missing, spendSource::nullifier);
+    for (Map.Entry<Long, byte[]> entry : nullifiers.entrySet()) {
+      states.get(entry.getKey()).nullifier = entry.getValue();
+    }
+
+    Set<Long> spent = new HashSet<>();
+    for (Map.Entry<Long, Boolean> entry : runAll(direct, spendSource::isSpent).entrySet()) {
+      if (entry.getValue()) {
+        spent.add(entry.getKey());
+        states.remove(entry.getKey());
+      } else {
+        NoteState state = states.get(entry.getKey());
+        state.checkedHead = head;
+        state.confirmedHead = head;
+      }
+    }
+    logger.debug("Checked {} of {} notes directly up to block {}, {} spent", direct.size(),
+        notes.size(), head, spent.size());
+    return spent;
+  }
+
+  /**
+   * Searches the blocks after {@code from} up to {@code head} for the watched nullifiers, marks
+   * the notes not found as checked up to {@code head} and returns the ones found. When the blocks
+   * cannot be fetched every watched note is returned.
+   */
+  private Collection<Long> searchBlocks(Map<ByteArrayWrapper, Long> watched, long from,
+      long head) {
+    Set<Long> found = new HashSet<>();
+    try (Stream<BlockExtention> blocks = blockSource.blocks(from + 1, head + 1)) {
+      blocks.forEach(block -> {
+        long number = block.getBlockHeader().getRawData().getNumber();
+        for (TransactionExtention transaction : block.getTransactionsList()) {
+          spendSource.collectNullifiers(transaction.getTransaction(), nullifier -> {
+            Long note = watched.get(new ByteArrayWrapper(nullifier));
+            if (note != null && number > states.get(note).checkedHead) {
+              found.add(note);
+            }
+          });
+        }
+      });
+    } catch (RuntimeException e) {
+      logger.debug("Fetching blocks {} to {} failed: {}", from + 1, head, e.getMessage());
+      return watched.values();
+    }
+    for (Long note : watched.values()) {
+      if (!found.contains(note)) {
+        states.get(note).checkedHead = head;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Runs {@code call} for every note, at most {@code parallelism} at a time, and returns the
+   * non-null results. Failed calls are left out.
+   */
+  private <T> Map<Long, T> runAll(List<Long> notes, LongFunction<CompletableFuture<T>> call)
+      throws InterruptedException {
+    Map<Long, T> results = new ConcurrentHashMap<>();
+    Semaphore permits = new Semaphore(parallelism);
+    List<CompletableFuture<?>> futures = new ArrayList<>();
+    for (Long note : notes) {
+      permits.acquire();
+      CompletableFuture<T> future;
+      try {
+        future = call.apply(note);
+      } catch (RuntimeException e) {
+        permits.release();
+        logger.debug("Checking note {} failed: {}", note, e.getMessage());
+        continue;
+      }
+      futures.add(future.handle((result, t) -> {
+        permits.release();
+        if (t != null) {
+          logger.debug("Checking note {} failed: {}", note, t.getMessage());
+        } else if (result != null) {
+          results.put(note, result);
+        }
+        return null;
+      }));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    return results;
+  }
+
+  public void clear() {
+    states.clear();
+  }
+
+  private static class NoteState {
+
+    private volatile byte[] nullifier;
+    // the head up to which the note is known unspent
+    private volatile long checkedHead = -1;
+    // the head at which the node last said the note is unspent
+    private volatile long confirmedHead = -1;
+  }
+}
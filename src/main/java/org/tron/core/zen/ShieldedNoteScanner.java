@@ -0,0 +1,359 @@
+package org.tron.core.zen;
+
+import com.typesafe.config.Config;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.core.config.Configuration;
+
+/**
+ * Scans shielded notes for many viewing keys at once.
+ *
+ * <p>The block range of every key is cut into windows and up to {@code parallelism} windows are
+ * requested at the same time, round robin over the keys; the asynchronous client spreads them
+ * over the node pool. Results are handed to the consumer on the calling thread, in block order
+ * for each key and only for contiguous windows, so the consumer can store a window's end as the
+ * key's checkpoint once it has handled the notes.
+ *
+ * <p>The window size is adapted per key between {@code minWindow} and {@code maxWindow}: it
+ * doubles after a window that came back quickly with a small response, so sparse history takes
+ * few round trips, and halves after a response larger than {@code maxResponseBytes} or a failed
+ * window, e.g. one that ran into the deadline of {@link #getTimeoutMillis()}. A failed window is
+ * retried in smaller pieces; only when a window of the minimum size fails does its key stop there
+ * for this scan, and the next scan starts again from that window.
+ */
+@Slf4j(topic = "shielded")
+public class ShieldedNoteScanner<N> {
+
+  private static int defaultParallelism = 8;
+  // the fullnode scans at most 1000 blocks per request
+  private static long defaultMinWindow = 10;
+  private static long defaultMaxWindow = 1000;
+  private static long maxResponseBytes = 1024 * 1024;
+  private static long timeoutMillis = 60_000;
+
+  static {
+    Config config = Configuration.getByPath("config.conf");
+    if (config.hasPath("shieldedScan.parallelism")) {
+      defaultParallelism = Math.max(1, config.getInt("shieldedScan.parallelism"));
+    }
+    if (config.hasPath("shieldedScan.minWindow")) {
+      defaultMinWindow = Math.max(1, config.getLong("shieldedScan.minWindow"));
+    }
+    if (config.hasPath("shieldedScan.maxWindow")) {
+      defaultMaxWindow = Math.max(defaultMinWindow, config.getLong("shieldedScan.maxWindow"));
+    }
+    if (config.hasPath("shieldedScan.maxResponseBytes")) {
+      maxResponseBytes = config.getLong("shieldedScan.maxResponseBytes");
+    }
+    if (config.hasPath("shieldedScan.timeoutMillis")) {
+      timeoutMillis = config.getLong("shieldedScan.timeoutMillis");
+    }
+  }
+
+  public interface WindowFetcher<N> {
+
+    /**
+     * Starts the scan of blocks [start, end) for {@code key}.
+     */
+    CompletableFuture<N> fetch(String key, long start, long end);
+  }
+
+  public interface WindowConsumer<N> {
+
+    void accept(String key, long start, long end, N notes) throws Exception;
+  }
+
+  private final WindowFetcher<N> fetcher;
+  private final ToIntFunction<N> responseSize;
+  private final int parallelism;
+  private final long initialWindow;
+  private final long minWindow;
+  private final long maxWindow;
+  // the adapted window size of every key, kept from one scan to the next
+  private final Map<String, Long> windowSizes = new ConcurrentHashMap<>();
+  private final AtomicLong windowCount = new AtomicLong();
+  private final AtomicLong failedWindowCount = new AtomicLong();
+  private final AtomicLong blockCount = new AtomicLong();
+  private final AtomicLong totalLatencyNanos = new AtomicLong();
+  private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+  /**
+   * @param responseSize the serialized size of a window's notes
+   * @param windowSize the window size a key starts with
+   */
+  public ShieldedNoteScanner(WindowFetcher<N> fetcher, ToIntFunction<N> responseSize,
+      long windowSize) {
+    this(fetcher, responseSize, defaultParallelism, windowSize, defaultMinWindow,
+        defaultMaxWindow);
+  }
+
+  public ShieldedNoteScanner(WindowFetcher<N> fetcher, ToIntFunction<N> responseSize,
+      int parallelism, long windowSize, long minWindow, long maxWindow) {
+    this.fetcher = fetcher;
+    this.responseSize = responseSize;
+    this.parallelism = Math.max(1, parallelism);
+    this.minWindow = Math.max(1, minWindow);
+    this.maxWindow = Math.max(this.minWindow, maxWindow);
+    this.initialWindow = Math.min(Math.max(windowSize, this.minWindow), this.maxWindow);
+  }
+
+  /**
+   * The deadline fetchers should give a window's request, 0 for none.
+   */
+  public long getTimeoutMillis() {
+    return timeoutMillis;
+  }
+
+  /**
+   * Scans every key of {@code checkpoints} from its block number up to {@code head}. The map is
+   * only read; recording progress is up to the consumer.
+   *
+   * @return whether every key reached {@code head}
+   * @throws Exception what the consumer threw, which ends the scan
+   */
+  public boolean scan(Map<String, Long> checkpoints, long head, WindowConsumer<N> consumer)
+      throws Exception {
+    List<KeyState> keys = new ArrayList<>();
+    for (Entry<String, Long> entry : checkpoints.entrySet()) {
+      if (entry.getValue() < head) {
+        keys.add(new KeyState(entry.getKey(), entry.getValue(), head));
+      }
+    }
+    keys.sort(Comparator.comparing(state -> state.key));
+
+    BlockingQueue<Window> completed = new LinkedBlockingQueue<>();
+    List<Window> inFlight = new ArrayList<>();
+    // issued windows not yet consumed or dropped, bounds what is buffered out of order
+    int outstanding = 0;
+    int cursor = 0;
+    try {
+      while (true) {
+        while (inFlight.size() < parallelism && outstanding < parallelism * 4) {
+          KeyState state = null;
+          for (int i = 0; i < keys.size() && state == null; i++) {
+            KeyState candidate = keys.get((cursor + i) % keys.size());
+            if (!candidate.retry.isEmpty() || candidate.nextStart < candidate.limit) {
+              state = candidate;
+              cursor = (cursor + i + 1) % keys.size();
+            }
+          }
+          if (state == null) {
+            break;
+          }
+          Window window = state.nextWindow();
+          try {
+            window.future = fetcher.fetch(state.key, window.start, window.end);
+          } catch (RuntimeException e) {
+            window.future = new CompletableFuture<>();
+            window.future.completeExceptionally(e);
+          }
+          inFlight.add(window);
+          outstanding++;
+          window.future.whenComplete((notes, t) -> {
+            window.latencyNanos = System.nanoTime() - window.issuedNanos;
+            completed.add(window);
+          });
+        }
+        if (outstanding == 0) {
+          break;
+        }
+
+        Window window = completed.take();
+        inFlight.remove(window);
+        KeyState state = window.state;
+        outstanding--;
+        if (window.start >= state.limit) {
+          continue;
+        }
+        if (!record(window)) {
+          long length = window.end - window.start;
+          if (length > minWindow) {
+            state.shrink(length);
+            state.retry.put(window.start, window.end);
+            continue;
+          }
+          // windows before the failed one are still consumed, later ones are dropped
+          state.limit = window.start;
+          Map<Long, Window> dropped = state.buffered.tailMap(window.start, false);
+          outstanding -= dropped.size();
+          dropped.clear();
+          state.retry.tailMap(window.start, false).clear();
+          continue;
+        }
+        outstanding++;
+        state.buffered.put(window.start, window);
+        Window next;
+        while ((next = state.buffered.remove(state.checkpoint)) != null) {
+          consumer.accept(state.key, next.start, next.end, next.future.join());
+          state.checkpoint = next.end;
+          outstanding--;
+        }
+      }
+    } finally {
+      for (Window window : inFlight) {
+        window.future.cancel(true);
+      }
+    }
+
+    logger.debug("{}", this);
+    for (KeyState state : keys) {
+      if (state.checkpoint < head) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Records a completed window in the metrics and adapts its key's window size.
+   *
+   * @return whether the window succeeded
+   */
+  private boolean record(Window window) {
+    KeyState state = window.state;
+    long length = window.end - window.start;
+    windowCount.incrementAndGet();
+    totalLatencyNanos.addAndGet(window.latencyNanos);
+    maxLatencyNanos.accumulateAndGet(window.latencyNanos, Math::max);
+    if (window.future.isCompletedExceptionally()) {
+      failedWindowCount.incrementAndGet();
+      logger.debug("Scanning blocks {} to {} failed after {} ms", window.start, window.end,
+          TimeUnit.NANOSECONDS.toMillis(window.latencyNanos));
+      return false;
+    }
+    blockCount.addAndGet(length);
+    int size = responseSize.applyAsInt(window.future.join());
+    logger.debug("Scanned blocks {} to {} in {} ms, {} bytes", window.start, window.end,
+        TimeUnit.NANOSECONDS.toMillis(window.latencyNanos), size);
+    if (size > maxResponseBytes) {
+      state.shrink(length);
+    } else if (size <= maxResponseBytes / 4 && (timeoutMillis <= 0
+        || window.latencyNanos < TimeUnit.MILLISECONDS.toNanos(timeoutMillis) / 4)) {
+      state.grow(length);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the window size {@code key} is scanned with next.
+   */
+  public long getWindowSize(String key) {
+    return windowSizes.getOrDefault(key, initialWindow);
+  }
+
+  public Map<String, Long> getWindowSizes() {
+    return Collections.unmodifiableMap(windowSizes);
+  }
+
+  public long getWindowCount() {
+    return windowCount.get();
+  }
+
+  public long getFailedWindowCount() {
+    return failedWindowCount.get();
+  }
+
+  public long getScannedBlockCount() {
+    return blockCount.get();
+  }
+
+  public double getAverageLatencyMillis() {
+    long count = windowCount.get();
+    return count == 0 ? 0 : totalLatencyNanos.get() / 1e6 / count;
+  }
+
+  public double getMaxLatencyMillis() {
+    return maxLatencyNanos.get() / 1e6;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "ShieldedNoteScanner[windows=%d, failed=%d, blocks=%d, latency avg=%.1fms max=%.1fms, "
+            + "windowSizes=%s]", getWindowCount(), getFailedWindowCount(),
+        getScannedBlockCount(), getAverageLatencyMillis(), getMaxLatencyMillis(), windowSizes);
+  }
+
+  private class KeyState {
+
+    private final String key;
+    private long checkpoint;
+    private long nextStart;
+    // where this key's scan ends: the head, or the window that could not be scanned
+    private long limit;
+    private long windowSize;
+    private final TreeMap<Long, Window> buffered = new TreeMap<>();
+    // failed ranges to scan again in smaller windows, start to end
+    private final TreeMap<Long, Long> retry = new TreeMap<>();
+
+    KeyState(String key, long checkpoint, long head) {
+      this.key = key;
+      this.checkpoint = checkpoint;
+      this.nextStart = checkpoint;
+      this.limit = head;
+      this.windowSize = getWindowSize(key);
+    }
+
+    Window nextWindow() {
+      Entry<Long, Long> range = retry.pollFirstEntry();
+      if (range != null) {
+        long end = Math.min(range.getKey() + windowSize, range.getValue());
+        if (end < range.getValue()) {
+          retry.put(end, range.getValue());
+        }
+        return new Window(this, range.getKey(), end);
+      }
+      long start = nextStart;
+      nextStart = Math.min(start + windowSize, limit);
+      return new Window(this, start, nextStart);
+    }
+
+    void grow(long length) {
+      // only a window of the current size says the current size is fine
+      if (length >= windowSize && windowSize < maxWindow) {
+        setWindowSize(Math.min(windowSize * 2, maxWindow));
+      }
+    }
+
+    void shrink(long length) {
+      long size = Math.max(Math.min(windowSize, length / 2), minWindow);
+      if (size < windowSize) {
+        setWindowSize(size);
+      }
+    }
+
+    private void setWindowSize(long size) {
+      windowSize = size;
+      windowSizes.put(key, size);
+    }
+  }
+
+  private class Window {
+
+    private final KeyState state;
+    private final long start;
+    private final long end;
+    private final long issuedNanos = System.nanoTime();
+    private CompletableFuture<N> future;
+    private long latencyNanos;
+
+    Window(KeyState state, long start, long end) {
+      this.state = state;
+      this.start = start;
+      this.end = end;
+    }
+  }
+}
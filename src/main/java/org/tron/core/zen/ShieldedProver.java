@@ -0,0 +1,218 @@
+package org.tron.core.zen;
+
+import com.typesafe.config.Config;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.common.zksnark.JLibrustzcash;
+import org.tron.common.zksnark.LibrustzcashParam.InitZksnarkParams;
+import org.tron.core.config.Configuration;
+import org.tron.core.exception.ZksnarkException;
+import org.tron.protos.contract.ShieldContract.ShieldedTransferContract;
+
+/**
+ * Generates the zk-SNARK proofs of shielded transactions on this machine instead of having a
+ * fullnode build them.
+ *
+ * <p>The Sapling parameters are loaded once, on {@link #preload} at startup or on first use, and
+ * shared by every proof. The spend and output descriptions of a transaction are built as tasks on
+ * {@code threads} threads. A proving context accumulates the value commitments of one transaction
+ * for its binding signature and cannot be shared between threads, so the proofs on one context are
+ * made one after the other while the rest of the descriptions is built in parallel; transactions
+ * built from several threads at once prove in parallel, with at most {@code contexts} contexts
+ * alive at a time. The time of every proof is kept, see {@link #toString}.
+ */
+@Slf4j(topic = "shielded")
+public class ShieldedProver {
+
+  // BLAKE2b-512 of the Sapling MPC parameters
+  private static final String SPEND_PARAMS_HASH = "8270785a1a0d0bc77196f000ee6d221c9c9894f55307bd"
+      + "9357c3f0105d31ca63991ab91324160d8f53e2bbd3c2633a6eb8bdf5205d822e7f3f73edac51b2b70c";
+  private static final String OUTPUT_PARAMS_HASH = "657e3d38dbb5cb5e7dd2970e8b03d69b4787dd907285b5"
+      + "a7f0790dcc8072f60bf593b32cc2d1c030e00ff5ae64bf84c5c3beb84ddc841d48264b4a171744d028";
+
+  private static boolean enabled = false;
+  private static String spendParams = "params" + File.separator + "sapling-spend.params";
+  private static String outputParams = "params" + File.separator + "sapling-output.params";
+  private static int threads = Runtime.getRuntime().availableProcessors();
+  private static int contexts = threads;
+
+  static {
+    Config config = Configuration.getByPath("config.conf");
+    if (config.hasPath("shieldedProver.local")) {
+      enabled = config.getBoolean("shieldedProver.local");
+    }
+    if (config.hasPath("shieldedProver.spendParams")) {
+      spendParams = config.getString("shieldedProver.spendParams");
+    }
+    if (config.hasPath("shieldedProver.outputParams")) {
+      outputParams = config.getString("shieldedProver.outputParams");
+    }
+    if (config.hasPath("shieldedProver.threads")) {
+      threads = Math.max(1, config.getInt("shieldedProver.threads"));
+    }
+    if (config.hasPath("shieldedProver.contexts")) {
+      contexts = Math.max(1, config.getInt("shieldedProver.contexts"));
+    }
+  }
+
+  private static ShieldedProver instance;
+  private static CompletableFuture<Void> paramsLoaded;
+
+  /**
+   * Whether shielded transactions are to be built here instead of by the fullnodes.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static synchronized ShieldedProver getInstance() {
+    if (instance == null) {
+      instance = new ShieldedProver(threads, contexts);
+    }
+    return instance;
+  }
+
+  /**
+   * Starts loading the Sapling parameters in the background, if proofs are made here.
+   */
+  public static void preload() {
+    if (enabled) {
+      loadParams();
+    }
+  }
+
+  private static synchronized CompletableFuture<Void> loadParams() {
+    if (paramsLoaded == null) {
+      paramsLoaded = CompletableFuture.runAsync(() -> {
+        long start = System.nanoTime();
+        try {
+          JLibrustzcash.librustzcashInitZksnarkParams(new InitZksnarkParams(spendParams,
+              SPEND_PARAMS_HASH, outputParams, OUTPUT_PARAMS_HASH));
+        } catch (ZksnarkException e) {
+          throw new CompletionException(e);
+        }
+        logger.info("Loaded the Sapling parameters in {} ms",
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      });
+    }
+    return paramsLoaded;
+  }
+
+  private final ExecutorService executor;
+  private final Semaphore contextPermits;
+  private final ProofStats spendStats = new ProofStats();
+  private final ProofStats outputStats = new ProofStats();
+
+  ShieldedProver(int threads, int contexts) {
+    AtomicInteger count = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "shielded-prover-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.contextPermits = new Semaphore(contexts);
+  }
+
+  /**
+   * Builds a transaction's contract, its descriptions on the prover's threads.
+   */
+  public ShieldedTransferContract build(ShieldedTransactionBuilder builder,
+      ShieldedTransactionBuilder.SighashFunction sighash) throws ZksnarkException {
+    try {
+      loadParams().join();
+    } catch (CompletionException e) {
+      throw new ZksnarkException("Failed to load the Sapling parameters: "
+          + e.getCause().getMessage());
+    }
+    contextPermits.acquireUninterruptibly();
+    long ctx = JLibrustzcash.librustzcashSaplingProvingCtxInit();
+    try {
+      return builder.build(ctx, sighash, this);
+    } finally {
+      JLibrustzcash.librustzcashSaplingProvingCtxFree(ctx);
+      contextPermits.release();
+    }
+  }
+
+  interface ProofTask<T> {
+
+    T call() throws ZksnarkException;
+  }
+
+  /**
+   * Runs a part of a build on the prover's threads.
+   */
+  <T> CompletableFuture<T> fork(ProofTask<T> task) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return task.call();
+      } catch (ZksnarkException e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
+
+  /**
+   * Waits for every task, then throws the failure of one of them if any failed.
+   */
+  static void awaitAll(List<? extends CompletableFuture<?>> tasks) throws ZksnarkException {
+    try {
+      CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof ZksnarkException) {
+        throw (ZksnarkException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
+  void recordSpendProof(long nanos) {
+    spendStats.record(nanos);
+  }
+
+  void recordOutputProof(long nanos) {
+    outputStats.record(nanos);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ShieldedProver[spend proofs %s, output proofs %s]", spendStats,
+        outputStats);
+  }
+
+  private static class ProofStats {
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+      count.incrementAndGet();
+      totalNanos.addAndGet(nanos);
+      maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    @Override
+    public String toString() {
+      long n = count.get();
+      return String.format("count=%d avg=%.1fms max=%.1fms", n,
+          n == 0 ? 0 : totalNanos.get() / 1e6 / n, maxNanos.get() / 1e6);
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package org.tron.core.zen;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.typesafe.config.Config;
 import io.netty.util.internal.StringUtil;
 import lombok.Getter;
@@ -8,13 +9,18 @@ import lombok.Setter;
 import org.apache.commons.lang3.ArrayUtils;
 import org.tron.api.GrpcAPI.*;
 import org.tron.api.GrpcAPI.DecryptNotesTRC20;
-import org.tron.common.utils.Base58;
+import org.tron.common.crypto.Hash;
 import org.tron.common.utils.ByteArray;
 import org.tron.common.utils.ByteUtil;
 import org.tron.common.utils.Utils;
+import org.tron.common.zksnark.JLibrustzcash;
+import org.tron.common.zksnark.LibrustzcashParam.ComputeNfParams;
 import org.tron.core.config.Configuration;
 import org.tron.core.exception.CipherException;
 import org.tron.core.exception.ZksnarkException;
+import org.tron.core.zen.LocalNoteScanner.FoundNote;
+import org.tron.core.zen.LocalNoteScanner.ShieldedOutput;
+import org.tron.core.zen.address.FullViewingKey;
 import org.tron.core.zen.address.KeyIo;
 import org.tron.core.zen.address.PaymentAddress;
 import org.tron.keystore.SKeyCapsule;
@@ -22,16 +28,26 @@ import org.tron.keystore.SKeyEncryptor;
 import org.tron.keystore.StringUtils;
 import org.tron.keystore.WalletUtils;
 import org.tron.protos.Protocol.Block;
+import org.tron.protos.Protocol.Transaction;
+import org.tron.protos.Protocol.Transaction.Contract;
+import org.tron.protos.Protocol.Transaction.Contract.ContractType;
+import org.tron.protos.Protocol.TransactionInfo;
+import org.tron.protos.contract.SmartContractOuterClass.TriggerSmartContract;
 import org.tron.walletcli.Client;
+import org.tron.walletserver.BlockRangeStreamer;
 import org.tron.walletserver.WalletApi;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.AbstractMap.SimpleEntry;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class ShieldedTRC20Wrapper {
 
@@ -44,10 +60,15 @@ public class ShieldedTRC20Wrapper {
   private static String shieldedAddressFileName;
   private static String shieldedSkeyFileName;
   private static BigInteger scalingFactor;
+  // the event of the shielded contract that appends a note commitment
+  private static final byte[] NEW_LEAF_TOPIC =
+      Hash.sha3("NewLeaf(uint256,bytes32,bytes32,bytes32,bytes32[21])".getBytes());
+  private static final int INFO_REQUEST_BATCH = 100;
   private static AtomicLong nodeIndex = new AtomicLong(0L);
   private Thread thread;
 
   private byte[] shieldedSkey;
+  private ShieldedWalletStore walletStore;
   private static ShieldedTRC20Wrapper instance;
 
   @Setter
@@ -63,12 +84,20 @@ public class ShieldedTRC20Wrapper {
   public Map<Long, ShieldedTRC20NoteInfo> utxoMapNote = new ConcurrentHashMap();
   @Getter
   @Setter
-  public List<ShieldedTRC20NoteInfo> spendUtxoList = new ArrayList<>();
-  @Getter
-  @Setter
   public static long defaultBlockNumberToScan = 0;
 
+  private final UtxoIndex<ShieldedTRC20NoteInfo> utxoIndex =
+      new UtxoIndex<>(ShieldedTRC20NoteInfo::getValue, ShieldedTRC20NoteInfo::getPaymentAddress);
+
   private boolean loadShieldedStatus = false;
+  // start with 200 blocks a window
+  private final ShieldedNoteScanner<DecryptNotesTRC20> noteScanner =
+      new ShieldedNoteScanner<>(this::fetchNotes, DecryptNotesTRC20::getSerializedSize, 200);
+  // set when notes are found by trial decryption here instead of by the fullnode
+  private final LocalNoteScanner localScanner =
+      LocalNoteScanner.isEnabled() ? new LocalNoteScanner(this::fetchOutputs) : null;
+  private final NoteSpendTracker spendTracker = new NoteSpendTracker(new SpendSource(),
+      (start, end) -> new BlockRangeStreamer(WalletApi.getAsyncRpcCli(), start, end).stream());
 
   static {
     Config config = Configuration.getByPath("config.conf");
@@ -91,6 +120,13 @@ public class ShieldedTRC20Wrapper {
     return instance;
   }
 
+  /**
+   * The note scanner, whose window sizes and latencies show how scanning goes.
+   */
+  public ShieldedNoteScanner<DecryptNotesTRC20> getNoteScanner() {
+    return noteScanner;
+  }
+
   public static boolean isSetShieldedTRC20WalletPath() {
     return !(prefixFolder == null || trc20ContractAddress == null
         || shieldedTRC20ContractAddress == null || ivkAndNumFileName == null
@@ -105,6 +141,14 @@ public class ShieldedTRC20Wrapper {
         || !shieldedContractAddress.equals(shieldedTRC20ContractAddress)) {
       loadShieldedStatus = false;
       shieldedSkey = null;
+      if (walletStore != null) {
+        try {
+          walletStore.close();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+        walletStore = null;
+      }
       trc20ContractAddress = contractAddress;
       shieldedTRC20ContractAddress = shieldedContractAddress;
       prefixFolder = "WalletShieldedTRC20Contract/"
@@ -136,11 +180,21 @@ public class ShieldedTRC20Wrapper {
     return loadShieldedStatus;
   }
 
-  private void loadWalletFile() throws CipherException {
+  private void loadWalletFile() throws CipherException, IOException {
     loadAddressFromFile();
+    if (walletStore == null) {
+      walletStore = ShieldedWalletStore.open(prefixFolder, shieldedSkey);
+      walletStore.migrate(ivkAndNumFileName, unspendNoteFileName, spendNoteFileName,
+          encodedNote -> {
+            ShieldedTRC20NoteInfo noteInfo = new ShieldedTRC20NoteInfo();
+            noteInfo.decode(encodedNote, shieldedSkey);
+            return new SimpleEntry<>(noteInfo.getNoteIndex(), noteInfo.getPaymentAddress());
+          });
+    }
     loadIvkFromFile();
     loadUnSpendNoteFromFile();
-    loadSpendNoteFromFile();
+    // spent notes stay encrypted on disk until they are listed
+    nodeIndex.set(Math.max(nodeIndex.get(), walletStore.nextNoteIndex()));
   }
 
   public boolean loadShieldTRC20Wallet() throws CipherException, IOException {
@@ -176,6 +230,8 @@ public class ShieldedTRC20Wrapper {
   public class scanIvkRunable implements Runnable {
     public void run() {
       int count = 24;
+      // the head up to which the notes were checked and every key scanned
+      long scannedHead = -1;
       for (; ; ) {
         if (!ifShieldedTRC20WalletLoaded()) {
           try {
@@ -185,8 +241,21 @@ public class ShieldedTRC20Wrapper {
           continue;
         }
         try {
-          updateNoteWhetherSpend();
-          scanBlockByIvk();
+          if (resetNote) {
+            resetShieldedTRC20Note();
+            resetNote = false;
+            count = 0;
+            scannedHead = -1;
+            System.out.println("Reset shieldedTRC20 note success!");
+          }
+          // wake up when a new block arrives, or after 0.5 seconds to look at resetNote
+          long head = WalletApi.getHeadTracker()
+              .awaitHead(scannedHead, 500, TimeUnit.MILLISECONDS);
+          if (head > scannedHead) {
+            updateNoteWhetherSpend(head);
+            scanBlockByIvk(head);
+            scannedHead = head;
+          }
         } catch (Exception e) {
           ++count;
           if (count >= 24) {
@@ -196,23 +265,20 @@ public class ShieldedTRC20Wrapper {
             System.out.println("Please user command resetShieldedTRC20Note to reset notes!!");
             count = 0;
           }
-        } finally {
-          try {
-            //wait for 2.5 seconds
-            for (int i = 0; i < 5; ++i) {
-              Thread.sleep(500);
-              if (resetNote) {
-                resetShieldedTRC20Note();
-                resetNote = false;
-                count = 0;
-                System.out.println("Reset shieldedTRC20 note success!");
-              }
-            }
-          } catch (Exception e) {
-          }
+          waitBeforeRetry();
         }
       }
     }
+
+    private void waitBeforeRetry() {
+      try {
+        //wait for 2.5 seconds, unless notes are to be reset
+        for (int i = 0; i < 5 && !resetNote; ++i) {
+          Thread.sleep(500);
+        }
+      } catch (Exception e) {
+      }
+    }
   }
 
   private void resetShieldedTRC20Note() throws ZksnarkException {
@@ -225,94 +291,150 @@ public class ShieldedTRC20Wrapper {
     }
 
     utxoMapNote.clear();
-    spendUtxoList.clear();
+    utxoIndex.clear();
+    spendTracker.clear();
 
-    ZenUtils.clearFile(ivkAndNumFileName);
-    ZenUtils.clearFile(unspendNoteFileName);
-    ZenUtils.clearFile(spendNoteFileName);
+    try {
+      walletStore.clear();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
     nodeIndex.set(0L);
 
     updateIvkAndBlockNumFile();
   }
 
-  private void scanBlockByIvk() throws CipherException {
-    Block block = WalletApi.getBlock(-1);
-    if (block != null) {
-      long blockNum = block.getBlockHeader().toBuilder().getRawData().getNumber();
-      for (Entry<String, Long> entry : ivkMapScanBlockNum.entrySet()) {
-        byte[] key = ByteArray.fromHexString(entry.getKey());
-        byte[] ivk = ByteArray.subArray(key, 0, 32);
-        byte[] ak = ByteArray.subArray(key, 32, 64);
-        byte[] nk = ByteArray.subArray(key, 64, 96);
-        //find a shieldedAddressInfo whose ivk is equal to this ivk
-        ShieldedAddressInfo sampleAdressInfo = getShieldedAddressInfoFromIvk(ivk);
-        long start = entry.getValue();
-        long end = start;
-        while (end < blockNum) {
-          if (blockNum - start > 200) { // scan 200 blocks at a time
-            end = start + 200;
-          } else {
-            end = blockNum;
-          }
-
-          IvkDecryptTRC20Parameters.Builder builder = IvkDecryptTRC20Parameters.newBuilder();
-          builder.setStartBlockIndex(start);
-          builder.setEndBlockIndex(end);
-          builder.setShieldedTRC20ContractAddress(
-              ByteString.copyFrom(
-                  WalletApi.decodeFromBase58Check(
-                      getShieldedTRC20ContractAddress())));
-          builder.setIvk(ByteString.copyFrom(ivk));
-          builder.setAk(ByteString.copyFrom(ak));
-          builder.setNk(ByteString.copyFrom(nk));
-          Optional<DecryptNotesTRC20> notes = WalletApi.scanShieldedTRC20NoteByIvk(
-              builder.build(), false);
-          if (notes.isPresent()) {
-            int startNum = utxoMapNote.size();
-            for (int i = 0; i < notes.get().getNoteTxsList().size(); ++i) {
-              DecryptNotesTRC20.NoteTx noteTx = notes.get().getNoteTxsList().get(i);
-              ShieldedTRC20NoteInfo noteInfo = new ShieldedTRC20NoteInfo();
-              noteInfo.setPaymentAddress(noteTx.getNote().getPaymentAddress());
-              noteInfo.setR(noteTx.getNote().getRcm().toByteArray());
-              long noteValue = noteTx.getNote().getValue();
-              noteInfo.setValue(noteValue);
-              noteInfo.setRawValue(BigInteger.valueOf(noteValue).multiply(scalingFactor));
-              noteInfo.setTrxId(ByteArray.toHexString(noteTx.getTxid().toByteArray()));
-              noteInfo.setIndex(noteTx.getIndex());
-              noteInfo.setNoteIndex(nodeIndex.getAndIncrement());
-              noteInfo.setPosition(noteTx.getPosition());
-              noteInfo.setMemo(noteTx.getNote().getMemo().toByteArray());
-              boolean isSpent = noteTx.getIsSpent();
-              if (!isSpent) {
-                utxoMapNote.put(noteInfo.getNoteIndex(), noteInfo);
-              } else {
-                spendUtxoList.add(noteInfo);
-                saveSpendNoteToFile(noteInfo);
-              }
-              //put note payment address into  shieldedAddressInfoMap
-              if (!shieldedAddressInfoMap.containsKey(noteInfo.getPaymentAddress())) {
-                PaymentAddress paymentAddress =
-                    KeyIo.decodePaymentAddress(noteInfo.getPaymentAddress());
-                ShieldedAddressInfo addressInfo = new ShieldedAddressInfo();
-                addressInfo.setD(paymentAddress.getD());
-                addressInfo.setPkD(paymentAddress.getPkD());
-                addressInfo.setSk(sampleAdressInfo.getSk());
-                addressInfo.setIvk(sampleAdressInfo.getIvk());
-                addressInfo.setOvk(sampleAdressInfo.getOvk());
-                appendAddressInfoToFile(addressInfo);
-              }
-            }
-            int endNum = utxoMapNote.size();
-            if (endNum > startNum) {
-              saveUnspendNoteToFile();
+  /**
+   * Scans every key from its last scanned block up to {@code blockNum}.
+   */
+  private void scanBlockByIvk(long blockNum) throws Exception {
+    boolean complete;
+    try {
+      complete = noteScanner.scan(ivkMapScanBlockNum, blockNum, this::addScannedNotes);
+    } finally {
+      updateIvkAndBlockNumFile();
+    }
+    if (!complete) {
+      throw new IllegalStateException(
+          "Scan shieldedTRC20 note by ivk failed, will retry from the failed block");
+    }
+  }
+
+  private CompletableFuture<DecryptNotesTRC20> fetchNotes(String ivkAkNk, long start, long end) {
+    byte[] key = ByteArray.fromHexString(ivkAkNk);
+    if (localScanner != null) {
+      // whether a note is spent is left to the spend tracker
+      return localScanner.scan(ByteArray.subArray(key, 0, 32), start, end).thenApply(found -> {
+        DecryptNotesTRC20.Builder notes = DecryptNotesTRC20.newBuilder();
+        for (FoundNote note : found) {
+          notes.addNoteTxs(DecryptNotesTRC20.NoteTx.newBuilder()
+              .setNote(note.getNote().toNote())
+              .setPosition(note.getOutput().getPosition())
+              .setTxid(ByteString.copyFrom(note.getOutput().getTxId()))
+              .setIndex(note.getOutput().getIndex()));
+        }
+        return notes.build();
+      });
+    }
+    IvkDecryptTRC20Parameters.Builder builder = IvkDecryptTRC20Parameters.newBuilder();
+    builder.setStartBlockIndex(start);
+    builder.setEndBlockIndex(end);
+    builder.setShieldedTRC20ContractAddress(
+        ByteString.copyFrom(
+            WalletApi.decodeFromBase58Check(
+                getShieldedTRC20ContractAddress())));
+    builder.setIvk(ByteString.copyFrom(ByteArray.subArray(key, 0, 32)));
+    builder.setAk(ByteString.copyFrom(ByteArray.subArray(key, 32, 64)));
+    builder.setNk(ByteString.copyFrom(ByteArray.subArray(key, 64, 96)));
+    return WalletApi.getAsyncRpcCli()
+        .withDeadline(noteScanner.getTimeoutMillis(), TimeUnit.MILLISECONDS)
+        .scanShieldedTRC20NoteByIvk(builder.build());
+  }
+
+  private List<ShieldedOutput> fetchOutputs(long start, long end) throws Exception {
+    byte[] contractAddress = WalletApi.decodeFromBase58Check(getShieldedTRC20ContractAddress());
+    // logs carry the address without its prefix byte
+    byte[] logAddress = Arrays.copyOfRange(contractAddress, 1, contractAddress.length);
+    List<ShieldedOutput> outputs = new ArrayList<>();
+    for (long batch = start; batch < end; batch += INFO_REQUEST_BATCH) {
+      List<CompletableFuture<TransactionInfoList>> infos = new ArrayList<>();
+      for (long blockNum = batch; blockNum < Math.min(batch + INFO_REQUEST_BATCH, end);
+          blockNum++) {
+        infos.add(WalletApi.getAsyncRpcCli()
+            .withDeadline(noteScanner.getTimeoutMillis(), TimeUnit.MILLISECONDS)
+            .getTransactionInfoByBlockNum(blockNum));
+      }
+      for (int i = 0; i < infos.size(); i++) {
+        for (TransactionInfo info : infos.get(i).get().getTransactionInfoList()) {
+          int index = 0;
+          for (TransactionInfo.Log log : info.getLogList()) {
+            byte[] data = log.getData().toByteArray();
+            if (log.getTopicsCount() == 0 || data.length < 128 + NoteDecryptor.ENC_CIPHERTEXT_SIZE
+                || !Arrays.equals(log.getAddress().toByteArray(), logAddress)
+                || !Arrays.equals(log.getTopics(0).toByteArray(), NEW_LEAF_TOPIC)) {
+              continue;
             }
+            // position, cm, cv, epk, then c_enc, c_out and padding
+            outputs.add(new ShieldedOutput(batch + i, info.getId().toByteArray(), index++,
+                ByteArray.toLong(Arrays.copyOfRange(data, 24, 32)),
+                Arrays.copyOfRange(data, 32, 64), Arrays.copyOfRange(data, 96, 128),
+                Arrays.copyOfRange(data, 128, 128 + NoteDecryptor.ENC_CIPHERTEXT_SIZE)));
           }
-          start = end;
-          ivkMapScanBlockNum.put(entry.getKey(), start);
-          updateIvkAndBlockNumFile();
         }
       }
     }
+    return outputs;
+  }
+
+  private void addScannedNotes(String ivkAkNk, long start, long end, DecryptNotesTRC20 notes)
+      throws CipherException, IOException {
+    if (notes.getNoteTxsCount() > 0) {
+      byte[] ivk = ByteArray.subArray(ByteArray.fromHexString(ivkAkNk), 0, 32);
+      //find a shieldedAddressInfo whose ivk is equal to this ivk
+      ShieldedAddressInfo sampleAdressInfo = getShieldedAddressInfoFromIvk(ivk);
+      for (int i = 0; i < notes.getNoteTxsList().size(); ++i) {
+        DecryptNotesTRC20.NoteTx noteTx = notes.getNoteTxsList().get(i);
+        ShieldedTRC20NoteInfo noteInfo = new ShieldedTRC20NoteInfo();
+        noteInfo.setPaymentAddress(noteTx.getNote().getPaymentAddress());
+        noteInfo.setR(noteTx.getNote().getRcm().toByteArray());
+        long noteValue = noteTx.getNote().getValue();
+        noteInfo.setValue(noteValue);
+        noteInfo.setRawValue(BigInteger.valueOf(noteValue).multiply(scalingFactor));
+        noteInfo.setTrxId(ByteArray.toHexString(noteTx.getTxid().toByteArray()));
+        noteInfo.setIndex(noteTx.getIndex());
+        noteInfo.setNoteIndex(nodeIndex.getAndIncrement());
+        noteInfo.setPosition(noteTx.getPosition());
+        noteInfo.setMemo(noteTx.getNote().getMemo().toByteArray());
+        boolean isSpent = noteTx.getIsSpent();
+        if (!isSpent) {
+          utxoMapNote.put(noteInfo.getNoteIndex(), noteInfo);
+          utxoIndex.add(noteInfo.getNoteIndex(), noteInfo);
+          walletStore.putUnspentNote(noteInfo.getNoteIndex(), noteInfo.getPaymentAddress(),
+              noteInfo.encode(shieldedSkey));
+        } else {
+          walletStore.putSpentNote(noteInfo.getNoteIndex(), noteInfo.getPaymentAddress(),
+              noteInfo.encode(shieldedSkey));
+        }
+        //put note payment address into  shieldedAddressInfoMap
+        if (!shieldedAddressInfoMap.containsKey(noteInfo.getPaymentAddress())) {
+          PaymentAddress paymentAddress =
+              KeyIo.decodePaymentAddress(noteInfo.getPaymentAddress());
+          ShieldedAddressInfo addressInfo = new ShieldedAddressInfo();
+          addressInfo.setD(paymentAddress.getD());
+          addressInfo.setPkD(paymentAddress.getPkD());
+          addressInfo.setSk(sampleAdressInfo.getSk());
+          addressInfo.setIvk(sampleAdressInfo.getIvk());
+          addressInfo.setOvk(sampleAdressInfo.getOvk());
+          appendAddressInfoToFile(addressInfo);
+        }
+      }
+      ivkMapScanBlockNum.put(ivkAkNk, end);
+      // save the notes together with the checkpoint, to not find them again after a restart
+      walletStore.putScanBlockNum(ivkAkNk, end);
+      walletStore.sync();
+    } else {
+      ivkMapScanBlockNum.put(ivkAkNk, end);
+    }
   }
 
   private ShieldedAddressInfo getShieldedAddressInfoFromIvk(byte[] ivk) {
@@ -324,20 +446,53 @@ public class ShieldedTRC20Wrapper {
     return null;//It should not return null.
   }
 
-  private void updateNoteWhetherSpend() throws Exception {
-    for (Entry<Long, ShieldedTRC20NoteInfo> entry : utxoMapNote.entrySet()) {
-      ShieldedTRC20NoteInfo noteInfo = entry.getValue();
+  private void updateNoteWhetherSpend(long head) throws Exception {
+    for (long noteIndex : spendTracker.check(utxoMapNote.keySet(), head)) {
+      spendNote(noteIndex);
+    }
+  }
 
-      ShieldedAddressInfo addressInfo =
-          getShieldedAddressInfoMap().get(noteInfo.getPaymentAddress());
+  private class SpendSource implements NoteSpendTracker.SpendSource {
+
+    private byte[] contractAddress;
+
+    /**
+     * Computes the nullifier locally, as the contract does from the note and its position.
+     */
+    @Override
+    public CompletableFuture<byte[]> nullifier(long noteIndex) {
+      ShieldedTRC20NoteInfo noteInfo = utxoMapNote.get(noteIndex);
+      try {
+        FullViewingKey fullViewingKey = getShieldedAddressInfoMap()
+            .get(noteInfo.getPaymentAddress()).getFullViewingKey();
+        PaymentAddress paymentAddress = KeyIo.decodePaymentAddress(noteInfo.getPaymentAddress());
+        byte[] nullifier = new byte[32];
+        JLibrustzcash.librustzcashComputeNf(new ComputeNfParams(
+            paymentAddress.getD().getData(), paymentAddress.getPkD(), noteInfo.getValue(),
+            noteInfo.getR(), fullViewingKey.getAk(), fullViewingKey.getNk(),
+            noteInfo.getPosition(), nullifier));
+        return CompletableFuture.completedFuture(nullifier);
+      } catch (Exception e) {
+        return CompletableFuture.completedFuture(null);
+      }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isSpent(long noteIndex) {
+      ShieldedTRC20NoteInfo noteInfo = utxoMapNote.get(noteIndex);
       NfTRC20Parameters.Builder builder = NfTRC20Parameters.newBuilder();
-      builder.setAk(ByteString.copyFrom(addressInfo.getFullViewingKey().getAk()));
-      builder.setNk(ByteString.copyFrom(addressInfo.getFullViewingKey().getNk()));
+      try {
+        FullViewingKey fullViewingKey = getShieldedAddressInfoMap()
+            .get(noteInfo.getPaymentAddress()).getFullViewingKey();
+        builder.setAk(ByteString.copyFrom(fullViewingKey.getAk()));
+        builder.setNk(ByteString.copyFrom(fullViewingKey.getNk()));
+      } catch (ZksnarkException e) {
+        CompletableFuture<Boolean> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+        return failed;
+      }
       builder.setPosition(noteInfo.getPosition());
-      builder.setShieldedTRC20ContractAddress(
-          ByteString.copyFrom(
-              WalletApi.decodeFromBase58Check(
-                  getShieldedTRC20ContractAddress())));
+      builder.setShieldedTRC20ContractAddress(ByteString.copyFrom(getContractAddress()));
 
       Note.Builder noteBuild = Note.newBuilder();
       noteBuild.setPaymentAddress(noteInfo.getPaymentAddress());
@@ -346,11 +501,43 @@ public class ShieldedTRC20Wrapper {
       noteBuild.setMemo(ByteString.copyFrom(noteInfo.getMemo()));
       builder.setNote(noteBuild.build());
 
-      Optional<NullifierResult> result = WalletApi.isShieldedTRC20ContractNoteSpent(
-          builder.build(), false);
-      if (result.isPresent() && result.get().getIsSpent()) {
-        spendNote(entry.getKey());
+      return WalletApi.getAsyncRpcCli()
+          .withDeadline(noteScanner.getTimeoutMillis(), TimeUnit.MILLISECONDS)
+          .isShieldedTRC20ContractNoteSpent(builder.build())
+          .thenApply(NullifierResult::getIsSpent);
+    }
+
+    /**
+     * The nullifiers of a spend are arguments of the call to the shielded contract, so every
+     * 32-byte word of the call data is handed over.
+     */
+    @Override
+    public void collectNullifiers(Transaction transaction, Consumer<byte[]> sink) {
+      for (Contract contract : transaction.getRawData().getContractList()) {
+        if (contract.getType() != ContractType.TriggerSmartContract) {
+          continue;
+        }
+        try {
+          TriggerSmartContract trigger = contract.getParameter().unpack(TriggerSmartContract.class);
+          if (!Arrays.equals(trigger.getContractAddress().toByteArray(), getContractAddress())) {
+            continue;
+          }
+          byte[] data = trigger.getData().toByteArray();
+          // skip the function selector
+          for (int offset = 4; offset + 32 <= data.length; offset += 32) {
+            sink.accept(Arrays.copyOfRange(data, offset, offset + 32));
+          }
+        } catch (InvalidProtocolBufferException e) {
+          // not a contract call after all
+        }
+      }
+    }
+
+    private byte[] getContractAddress() {
+      if (contractAddress == null) {
+        contractAddress = WalletApi.decodeFromBase58Check(getShieldedTRC20ContractAddress());
       }
+      return contractAddress;
     }
   }
 
@@ -360,14 +547,14 @@ public class ShieldedTRC20Wrapper {
    * @param noteIndex
    * @return
    */
-  public boolean spendNote(long noteIndex) throws CipherException {
+  public boolean spendNote(long noteIndex) throws CipherException, IOException {
     ShieldedTRC20NoteInfo noteInfo = utxoMapNote.get(noteIndex);
     if (noteInfo != null) {
       utxoMapNote.remove(noteIndex);
-      spendUtxoList.add(noteInfo);
-
-      saveUnspendNoteToFile();
-      saveSpendNoteToFile(noteInfo);
+      utxoIndex.remove(noteIndex);
+      walletStore.putSpentNote(noteIndex, noteInfo.getPaymentAddress(),
+          noteInfo.encode(shieldedSkey));
+      walletStore.sync();
     } else {
       System.err.println("Find note failure. index:" + noteIndex);
     }
@@ -407,7 +594,7 @@ public class ShieldedTRC20Wrapper {
   }
 
   /**
-   * append ivk and block num relationship to file tail
+   * save the block num scanning of an ivk continues from
    *
    * @param ivk
    * @param blockNum
@@ -418,23 +605,17 @@ public class ShieldedTRC20Wrapper {
       return false;
     }
 
-    synchronized (ivkAndNumFileName) {
-      byte[] key = ByteArray.fromHexString(ivk);
-      byte[] value = ByteArray.fromLong(blockNum);
-      byte[] text = ByteUtil.merge(key, value);
-      try {
-        byte[] cipherText = ZenUtils.aesCtrEncrypt(text, shieldedSkey);
-        String data = Base58.encode(cipherText);
-        ZenUtils.appendToFileTail(ivkAndNumFileName, data);
-      } catch (CipherException e) {
-        e.printStackTrace();
-      }
+    try {
+      walletStore.putScanBlockNum(ivk, blockNum);
+      walletStore.sync();
+    } catch (CipherException | IOException e) {
+      e.printStackTrace();
     }
     return true;
   }
 
   /**
-   * update ivk and block num
+   * save the block nums of all ivks that moved
    *
    * @return
    */
@@ -443,50 +624,29 @@ public class ShieldedTRC20Wrapper {
       return false;
     }
 
-    synchronized (ivkAndNumFileName) {
-      ZenUtils.clearFile(ivkAndNumFileName);
+    try {
       for (Entry<String, Long> entry : ivkMapScanBlockNum.entrySet()) {
-        byte[] key = ByteArray.fromHexString(entry.getKey());
-        byte[] value = ByteArray.fromLong(entry.getValue());
-        byte[] text = ByteUtil.merge(key, value);
-        try {
-          byte[] cipherText = ZenUtils.aesCtrEncrypt(text, shieldedSkey);
-          String date = Base58.encode(cipherText);
-          ZenUtils.appendToFileTail(ivkAndNumFileName, date);
-        } catch (CipherException e) {
-          e.printStackTrace();
-        }
+        walletStore.putScanBlockNum(entry.getKey(), entry.getValue());
       }
+      walletStore.sync();
+    } catch (CipherException | IOException e) {
+      e.printStackTrace();
     }
     return true;
   }
 
   /**
-   * load ivk and block num relationship from file
+   * load ivk and block num relationship
    *
    * @return
    */
-  private boolean loadIvkFromFile() {
+  private boolean loadIvkFromFile() throws CipherException, IOException {
     if (ArrayUtils.isEmpty(shieldedSkey)) {
       return false;
     }
 
     ivkMapScanBlockNum.clear();
-    if (ZenUtils.checkFileExist(ivkAndNumFileName)) {
-      List<String> list = ZenUtils.getListFromFile(ivkAndNumFileName);
-      for (int i = 0; i < list.size(); ++i) {
-        byte[] cipherText = Base58.decode(list.get(i));
-        try {
-          byte[] text = ZenUtils.aesCtrDecrypt(cipherText, shieldedSkey);
-          byte[] key = Arrays.copyOfRange(text, 0, 96);
-          byte[] value = Arrays.copyOfRange(text, 96, text.length);
-
-          ivkMapScanBlockNum.put(ByteArray.toHexString(key), ByteArray.toLong(value));
-        } catch (CipherException e) {
-          e.printStackTrace();
-        }
-      }
-    }
+    ivkMapScanBlockNum.putAll(walletStore.loadScanBlockNums());
     return true;
   }
 
@@ -509,117 +669,81 @@ public class ShieldedTRC20Wrapper {
    * @return
    */
   public List<String> getvalidateSortUtxoList() {
-    List<Map.Entry<Long, ShieldedTRC20NoteInfo>> list = new ArrayList<>(utxoMapNote.entrySet());
-    Collections.sort(list, (Entry<Long, ShieldedTRC20NoteInfo> o1,
-                            Entry<Long, ShieldedTRC20NoteInfo> o2) -> {
-      if (o1.getValue().getValue() < o2.getValue().getValue()) {
-        return 1;
-      } else {
-        return -1;
-      }
-    });
-
     List<String> utxoList = new ArrayList<>();
-    for (Map.Entry<Long, ShieldedTRC20NoteInfo> entry : list) {
-      String string = entry.getKey() + " " + entry.getValue().getPaymentAddress() + " ";
-      string += entry.getValue().getRawValue().toString();
-      string += " ";
-      string += entry.getValue().getTrxId();
-      string += " ";
-      string += entry.getValue().getIndex();
-      string += " ";
-      string += "UnSpend";
-      string += " ";
-      string += ZenUtils.getMemo(entry.getValue().getMemo());
-      utxoList.add(string);
+    for (Map.Entry<Long, ShieldedTRC20NoteInfo> entry : utxoIndex.descending()) {
+      StringBuilder builder = new StringBuilder();
+      builder.append(entry.getKey()).append(' ')
+          .append(entry.getValue().getPaymentAddress()).append(' ')
+          .append(entry.getValue().getRawValue()).append(' ')
+          .append(entry.getValue().getTrxId()).append(' ')
+          .append(entry.getValue().getIndex()).append(' ')
+          .append("UnSpend").append(' ')
+          .append(ZenUtils.getMemo(entry.getValue().getMemo()));
+      utxoList.add(builder.toString());
     }
     return utxoList;
   }
 
   /**
-   * update unspend note
-   *
-   * @return
+   * Chooses at most {@code maxInputs} unspent notes of one payment address worth at least
+   * {@code amount}, see {@link UtxoIndex#select}.
    */
-  private boolean saveUnspendNoteToFile() throws CipherException {
-    if (ArrayUtils.isEmpty(shieldedSkey)) {
-      return false;
-    }
-
-    ZenUtils.clearFile(unspendNoteFileName);
-    for (Entry<Long, ShieldedTRC20NoteInfo> entry : utxoMapNote.entrySet()) {
-      String date = entry.getValue().encode(shieldedSkey);
-      ZenUtils.appendToFileTail(unspendNoteFileName, date);
-    }
-    return true;
+  public List<Long> selectNotes(String paymentAddress, long amount, UtxoIndex.Strategy strategy,
+      int maxInputs) {
+    return utxoIndex.select(paymentAddress, amount, strategy, maxInputs);
   }
 
   /**
-   * load unspend note from file
+   * load unspend note
    *
    * @return
    */
-  private boolean loadUnSpendNoteFromFile() throws CipherException {
+  private boolean loadUnSpendNoteFromFile() throws CipherException, IOException {
     if (ArrayUtils.isEmpty(shieldedSkey)) {
       return false;
     }
     utxoMapNote.clear();
+    utxoIndex.clear();
 
-    if (ZenUtils.checkFileExist(unspendNoteFileName)) {
-      List<String> list = ZenUtils.getListFromFile(unspendNoteFileName);
-      for (int i = 0; i < list.size(); ++i) {
-        ShieldedTRC20NoteInfo noteInfo = new ShieldedTRC20NoteInfo();
-        noteInfo.decode(list.get(i), shieldedSkey);
-        utxoMapNote.put(noteInfo.getNoteIndex(), noteInfo);
+    for (String encodedNote : walletStore.loadUnspentNotes()) {
+      ShieldedTRC20NoteInfo noteInfo = new ShieldedTRC20NoteInfo();
+      noteInfo.decode(encodedNote, shieldedSkey);
+      utxoMapNote.put(noteInfo.getNoteIndex(), noteInfo);
+      utxoIndex.add(noteInfo.getNoteIndex(), noteInfo);
 
-        if (noteInfo.getNoteIndex() >= nodeIndex.get()) {
-          nodeIndex.set(noteInfo.getNoteIndex() + 1);
-        }
+      if (noteInfo.getNoteIndex() >= nodeIndex.get()) {
+        nodeIndex.set(noteInfo.getNoteIndex() + 1);
       }
     }
     return true;
   }
 
-
   /**
-   * append spend note to file tail
-   *
-   * @return
+   * Returns the spent notes, decrypting them now.
    */
-  private boolean saveSpendNoteToFile(ShieldedTRC20NoteInfo noteInfo) throws CipherException {
-    if (ArrayUtils.isEmpty(shieldedSkey)) {
-      return false;
-    }
-
-    String data = noteInfo.encode(shieldedSkey);
-    ZenUtils.appendToFileTail(spendNoteFileName, data);
-    return true;
+  public List<ShieldedTRC20NoteInfo> getSpendUtxoList() {
+    return getSpendNotes(0, Integer.MAX_VALUE);
   }
 
   /**
-   * load spend note from file
-   *
-   * @return
+   * Returns up to {@code limit} spent notes, from note index {@code fromNoteIndex} on, in order,
+   * decrypting only those.
    */
-  private boolean loadSpendNoteFromFile() throws CipherException {
-    if (ArrayUtils.isEmpty(shieldedSkey)) {
-      return false;
+  public List<ShieldedTRC20NoteInfo> getSpendNotes(long fromNoteIndex, int limit) {
+    List<ShieldedTRC20NoteInfo> notes = new ArrayList<>();
+    if (walletStore == null) {
+      return notes;
     }
-
-    spendUtxoList.clear();
-    if (ZenUtils.checkFileExist(spendNoteFileName)) {
-      List<String> list = ZenUtils.getListFromFile(spendNoteFileName);
-      for (int i = 0; i < list.size(); ++i) {
+    try {
+      for (String encodedNote : walletStore.loadSpentNotes(fromNoteIndex, limit)) {
         ShieldedTRC20NoteInfo noteInfo = new ShieldedTRC20NoteInfo();
-        noteInfo.decode(list.get(i), shieldedSkey);
-        spendUtxoList.add(noteInfo);
-
-        if (noteInfo.getNoteIndex() >= nodeIndex.get()) {
-          nodeIndex.set(noteInfo.getNoteIndex() + 1);
-        }
+        noteInfo.decode(encodedNote, shieldedSkey);
+        notes.add(noteInfo);
       }
+    } catch (CipherException | IOException e) {
+      e.printStackTrace();
     }
-    return true;
+    return notes;
   }
 
   /**
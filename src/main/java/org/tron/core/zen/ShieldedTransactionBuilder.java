@@ -0,0 +1,391 @@
+package org.tron.core.zen;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import lombok.Getter;
+import org.tron.api.GrpcAPI.Note;
+import org.tron.api.GrpcAPI.PrivateParameters;
+import org.tron.api.GrpcAPI.PrivateParametersWithoutAsk;
+import org.tron.api.GrpcAPI.ReceiveNote;
+import org.tron.api.GrpcAPI.SpendNote;
+import org.tron.common.zksnark.JLibrustzcash;
+import org.tron.common.zksnark.JLibsodium;
+import org.tron.common.zksnark.JLibsodiumParam.Black2bSaltPersonalParams;
+import org.tron.common.zksnark.JLibsodiumParam.Chacha20Poly1305IetfEncryptParams;
+import org.tron.common.zksnark.LibrustzcashParam.BindingSigParams;
+import org.tron.common.zksnark.LibrustzcashParam.ComputeCmParams;
+import org.tron.common.zksnark.LibrustzcashParam.ComputeNfParams;
+import org.tron.common.zksnark.LibrustzcashParam.KaAgreeParams;
+import org.tron.common.zksnark.LibrustzcashParam.KaDerivepublicParams;
+import org.tron.common.zksnark.LibrustzcashParam.OutputProofParams;
+import org.tron.common.zksnark.LibrustzcashParam.SpendProofParams;
+import org.tron.common.zksnark.LibrustzcashParam.SpendSigParams;
+import org.tron.core.exception.ZksnarkException;
+import org.tron.core.zen.address.KeyIo;
+import org.tron.core.zen.address.PaymentAddress;
+import org.tron.protos.contract.ShieldContract.ReceiveDescription;
+import org.tron.protos.contract.ShieldContract.ShieldedTransferContract;
+import org.tron.protos.contract.ShieldContract.SpendDescription;
+
+/**
+ * The spends and outputs of a shielded transfer, built into a {@link ShieldedTransferContract} by
+ * a {@link ShieldedProver} as the fullnode's {@code createShieldedTransaction} does.
+ *
+ * <p>Every spend and output description is built as its own task on the prover's threads and
+ * its proof is timed. The contract without signatures is then handed to a
+ * {@link SighashFunction}, and the spend authority and binding signatures are made over the hash
+ * it returns.
+ */
+public class ShieldedTransactionBuilder {
+
+  private static final int OUT_CIPHERTEXT_SIZE = 80;
+  private static final byte[] OCK_PERSONALIZATION = {'Z', 't', 'r', 'o', 'n', '_', 'D', 'e', 'r',
+      'i', 'v', 'e', '_', 'o', 'c', 'k'};
+
+  public interface SighashFunction {
+
+    /**
+     * The hash the signatures of a transaction with {@code contract} sign.
+     */
+    byte[] sighash(ShieldedTransferContract contract) throws ZksnarkException;
+  }
+
+  @Getter
+  public static class ProofTiming {
+
+    private final boolean spend;
+    private final int index;
+    private final long nanos;
+
+    ProofTiming(boolean spend, int index, long nanos) {
+      this.spend = spend;
+      this.index = index;
+      this.nanos = nanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s proof %d: %.1f ms", spend ? "Spend" : "Output", index,
+          nanos / 1e6);
+    }
+  }
+
+  private final byte[] ask;
+  private final byte[] nsk;
+  private final byte[] ovk;
+  private byte[] transparentFrom;
+  private long fromAmount;
+  private byte[] transparentTo;
+  private long toAmount;
+  private final List<SpendNote> spends = new ArrayList<>();
+  private final List<Note> outputs = new ArrayList<>();
+  private final List<ProofTiming> timings = Collections.synchronizedList(new ArrayList<>());
+
+  /**
+   * @param ask the spend authorizing key of the notes spent, or null if none are
+   * @param nsk the proof authorizing key of the notes spent, or null if none are
+   * @param ovk the key the outputs can be seen with later
+   */
+  public ShieldedTransactionBuilder(byte[] ask, byte[] nsk, byte[] ovk) {
+    this.ask = ask;
+    this.nsk = nsk;
+    this.ovk = ovk;
+  }
+
+  /**
+   * The builder of the transfer {@code parameters} ask a fullnode for.
+   */
+  public static ShieldedTransactionBuilder of(PrivateParameters parameters) {
+    return new ShieldedTransactionBuilder(parameters.getAsk().toByteArray(),
+        parameters.getNsk().toByteArray(), parameters.getOvk().toByteArray())
+        .addTransfer(parameters.getTransparentFromAddress(), parameters.getFromAmount(),
+            parameters.getTransparentToAddress(), parameters.getToAmount(),
+            parameters.getShieldedSpendsList(), parameters.getShieldedReceivesList());
+  }
+
+  /**
+   * The builder of the transfer {@code parameters} ask a fullnode for, whose spends are signed
+   * with {@code ask}.
+   */
+  public static ShieldedTransactionBuilder of(PrivateParametersWithoutAsk parameters,
+      byte[] ask) {
+    return new ShieldedTransactionBuilder(ask, parameters.getNsk().toByteArray(),
+        parameters.getOvk().toByteArray())
+        .addTransfer(parameters.getTransparentFromAddress(), parameters.getFromAmount(),
+            parameters.getTransparentToAddress(), parameters.getToAmount(),
+            parameters.getShieldedSpendsList(), parameters.getShieldedReceivesList());
+  }
+
+  private ShieldedTransactionBuilder addTransfer(ByteString from, long fromAmount,
+      ByteString to, long toAmount, List<SpendNote> spends, List<ReceiveNote> receives) {
+    if (!from.isEmpty()) {
+      setTransparentInput(from.toByteArray(), fromAmount);
+    }
+    if (!to.isEmpty()) {
+      setTransparentOutput(to.toByteArray(), toAmount);
+    }
+    for (SpendNote spend : spends) {
+      addSpend(spend);
+    }
+    for (ReceiveNote receive : receives) {
+      addOutput(receive.getNote());
+    }
+    return this;
+  }
+
+  public ShieldedTransactionBuilder setTransparentInput(byte[] address, long amount) {
+    this.transparentFrom = address;
+    this.fromAmount = amount;
+    return this;
+  }
+
+  public ShieldedTransactionBuilder setTransparentOutput(byte[] address, long amount) {
+    this.transparentTo = address;
+    this.toAmount = amount;
+    return this;
+  }
+
+  /**
+   * Spends a note, whose voucher gives the anchor and whose path gives its position.
+   */
+  public ShieldedTransactionBuilder addSpend(SpendNote spend) {
+    spends.add(spend);
+    return this;
+  }
+
+  public ShieldedTransactionBuilder addOutput(Note note) {
+    outputs.add(note);
+    return this;
+  }
+
+  /**
+   * The time each proof of the last build took.
+   */
+  public List<ProofTiming> getTimings() {
+    return new ArrayList<>(timings);
+  }
+
+  ShieldedTransferContract build(long ctx, SighashFunction sighashFunction,
+      ShieldedProver prover) throws ZksnarkException {
+    timings.clear();
+    ShieldedTransferContract.Builder contract = ShieldedTransferContract.newBuilder();
+    if (transparentFrom != null) {
+      contract.setTransparentFromAddress(ByteString.copyFrom(transparentFrom));
+      contract.setFromAmount(fromAmount);
+    }
+    if (transparentTo != null) {
+      contract.setTransparentToAddress(ByteString.copyFrom(transparentTo));
+      contract.setToAmount(toAmount);
+    }
+
+    long valueBalance = 0;
+    byte[] ak = spends.isEmpty() ? null : JLibrustzcash.librustzcashAskToAk(ask);
+    byte[] nk = spends.isEmpty() ? null : JLibrustzcash.librustzcashNskToNk(nsk);
+    ProvingContext proving = new ProvingContext(ctx);
+    List<CompletableFuture<SpendDescription>> spendTasks = new ArrayList<>();
+    for (int i = 0; i < spends.size(); i++) {
+      SpendNote spend = spends.get(i);
+      int index = i;
+      spendTasks.add(proving.fork(prover,
+          () -> spendDescription(proving, spend, ak, nk, index, prover)));
+      valueBalance += spend.getNote().getValue();
+    }
+    List<CompletableFuture<ReceiveDescription>> outputTasks = new ArrayList<>();
+    for (int i = 0; i < outputs.size(); i++) {
+      Note note = outputs.get(i);
+      int index = i;
+      outputTasks.add(proving.fork(prover,
+          () -> receiveDescription(proving, note, index, prover)));
+      valueBalance -= note.getValue();
+    }
+    // the context is freed once this returns, so every task must have finished even on failure
+    List<CompletableFuture<?>> tasks = new ArrayList<>(spendTasks);
+    tasks.addAll(outputTasks);
+    ShieldedProver.awaitAll(tasks);
+    for (CompletableFuture<SpendDescription> task : spendTasks) {
+      contract.addSpendDescription(task.join());
+    }
+    for (CompletableFuture<ReceiveDescription> task : outputTasks) {
+      contract.addReceiveDescription(task.join());
+    }
+
+    byte[] sighash = sighashFunction.sighash(contract.build());
+    for (int i = 0; i < spends.size(); i++) {
+      byte[] signature = new byte[64];
+      if (!JLibrustzcash.librustzcashSaplingSpendSig(new SpendSigParams(ask,
+          spends.get(i).getAlpha().toByteArray(), sighash, signature))) {
+        throw new ZksnarkException("Failed to sign spend " + i);
+      }
+      contract.setSpendDescription(i, contract.getSpendDescription(i).toBuilder()
+          .setSpendAuthoritySignature(ByteString.copyFrom(signature)));
+    }
+    byte[] bindingSignature = new byte[64];
+    if (!JLibrustzcash.librustzcashSaplingBindingSig(
+        new BindingSigParams(ctx, valueBalance, sighash, bindingSignature))) {
+      throw new ZksnarkException("Failed to make the binding signature");
+    }
+    contract.setBindingSignature(ByteString.copyFrom(bindingSignature));
+    return contract.build();
+  }
+
+  private SpendDescription spendDescription(ProvingContext proving, SpendNote spend, byte[] ak,
+      byte[] nk, int index, ShieldedProver prover) throws ZksnarkException {
+    Note note = spend.getNote();
+    PaymentAddress address = decodeAddress(note.getPaymentAddress());
+    byte[] d = address.getD().getData();
+    byte[] rcm = note.getRcm().toByteArray();
+    byte[] path = spend.getPath().toByteArray();
+    long position = 0;
+    for (int i = path.length - 1; i >= path.length - 8; i--) {
+      position = (position << 8) | (path[i] & 0xff);
+    }
+    byte[] nullifier = new byte[32];
+    if (!JLibrustzcash.librustzcashComputeNf(new ComputeNfParams(d, address.getPkD(),
+        note.getValue(), rcm, ak, nk, position, nullifier))) {
+      throw new ZksnarkException("Failed to compute the nullifier of spend " + index);
+    }
+
+    byte[] anchor = spend.getVoucher().getRt().toByteArray();
+    byte[] cv = new byte[32];
+    byte[] rk = new byte[32];
+    byte[] zkproof = new byte[192];
+    long nanos;
+    synchronized (proving) {
+      proving.checkNotAborted();
+      long start = System.nanoTime();
+      if (!JLibrustzcash.librustzcashSaplingSpendProof(new SpendProofParams(proving.ctx, ak, nsk,
+          d, rcm, spend.getAlpha().toByteArray(), note.getValue(), anchor, path, cv, rk,
+          zkproof))) {
+        throw new ZksnarkException("Failed to prove spend " + index);
+      }
+      nanos = System.nanoTime() - start;
+    }
+    timings.add(new ProofTiming(true, index, nanos));
+    prover.recordSpendProof(nanos);
+
+    return SpendDescription.newBuilder()
+        .setValueCommitment(ByteString.copyFrom(cv))
+        .setAnchor(ByteString.copyFrom(anchor))
+        .setNullifier(ByteString.copyFrom(nullifier))
+        .setRk(ByteString.copyFrom(rk))
+        .setZkproof(ByteString.copyFrom(zkproof))
+        .build();
+  }
+
+  private ReceiveDescription receiveDescription(ProvingContext proving, Note note, int index,
+      ShieldedProver prover) throws ZksnarkException {
+    PaymentAddress address = decodeAddress(note.getPaymentAddress());
+    byte[] d = address.getD().getData();
+    byte[] pkD = address.getPkD();
+    byte[] rcm = note.getRcm().toByteArray();
+    byte[] cm = new byte[32];
+    if (!JLibrustzcash.librustzcashComputeCm(
+        new ComputeCmParams(d, pkD, note.getValue(), rcm, cm))) {
+      throw new ZksnarkException("Failed to compute the note commitment of output " + index);
+    }
+    byte[] esk = JLibrustzcash.librustzcashSaplingGenerateR(new byte[32]);
+    byte[] epk = new byte[32];
+    if (!JLibrustzcash.librustzcashSaplingKaDerivepublic(new KaDerivepublicParams(d, esk, epk))) {
+      throw new ZksnarkException("Failed to derive the ephemeral key of output " + index);
+    }
+
+    byte[] cv = new byte[32];
+    byte[] zkproof = new byte[192];
+    long nanos;
+    synchronized (proving) {
+      proving.checkNotAborted();
+      long start = System.nanoTime();
+      if (!JLibrustzcash.librustzcashSaplingOutputProof(new OutputProofParams(proving.ctx, esk, d,
+          pkD, rcm, note.getValue(), cv, zkproof))) {
+        throw new ZksnarkException("Failed to prove output " + index);
+      }
+      nanos = System.nanoTime() - start;
+    }
+    timings.add(new ProofTiming(false, index, nanos));
+    prover.recordOutputProof(nanos);
+
+    byte[] sharedSecret = new byte[32];
+    if (!JLibrustzcash.librustzcashKaAgree(new KaAgreeParams(pkD, esk, sharedSecret))) {
+      throw new ZksnarkException("Failed the key agreement of output " + index);
+    }
+    byte[] cEnc = encrypt(NoteDecryptor.kdf(sharedSecret, epk), NoteDecryptor.encodePlaintext(
+        d, note.getValue(), rcm, note.getMemo().toByteArray()));
+
+    byte[] ockInput = new byte[128];
+    System.arraycopy(ovk, 0, ockInput, 0, 32);
+    System.arraycopy(cv, 0, ockInput, 32, 32);
+    System.arraycopy(cm, 0, ockInput, 64, 32);
+    System.arraycopy(epk, 0, ockInput, 96, 32);
+    byte[] ock = new byte[32];
+    JLibsodium.cryptoGenerichashBlack2bSaltPersonal(new Black2bSaltPersonalParams(ock, 32,
+        ockInput, 128, null, 0, null, OCK_PERSONALIZATION));
+    byte[] outPlaintext = new byte[64];
+    System.arraycopy(pkD, 0, outPlaintext, 0, 32);
+    System.arraycopy(esk, 0, outPlaintext, 32, 32);
+    byte[] cOut = encrypt(ock, outPlaintext);
+    if (cOut.length != OUT_CIPHERTEXT_SIZE) {
+      throw new ZksnarkException("Unexpected out ciphertext size " + cOut.length);
+    }
+
+    return ReceiveDescription.newBuilder()
+        .setValueCommitment(ByteString.copyFrom(cv))
+        .setNoteCommitment(ByteString.copyFrom(cm))
+        .setEpk(ByteString.copyFrom(epk))
+        .setCEnc(ByteString.copyFrom(cEnc))
+        .setCOut(ByteString.copyFrom(cOut))
+        .setZkproof(ByteString.copyFrom(zkproof))
+        .build();
+  }
+
+  /**
+   * The proving context of one build, shared by its description tasks. Every proof adds its value
+   * commitment to the context, so the proofs are made on it one at a time while the rest of the
+   * descriptions is built in parallel. Once a task fails, the proofs not yet started are skipped.
+   */
+  private static class ProvingContext {
+
+    private final long ctx;
+    private volatile boolean aborted;
+
+    ProvingContext(long ctx) {
+      this.ctx = ctx;
+    }
+
+    <T> CompletableFuture<T> fork(ShieldedProver prover, ShieldedProver.ProofTask<T> task) {
+      CompletableFuture<T> future = prover.fork(task);
+      future.whenComplete((result, e) -> {
+        if (e != null) {
+          aborted = true;
+        }
+      });
+      return future;
+    }
+
+    void checkNotAborted() throws ZksnarkException {
+      if (aborted) {
+        throw new ZksnarkException("Another description of the transaction failed");
+      }
+    }
+  }
+
+  private static PaymentAddress decodeAddress(String paymentAddress) throws ZksnarkException {
+    PaymentAddress address = KeyIo.decodePaymentAddress(paymentAddress);
+    if (address == null) {
+      throw new ZksnarkException("Invalid shielded address " + paymentAddress);
+    }
+    return address;
+  }
+
+  private static byte[] encrypt(byte[] key, byte[] plaintext) throws ZksnarkException {
+    // every key encrypts one plaintext, so the nonce is zero
+    byte[] ciphertext = new byte[plaintext.length + 16];
+    long[] length = new long[1];
+    JLibsodium.cryptoAeadChacha20Poly1305IetfEncrypt(new Chacha20Poly1305IetfEncryptParams(
+        ciphertext, length, plaintext, plaintext.length, null, 0, null,
+        new byte[JLibsodium.CRYPTO_AEAD_CHACHA20POLY1305_IETF_NPUBBYTES], key));
+    return ciphertext;
+  }
+}
@@ -0,0 +1,310 @@
+package org.tron.core.zen;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.tron.common.crypto.Digests;
+import org.tron.common.utils.Base58;
+import org.tron.common.utils.ByteArray;
+import org.tron.core.exception.CipherException;
+
+/**
+ * The notes and scan checkpoints of a shielded wallet: the notes in a {@link NoteDatabase}, the
+ * checkpoints in a {@link NoteLogStore}.
+ *
+ * <p>Notes are stored in the encrypted form of their {@code encode}, under their note index, and
+ * only decrypted by the caller when it needs them. Checkpoints are stored encrypted as the files
+ * before did, under a digest of the wallet key and the viewing key so that the key itself is not
+ * written in the clear. Checkpoints are not forced to disk before {@link #sync}.
+ *
+ * <p>The note commitment tree frontier and the witnesses of unspent notes, when kept locally, are
+ * stored encrypted in the log as well, the witnesses under their note index, each with the block
+ * it is as of, to tell witnesses that got ahead of the frontier before a crash.
+ */
+public class ShieldedWalletStore implements Closeable {
+
+  private static final String UNSPENT = "unspent/";
+  private static final String SPENT = "spent/";
+  private static final String SCAN = "scan/";
+  private static final String MERKLE_FRONTIER = "merkle/frontier";
+  private static final String WITNESS = "witness/";
+
+  public interface NoteDecoder {
+
+    /**
+     * Returns the note index and payment address of an encoded note.
+     */
+    Map.Entry<Long, String> decode(String encodedNote) throws CipherException;
+  }
+
+  private final NoteLogStore store;
+  private final NoteDatabase notes;
+  private final byte[] encryptKey;
+  // the checkpoints as last written, to write only the ones that moved
+  private final Map<String, Long> writtenBlockNums = new HashMap<>();
+
+  private ShieldedWalletStore(NoteLogStore store, NoteDatabase notes, byte[] encryptKey) {
+    this.store = store;
+    this.notes = notes;
+    this.encryptKey = encryptKey;
+  }
+
+  /**
+   * Opens the store kept in {@code folder}.
+   */
+  public static ShieldedWalletStore open(String folder, byte[] encryptKey) throws IOException {
+    NoteLogStore store = NoteLogStore.open(folder + "/notes.log");
+    try {
+      return new ShieldedWalletStore(store, NoteDatabase.open(folder + "/notes", encryptKey),
+          encryptKey);
+    } catch (IOException e) {
+      store.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Moves what earlier versions wrote into the store, once: the line files, which are then
+   * deleted, and the notes once kept in the log.
+   */
+  public synchronized void migrate(String ivkAndNumFile, String unspentFile, String spentFile,
+      NoteDecoder decoder) throws IOException, CipherException {
+    Map<String, byte[]> loggedUnspent = store.readAll(UNSPENT);
+    Map<String, byte[]> loggedSpent = store.readAll(SPENT);
+    if (!loggedUnspent.isEmpty() || !loggedSpent.isEmpty()) {
+      for (Map.Entry<String, byte[]> entry : loggedUnspent.entrySet()) {
+        String note = new String(entry.getValue(), StandardCharsets.UTF_8);
+        putNote(decoder.decode(note), note, NoteDatabase.Status.UNSPENT);
+        store.remove(entry.getKey());
+      }
+      for (Map.Entry<String, byte[]> entry : loggedSpent.entrySet()) {
+        String note = new String(entry.getValue(), StandardCharsets.UTF_8);
+        putNote(decoder.decode(note), note, NoteDatabase.Status.SPENT);
+        store.remove(entry.getKey());
+      }
+      notes.sync();
+      store.sync();
+    }
+
+    if (store.size() > 0 || !(ZenUtils.checkFileExist(ivkAndNumFile)
+        || ZenUtils.checkFileExist(unspentFile) || ZenUtils.checkFileExist(spentFile))) {
+      return;
+    }
+    if (ZenUtils.checkFileExist(ivkAndNumFile)) {
+      for (String line : ZenUtils.getListFromFile(ivkAndNumFile)) {
+        byte[] text = ZenUtils.aesCtrDecrypt(Base58.decode(line), encryptKey);
+        store.put(SCAN + scanId(Arrays.copyOfRange(text, 0, text.length - 8)),
+            line.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    if (ZenUtils.checkFileExist(unspentFile)) {
+      for (String line : ZenUtils.getListFromFile(unspentFile)) {
+        putNote(decoder.decode(line), line, NoteDatabase.Status.UNSPENT);
+      }
+    }
+    if (ZenUtils.checkFileExist(spentFile)) {
+      for (String line : ZenUtils.getListFromFile(spentFile)) {
+        putNote(decoder.decode(line), line, NoteDatabase.Status.SPENT);
+      }
+    }
+    notes.sync();
+    store.sync();
+    new File(ivkAndNumFile).delete();
+    new File(unspentFile).delete();
+    new File(spentFile).delete();
+  }
+
+  /**
+   * Returns the checkpoints, by viewing key in hex.
+   */
+  public synchronized Map<String, Long> loadScanBlockNums() throws IOException, CipherException {
+    Map<String, Long> blockNums = new HashMap<>();
+    for (byte[] value : store.readAll(SCAN).values()) {
+      byte[] text = ZenUtils.aesCtrDecrypt(
+          Base58.decode(new String(value, StandardCharsets.UTF_8)), encryptKey);
+      blockNums.put(ByteArray.toHexString(Arrays.copyOfRange(text, 0, text.length - 8)),
+          ByteArray.toLong(Arrays.copyOfRange(text, text.length - 8, text.length)));
+    }
+    writtenBlockNums.clear();
+    writtenBlockNums.putAll(blockNums);
+    return blockNums;
+  }
+
+  public synchronized List<String> loadUnspentNotes() throws IOException {
+    return readNotes(NoteDatabase.Status.UNSPENT, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns up to {@code limit} spent notes, from note index {@code fromNoteIndex} on, in order.
+   */
+  public synchronized List<String> loadSpentNotes(long fromNoteIndex, int limit)
+      throws IOException {
+    return readNotes(NoteDatabase.Status.SPENT, fromNoteIndex, limit);
+  }
+
+  public synchronized int countSpentNotes() {
+    return notes.count(NoteDatabase.Status.SPENT);
+  }
+
+  /**
+   * The note index after the highest one stored, spent or not.
+   */
+  public synchronized long nextNoteIndex() {
+    return notes.nextNoteIndex();
+  }
+
+  public synchronized void putUnspentNote(long noteIndex, String paymentAddress,
+      String encodedNote) throws IOException {
+    notes.put(noteIndex, paymentAddress, encodedNote.getBytes(StandardCharsets.UTF_8),
+        NoteDatabase.Status.UNSPENT);
+  }
+
+  /**
+   * Records a note as spent, and no longer unspent.
+   */
+  public synchronized void putSpentNote(long noteIndex, String paymentAddress,
+      String encodedNote) throws IOException {
+    if (!notes.setStatus(noteIndex, NoteDatabase.Status.SPENT)) {
+      notes.put(noteIndex, paymentAddress, encodedNote.getBytes(StandardCharsets.UTF_8),
+          NoteDatabase.Status.SPENT);
+    }
+  }
+
+  /**
+   * Records the block scanning {@code ivk} (in hex) continues from, unless it did not move.
+   */
+  public synchronized void putScanBlockNum(String ivk, long blockNum)
+      throws IOException, CipherException {
+    Long written = writtenBlockNums.get(ivk);
+    if (written != null && written == blockNum) {
+      return;
+    }
+    byte[] key = ByteArray.fromHexString(ivk);
+    byte[] value = ByteArray.fromLong(blockNum);
+    byte[] text = new byte[key.length + value.length];
+    System.arraycopy(key, 0, text, 0, key.length);
+    System.arraycopy(value, 0, text, key.length, value.length);
+    String data = Base58.encode(ZenUtils.aesCtrEncrypt(text, encryptKey));
+    store.put(SCAN + scanId(key), data.getBytes(StandardCharsets.UTF_8));
+    writtenBlockNums.put(ivk, blockNum);
+  }
+
+  /**
+   * Returns the block the saved frontier is as of, followed by the frontier, or null if none was
+   * saved.
+   */
+  public synchronized Map.Entry<Long, byte[]> loadMerkleFrontier()
+      throws IOException, CipherException {
+    byte[] value = store.get(MERKLE_FRONTIER);
+    if (value == null) {
+      return null;
+    }
+    byte[] text = ZenUtils.aesCtrDecrypt(value, encryptKey);
+    return new SimpleImmutableEntry<>(ByteArray.toLong(Arrays.copyOfRange(text, 0, 8)),
+        Arrays.copyOfRange(text, 8, text.length));
+  }
+
+  public synchronized void putMerkleFrontier(long nextBlock, byte[] frontier)
+      throws IOException, CipherException {
+    store.put(MERKLE_FRONTIER, ZenUtils.aesCtrEncrypt(prefixBlock(nextBlock, frontier),
+        encryptKey));
+  }
+
+  /**
+   * Returns the witnesses saved with the frontier of {@code nextBlock}, by note index, or null if
+   * some were saved at another block.
+   */
+  public synchronized Map<Long, byte[]> loadWitnesses(long nextBlock)
+      throws IOException, CipherException {
+    Map<Long, byte[]> witnesses = new HashMap<>();
+    for (Map.Entry<String, byte[]> entry : store.readAll(WITNESS).entrySet()) {
+      byte[] text = ZenUtils.aesCtrDecrypt(entry.getValue(), encryptKey);
+      if (ByteArray.toLong(Arrays.copyOfRange(text, 0, 8)) != nextBlock) {
+        return null;
+      }
+      witnesses.put(Long.parseLong(entry.getKey().substring(WITNESS.length())),
+          Arrays.copyOfRange(text, 8, text.length));
+    }
+    return witnesses;
+  }
+
+  /**
+   * Saves the witness of a note as of the frontier of {@code nextBlock}.
+   */
+  public synchronized void putWitness(long noteIndex, long nextBlock, byte[] witness)
+      throws IOException, CipherException {
+    store.put(WITNESS + noteIndex, ZenUtils.aesCtrEncrypt(prefixBlock(nextBlock, witness),
+        encryptKey));
+  }
+
+  public synchronized void removeWitness(long noteIndex) throws IOException {
+    store.remove(WITNESS + noteIndex);
+  }
+
+  /**
+   * Removes the frontier and every witness.
+   */
+  public synchronized void clearWitnesses() throws IOException {
+    for (String key : store.readAll(WITNESS).keySet()) {
+      store.remove(key);
+    }
+    store.remove(MERKLE_FRONTIER);
+  }
+
+  public synchronized void sync() throws IOException {
+    notes.sync();
+    store.sync();
+  }
+
+  public synchronized void clear() throws IOException {
+    notes.clear();
+    store.clear();
+    writtenBlockNums.clear();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      notes.close();
+    } finally {
+      store.close();
+    }
+  }
+
+  private void putNote(Map.Entry<Long, String> decoded, String encodedNote,
+      NoteDatabase.Status status) throws IOException {
+    notes.put(decoded.getKey(), decoded.getValue(), encodedNote.getBytes(StandardCharsets.UTF_8),
+        status);
+  }
+
+  private List<String> readNotes(NoteDatabase.Status status, long fromNoteIndex, int limit)
+      throws IOException {
+    List<String> result = new ArrayList<>();
+    for (long noteIndex : notes.noteIndexes(status, fromNoteIndex, limit)) {
+      result.add(new String(notes.read(noteIndex), StandardCharsets.UTF_8));
+    }
+    return result;
+  }
+
+  private static byte[] prefixBlock(long blockNum, byte[] value) {
+    byte[] text = new byte[8 + value.length];
+    System.arraycopy(ByteArray.fromLong(blockNum), 0, text, 0, 8);
+    System.arraycopy(value, 0, text, 8, value.length);
+    return text;
+  }
+
+  private String scanId(byte[] ivk) {
+    MessageDigest digest = Digests.sha256();
+    digest.update(encryptKey);
+    digest.update(ivk);
+    return ByteArray.toHexString(Arrays.copyOf(digest.digest(), 16));
+  }
+}
@@ -1,30 +1,52 @@
 package org.tron.core.zen;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
 import io.netty.util.internal.StringUtil;
 import lombok.Getter;
 import lombok.Setter;
 import org.apache.commons.lang3.ArrayUtils;
 import org.tron.api.GrpcAPI.*;
 import org.tron.api.GrpcAPI.DecryptNotes.NoteTx;
-import org.tron.common.utils.Base58;
 import org.tron.common.utils.ByteArray;
 import org.tron.common.utils.Utils;
 import org.tron.core.exception.CipherException;
+import org.tron.core.exception.ZksnarkException;
+import org.tron.core.zen.LocalNoteScanner.FoundNote;
+import org.tron.core.zen.LocalNoteScanner.ShieldedOutput;
+import org.tron.core.zen.address.FullViewingKey;
 import org.tron.keystore.SKeyCapsule;
 import org.tron.keystore.SKeyEncryptor;
 import org.tron.keystore.StringUtils;
 import org.tron.keystore.WalletUtils;
 import org.tron.protos.Protocol.Block;
+import org.tron.protos.Protocol.Transaction;
+import org.tron.protos.Protocol.Transaction.Contract;
+import org.tron.protos.Protocol.Transaction.Contract.ContractType;
+import org.tron.protos.contract.ShieldContract.IncrementalMerkleTree;
+import org.tron.protos.contract.ShieldContract.IncrementalMerkleVoucher;
+import org.tron.protos.contract.ShieldContract.IncrementalMerkleVoucherInfo;
+import org.tron.protos.contract.ShieldContract.OutputPoint;
+import org.tron.protos.contract.ShieldContract.OutputPointInfo;
+import org.tron.protos.contract.ShieldContract.ReceiveDescription;
+import org.tron.protos.contract.ShieldContract.ShieldedTransferContract;
+import org.tron.protos.contract.ShieldContract.SpendDescription;
 import org.tron.walletcli.Client;
+import org.tron.walletserver.AsyncGrpcClient;
+import org.tron.walletserver.BlockRangeStreamer;
 import org.tron.walletserver.WalletApi;
 import java.io.File;
 import java.io.IOException;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.AbstractMap.SimpleEntry;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class ShieldedWrapper {
 
@@ -38,6 +60,7 @@ public class ShieldedWrapper {
   private Thread thread;
 
   private byte[] shieldedSkey;
+  private ShieldedWalletStore walletStore;
   private static ShieldedWrapper instance;
 
   @Setter
@@ -51,11 +74,21 @@ public class ShieldedWrapper {
   @Getter
   @Setter
   public Map<Long, ShieldedNoteInfo>  utxoMapNote = new ConcurrentHashMap();
-  @Getter
-  @Setter
-  public List<ShieldedNoteInfo> spendUtxoList = new ArrayList<>();
+
+  private final UtxoIndex<ShieldedNoteInfo> utxoIndex =
+      new UtxoIndex<>(ShieldedNoteInfo::getValue, ShieldedNoteInfo::getPaymentAddress);
 
   private boolean loadShieldedStatus = false;
+  private final ShieldedNoteScanner<DecryptNotes> noteScanner =
+      new ShieldedNoteScanner<>(this::fetchNotes, DecryptNotes::getSerializedSize, 1000);
+  // set when notes are found by trial decryption here instead of by the fullnode
+  private final LocalNoteScanner localScanner =
+      LocalNoteScanner.isEnabled() ? new LocalNoteScanner(this::fetchOutputs) : null;
+  // set when the witnesses of notes are kept here instead of asked from the fullnode
+  private final MerkleWitnessTracker witnessTracker =
+      MerkleWitnessTracker.isEnabled() ? new MerkleWitnessTracker() : null;
+  private final NoteSpendTracker spendTracker = new NoteSpendTracker(new SpendSource(),
+      (start, end) -> new BlockRangeStreamer(WalletApi.getAsyncRpcCli(), start, end).stream());
 
   private ShieldedWrapper() {
     thread = new Thread(new scanIvkRunable());
@@ -68,15 +101,33 @@ public class ShieldedWrapper {
     return instance;
   }
 
+  /**
+   * The note scanner, whose window sizes and latencies show how scanning goes.
+   */
+  public ShieldedNoteScanner<DecryptNotes> getNoteScanner() {
+    return noteScanner;
+  }
+
   public boolean ifShieldedWalletLoaded() {
     return loadShieldedStatus;
   }
 
-  private void loadWalletFile() throws CipherException {
+  private void loadWalletFile() throws CipherException, IOException {
     loadAddressFromFile();
+    if (walletStore == null) {
+      walletStore = ShieldedWalletStore.open(PREFIX_FOLDER, shieldedSkey);
+      walletStore.migrate(IVK_AND_NUM_FILE_NAME, UNSPEND_NOTE_FILE_NAME, SPEND_NOTE_FILE_NAME,
+          encodedNote -> {
+            ShieldedNoteInfo noteInfo = new ShieldedNoteInfo();
+            noteInfo.decode(encodedNote, shieldedSkey);
+            return new SimpleEntry<>(noteInfo.getNoteIndex(), noteInfo.getPaymentAddress());
+          });
+    }
     loadIvkFromFile();
     loadUnSpendNoteFromFile();
-    loadSpendNoteFromFile();
+    loadWitnesses();
+    // spent notes stay encrypted on disk until they are listed
+    nodeIndex.set(Math.max(nodeIndex.get(), walletStore.nextNoteIndex()));
   }
 
   public boolean loadShieldWallet() throws CipherException, IOException {
@@ -110,10 +161,26 @@ public class ShieldedWrapper {
   public class scanIvkRunable implements Runnable {
     public void run(){
       int count = 24;
+      // the head up to which every ivk was scanned and the notes checked
+      long scannedHead = -1;
       for (;;) {
+        if (resetNote) {
+          resetShieldedNote();
+          resetNote = false;
+          count = 0;
+          scannedHead = -1;
+          System.out.println("Reset shielded note success!");
+        }
         try {
-          scanBlockByIvk();
-          updateNoteWhetherSpend();
+          // wake up when a new block arrives, or after 0.5 seconds to look at resetNote
+          long head = WalletApi.getHeadTracker()
+              .awaitHead(scannedHead, 500, TimeUnit.MILLISECONDS);
+          if (head > scannedHead) {
+            scanBlockByIvk(head);
+            updateNoteWhetherSpend(head);
+            updateWitnesses();
+            scannedHead = head;
+          }
         } catch (Exception e) {
           ++count;
           if (count >= 24) {
@@ -123,21 +190,18 @@ public class ShieldedWrapper {
             System.out.println("Please user command resetshieldednote to reset notes!!");
             count = 0;
           }
-        } finally {
-          try {
-            //wait for 2.5 seconds
-            for (int i=0; i<5; ++i) {
-              Thread.sleep(500);
-              if (resetNote) {
-                resetShieldedNote();
-                resetNote = false;
-                count = 0;
-                System.out.println("Reset shielded note success!");
-              }
-            }
-          } catch ( Exception e) {
-          }
+          waitBeforeRetry();
+        }
+      }
+    }
+
+    private void waitBeforeRetry() {
+      try {
+        //wait for 2.5 seconds, unless notes are to be reset
+        for (int i = 0; i < 5 && !resetNote; ++i) {
+          Thread.sleep(500);
         }
+      } catch (Exception e) {
       }
     }
   }
@@ -149,85 +213,314 @@ public class ShieldedWrapper {
     }
 
     utxoMapNote.clear();
-    spendUtxoList.clear();
+    utxoIndex.clear();
+    spendTracker.clear();
+    if (witnessTracker != null) {
+      witnessTracker.clear();
+    }
 
-    ZenUtils.clearFile(IVK_AND_NUM_FILE_NAME);
-    ZenUtils.clearFile(UNSPEND_NOTE_FILE_NAME);
-    ZenUtils.clearFile(SPEND_NOTE_FILE_NAME);
+    try {
+      walletStore.clear();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
     nodeIndex.set(0L);
 
     updateIvkAndBlockNumFile();
   }
 
-  private void scanBlockByIvk() throws CipherException {
-    Block block = WalletApi.getBlock(-1);
-    if (block != null) {
-      long blockNum = block.getBlockHeader().toBuilder().getRawData().getNumber();
-      for (Entry<String, Long> entry : ivkMapScanBlockNum.entrySet()) {
-        long start = entry.getValue();
-        long end = start;
-        while (end < blockNum) {
-          if (blockNum - start > 1000) {
-            end = start + 1000;
-          } else {
-            end = blockNum;
-          }
+  /**
+   * Scans every ivk from its last scanned block up to {@code blockNum}.
+   */
+  private void scanBlockByIvk(long blockNum) throws Exception {
+    try {
+      if (!noteScanner.scan(ivkMapScanBlockNum, blockNum, this::addScannedNotes)) {
+        throw new IllegalStateException(
+            "Scan note by ivk failed, will retry from the failed block");
+      }
+    } finally {
+      updateIvkAndBlockNumFile();
+    }
+  }
+
+  private CompletableFuture<DecryptNotes> fetchNotes(String ivk, long start, long end) {
+    if (localScanner != null) {
+      return localScanner.scan(ByteArray.fromHexString(ivk), start, end).thenApply(found -> {
+        DecryptNotes.Builder notes = DecryptNotes.newBuilder();
+        for (FoundNote note : found) {
+          notes.addNoteTxs(NoteTx.newBuilder()
+              .setNote(note.getNote().toNote())
+              .setTxid(ByteString.copyFrom(note.getOutput().getTxId()))
+              .setIndex(note.getOutput().getIndex()));
+        }
+        return notes.build();
+      });
+    }
+    IvkDecryptParameters.Builder builder = IvkDecryptParameters.newBuilder();
+    builder.setStartBlockIndex(start);
+    builder.setEndBlockIndex(end);
+    builder.setIvk(ByteString.copyFrom(ByteArray.fromHexString(ivk)));
+    return WalletApi.getAsyncRpcCli()
+        .withDeadline(noteScanner.getTimeoutMillis(), TimeUnit.MILLISECONDS)
+        .scanNoteByIvk(builder.build());
+  }
 
-          IvkDecryptParameters.Builder builder = IvkDecryptParameters.newBuilder();
-          builder.setStartBlockIndex(start);
-          builder.setEndBlockIndex(end);
-          builder.setIvk(ByteString.copyFrom(ByteArray.fromHexString(entry.getKey())));
-          Optional<DecryptNotes> notes = WalletApi.scanNoteByIvk(builder.build(), false);
-          if (notes.isPresent()) {
-            int startNum = utxoMapNote.size();
-            for (int i = 0; i < notes.get().getNoteTxsList().size(); ++i) {
-              NoteTx noteTx = notes.get().getNoteTxsList().get(i);
-              ShieldedNoteInfo noteInfo = new ShieldedNoteInfo();
-              noteInfo.setPaymentAddress(noteTx.getNote().getPaymentAddress());
-              noteInfo.setR(noteTx.getNote().getRcm().toByteArray());
-              noteInfo.setValue(noteTx.getNote().getValue());
-              noteInfo.setTrxId(ByteArray.toHexString(noteTx.getTxid().toByteArray()));
-              noteInfo.setIndex(noteTx.getIndex());
-              noteInfo.setNoteIndex(nodeIndex.getAndIncrement());
-              noteInfo.setMemo(noteTx.getNote().getMemo().toByteArray());
-
-              utxoMapNote.put(noteInfo.getNoteIndex(), noteInfo);
+  private List<ShieldedOutput> fetchOutputs(long start, long end) {
+    List<ShieldedOutput> outputs = new ArrayList<>();
+    try (Stream<BlockExtention> blocks =
+        new BlockRangeStreamer(WalletApi.getAsyncRpcCli(), start, end).stream()) {
+      blocks.forEach(block -> {
+        long blockNum = block.getBlockHeader().getRawData().getNumber();
+        for (TransactionExtention transaction : block.getTransactionsList()) {
+          for (Contract contract : transaction.getTransaction().getRawData().getContractList()) {
+            if (contract.getType() != ContractType.ShieldedTransferContract) {
+              continue;
             }
-            int endNum = utxoMapNote.size();
-            if (endNum > startNum ) {
-              saveUnspendNoteToFile();
+            try {
+              ShieldedTransferContract transfer =
+                  contract.getParameter().unpack(ShieldedTransferContract.class);
+              int index = 0;
+              for (ReceiveDescription receive : transfer.getReceiveDescriptionList()) {
+                outputs.add(new ShieldedOutput(blockNum, transaction.getTxid().toByteArray(),
+                    index++, -1, receive.getNoteCommitment().toByteArray(),
+                    receive.getEpk().toByteArray(), receive.getCEnc().toByteArray()));
+              }
+            } catch (InvalidProtocolBufferException e) {
+              // not a shielded transfer after all
             }
           }
-          start = end;
         }
-        ivkMapScanBlockNum.put(entry.getKey(), blockNum);
+      });
+    }
+    return outputs;
+  }
+
+  private void addScannedNotes(String ivk, long start, long end, DecryptNotes notes)
+      throws CipherException, IOException {
+    int startNum = utxoMapNote.size();
+    for (int i = 0; i < notes.getNoteTxsList().size(); ++i) {
+      NoteTx noteTx = notes.getNoteTxsList().get(i);
+      ShieldedNoteInfo noteInfo = new ShieldedNoteInfo();
+      noteInfo.setPaymentAddress(noteTx.getNote().getPaymentAddress());
+      noteInfo.setR(noteTx.getNote().getRcm().toByteArray());
+      noteInfo.setValue(noteTx.getNote().getValue());
+      noteInfo.setTrxId(ByteArray.toHexString(noteTx.getTxid().toByteArray()));
+      noteInfo.setIndex(noteTx.getIndex());
+      noteInfo.setNoteIndex(nodeIndex.getAndIncrement());
+      noteInfo.setMemo(noteTx.getNote().getMemo().toByteArray());
+
+      utxoMapNote.put(noteInfo.getNoteIndex(), noteInfo);
+      utxoIndex.add(noteInfo.getNoteIndex(), noteInfo);
+      walletStore.putUnspentNote(noteInfo.getNoteIndex(), noteInfo.getPaymentAddress(),
+              noteInfo.encode(shieldedSkey));
+    }
+    ivkMapScanBlockNum.put(ivk, end);
+    int endNum = utxoMapNote.size();
+    if (endNum > startNum ) {
+      // save the notes together with the checkpoint, to not find them again after a restart
+      walletStore.putScanBlockNum(ivk, end);
+      walletStore.sync();
+    }
+  }
+
+  private void updateNoteWhetherSpend(long head) throws Exception {
+    for (long noteIndex : spendTracker.check(utxoMapNote.keySet(), head)) {
+      spendNote(noteIndex);
+    }
+  }
+
+  /**
+   * Appends the note commitments of the blocks every ivk was scanned past to the local tree, so
+   * that every note found in them gets its witness.
+   */
+  private void updateWitnesses() throws Exception {
+    if (witnessTracker == null || ivkMapScanBlockNum.isEmpty()) {
+      return;
+    }
+    long end = Collections.min(ivkMapScanBlockNum.values());
+    if (witnessTracker.getNextBlock() >= end) {
+      return;
+    }
+    Map<String, Long> owned = new HashMap<>();
+    for (ShieldedNoteInfo noteInfo : utxoMapNote.values()) {
+      owned.put(noteInfo.getTrxId() + ":" + noteInfo.getIndex(), noteInfo.getNoteIndex());
+    }
+    while (witnessTracker.getNextBlock() < end) {
+      long start = witnessTracker.getNextBlock();
+      long batchEnd = Math.min(end, start + MerkleWitnessTracker.getBatchBlocks());
+      List<ShieldedOutput> outputs = fetchOutputs(start, batchEnd);
+      int from = 0;
+      for (long blockNum = start; blockNum < batchEnd; blockNum++) {
+        int to = from;
+        while (to < outputs.size() && outputs.get(to).getBlockNum() == blockNum) {
+          ++to;
+        }
+        witnessTracker.appendBlock(blockNum, outputs.subList(from, to), output -> owned.get(
+            ByteArray.toHexString(output.getTxId()) + ":" + output.getIndex()));
+        from = to;
       }
-      updateIvkAndBlockNumFile();
+      if (from != outputs.size()) {
+        throw new IllegalStateException("Shielded outputs of blocks [" + start + ", " + batchEnd
+            + ") are out of order");
+      }
+      saveWitnesses();
+    }
+  }
+
+  private void saveWitnesses() throws CipherException, IOException {
+    long nextBlock = witnessTracker.getNextBlock();
+    // the frontier first: witnesses ahead of it are found out when loading
+    walletStore.putMerkleFrontier(nextBlock, witnessTracker.getFrontier().toByteArray());
+    for (Entry<Long, IncrementalMerkleVoucher> entry : witnessTracker.getWitnesses().entrySet()) {
+      walletStore.putWitness(entry.getKey(), nextBlock, entry.getValue().toByteArray());
+    }
+    walletStore.sync();
+  }
+
+  private void loadWitnesses() throws CipherException, IOException {
+    if (witnessTracker == null) {
+      return;
+    }
+    witnessTracker.clear();
+    Entry<Long, byte[]> frontier = walletStore.loadMerkleFrontier();
+    Map<Long, byte[]> saved =
+        frontier == null ? null : walletStore.loadWitnesses(frontier.getKey());
+    if (saved == null) {
+      // not all saved at the same block, build them again
+      walletStore.clearWitnesses();
+      return;
+    }
+    Map<Long, IncrementalMerkleVoucher> witnesses = new HashMap<>();
+    for (Entry<Long, byte[]> entry : saved.entrySet()) {
+      if (utxoMapNote.containsKey(entry.getKey())) {
+        witnesses.put(entry.getKey(), IncrementalMerkleVoucher.parseFrom(entry.getValue()));
+      } else {
+        walletStore.removeWitness(entry.getKey());
+      }
+    }
+    witnessTracker.restore(frontier.getKey(), IncrementalMerkleTree.parseFrom(frontier.getValue()),
+        witnesses);
+  }
+
+  private Optional<IncrementalMerkleVoucherInfo> localVoucherInfo(List<Long> noteIndexes) {
+    if (witnessTracker == null) {
+      return Optional.empty();
+    }
+    try {
+      return witnessTracker.getVoucherInfo(noteIndexes);
+    } catch (ZksnarkException e) {
+      e.printStackTrace();
+      return Optional.empty();
+    }
+  }
+
+  private OutputPointInfo outputPoints(List<Long> noteIndexes) {
+    OutputPointInfo.Builder request = OutputPointInfo.newBuilder();
+    for (long noteIndex : noteIndexes) {
+      ShieldedNoteInfo noteInfo = utxoMapNote.get(noteIndex);
+      request.addOutPoints(OutputPoint.newBuilder()
+          .setHash(ByteString.copyFrom(ByteArray.fromHexString(noteInfo.getTrxId())))
+          .setIndex(noteInfo.getIndex()));
+    }
+    return request.build();
+  }
+
+  /**
+   * The vouchers and authentication paths of unspent notes, all at one anchor: from the local
+   * witnesses when there is one for every note, else from the fullnode.
+   */
+  public Optional<IncrementalMerkleVoucherInfo> getMerkleVoucherInfo(List<Long> noteIndexes) {
+    Optional<IncrementalMerkleVoucherInfo> local = localVoucherInfo(noteIndexes);
+    if (local.isPresent()) {
+      return local;
     }
+    return WalletApi.GetMerkleTreeVoucherInfo(outputPoints(noteIndexes), true);
+  }
+
+  private AsyncGrpcClient rpcClient() {
+    return WalletApi.getAsyncRpcCli()
+        .withDeadline(noteScanner.getTimeoutMillis(), TimeUnit.MILLISECONDS);
   }
 
-  private void updateNoteWhetherSpend() throws Exception {
-    for (Entry<Long, ShieldedNoteInfo> entry : utxoMapNote.entrySet()) {
-      ShieldedNoteInfo noteInfo = entry.getValue();
+  private class SpendSource implements NoteSpendTracker.SpendSource {
 
-      ShieldedAddressInfo addressInfo = getShieldedAddressInfoMap().get(noteInfo.getPaymentAddress());
+    @Override
+    public CompletableFuture<byte[]> nullifier(long noteIndex) {
+      ShieldedNoteInfo noteInfo = utxoMapNote.get(noteIndex);
+      FullViewingKey fullViewingKey;
+      try {
+        fullViewingKey = getShieldedAddressInfoMap().get(noteInfo.getPaymentAddress())
+            .getFullViewingKey();
+      } catch (ZksnarkException e) {
+        CompletableFuture<byte[]> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+        return failed;
+      }
+      AsyncGrpcClient client = rpcClient();
+      Optional<IncrementalMerkleVoucherInfo> local = localVoucherInfo(
+          Collections.singletonList(noteIndex));
+      CompletableFuture<IncrementalMerkleVoucherInfo> voucherInfo = local.isPresent()
+          ? CompletableFuture.completedFuture(local.get())
+          : client.getMerkleTreeVoucherInfo(outputPoints(Collections.singletonList(noteIndex)));
+      return voucherInfo.thenCompose(info -> {
+        if (info.getVouchersCount() < 1) {
+          return CompletableFuture.completedFuture(null);
+        }
+        NfParameters.Builder builder = NfParameters.newBuilder();
+        builder.setNote(toNote(noteInfo));
+        builder.setVoucher(info.getVouchers(0));
+        builder.setAk(ByteString.copyFrom(fullViewingKey.getAk()));
+        builder.setNk(ByteString.copyFrom(fullViewingKey.getNk()));
+        return client.createShieldedNullifier(builder.build())
+            .thenApply(nullifier -> nullifier.getValue().toByteArray());
+      });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isSpent(long noteIndex) {
+      ShieldedNoteInfo noteInfo = utxoMapNote.get(noteIndex);
       NoteParameters.Builder builder = NoteParameters.newBuilder();
-      builder.setAk(ByteString.copyFrom(addressInfo.getFullViewingKey().getAk()));
-      builder.setNk(ByteString.copyFrom(addressInfo.getFullViewingKey().getNk()));
+      try {
+        FullViewingKey fullViewingKey = getShieldedAddressInfoMap()
+            .get(noteInfo.getPaymentAddress()).getFullViewingKey();
+        builder.setAk(ByteString.copyFrom(fullViewingKey.getAk()));
+        builder.setNk(ByteString.copyFrom(fullViewingKey.getNk()));
+      } catch (ZksnarkException e) {
+        CompletableFuture<Boolean> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+        return failed;
+      }
+      builder.setNote(toNote(noteInfo));
+      builder.setTxid(ByteString.copyFrom(ByteArray.fromHexString(noteInfo.getTrxId())));
+      builder.setIndex(noteInfo.getIndex());
+      return rpcClient().isNoteSpend(builder.build()).thenApply(SpendResult::getResult);
+    }
+
+    @Override
+    public void collectNullifiers(Transaction transaction, Consumer<byte[]> sink) {
+      for (Contract contract : transaction.getRawData().getContractList()) {
+        if (contract.getType() != ContractType.ShieldedTransferContract) {
+          continue;
+        }
+        try {
+          ShieldedTransferContract transfer =
+              contract.getParameter().unpack(ShieldedTransferContract.class);
+          for (SpendDescription spend : transfer.getSpendDescriptionList()) {
+            sink.accept(spend.getNullifier().toByteArray());
+          }
+        } catch (InvalidProtocolBufferException e) {
+          // not a shielded transfer after all
+        }
+      }
+    }
 
+    private Note toNote(ShieldedNoteInfo noteInfo) {
       Note.Builder noteBuild = Note.newBuilder();
       noteBuild.setPaymentAddress(noteInfo.getPaymentAddress());
       noteBuild.setValue(noteInfo.getValue());
       noteBuild.setRcm(ByteString.copyFrom(noteInfo.getR()));
       noteBuild.setMemo(ByteString.copyFrom(noteInfo.getMemo()));
-      builder.setNote(noteBuild.build());
-      builder.setTxid(ByteString.copyFrom(ByteArray.fromHexString(noteInfo.getTrxId())));
-      builder.setIndex(noteInfo.getIndex());
-
-      Optional<SpendResult> result = WalletApi.isNoteSpend(builder.build(), false);
-      if (result.isPresent() && result.get().getResult()) {
-        spendNote(entry.getKey());
-      }
+      return noteBuild.build();
     }
   }
 
@@ -236,14 +529,17 @@ public class ShieldedWrapper {
    * @param noteIndex
    * @return
    */
-  public boolean spendNote(long noteIndex ) throws CipherException {
+  public boolean spendNote(long noteIndex ) throws CipherException, IOException {
     ShieldedNoteInfo noteInfo = utxoMapNote.get(noteIndex);
     if (noteInfo != null) {
       utxoMapNote.remove(noteIndex);
-      spendUtxoList.add(noteInfo);
-
-      saveUnspendNoteToFile();
-      saveSpendNoteToFile(noteInfo);
+      utxoIndex.remove(noteIndex);
+      walletStore.putSpentNote(noteIndex, noteInfo.getPaymentAddress(),
+          noteInfo.encode(shieldedSkey));
+      if (witnessTracker != null && witnessTracker.forget(noteIndex)) {
+        walletStore.removeWitness(noteIndex);
+      }
+      walletStore.sync();
     } else {
       System.err.println("Find note failure. index:" + noteIndex);
     }
@@ -278,7 +574,7 @@ public class ShieldedWrapper {
   }
 
   /**
-   * append ivk and block num relationship to file tail
+   * save the block num scanning of an ivk continues from
    * @param ivk
    * @param blockNum
    * @return
@@ -288,25 +584,17 @@ public class ShieldedWrapper {
       return false;
     }
 
-    synchronized (IVK_AND_NUM_FILE_NAME) {
-      byte[] value = ByteArray.fromLong(blockNum);
-      byte[] key = ByteArray.fromHexString(ivk);
-      byte[] text = new byte[key.length + value.length];
-      System.arraycopy(key, 0, text, 0, key.length);
-      System.arraycopy(value, 0, text, key.length, value.length);
-      try {
-        byte[] cipherText = ZenUtils.aesCtrEncrypt(text, shieldedSkey);
-        String date = Base58.encode(cipherText);
-        ZenUtils.appendToFileTail(IVK_AND_NUM_FILE_NAME, date);
-      } catch (CipherException e) {
-        e.printStackTrace();
-      }
+    try {
+      walletStore.putScanBlockNum(ivk, blockNum);
+      walletStore.sync();
+    } catch (CipherException | IOException e) {
+      e.printStackTrace();
     }
     return true;
   }
 
   /**
-   * update ivk and block num
+   * save the block nums of all ivks that moved
    * @return
    */
   private boolean updateIvkAndBlockNumFile() {
@@ -314,50 +602,28 @@ public class ShieldedWrapper {
       return false;
     }
 
-    synchronized (IVK_AND_NUM_FILE_NAME) {
-      ZenUtils.clearFile(IVK_AND_NUM_FILE_NAME);
+    try {
       for (Entry<String, Long> entry : ivkMapScanBlockNum.entrySet()) {
-        byte[] value = ByteArray.fromLong(entry.getValue());
-        byte[] key = ByteArray.fromHexString(entry.getKey());
-        byte[] text = new byte[key.length + value.length];
-        System.arraycopy(key, 0, text, 0, key.length);
-        System.arraycopy(value, 0, text, key.length, value.length);
-        try {
-          byte[] cipherText = ZenUtils.aesCtrEncrypt(text, shieldedSkey);
-          String date = Base58.encode(cipherText);
-          ZenUtils.appendToFileTail(IVK_AND_NUM_FILE_NAME, date);
-        } catch (CipherException e) {
-          e.printStackTrace();
-        }
+        walletStore.putScanBlockNum(entry.getKey(), entry.getValue());
       }
+      walletStore.sync();
+    } catch (CipherException | IOException e) {
+      e.printStackTrace();
     }
     return true;
   }
 
   /**
-   * load ivk and block num relationship from file
+   * load ivk and block num relationship
    * @return
    */
-  private boolean loadIvkFromFile() {
+  private boolean loadIvkFromFile() throws CipherException, IOException {
     if (ArrayUtils.isEmpty(shieldedSkey)) {
       return false;
     }
 
     ivkMapScanBlockNum.clear();
-    if (ZenUtils.checkFileExist(IVK_AND_NUM_FILE_NAME)) {
-      List<String> list = ZenUtils.getListFromFile(IVK_AND_NUM_FILE_NAME);
-      for (int i = 0; i < list.size(); ++i) {
-        byte[] cipherText = Base58.decode(list.get(i));
-        try {
-          byte[] text = ZenUtils.aesCtrDecrypt(cipherText, shieldedSkey);
-          byte[] key = Arrays.copyOfRange(text, 0, 32);
-          byte[] value = Arrays.copyOfRange(text, 32, text.length);
-          ivkMapScanBlockNum.put(ByteArray.toHexString(key), ByteArray.toLong(value));
-        } catch (CipherException e) {
-          e.printStackTrace();
-        }
-      }
-    }
+    ivkMapScanBlockNum.putAll(walletStore.loadScanBlockNums());
     return true;
   }
 
@@ -378,112 +644,80 @@ public class ShieldedWrapper {
    * @return
    */
   public List<String> getvalidateSortUtxoList() {
-    List<Map.Entry<Long, ShieldedNoteInfo>> list = new ArrayList<>(utxoMapNote.entrySet());
-    Collections.sort(list, (Entry<Long, ShieldedNoteInfo> o1, Entry<Long, ShieldedNoteInfo> o2) -> {
-        if (o1.getValue().getValue() < o2.getValue().getValue()) {
-          return 1;
-        } else {
-          return -1;
-        }
-      });
-
     List<String> utxoList = new ArrayList<>();
-    for (Map.Entry<Long, ShieldedNoteInfo> entry : list ) {
-      String string = entry.getKey() + " " + entry.getValue().getPaymentAddress() + " ";
-      string += entry.getValue().getValue();
-      string += " ";
-      string += entry.getValue().getTrxId();
-      string += " ";
-      string += entry.getValue().getIndex();
-      string += " ";
-      string += "UnSpend";
-      string += " ";
-      string += ZenUtils.getMemo(entry.getValue().getMemo());
-      utxoList.add(string);
+    for (Map.Entry<Long, ShieldedNoteInfo> entry : utxoIndex.descending()) {
+      StringBuilder builder = new StringBuilder();
+      builder.append(entry.getKey()).append(' ')
+          .append(entry.getValue().getPaymentAddress()).append(' ')
+          .append(entry.getValue().getValue()).append(' ')
+          .append(entry.getValue().getTrxId()).append(' ')
+          .append(entry.getValue().getIndex()).append(' ')
+          .append("UnSpend").append(' ')
+          .append(ZenUtils.getMemo(entry.getValue().getMemo()));
+      utxoList.add(builder.toString());
     }
     return utxoList;
   }
 
   /**
-   * update unspend note
-   * @return
+   * Chooses at most {@code maxInputs} unspent notes of one payment address worth at least
+   * {@code amount}, see {@link UtxoIndex#select}.
    */
-  private boolean saveUnspendNoteToFile() throws CipherException {
-    if (ArrayUtils.isEmpty(shieldedSkey)){
-      return false;
-    }
-
-    ZenUtils.clearFile(UNSPEND_NOTE_FILE_NAME);
-    for (Entry<Long, ShieldedNoteInfo> entry : utxoMapNote.entrySet()) {
-      String date = entry.getValue().encode(shieldedSkey);
-      ZenUtils.appendToFileTail(UNSPEND_NOTE_FILE_NAME, date);
-    }
-    return true;
+  public List<Long> selectNotes(String paymentAddress, long amount, UtxoIndex.Strategy strategy,
+      int maxInputs) {
+    return utxoIndex.select(paymentAddress, amount, strategy, maxInputs);
   }
 
   /**
-   * load unspend note from file
+   * load unspend note
    * @return
    */
-  private boolean loadUnSpendNoteFromFile() throws CipherException {
+  private boolean loadUnSpendNoteFromFile() throws CipherException, IOException {
     if (ArrayUtils.isEmpty(shieldedSkey)) {
       return false;
     }
     utxoMapNote.clear();
+    utxoIndex.clear();
 
-    if (ZenUtils.checkFileExist(UNSPEND_NOTE_FILE_NAME)) {
-      List<String> list = ZenUtils.getListFromFile(UNSPEND_NOTE_FILE_NAME);
-      for (int i = 0; i < list.size(); ++i) {
-        ShieldedNoteInfo noteInfo = new ShieldedNoteInfo();
-        noteInfo.decode(list.get(i), shieldedSkey);
-        utxoMapNote.put(noteInfo.getNoteIndex(), noteInfo);
+    for (String encodedNote : walletStore.loadUnspentNotes()) {
+      ShieldedNoteInfo noteInfo = new ShieldedNoteInfo();
+      noteInfo.decode(encodedNote, shieldedSkey);
+      utxoMapNote.put(noteInfo.getNoteIndex(), noteInfo);
+      utxoIndex.add(noteInfo.getNoteIndex(), noteInfo);
 
-        if (noteInfo.getNoteIndex() >= nodeIndex.get()) {
-          nodeIndex.set(noteInfo.getNoteIndex() + 1);
-        }
+      if (noteInfo.getNoteIndex() >= nodeIndex.get()) {
+        nodeIndex.set(noteInfo.getNoteIndex() + 1);
       }
     }
     return true;
   }
 
-
   /**
-   * append spend note to file tail
-   * @return
+   * Returns the spent notes, decrypting them now.
    */
-  private boolean saveSpendNoteToFile(ShieldedNoteInfo noteInfo) throws CipherException {
-    if (ArrayUtils.isEmpty(shieldedSkey)){
-      return false;
-    }
-
-    String date = noteInfo.encode(shieldedSkey);
-    ZenUtils.appendToFileTail(SPEND_NOTE_FILE_NAME, date);
-    return true;
+  public List<ShieldedNoteInfo> getSpendUtxoList() {
+    return getSpendNotes(0, Integer.MAX_VALUE);
   }
 
   /**
-   * load spend note from file
-   * @return
+   * Returns up to {@code limit} spent notes, from note index {@code fromNoteIndex} on, in order,
+   * decrypting only those.
    */
-  private boolean loadSpendNoteFromFile() throws CipherException {
-    if (ArrayUtils.isEmpty(shieldedSkey)){
-      return false;
+  public List<ShieldedNoteInfo> getSpendNotes(long fromNoteIndex, int limit) {
+    List<ShieldedNoteInfo> notes = new ArrayList<>();
+    if (walletStore == null) {
+      return notes;
     }
-
-    spendUtxoList.clear();
-    if (ZenUtils.checkFileExist(SPEND_NOTE_FILE_NAME)) {
-      List<String> list = ZenUtils.getListFromFile(SPEND_NOTE_FILE_NAME);
-      for (int i = 0; i < list.size(); ++i) {
+    try {
+      for (String encodedNote : walletStore.loadSpentNotes(fromNoteIndex, limit)) {
         ShieldedNoteInfo noteInfo = new ShieldedNoteInfo();
-        noteInfo.decode(list.get(i), shieldedSkey);
-        spendUtxoList.add(noteInfo);
-
-        if (noteInfo.getNoteIndex() >= nodeIndex.get()) {
-          nodeIndex.set(noteInfo.getNoteIndex() + 1);
-        }
+        noteInfo.decode(encodedNote, shieldedSkey);
+        notes.add(noteInfo);
       }
+    } catch (CipherException | IOException e) {
+      e.printStackTrace();
     }
-    return true;
+    return notes;
   }
 
   /**
@@ -0,0 +1,186 @@
+package org.tron.core.zen;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * The unspent notes of a shielded wallet ordered by value, kept up to date as notes are found and
+ * spent, to list them by value and to choose the notes a transfer spends without sorting.
+ *
+ * <p>Notes are ordered by value and then note index, in one set over all notes and one per
+ * payment address, since the notes a transfer spends must share an address. Adding or removing a
+ * note and every selection take O(log n), plus O(1) for each note selected.
+ */
+public class UtxoIndex<N> {
+
+  public enum Strategy {
+    /**
+     * The largest notes first.
+     */
+    LARGEST_FIRST,
+    /**
+     * The note that covers the amount with the least change, or the notes of
+     * {@link #MINIMAL_INPUTS} if none does alone.
+     */
+    BEST_FIT,
+    /**
+     * As few notes as possible, the last being the smallest one that still covers the rest.
+     */
+    MINIMAL_INPUTS
+  }
+
+  private final Comparator<Entry> order = Comparator.<Entry>comparingLong(e -> e.value)
+      .thenComparingLong(e -> e.noteIndex);
+  private final ToLongFunction<N> value;
+  private final Function<N, String> paymentAddress;
+  private final Map<Long, Entry> entries = new HashMap<>();
+  private final TreeSet<Entry> all = new TreeSet<>(order);
+  private final Map<String, TreeSet<Entry>> byAddress = new HashMap<>();
+
+  public UtxoIndex(ToLongFunction<N> value, Function<N, String> paymentAddress) {
+    this.value = value;
+    this.paymentAddress = paymentAddress;
+  }
+
+  public synchronized void add(long noteIndex, N note) {
+    remove(noteIndex);
+    Entry entry = new Entry(noteIndex, value.applyAsLong(note), paymentAddress.apply(note), note);
+    entries.put(noteIndex, entry);
+    all.add(entry);
+    byAddress.computeIfAbsent(entry.paymentAddress, k -> new TreeSet<>(order)).add(entry);
+  }
+
+  public synchronized void remove(long noteIndex) {
+    Entry entry = entries.remove(noteIndex);
+    if (entry == null) {
+      return;
+    }
+    all.remove(entry);
+    TreeSet<Entry> notes = byAddress.get(entry.paymentAddress);
+    notes.remove(entry);
+    if (notes.isEmpty()) {
+      byAddress.remove(entry.paymentAddress);
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    all.clear();
+    byAddress.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the note indexes and notes from the largest value to the smallest.
+   */
+  public synchronized List<Map.Entry<Long, N>> descending() {
+    List<Map.Entry<Long, N>> notes = new ArrayList<>(all.size());
+    for (Entry entry : all.descendingSet()) {
+      notes.add(new SimpleImmutableEntry<>(entry.noteIndex, entry.note));
+    }
+    return notes;
+  }
+
+  /**
+   * Chooses at most {@code maxInputs} notes of one payment address whose values add up to at
+   * least {@code amount}.
+   *
+   * @param paymentAddress the address to spend from, or null for whichever address needs the
+   * fewest notes, then leaves the least change
+   * @return the note indexes, or an empty list if no address has enough
+   */
+  public synchronized List<Long> select(String paymentAddress, long amount, Strategy strategy,
+      int maxInputs) {
+    if (paymentAddress != null) {
+      TreeSet<Entry> notes = byAddress.get(paymentAddress);
+      return notes == null ? Collections.emptyList() : select(notes, amount, strategy, maxInputs);
+    }
+    List<Long> best = Collections.emptyList();
+    long bestChange = 0;
+    for (TreeSet<Entry> notes : byAddress.values()) {
+      List<Long> selected = select(notes, amount, strategy, maxInputs);
+      if (selected.isEmpty()) {
+        continue;
+      }
+      long change = total(selected) - amount;
+      if (best.isEmpty() || selected.size() < best.size()
+          || selected.size() == best.size() && change < bestChange) {
+        best = selected;
+        bestChange = change;
+      }
+    }
+    return best;
+  }
+
+  private List<Long> select(TreeSet<Entry> notes, long amount, Strategy strategy,
+      int maxInputs) {
+    if (strategy == Strategy.BEST_FIT) {
+      Entry single = notes.ceiling(new Entry(Long.MIN_VALUE, amount, null, null));
+      if (single != null) {
+        return Collections.singletonList(single.noteIndex);
+      }
+    }
+    List<Entry> selected = new ArrayList<>();
+    long total = 0;
+    Iterator<Entry> largest = notes.descendingIterator();
+    while (total < amount && selected.size() < maxInputs && largest.hasNext()) {
+      Entry entry = largest.next();
+      selected.add(entry);
+      total += entry.value;
+    }
+    if (total < amount) {
+      return Collections.emptyList();
+    }
+    if (strategy != Strategy.LARGEST_FIRST && !selected.isEmpty()) {
+      // the notes left are all smaller than the last one, take the smallest that still covers
+      Entry last = selected.get(selected.size() - 1);
+      long rest = amount - (total - last.value);
+      NavigableSet<Entry> smaller = notes.headSet(last, false);
+      Entry fit = smaller.ceiling(new Entry(Long.MIN_VALUE, rest, null, null));
+      if (fit != null) {
+        selected.set(selected.size() - 1, fit);
+      }
+    }
+    List<Long> noteIndexes = new ArrayList<>(selected.size());
+    for (Entry entry : selected) {
+      noteIndexes.add(entry.noteIndex);
+    }
+    return noteIndexes;
+  }
+
+  private long total(List<Long> noteIndexes) {
+    long total = 0;
+    for (long noteIndex : noteIndexes) {
+      total += entries.get(noteIndex).value;
+    }
+    return total;
+  }
+
+  private class Entry {
+
+    private final long noteIndex;
+    private final long value;
+    private final String paymentAddress;
+    private final N note;
+
+    Entry(long noteIndex, long value, String paymentAddress, N note) {
+      this.noteIndex = noteIndex;
+      this.value = value;
+      this.paymentAddress = paymentAddress;
+      this.note = note;
+    }
+  }
+}
@@ -0,0 +1,267 @@
+package org.tron.keystore;
+
+import com.typesafe.config.Config;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.common.crypto.ECKey;
+import org.tron.common.crypto.SignInterface;
+import org.tron.common.crypto.sm2.SM2;
+import org.tron.core.config.Configuration;
+import org.tron.core.exception.CipherException;
+
+/**
+ * Keeps the private keys of unlocked keystores in memory, so that signing and checking the
+ * password again do not run the scrypt derivation again.
+ *
+ * <p>A keystore is unlocked by the first {@link #checkPassword} of it, which decrypts it once.
+ * Its private key, and a keyed digest of its password to check the password against later, are
+ * kept in direct buffers outside the Java heap, where the garbage collector does not copy them,
+ * and are overwritten with zeros when the key is locked: after {@code idleTimeoutSeconds} without
+ * use, after {@code maxUses} uses, on {@link #lockAll} and on exit. As with
+ * {@link SigningSession}, the key object built for each use holds an immutable scalar that cannot
+ * be wiped.
+ */
+@Slf4j
+public class KeyAgent {
+
+  private static boolean enabled = false;
+  private static long idleTimeoutMillis = TimeUnit.MINUTES.toMillis(5);
+  private static int maxUses = 100;
+  private static boolean isEckey = true;
+
+  static {
+    Config config = Configuration.getByPath("config.conf");
+    if (config.hasPath("keyAgent.enable")) {
+      enabled = config.getBoolean("keyAgent.enable");
+    }
+    if (config.hasPath("keyAgent.idleTimeoutSeconds")) {
+      idleTimeoutMillis = TimeUnit.SECONDS.toMillis(
+          Math.max(1, config.getLong("keyAgent.idleTimeoutSeconds")));
+    }
+    if (config.hasPath("keyAgent.maxUses")) {
+      maxUses = Math.max(1, config.getInt("keyAgent.maxUses"));
+    }
+    if (config.hasPath("crypto.engine")) {
+      isEckey = config.getString("crypto.engine").equalsIgnoreCase("eckey");
+    }
+  }
+
+  private static KeyAgent instance;
+
+  /**
+   * Whether unlocked keys are kept.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static synchronized KeyAgent getInstance() {
+    if (instance == null) {
+      instance = new KeyAgent(idleTimeoutMillis, maxUses);
+      instance.startSweeper();
+      Runtime.getRuntime().addShutdownHook(new Thread(instance::lockAll, "key-agent-wipe"));
+    }
+    return instance;
+  }
+
+  private final long idleTimeout;
+  private final int usesAllowed;
+  private final byte[] digestKey = Wallet.generateRandomBytes(32);
+  // by keystore address
+  private final Map<String, UnlockedKey> keys = new HashMap<>();
+
+  KeyAgent(long idleTimeoutMillis, int maxUses) {
+    this.idleTimeout = idleTimeoutMillis;
+    this.usesAllowed = maxUses;
+  }
+
+  private void startSweeper() {
+    ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "key-agent-sweeper");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long period = Math.max(100, Math.min(idleTimeout / 4, 1000));
+    sweeper.scheduleWithFixedDelay(this::lockIdle, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Checks the password of a keystore, decrypting and unlocking it unless it already is.
+   *
+   * @throws CipherException if the password is wrong
+   */
+  public boolean checkPassword(WalletFile walletFile, byte[] password) throws CipherException {
+    byte[] verifier = verifier(password);
+    try {
+      synchronized (this) {
+        UnlockedKey key = unlocked(walletFile);
+        if (key != null) {
+          if (!key.matches(verifier)) {
+            throw new CipherException("Invalid password provided");
+          }
+          return true;
+        }
+      }
+      byte[] privateKey = Wallet.decrypt2PrivateBytes(password, walletFile);
+      try {
+        synchronized (this) {
+          UnlockedKey old = keys.put(walletFile.getAddress(),
+              new UnlockedKey(privateKey, verifier));
+          if (old != null) {
+            old.wipe();
+          }
+        }
+      } finally {
+        StringUtils.clear(privateKey);
+      }
+      return true;
+    } finally {
+      StringUtils.clear(verifier);
+    }
+  }
+
+  public synchronized boolean isUnlocked(WalletFile walletFile) {
+    return unlocked(walletFile) != null;
+  }
+
+  /**
+   * Signs, or does anything else, with the key of an unlocked keystore, counting one use.
+   *
+   * @return empty if the keystore is not unlocked
+   */
+  public <T> Optional<T> withKey(WalletFile walletFile, Function<SignInterface, T> operation) {
+    return withPrivateKey(walletFile, privateKey -> operation.apply(
+        isEckey ? ECKey.fromPrivate(privateKey) : SM2.fromPrivate(privateKey)));
+  }
+
+  /**
+   * Hands the private key of an unlocked keystore to {@code operation}, counting one use. The
+   * bytes are wiped when it returns.
+   *
+   * @return empty if the keystore is not unlocked
+   */
+  public <T> Optional<T> withPrivateKey(WalletFile walletFile, Function<byte[], T> operation) {
+    byte[] privateKey;
+    synchronized (this) {
+      UnlockedKey key = unlocked(walletFile);
+      if (key == null) {
+        return Optional.empty();
+      }
+      privateKey = key.use();
+      if (key.uses >= usesAllowed) {
+        logger.info("Locking {} after {} uses", walletFile.getAddress(), key.uses);
+        lock(walletFile.getAddress());
+      }
+    }
+    try {
+      return Optional.ofNullable(operation.apply(privateKey));
+    } finally {
+      StringUtils.clear(privateKey);
+    }
+  }
+
+  public synchronized void lock(String address) {
+    UnlockedKey key = keys.remove(address);
+    if (key != null) {
+      key.wipe();
+    }
+  }
+
+  public synchronized void lockAll() {
+    for (UnlockedKey key : keys.values()) {
+      key.wipe();
+    }
+    keys.clear();
+  }
+
+  synchronized void lockIdle() {
+    long now = System.nanoTime();
+    Iterator<Map.Entry<String, UnlockedKey>> iterator = keys.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, UnlockedKey> entry = iterator.next();
+      if (now - entry.getValue().lastUsedNanos >= TimeUnit.MILLISECONDS.toNanos(idleTimeout)) {
+        logger.info("Locking {} after being idle", entry.getKey());
+        entry.getValue().wipe();
+        iterator.remove();
+      }
+    }
+  }
+
+  private UnlockedKey unlocked(WalletFile walletFile) {
+    UnlockedKey key = keys.get(walletFile.getAddress());
+    if (key != null && System.nanoTime() - key.lastUsedNanos
+        >= TimeUnit.MILLISECONDS.toNanos(idleTimeout)) {
+      lock(walletFile.getAddress());
+      return null;
+    }
+    return key;
+  }
+
+  private byte[] verifier(byte[] password) throws CipherException {
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(digestKey, "HmacSHA256"));
+      return mac.doFinal(password);
+    } catch (Exception e) {
+      throw new CipherException("Failed to digest the password", e);
+    }
+  }
+
+  private static class UnlockedKey {
+
+    private final ByteBuffer privateKey;
+    private final ByteBuffer verifier;
+    private long lastUsedNanos = System.nanoTime();
+    private int uses;
+
+    UnlockedKey(byte[] privateKey, byte[] verifier) {
+      this.privateKey = ByteBuffer.allocateDirect(privateKey.length);
+      this.privateKey.put(privateKey, 0, privateKey.length);
+      this.verifier = ByteBuffer.allocateDirect(verifier.length);
+      this.verifier.put(verifier, 0, verifier.length);
+    }
+
+    byte[] use() {
+      uses++;
+      lastUsedNanos = System.nanoTime();
+      byte[] bytes = new byte[privateKey.capacity()];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = privateKey.get(i);
+      }
+      return bytes;
+    }
+
+    boolean matches(byte[] digest) {
+      byte[] expected = new byte[verifier.capacity()];
+      for (int i = 0; i < expected.length; i++) {
+        expected[i] = verifier.get(i);
+      }
+      lastUsedNanos = System.nanoTime();
+      try {
+        return MessageDigest.isEqual(expected, digest);
+      } finally {
+        StringUtils.clear(expected);
+      }
+    }
+
+    void wipe() {
+      for (int i = 0; i < privateKey.capacity(); i++) {
+        privateKey.put(i, (byte) 0);
+      }
+      for (int i = 0; i < verifier.capacity(); i++) {
+        verifier.put(i, (byte) 0);
+      }
+    }
+  }
+}
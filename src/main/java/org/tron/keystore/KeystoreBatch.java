@@ -0,0 +1,535 @@
+package org.tron.keystore;
+
+import com.typesafe.config.Config;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.common.crypto.ECKey;
+import org.tron.common.crypto.SignInterface;
+import org.tron.common.crypto.sm2.SM2;
+import org.tron.core.config.Configuration;
+import org.tron.core.exception.CipherException;
+import org.tron.walletserver.WalletApi;
+
+/**
+ * Validates, re-encrypts, migrates and imports many keystores at once.
+ *
+ * <p>Keystores are worked on in parallel on {@code threads} threads, but scrypt needs
+ * {@code 128 * r * N} bytes per derivation, 256 MB for a standard keystore, so each keystore
+ * first reserves the memory its derivations need out of a budget of {@code memoryBytes}, and
+ * waits while the budget is used up. Light keystores thus run on every thread, while only a few
+ * standard ones run at a time. A keystore that needs more than the whole budget runs alone.
+ *
+ * <p>Rewritten and imported keystores are written through a synced temporary file and renamed into
+ * place, so that an interrupted batch leaves every keystore either old or new. A failing keystore
+ * does not stop the batch; it is reported in the {@link Report} with its error.
+ */
+@Slf4j
+public class KeystoreBatch {
+
+  private static final long KIB = 1024;
+  // besides the scrypt buffers: the key, its JSON and the cipher
+  private static final long BASE_COST = 64 * KIB;
+
+  private static int threads = Runtime.getRuntime().availableProcessors();
+  private static long memoryBytes = Runtime.getRuntime().maxMemory() / 2;
+  private static long progressMillis = 1000;
+  private static boolean isEckey = true;
+
+  static {
+    Config config = Configuration.getByPath("config.conf");
+    if (config.hasPath("keystoreBatch.threads")) {
+      threads = Math.max(1, config.getInt("keystoreBatch.threads"));
+    }
+    if (config.hasPath("keystoreBatch.memoryBytes")) {
+      memoryBytes = Math.max(KIB, config.getBytes("keystoreBatch.memoryBytes"));
+    }
+    if (config.hasPath("keystoreBatch.progressMillis")) {
+      progressMillis = Math.max(0, config.getLong("keystoreBatch.progressMillis"));
+    }
+    if (config.hasPath("crypto.engine")) {
+      isEckey = config.getString("crypto.engine").equalsIgnoreCase("eckey");
+    }
+  }
+
+  /**
+   * A batch with the configured threads and memory budget.
+   */
+  public static KeystoreBatch create() {
+    return new KeystoreBatch(threads, memoryBytes);
+  }
+
+  private final int threadCount;
+  private final int budgetKib;
+  private final Semaphore memory;
+  private ProgressListener listener = report -> { };
+
+  KeystoreBatch(int threads, long memoryBytes) {
+    this.threadCount = threads;
+    this.budgetKib = (int) Math.min(Integer.MAX_VALUE, Math.max(1, memoryBytes / KIB));
+    this.memory = new Semaphore(budgetKib, true);
+  }
+
+  /**
+   * Called with the report so far at most every {@code progressMillis}, and when done.
+   */
+  public KeystoreBatch onProgress(ProgressListener listener) {
+    this.listener = listener;
+    return this;
+  }
+
+  /**
+   * Checks that {@code password} decrypts every keystore, to the key of its address.
+   */
+  public Report validate(List<File> files, byte[] password) {
+    List<Job> jobs = new ArrayList<>();
+    for (File file : files) {
+      jobs.add(new FileJob(file) {
+        @Override
+        long costOfLoaded() {
+          return Kdf.of(walletFile).memoryCost();
+        }
+
+        @Override
+        String run() throws CipherException {
+          decrypt(walletFile, password, key -> null);
+          return walletFile.getAddress();
+        }
+      });
+    }
+    return run("validate", jobs);
+  }
+
+  /**
+   * Encrypts every keystore again, with {@code newPassword} and {@code kdf}, or the KDF it already
+   * has with {@link Kdf#KEEP}.
+   */
+  public Report reencrypt(List<File> files, byte[] oldPassword, byte[] newPassword, Kdf kdf) {
+    List<Job> jobs = new ArrayList<>();
+    for (File file : files) {
+      jobs.add(new FileJob(file) {
+        @Override
+        long costOfLoaded() {
+          return Math.max(Kdf.of(walletFile).memoryCost(), target().memoryCost());
+        }
+
+        @Override
+        String run() throws CipherException, IOException {
+          WalletFile encrypted = decrypt(walletFile, oldPassword,
+              key -> target().encrypt(newPassword, key));
+          encrypted.setId(walletFile.getId());
+          WalletUtils.writeWalletFileAtomically(encrypted, file);
+          KeystoreIndex.written(file);
+          if (KeyAgent.isEnabled()) {
+            // its verifier is of the old password
+            KeyAgent.getInstance().lock(walletFile.getAddress());
+          }
+          return walletFile.getAddress();
+        }
+
+        private Kdf target() {
+          return kdf == Kdf.KEEP ? Kdf.of(walletFile) : kdf;
+        }
+      });
+    }
+    return run(kdf == Kdf.KEEP ? "re-encrypt" : "re-encrypt to " + kdf, jobs);
+  }
+
+  /**
+   * Moves every keystore to {@code kdf}, keeping its password.
+   */
+  public Report migrate(List<File> files, byte[] password, Kdf kdf) {
+    return reencrypt(files, password, password, kdf);
+  }
+
+  /**
+   * Writes a keystore for each private key into {@code directory}; keys that already have one
+   * there fail. The keys are read while the batch runs; clear them once it returns.
+   */
+  public Report importKeys(List<byte[]> privateKeys, byte[] password, Kdf kdf, File directory) {
+    if (kdf == Kdf.KEEP) {
+      throw new IllegalArgumentException("Imported keystores need a KDF");
+    }
+    Set<String> addresses = ConcurrentHashMap.newKeySet();
+    File[] existing = directory.listFiles((dir, name) -> name.endsWith(".json"));
+    for (File file : existing == null ? new File[0] : existing) {
+      String name = file.getName();
+      addresses.add(name.substring(name.lastIndexOf('-') + 1, name.length() - ".json".length()));
+    }
+    List<Job> jobs = new ArrayList<>();
+    for (int i = 0; i < privateKeys.size(); i++) {
+      byte[] privateKey = privateKeys.get(i);
+      String name = "key " + (i + 1);
+      jobs.add(new Job() {
+        @Override
+        String name() {
+          return name;
+        }
+
+        @Override
+        long cost() {
+          return kdf.memoryCost();
+        }
+
+        @Override
+        String run() throws CipherException, IOException {
+          SignInterface key = isEckey ? ECKey.fromPrivate(privateKey)
+              : SM2.fromPrivate(privateKey);
+          String address = WalletApi.encode58Check(key.getAddress());
+          if (!addresses.add(address)) {
+            throw new CipherException(address + " already has a keystore");
+          }
+          WalletFile walletFile = kdf.encrypt(password, key);
+          File file = new File(directory, WalletUtils.getWalletFileName(walletFile));
+          try {
+            WalletUtils.writeWalletFileAtomically(walletFile, file);
+          } catch (IOException e) {
+            addresses.remove(address);
+            throw e;
+          }
+          KeystoreIndex.written(file);
+          return address;
+        }
+      });
+    }
+    return run("import", jobs);
+  }
+
+  private static <T> T decrypt(WalletFile walletFile, byte[] password, KeyOperation<T> operation)
+      throws CipherException {
+    byte[] privateKey = Wallet.decrypt2PrivateBytes(password, walletFile);
+    try {
+      SignInterface key = isEckey ? ECKey.fromPrivate(privateKey) : SM2.fromPrivate(privateKey);
+      if (!WalletApi.encode58Check(key.getAddress()).equals(walletFile.getAddress())) {
+        throw new CipherException("The key does not belong to " + walletFile.getAddress());
+      }
+      return operation.apply(key);
+    } finally {
+      StringUtils.clear(privateKey);
+    }
+  }
+
+  private Report run(String operation, List<Job> jobs) {
+    Report report = new Report(operation, jobs.size());
+    AtomicLong lastProgress = new AtomicLong(System.nanoTime());
+    AtomicInteger count = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(threadCount, jobs.size())), r -> {
+          Thread thread = new Thread(r, "keystore-batch-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (Job job : jobs) {
+        futures.add(executor.submit(() -> {
+          report.add(runJob(job));
+          long last = lastProgress.get();
+          long now = System.nanoTime();
+          if (now - last >= TimeUnit.MILLISECONDS.toNanos(progressMillis)
+              && lastProgress.compareAndSet(last, now)) {
+            listener.onProgress(report);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      logger.error("Keystore batch task failed", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    report.finish();
+    listener.onProgress(report);
+    return report;
+  }
+
+  private Result runJob(Job job) {
+    long start = System.nanoTime();
+    int permits;
+    try {
+      permits = (int) Math.min(budgetKib, Math.max(1, (job.cost() + KIB - 1) / KIB));
+    } catch (Exception e) {
+      return new Result(job.name(), null, e.getMessage(), System.nanoTime() - start);
+    }
+    try {
+      memory.acquire(permits);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new Result(job.name(), null, "interrupted", System.nanoTime() - start);
+    }
+    long started = System.nanoTime();
+    try {
+      String address = job.run();
+      return new Result(job.name(), address, null, System.nanoTime() - started);
+    } catch (Exception e) {
+      logger.debug("{} failed", job.name(), e);
+      return new Result(job.name(), null, e.getMessage(), System.nanoTime() - started);
+    } finally {
+      memory.release(permits);
+    }
+  }
+
+  /**
+   * How keystores are encrypted.
+   */
+  public static final class Kdf {
+
+    /**
+     * Whatever the keystore already uses.
+     */
+    public static final Kdf KEEP = new Kdf(null, 0, 0, 0);
+    public static final Kdf STANDARD = scrypt(Wallet.N_STANDARD, Wallet.P_STANDARD);
+    public static final Kdf LIGHT = scrypt(Wallet.N_LIGHT, Wallet.P_LIGHT);
+
+    private final String name;
+    private final int n;
+    private final int r;
+    private final int p;
+
+    private Kdf(String name, int n, int r, int p) {
+      this.name = name;
+      this.n = n;
+      this.r = r;
+      this.p = p;
+    }
+
+    public static Kdf scrypt(int n, int p) {
+      if (n < 2 || (n & (n - 1)) != 0 || p < 1) {
+        throw new IllegalArgumentException("scrypt needs N a power of 2 and p >= 1");
+      }
+      return new Kdf(Wallet.SCRYPT, n, 8, p);
+    }
+
+    public static Kdf pbkdf2(int c) {
+      if (c < 1) {
+        throw new IllegalArgumentException("pbkdf2 needs c >= 1");
+      }
+      return new Kdf(Wallet.AES_128_CTR, c, 0, 0);
+    }
+
+    static Kdf of(WalletFile walletFile) {
+      WalletFile.KdfParams params = walletFile.getCrypto().getKdfparams();
+      if (params instanceof WalletFile.ScryptKdfParams) {
+        WalletFile.ScryptKdfParams scrypt = (WalletFile.ScryptKdfParams) params;
+        return new Kdf(Wallet.SCRYPT, scrypt.getN(), scrypt.getR(), scrypt.getP());
+      }
+      return new Kdf(Wallet.AES_128_CTR, ((WalletFile.Aes128CtrKdfParams) params).getC(), 0, 0);
+    }
+
+    long memoryCost() {
+      if (Wallet.SCRYPT.equals(name)) {
+        // the N blocks of V, plus the p blocks of B
+        return 128L * r * ((long) n + p) + BASE_COST;
+      }
+      return BASE_COST;
+    }
+
+    WalletFile encrypt(byte[] password, SignInterface key) throws CipherException {
+      if (Wallet.SCRYPT.equals(name)) {
+        return Wallet.create(password, key, n, p);
+      }
+      return Wallet.createPbkdf2(password, key, n);
+    }
+
+    @Override
+    public String toString() {
+      if (name == null) {
+        return "keep";
+      }
+      return Wallet.SCRYPT.equals(name) ? "scrypt N=" + n + " p=" + p : "pbkdf2 c=" + n;
+    }
+  }
+
+  public interface ProgressListener {
+
+    void onProgress(Report report);
+  }
+
+  /**
+   * What a batch did so far: the outcome and time of every keystore.
+   */
+  public static class Report {
+
+    private final String operation;
+    private final int total;
+    private final List<Result> results = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos;
+
+    Report(String operation, int total) {
+      this.operation = operation;
+      this.total = total;
+    }
+
+    void add(Result result) {
+      results.add(result);
+      if (!result.isOk()) {
+        failed.incrementAndGet();
+      }
+      totalNanos.addAndGet(result.nanos);
+      maxNanos.accumulateAndGet(result.nanos, Math::max);
+    }
+
+    void finish() {
+      endNanos = System.nanoTime();
+    }
+
+    public List<Result> getResults() {
+      synchronized (results) {
+        return new ArrayList<>(results);
+      }
+    }
+
+    public List<Result> getFailures() {
+      List<Result> failures = new ArrayList<>();
+      for (Result result : getResults()) {
+        if (!result.isOk()) {
+          failures.add(result);
+        }
+      }
+      return failures;
+    }
+
+    public int getTotal() {
+      return total;
+    }
+
+    public int getDone() {
+      return results.size();
+    }
+
+    public int getFailed() {
+      return failed.get();
+    }
+
+    public boolean isFinished() {
+      return endNanos != 0;
+    }
+
+    public long getElapsedMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(
+          (isFinished() ? endNanos : System.nanoTime()) - startNanos);
+    }
+
+    @Override
+    public String toString() {
+      int done = getDone();
+      long elapsed = getElapsedMillis();
+      return String.format("%s: %d/%d keystores done, %d failed, in %.1f s (%.1f per second,"
+              + " %.1f ms average, %.1f ms max each)", operation, done, total, failed.get(),
+          elapsed / 1e3, elapsed == 0 ? 0 : done * 1e3 / elapsed,
+          done == 0 ? 0 : totalNanos.get() / 1e6 / done, maxNanos.get() / 1e6);
+    }
+  }
+
+  public static class Result {
+
+    private final String name;
+    private final String address;
+    private final String error;
+    private final long nanos;
+
+    Result(String name, String address, String error, long nanos) {
+      this.name = name;
+      this.address = address;
+      this.error = error;
+      this.nanos = nanos;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getAddress() {
+      return address;
+    }
+
+    /**
+     * Why the keystore failed, null if it did not.
+     */
+    public String getError() {
+      return error;
+    }
+
+    public boolean isOk() {
+      return error == null;
+    }
+
+    public long getMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public String toString() {
+      return isOk() ? name + " " + address + " ok in " + getMillis() + " ms"
+          : name + " failed: " + error;
+    }
+  }
+
+  private abstract static class Job {
+
+    abstract String name();
+
+    /**
+     * The memory {@link #run} needs.
+     */
+    abstract long cost() throws IOException;
+
+    /**
+     * Returns the address of the keystore worked on.
+     */
+    abstract String run() throws Exception;
+  }
+
+  private abstract static class FileJob extends Job {
+
+    final File file;
+    WalletFile walletFile;
+
+    FileJob(File file) {
+      this.file = file;
+    }
+
+    @Override
+    String name() {
+      return file.getName();
+    }
+
+    // loads the keystore for run
+    @Override
+    final long cost() throws IOException {
+      walletFile = WalletUtils.loadWalletFile(file);
+      if (walletFile.getCrypto() == null || walletFile.getCrypto().getKdfparams() == null) {
+        throw new IOException("Not a keystore");
+      }
+      return costOfLoaded();
+    }
+
+    abstract long costOfLoaded();
+  }
+
+  private interface KeyOperation<T> {
+
+    T apply(SignInterface key) throws CipherException;
+  }
+}
@@ -0,0 +1,463 @@
+package org.tron.keystore;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import com.typesafe.config.Config;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.core.config.Configuration;
+import org.tron.walletserver.WalletApi;
+
+/**
+ * The keystores of a directory by address, parsed once.
+ *
+ * <p>The index is read from a sidecar file next to the directory, {@code Wallet.index} for
+ * {@code Wallet}, which holds the name, address, size and modification time of every keystore
+ * file; the keys themselves stay in the keystores. Only files that changed since are parsed again
+ * when it is opened, and the others the first time they are asked for; the parsed keystores are
+ * kept in memory only. After that the directory is watched, and keystores that are written,
+ * replaced or deleted are updated in the index and the sidecar as they change, so that looking a
+ * keystore up by address is a map lookup while its file is unchanged. When it is not watched, the
+ * index is brought up to date whenever the directory changed since, and {@link KeystoreBatch}
+ * reports the keystores it writes.
+ */
+@Slf4j
+public class KeystoreIndex {
+
+  private static final int MAGIC = 0x4b534958;
+  private static final int FORMAT = 2;
+  private static final String SUFFIX = ".json";
+
+  private static boolean enabled = true;
+  private static boolean watch = true;
+
+  static {
+    Config config = Configuration.getByPath("config.conf");
+    if (config.hasPath("keystoreIndex.enable")) {
+      enabled = config.getBoolean("keystoreIndex.enable");
+    }
+    if (config.hasPath("keystoreIndex.watch")) {
+      watch = config.getBoolean("keystoreIndex.watch");
+    }
+  }
+
+  private static KeystoreIndex instance;
+
+  /**
+   * Whether keystores are looked up in the index instead of listing and parsing the directory.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * The index of the wallet's keystore directory, built on first use.
+   */
+  public static synchronized KeystoreIndex getInstance() {
+    if (instance == null) {
+      instance = new KeystoreIndex(WalletApi.getKeystoreDirectory(), watch);
+      instance.refresh();
+    }
+    return instance;
+  }
+
+  private final File directory;
+  private final File sidecar;
+  private final boolean watching;
+  private long directoryModified;
+  // by file name
+  private final Map<String, Entry> byName = new ConcurrentHashMap<>();
+  private final Map<String, Entry> byAddress = new ConcurrentHashMap<>();
+  private WatchService watchService;
+
+  KeystoreIndex(File directory, boolean watch) {
+    this.directory = directory.getAbsoluteFile();
+    this.sidecar = new File(this.directory.getParentFile(), this.directory.getName() + ".index");
+    this.watching = watch;
+  }
+
+  /**
+   * Updates the index of the keystore directory, if it was built, with a keystore written to
+   * {@code file}.
+   */
+  static void written(File file) {
+    KeystoreIndex index;
+    synchronized (KeystoreIndex.class) {
+      index = instance;
+    }
+    if (index != null && index.directory.equals(file.getAbsoluteFile().getParentFile())) {
+      index.update(file.getName());
+      index.persistQuietly();
+    }
+  }
+
+  /**
+   * The keystore of {@code address}, the newest one if there are several, parsed again only if
+   * its file changed since it was indexed.
+   */
+  public Optional<WalletFile> get(String address) {
+    refreshIfChanged();
+    Entry entry = byAddress.get(address);
+    if (entry == null) {
+      return Optional.empty();
+    }
+    if (entry.walletFile != null && entry.matches(new File(directory, entry.name))) {
+      return Optional.of(entry.walletFile);
+    }
+    // not parsed since the sidecar was read, or deleted or replaced since it was indexed
+    Entry updated = reload(entry);
+    Entry current = byAddress.get(address);
+    if (current == null) {
+      return Optional.empty();
+    }
+    return current == updated ? Optional.of(updated.walletFile) : get(address);
+  }
+
+  public Optional<File> getFile(String address) {
+    refreshIfChanged();
+    Entry entry = byAddress.get(address);
+    return entry == null ? Optional.empty() : Optional.of(new File(directory, entry.name));
+  }
+
+  /**
+   * The keystore in {@code file}, parsed again only if the file changed since it was indexed.
+   */
+  public WalletFile load(File file) throws IOException {
+    if (!directory.equals(file.getAbsoluteFile().getParentFile())) {
+      return WalletUtils.loadWalletFile(file);
+    }
+    Entry entry = byName.get(file.getName());
+    if (entry != null && entry.walletFile != null && entry.matches(file)) {
+      return entry.walletFile;
+    }
+    Entry updated = entry == null ? reload(file.getName()) : reload(entry);
+    if (updated == null) {
+      throw new IOException("Failed to load " + file);
+    }
+    return updated.walletFile;
+  }
+
+  private Entry reload(Entry entry) {
+    Entry updated = update(entry.name);
+    if (updated == null || !updated.sameFile(entry)) {
+      persistQuietly();
+    }
+    return updated;
+  }
+
+  private Entry reload(String name) {
+    Entry updated = update(name);
+    persistQuietly();
+    return updated;
+  }
+
+  /**
+   * The keystore files, by name, which begins with their creation time.
+   */
+  public List<File> files() {
+    refreshIfChanged();
+    List<String> names = new ArrayList<>(byName.keySet());
+    Collections.sort(names);
+    List<File> files = new ArrayList<>(names.size());
+    for (String name : names) {
+      files.add(new File(directory, name));
+    }
+    return files;
+  }
+
+  public int size() {
+    refreshIfChanged();
+    return byName.size();
+  }
+
+  // without a watcher, keystores created, replaced or deleted since the last refresh show in the
+  // modification time of the directory
+  private void refreshIfChanged() {
+    if (!watching && directory.lastModified() != directoryModified) {
+      refresh();
+    }
+  }
+
+  /**
+   * Reads the sidecar, brings it up to date with the directory, and starts watching the directory
+   * if it did not yet.
+   */
+  public synchronized void refresh() {
+    if (byName.isEmpty()) {
+      readSidecar();
+    }
+    directoryModified = directory.lastModified();
+    File[] files = directory.listFiles((dir, name) -> isKeystore(name));
+    Map<String, File> present = new HashMap<>();
+    for (File file : files == null ? new File[0] : files) {
+      present.put(file.getName(), file);
+    }
+    boolean changed = false;
+    for (String name : new ArrayList<>(byName.keySet())) {
+      if (!present.containsKey(name)) {
+        remove(name);
+        changed = true;
+      }
+    }
+    for (File file : present.values()) {
+      Entry entry = byName.get(file.getName());
+      if (entry == null || entry.size != file.length()
+          || entry.modified != file.lastModified()) {
+        update(file.getName());
+        changed = true;
+      }
+    }
+    if (changed) {
+      persistQuietly();
+    }
+    if (watching && watchService == null && directory.isDirectory()) {
+      startWatching();
+    }
+  }
+
+  public synchronized void close() {
+    if (watchService != null) {
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        logger.debug("Failed to close the keystore watcher", e);
+      }
+      watchService = null;
+    }
+  }
+
+  private static boolean isKeystore(String name) {
+    return name.endsWith(SUFFIX) && !name.startsWith(".");
+  }
+
+  private synchronized Entry update(String name) {
+    File file = new File(directory, name);
+    if (!file.isFile()) {
+      remove(name);
+      return null;
+    }
+    long size = file.length();
+    long modified = file.lastModified();
+    WalletFile walletFile;
+    try {
+      walletFile = WalletUtils.loadWalletFile(file);
+    } catch (IOException e) {
+      // likely still being written; the watcher sees it again when it is
+      logger.debug("Failed to parse keystore {}", name, e);
+      remove(name);
+      return null;
+    }
+    return index(name, size, modified, walletFile);
+  }
+
+  private synchronized Entry index(String name, long size, long modified,
+      WalletFile walletFile) {
+    if (walletFile.getAddress() == null || walletFile.getCrypto() == null) {
+      remove(name);
+      return null;
+    }
+    Entry entry = new Entry(name, size, modified, walletFile.getAddress(), walletFile);
+    put(entry);
+    return entry;
+  }
+
+  private synchronized void put(Entry entry) {
+    Entry old = byName.put(entry.name, entry);
+    if (old != null && !old.address.equals(entry.address)) {
+      reindexAddress(old.address);
+    }
+    reindexAddress(entry.address);
+  }
+
+  private synchronized void remove(String name) {
+    Entry old = byName.remove(name);
+    if (old != null) {
+      reindexAddress(old.address);
+    }
+  }
+
+  // points the address at its newest keystore; only runs when keystores change
+  private void reindexAddress(String address) {
+    Entry newest = null;
+    for (Entry entry : byName.values()) {
+      if (entry.address.equals(address)
+          && (newest == null || entry.name.compareTo(newest.name) > 0)) {
+        newest = entry;
+      }
+    }
+    if (newest == null) {
+      byAddress.remove(address);
+    } else {
+      byAddress.put(address, newest);
+    }
+  }
+
+  private void startWatching() {
+    try {
+      watchService = directory.toPath().getFileSystem().newWatchService();
+      directory.toPath().register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+    } catch (IOException e) {
+      logger.warn("Cannot watch {} for keystore changes: {}", directory, e.getMessage());
+      watchService = null;
+      return;
+    }
+    WatchService service = watchService;
+    Thread thread = new Thread(() -> watch(service), "keystore-index-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void watch(WatchService service) {
+    while (true) {
+      WatchKey key;
+      try {
+        key = service.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+      boolean changed = false;
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == OVERFLOW) {
+          refresh();
+          continue;
+        }
+        String name = ((Path) event.context()).getFileName().toString();
+        if (isKeystore(name)) {
+          update(name);
+          changed = true;
+        }
+      }
+      if (changed) {
+        persistQuietly();
+      }
+      if (!key.reset()) {
+        // the directory is gone
+        synchronized (this) {
+          byName.clear();
+          byAddress.clear();
+          close();
+        }
+        persistQuietly();
+        return;
+      }
+    }
+  }
+
+  private void readSidecar() {
+    if (!sidecar.isFile()) {
+      return;
+    }
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(sidecar)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+        return;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String name = in.readUTF();
+        long size = in.readLong();
+        long modified = in.readLong();
+        put(new Entry(name, size, modified, in.readUTF(), null));
+      }
+    } catch (IOException | RuntimeException e) {
+      logger.info("Ignoring the keystore index {}: {}", sidecar, e.getMessage());
+      byName.clear();
+      byAddress.clear();
+    }
+  }
+
+  private synchronized void persistQuietly() {
+    try {
+      persist();
+    } catch (IOException e) {
+      logger.warn("Failed to write the keystore index {}: {}", sidecar, e.getMessage());
+    }
+  }
+
+  private synchronized void persist() throws IOException {
+    if (!sidecar.getParentFile().isDirectory()) {
+      return;
+    }
+    if (byName.isEmpty()) {
+      Files.deleteIfExists(sidecar.toPath());
+      return;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeInt(FORMAT);
+    out.writeInt(byName.size());
+    for (Entry entry : byName.values()) {
+      out.writeUTF(entry.name);
+      out.writeLong(entry.size);
+      out.writeLong(entry.modified);
+      out.writeUTF(entry.address);
+    }
+    out.flush();
+    Path temp = Files.createTempFile(sidecar.getParentFile().toPath(), ".keystore-index-",
+        ".tmp");
+    try {
+      try (FileOutputStream file = new FileOutputStream(temp.toFile());
+          BufferedOutputStream buffered = new BufferedOutputStream(file)) {
+        bytes.writeTo(buffered);
+        buffered.flush();
+        file.getFD().sync();
+      }
+      Files.move(temp, sidecar.toPath(), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static class Entry {
+
+    private final String name;
+    private final long size;
+    private final long modified;
+    private final String address;
+    // parsed on first use, never written to the sidecar
+    private final WalletFile walletFile;
+
+    Entry(String name, long size, long modified, String address, WalletFile walletFile) {
+      this.name = name;
+      this.size = size;
+      this.modified = modified;
+      this.address = address;
+      this.walletFile = walletFile;
+    }
+
+    boolean matches(File file) {
+      return size == file.length() && modified == file.lastModified();
+    }
+
+    boolean sameFile(Entry other) {
+      return size == other.size && modified == other.modified && address.equals(other.address);
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package org.tron.keystore;
+
+import com.typesafe.config.Config;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.tron.common.crypto.ECKey;
+import org.tron.common.crypto.SignInterface;
+import org.tron.common.crypto.sm2.SM2;
+import org.tron.common.utils.TransactionUtils;
+import org.tron.core.config.Configuration;
+import org.tron.core.exception.CipherException;
+import org.tron.protos.Protocol.Transaction;
+import org.tron.walletserver.WalletApi;
+
+/**
+ * A keystore unlocked once for signing many transactions without prompting.
+ *
+ * <p>The scrypt/pbkdf2 derivation runs only in {@link #unlock}; every later signature costs just
+ * the ECDSA or SM2 operation, and {@link #signAll} spreads them over a private fork-join pool.
+ * The decrypted key bytes are wiped as soon as the key object is built and {@link #close()}
+ * drops the key. The scalar inside {@link ECKey}/{@link SM2} is an immutable {@code BigInteger}
+ * and cannot be overwritten, so keep sessions short and scoped with try-with-resources.
+ */
+public class SigningSession implements AutoCloseable {
+
+  private static boolean isEckey = true;
+
+  static {
+    Config config = Configuration.getByPath("config.conf");
+    if (config.hasPath("crypto.engine")) {
+      isEckey = config.getString("crypto.engine").equalsIgnoreCase("eckey");
+    }
+  }
+
+  private volatile SignInterface key;
+  private final byte[] address;
+  private final int parallelism;
+  private ForkJoinPool pool;
+
+  private SigningSession(SignInterface key, int parallelism) {
+    this.key = key;
+    this.address = key.getAddress();
+    this.parallelism = parallelism;
+  }
+
+  public static SigningSession unlock(byte[] password, WalletFile walletFile)
+      throws CipherException {
+    return unlock(password, walletFile, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Unlocks the keystore of {@code address}, found through the keystore index.
+   */
+  public static SigningSession unlock(byte[] password, String address, int parallelism)
+      throws CipherException, IOException {
+    WalletFile walletFile = WalletApi.findWalletFile(address);
+    if (walletFile == null) {
+      throw new IOException("No keystore found for " + address);
+    }
+    return unlock(password, walletFile, parallelism);
+  }
+
+  /**
+   * Decrypts the keystore once, or takes its key from the {@link KeyAgent} when that holds it.
+   *
+   * @param parallelism number of threads {@link #signAll} signs on
+   */
+  public static SigningSession unlock(byte[] password, WalletFile walletFile, int parallelism)
+      throws CipherException {
+    if (KeyAgent.isEnabled()) {
+      KeyAgent agent = KeyAgent.getInstance();
+      agent.checkPassword(walletFile, password);
+      Optional<SigningSession> session = agent.withPrivateKey(walletFile,
+          privateKey -> fromPrivate(privateKey, parallelism));
+      if (session.isPresent()) {
+        return session.get();
+      }
+    }
+    byte[] privateKey = Wallet.decrypt2PrivateBytes(password, walletFile);
+    try {
+      return fromPrivate(privateKey, parallelism);
+    } finally {
+      StringUtils.clear(privateKey);
+    }
+  }
+
+  /**
+   * Opens a session over a raw private key; the caller still owns and should clear
+   * {@code privateKey}.
+   */
+  public static SigningSession fromPrivate(byte[] privateKey, int parallelism) {
+    SignInterface key = isEckey ? ECKey.fromPrivate(privateKey) : SM2.fromPrivate(privateKey);
+    return new SigningSession(key, Math.max(1, parallelism));
+  }
+
+  public byte[] getAddress() {
+    return address.clone();
+  }
+
+  public boolean isOpen() {
+    return key != null;
+  }
+
+  public Transaction sign(Transaction transaction) {
+    SignInterface signer = key;
+    if (signer == null) {
+      throw new IllegalStateException("Signing session is closed");
+    }
+    return TransactionUtils.sign(transaction, signer);
+  }
+
+  /**
+   * Signs every transaction in parallel.
+   *
+   * @return the signed transactions, in input order
+   */
+  public List<Transaction> signAll(List<Transaction> transactions) {
+    if (transactions.size() < 2 || parallelism == 1) {
+      List<Transaction> signed = new ArrayList<>(transactions.size());
+      for (Transaction transaction : transactions) {
+        signed.add(sign(transaction));
+      }
+      return signed;
+    }
+    try {
+      return pool().submit(() -> transactions.parallelStream()
+          .map(this::sign)
+          .collect(Collectors.toList())).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while signing", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  public List<Transaction> signAll(Stream<Transaction> transactions) {
+    return signAll(transactions.collect(Collectors.toList()));
+  }
+
+  private synchronized ForkJoinPool pool() {
+    if (pool == null) {
+      pool = new ForkJoinPool(parallelism);
+    }
+    return pool;
+  }
+
+  @Override
+  public synchronized void close() {
+    key = null;
+    if (pool != null) {
+      pool.shutdownNow();
+      pool = null;
+    }
+  }
+}
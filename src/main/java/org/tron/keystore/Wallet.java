@@ -47,11 +47,11 @@ import java.util.UUID;
  */
 public class Wallet {
 
-  private static final int N_LIGHT = 1 << 12;
-  private static final int P_LIGHT = 6;
+  static final int N_LIGHT = 1 << 12;
+  static final int P_LIGHT = 6;
 
-  private static final int N_STANDARD = 1 << 18;
-  private static final int P_STANDARD = 1;
+  static final int N_STANDARD = 1 << 18;
+  static final int P_STANDARD = 1;
 
   private static final int R = 8;
   private static final int DKLEN = 32;
@@ -61,6 +61,7 @@ public class Wallet {
   private static final String CIPHER = "aes-128-ctr";
   static final String AES_128_CTR = "pbkdf2";
   static final String SCRYPT = "scrypt";
+  private static final String PRF = "hmac-sha256";
 
   public static WalletFile create(byte[] password, SignInterface ecKeySm2Pair, int n, int p)
       throws CipherException {
@@ -69,6 +70,36 @@ public class Wallet {
 
     byte[] derivedKey = generateDerivedScryptKey(password, salt, n, R, p, DKLEN);
 
+    WalletFile.ScryptKdfParams kdfParams = new WalletFile.ScryptKdfParams();
+    kdfParams.setDklen(DKLEN);
+    kdfParams.setN(n);
+    kdfParams.setP(p);
+    kdfParams.setR(R);
+    kdfParams.setSalt(ByteArray.toHexString(salt));
+    return encrypt(ecKeySm2Pair, derivedKey, SCRYPT, kdfParams);
+  }
+
+  /**
+   * Creates a keystore whose key is derived with PBKDF2-HMAC-SHA256 over {@code c} iterations.
+   */
+  public static WalletFile createPbkdf2(byte[] password, SignInterface ecKeySm2Pair, int c)
+      throws CipherException {
+
+    byte[] salt = generateRandomBytes(32);
+
+    byte[] derivedKey = generateAes128CtrDerivedKey(password, salt, c, PRF);
+
+    WalletFile.Aes128CtrKdfParams kdfParams = new WalletFile.Aes128CtrKdfParams();
+    kdfParams.setDklen(DKLEN);
+    kdfParams.setC(c);
+    kdfParams.setPrf(PRF);
+    kdfParams.setSalt(ByteArray.toHexString(salt));
+    return encrypt(ecKeySm2Pair, derivedKey, AES_128_CTR, kdfParams);
+  }
+
+  private static WalletFile encrypt(SignInterface ecKeySm2Pair, byte[] derivedKey, String kdf,
+      WalletFile.KdfParams kdfParams) throws CipherException {
+
     byte[] encryptKey = Arrays.copyOfRange(derivedKey, 0, 16);
     byte[] iv = generateRandomBytes(16);
 
@@ -76,10 +107,12 @@ public class Wallet {
 
     byte[] cipherText = performCipherOperation(Cipher.ENCRYPT_MODE, iv, encryptKey,
         privateKeyBytes);
+    StringUtils.clear(encryptKey);
 
     byte[] mac = generateMac(derivedKey, cipherText);
+    StringUtils.clear(derivedKey);
 
-    return createWalletFile(ecKeySm2Pair, cipherText, iv, salt, mac, n, p);
+    return createWalletFile(ecKeySm2Pair, cipherText, iv, mac, kdf, kdfParams);
   }
 
   public static WalletFile createStandard(byte[] password, SignInterface ecKeySm2Pair)
@@ -91,8 +124,8 @@ public class Wallet {
     return create(password, ecKeySm2Pair, N_LIGHT, P_LIGHT);
   }
   private static WalletFile createWalletFile(
-          SignInterface ecKeySm2Pair, byte[] cipherText, byte[] iv, byte[] salt, byte[] mac,
-          int n, int p) {
+          SignInterface ecKeySm2Pair, byte[] cipherText, byte[] iv, byte[] mac, String kdf,
+          WalletFile.KdfParams kdfParams) {
 
     WalletFile walletFile = new WalletFile();
     walletFile.setAddress(WalletApi.encode58Check(ecKeySm2Pair.getAddress()));
@@ -106,13 +139,7 @@ public class Wallet {
     cipherParams.setIv(ByteArray.toHexString(iv));
     crypto.setCipherparams(cipherParams);
 
-    crypto.setKdf(SCRYPT);
-    WalletFile.ScryptKdfParams kdfParams = new WalletFile.ScryptKdfParams();
-    kdfParams.setDklen(DKLEN);
-    kdfParams.setN(n);
-    kdfParams.setP(p);
-    kdfParams.setR(R);
-    kdfParams.setSalt(ByteArray.toHexString(salt));
+    crypto.setKdf(kdf);
     crypto.setKdfparams(kdfParams);
 
     crypto.setMac(ByteArray.toHexString(mac));
@@ -12,7 +12,11 @@ import org.tron.core.config.Configuration;
 import org.tron.core.exception.CipherException;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
@@ -107,6 +111,26 @@ public class WalletUtils {
     return fileName;
   }
 
+  /**
+   * Writes {@code walletFile} to {@code destination} through a synced temporary file in the same
+   * directory, so that a crash leaves either the old or the new keystore, never a torn one.
+   */
+  public static void writeWalletFileAtomically(WalletFile walletFile, File destination)
+      throws IOException {
+    File directory = destination.getAbsoluteFile().getParentFile();
+    Path temp = Files.createTempFile(directory.toPath(), ".keystore-", ".tmp");
+    try {
+      try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+        out.write(objectMapper.writeValueAsBytes(walletFile));
+        out.getFD().sync();
+      }
+      Files.move(temp, destination.toPath(), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
   //    /**
 //     * Generates a BIP-39 compatible Ethereum wallet. The private key for the wallet can
 //     * be calculated using following algorithm:
@@ -158,7 +182,7 @@ public class WalletUtils {
 //        return Credentials.create(ECKeyPair.create(sha256(seed)));
 //    }
 
-  private static String getWalletFileName(WalletFile walletFile) {
+  static String getWalletFileName(WalletFile walletFile) {
     DateTimeFormatter format = DateTimeFormatter.ofPattern(
         "'UTC--'yyyy-MM-dd'T'HH-mm-ss.nVV'--'");
     ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
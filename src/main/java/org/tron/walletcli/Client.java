@@ -1,7 +1,10 @@
 package org.tron.walletcli;
 
+import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.security.SecureRandom;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -38,9 +41,11 @@ import org.tron.core.exception.EncodingException;
 import org.tron.core.exception.ZksnarkException;
 import org.tron.core.zen.ShieldedAddressInfo;
 import org.tron.core.zen.ShieldedNoteInfo;
+import org.tron.core.zen.ShieldedProver;
 import org.tron.core.zen.ShieldedTRC20NoteInfo;
 import org.tron.core.zen.ShieldedTRC20Wrapper;
 import org.tron.core.zen.ShieldedWrapper;
+import org.tron.core.zen.UtxoIndex;
 import org.tron.core.zen.ZenUtils;
 import org.tron.core.zen.address.DiversifierT;
 import org.tron.core.zen.address.ExpandedSpendingKey;
@@ -48,6 +53,7 @@ import org.tron.core.zen.address.IncomingViewingKey;
 import org.tron.core.zen.address.KeyIo;
 import org.tron.core.zen.address.PaymentAddress;
 import org.tron.core.zen.address.SpendingKey;
+import org.tron.keystore.KeystoreBatch;
 import org.tron.keystore.StringUtils;
 import org.tron.protos.Protocol.MarketOrder;
 import org.tron.protos.Protocol.MarketOrderList;
@@ -147,6 +153,7 @@ public class Client {
       // "ImportShieldedWallet",
       "ImportWallet",
       "ImportWalletByBase64",
+      "KeystoreBatch validate|reencrypt|migrate|import <keysFile> <standard|light|scrypt N p|pbkdf2 c>",
       "ListAssetIssue",
       "ListAssetIssuePaginated",
       "ListExchanges",
@@ -278,6 +285,7 @@ public class Client {
       // "ImportShieldedWallet",
       "ImportWallet",
       "ImportWalletByBase64",
+      "KeystoreBatch",
       "ListAssetIssue",
       "ListAssetIssuePaginated",
       "ListExchanges",
@@ -420,6 +428,133 @@ public class Client {
     System.out.println("Import a wallet successful, keystore file name is " + fileName);
   }
 
+  private void keystoreBatch(String[] parameters) throws IOException {
+    if (parameters == null || parameters.length < 1
+        || (parameters[0].equalsIgnoreCase("import") && parameters.length < 2)) {
+      System.out.println("KeystoreBatch needs parameters like the following: ");
+      System.out.println("KeystoreBatch validate");
+      System.out.println("KeystoreBatch reencrypt [kdf]");
+      System.out.println("KeystoreBatch migrate kdf");
+      System.out.println("KeystoreBatch import keysFile [kdf]");
+      System.out.println("kdf is one of standard, light, scrypt N p and pbkdf2 c; reencrypt keeps "
+          + "the KDF of each keystore without one, import uses standard.");
+      System.out.println("keysFile holds one hex private key per line.");
+      return;
+    }
+    String operation = parameters[0].toLowerCase();
+    int kdfIndex = operation.equals("import") ? 2 : 1;
+    KeystoreBatch.Kdf kdf;
+    try {
+      kdf = parseKdf(Arrays.copyOfRange(parameters, kdfIndex, parameters.length),
+          operation.equals("import") ? KeystoreBatch.Kdf.STANDARD : KeystoreBatch.Kdf.KEEP);
+    } catch (IllegalArgumentException e) {
+      System.out.println("Invalid kdf: " + e.getMessage());
+      return;
+    }
+    File directory = WalletApi.getKeystoreDirectory();
+    File[] keystores = directory.listFiles((dir, name) -> name.endsWith(".json"));
+    List<File> files = keystores == null ? new ArrayList<>() : Arrays.asList(keystores);
+    KeystoreBatch batch = KeystoreBatch.create().onProgress(System.out::println);
+    KeystoreBatch.Report report;
+    switch (operation) {
+      case "validate": {
+        System.out.println("Please input the password of the keystores.");
+        byte[] password = inputKeystorePassword();
+        report = batch.validate(files, password);
+        StringUtils.clear(password);
+        break;
+      }
+      case "reencrypt": {
+        System.out.println("Please input the old password of the keystores.");
+        byte[] oldPassword = inputKeystorePassword();
+        System.out.println("Please input the new password.");
+        char[] newPassword = Utils.inputPassword2Twice();
+        if (!WalletApi.passwordValid(newPassword)) {
+          StringUtils.clear(oldPassword);
+          return;
+        }
+        byte[] passwd = StringUtils.char2Byte(newPassword);
+        StringUtils.clear(newPassword);
+        report = batch.reencrypt(files, oldPassword, passwd, kdf);
+        StringUtils.clear(oldPassword);
+        StringUtils.clear(passwd);
+        break;
+      }
+      case "migrate": {
+        if (kdf == KeystoreBatch.Kdf.KEEP) {
+          System.out.println("KeystoreBatch migrate needs the kdf to migrate to.");
+          return;
+        }
+        System.out.println("Please input the password of the keystores.");
+        byte[] password = inputKeystorePassword();
+        report = batch.migrate(files, password, kdf);
+        StringUtils.clear(password);
+        break;
+      }
+      case "import": {
+        List<byte[]> privateKeys = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(parameters[1]))) {
+          if (!line.trim().isEmpty() && !line.trim().startsWith("#")) {
+            privateKeys.add(ByteArray.fromHexString(line.trim()));
+          }
+        }
+        System.out.println("Please input the password of the new keystores.");
+        char[] password = Utils.inputPassword2Twice();
+        if (!WalletApi.passwordValid(password)) {
+          privateKeys.forEach(StringUtils::clear);
+          return;
+        }
+        byte[] passwd = StringUtils.char2Byte(password);
+        StringUtils.clear(password);
+        if (!directory.exists() && !directory.mkdirs()) {
+          throw new IOException("Make directory failed!");
+        }
+        report = batch.importKeys(privateKeys, passwd, kdf, directory);
+        privateKeys.forEach(StringUtils::clear);
+        StringUtils.clear(passwd);
+        break;
+      }
+      default:
+        System.out.println("Unknown KeystoreBatch operation " + parameters[0]);
+        return;
+    }
+    for (KeystoreBatch.Result failure : report.getFailures()) {
+      System.out.println(failure);
+    }
+  }
+
+  private static byte[] inputKeystorePassword() throws IOException {
+    char[] password = Utils.inputPassword(false);
+    byte[] passwd = StringUtils.char2Byte(password);
+    StringUtils.clear(password);
+    return passwd;
+  }
+
+  private static KeystoreBatch.Kdf parseKdf(String[] parameters, KeystoreBatch.Kdf none) {
+    if (parameters.length == 0) {
+      return none;
+    }
+    switch (parameters[0].toLowerCase()) {
+      case "standard":
+        return KeystoreBatch.Kdf.STANDARD;
+      case "light":
+        return KeystoreBatch.Kdf.LIGHT;
+      case "scrypt":
+        if (parameters.length != 3) {
+          throw new IllegalArgumentException("scrypt needs N and p");
+        }
+        return KeystoreBatch.Kdf.scrypt(Integer.parseInt(parameters[1]),
+            Integer.parseInt(parameters[2]));
+      case "pbkdf2":
+        if (parameters.length != 2) {
+          throw new IllegalArgumentException("pbkdf2 needs c");
+        }
+        return KeystoreBatch.Kdf.pbkdf2(Integer.parseInt(parameters[1]));
+      default:
+        throw new IllegalArgumentException(parameters[0]);
+    }
+  }
+
   private void changePassword() throws IOException, CipherException {
     System.out.println("Please input old password.");
     char[] oldPassword = Utils.inputPassword(false);
@@ -2555,6 +2690,7 @@ public class Client {
 
     List<Long> shieldedInputList = new ArrayList<>();
     String shieldedInputAddress = "";
+    long shieldedInputAmount = 0;
     for (int i = 0; i < shieldedInputNum; ++i) {
       long mapIndex = Long.valueOf(parameters[parameterIndex++]);
       ShieldedNoteInfo noteInfo = ShieldedWrapper.getInstance().getUtxoMapNote().get(mapIndex);
@@ -2571,6 +2707,7 @@ public class Client {
         }
       }
       shieldedInputList.add(mapIndex);
+      shieldedInputAmount += noteInfo.getValue();
     }
 
     String toPublicAddress = parameters[parameterIndex++];
@@ -2596,6 +2733,7 @@ public class Client {
     }
 
     List<Note> shieldedOutList = new ArrayList<>();
+    long shieldedOutputAmount = 0;
     for (int i = 0; i < shieldedOutputNum; ++i) {
       String shieldedAddress = parameters[parameterIndex++];
       amountString = parameters[parameterIndex++];
@@ -2615,6 +2753,17 @@ public class Client {
       noteBuild.setRcm(ByteString.copyFrom(walletApiWrapper.getRcm()));
       noteBuild.setMemo(ByteString.copyFrom(menoString.getBytes()));
       shieldedOutList.add(noteBuild.build());
+      shieldedOutputAmount += shieldedAmount;
+    }
+
+    if (!shieldedInputList.isEmpty()) {
+      long spendAmount = shieldedOutputAmount + toPublicAmount - fromPublicAmount
+          + walletApiWrapper.getShieldedTransactionFee();
+      if (!checkShieldedInputAmount(shieldedInputAmount, spendAmount, ShieldedWrapper
+          .getInstance().selectNotes(shieldedInputAddress, spendAmount,
+              UtxoIndex.Strategy.MINIMAL_INPUTS, Integer.MAX_VALUE))) {
+        return false;
+      }
     }
 
     if (withAsk) {
@@ -2753,19 +2902,23 @@ public class Client {
         System.out.println(string);
       }
 
-      List<ShieldedNoteInfo> noteList = ShieldedWrapper.getInstance().getSpendUtxoList();
-      for (ShieldedNoteInfo noteInfo : noteList) {
-        String string = noteInfo.getPaymentAddress() + " ";
-        string += noteInfo.getValue();
-        string += " ";
-        string += noteInfo.getTrxId();
-        string += " ";
-        string += noteInfo.getIndex();
-        string += " ";
-        string += "Spent";
-        string += " ";
-        string += ZenUtils.getMemo(noteInfo.getMemo());
-        System.out.println(string);
+      // spent notes are decrypted a page at a time, in note index order
+      List<ShieldedNoteInfo> noteList = ShieldedWrapper.getInstance().getSpendNotes(0, 1000);
+      for (; !noteList.isEmpty(); noteList = ShieldedWrapper.getInstance()
+          .getSpendNotes(noteList.get(noteList.size() - 1).getNoteIndex() + 1, 1000)) {
+        for (ShieldedNoteInfo noteInfo : noteList) {
+          String string = noteInfo.getPaymentAddress() + " ";
+          string += noteInfo.getValue();
+          string += " ";
+          string += noteInfo.getTrxId();
+          string += " ";
+          string += noteInfo.getIndex();
+          string += " ";
+          string += "Spent";
+          string += " ";
+          string += ZenUtils.getMemo(noteInfo.getMemo());
+          System.out.println(string);
+        }
       }
     }
   }
@@ -3369,21 +3522,25 @@ public class Client {
         System.out.println(string);
       }
 
-      List<ShieldedTRC20NoteInfo> noteList = ShieldedTRC20Wrapper.getInstance().getSpendUtxoList();
-      for (ShieldedTRC20NoteInfo noteInfo : noteList) {
-        String string = noteInfo.getPaymentAddress() + " ";
-        string += noteInfo.getRawValue().toString();
-        string += " ";
-        string += noteInfo.getTrxId();
-        string += " ";
-        string += noteInfo.getIndex();
-        string += " ";
-        string += noteInfo.getPosition();
-        string += " ";
-        string += "Spent";
-        string += " ";
-        string += ZenUtils.getMemo(noteInfo.getMemo());
-        System.out.println(string);
+      // spent notes are decrypted a page at a time, in note index order
+      List<ShieldedTRC20NoteInfo> noteList = ShieldedTRC20Wrapper.getInstance().getSpendNotes(0, 1000);
+      for (; !noteList.isEmpty(); noteList = ShieldedTRC20Wrapper.getInstance()
+          .getSpendNotes(noteList.get(noteList.size() - 1).getNoteIndex() + 1, 1000)) {
+        for (ShieldedTRC20NoteInfo noteInfo : noteList) {
+          String string = noteInfo.getPaymentAddress() + " ";
+          string += noteInfo.getRawValue().toString();
+          string += " ";
+          string += noteInfo.getTrxId();
+          string += " ";
+          string += noteInfo.getIndex();
+          string += " ";
+          string += noteInfo.getPosition();
+          string += " ";
+          string += "Spent";
+          string += " ";
+          string += ZenUtils.getMemo(noteInfo.getMemo());
+          System.out.println(string);
+        }
       }
     }
     BigInteger scalingFactor = ShieldedTRC20Wrapper.getInstance().getScalingFactor();
@@ -3580,6 +3737,7 @@ public class Client {
 
     List<Long> shieldedInputList = new ArrayList<>();
     String shieldedInputAddress = "";
+    long shieldedInputAmount = 0;
     for (int i = 0; i < shieldedInputNum; ++i) {
       long mapIndex;
       try {
@@ -3603,6 +3761,7 @@ public class Client {
         }
       }
       shieldedInputList.add(mapIndex);
+      shieldedInputAmount += noteInfo.getValue();
     }
 
     String toPublicAddress = parameters[parameterIndex++];
@@ -3651,6 +3810,7 @@ public class Client {
     }
 
     List<Note> shieldedOutList = new ArrayList<>();
+    long shieldedOutputAmount = 0;
     for (int i = 0; i < shieldedOutputNum; ++i) {
       String shieldedAddress = parameters[parameterIndex++];
       amountString = parameters[parameterIndex++];
@@ -3679,6 +3839,7 @@ public class Client {
       noteBuild.setRcm(ByteString.copyFrom(walletApiWrapper.getRcm()));
       noteBuild.setMemo(ByteString.copyFrom(memoString.getBytes()));
       shieldedOutList.add(noteBuild.build());
+      shieldedOutputAmount += shieldedAmount;
     }
 
     int shieldedContractType = -1;
@@ -3701,6 +3862,18 @@ public class Client {
       return false;
     }
 
+    if (shieldedContractType != 0) {
+      // no fee here: the shielded TRC20 contract takes none out of the notes, the caller pays
+      // for the energy in TRX
+      long spendAmount = shieldedOutputAmount
+          + toPublicAmount.divide(scalingFactor).longValueExact();
+      if (!checkShieldedInputAmount(shieldedInputAmount, spendAmount, ShieldedTRC20Wrapper
+          .getInstance().selectNotes(shieldedInputAddress, spendAmount,
+              UtxoIndex.Strategy.MINIMAL_INPUTS, 2))) {
+        return false;
+      }
+    }
+
     if (withAsk) {
       return walletApiWrapper.sendShieldedTRC20Coin(shieldedContractType, fromPublicAmount,
           shieldedInputList, shieldedOutList, toPublicAddress, toPublicAmount, contractAddress,
@@ -3712,6 +3885,25 @@ public class Client {
     }
   }
 
+  /**
+   * Fails a shielded send whose input notes hold less than it spends, naming notes of the same
+   * address that would hold enough.
+   */
+  private boolean checkShieldedInputAmount(long inputAmount, long spendAmount,
+      List<Long> suggestedNotes) {
+    if (inputAmount >= spendAmount) {
+      return true;
+    }
+    System.out.println("The input notes hold " + inputAmount + ", less than the " + spendAmount
+        + " to spend.");
+    if (suggestedNotes.isEmpty()) {
+      System.out.println("The unspent notes of this address do not hold enough.");
+    } else {
+      System.out.println("Notes " + suggestedNotes + " of this address would hold enough.");
+    }
+    return false;
+  }
+
   private boolean checkAmountValid(BigInteger amount, BigInteger scalingFactor) {
     if (amount.compareTo(BigInteger.ZERO) < 0) {
       return false;
@@ -3831,6 +4023,7 @@ public class Client {
     System.out.println(
         "You may also use the Help command at anytime to display a full list of commands.");
     System.out.println(" ");
+    ShieldedProver.preload();
 
     try {
       Terminal terminal = TerminalBuilder.builder().system(true).dumb(true).build();
@@ -3871,6 +4064,10 @@ public class Client {
               importWalletByBase64();
               break;
             }
+            case "keystorebatch": {
+              keystoreBatch(parameters);
+              break;
+            }
             case "changepassword": {
               changePassword();
               break;
@@ -5,6 +5,7 @@ import io.netty.util.internal.StringUtil;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.util.encoders.Hex;
 import org.tron.api.GrpcAPI;
@@ -41,8 +42,6 @@ import org.tron.protos.Protocol.Proposal;
 import org.tron.protos.Protocol.Transaction;
 import org.tron.protos.contract.AssetIssueContractOuterClass.AssetIssueContract;
 import org.tron.protos.contract.ShieldContract.IncrementalMerkleVoucherInfo;
-import org.tron.protos.contract.ShieldContract.OutputPoint;
-import org.tron.protos.contract.ShieldContract.OutputPointInfo;
 import org.tron.walletserver.WalletApi;
 
 import java.io.IOException;
@@ -53,6 +52,8 @@ import java.util.Optional;
 @Slf4j
 public class WalletApiWrapper {
 
+  private static final long DEFAULT_SHIELDED_TRANSACTION_FEE = 10_000_000L;
+
   private WalletApi wallet;
 
   public String registerWallet(char[] password) throws CipherException, IOException {
@@ -600,6 +601,20 @@ public class WalletApiWrapper {
     }
   }
 
+  /**
+   * The fee a shielded TRX transaction pays out of its inputs, as set by the chain parameters,
+   * or the default of 10 TRX if they cannot be read.
+   */
+  public long getShieldedTransactionFee() {
+    for (ChainParameters.ChainParameter parameter : getChainParameters()
+        .map(ChainParameters::getChainParameterList).orElse(Collections.emptyList())) {
+      if ("getShieldedTransactionFee".equals(parameter.getKey())) {
+        return parameter.getValue();
+      }
+    }
+    return DEFAULT_SHIELDED_TRANSACTION_FEE;
+  }
+
 
   public boolean approveProposal(byte[] ownerAddress, long id, boolean is_add_approval)
       throws CipherException, IOException, CancelException {
@@ -767,17 +782,8 @@ public class WalletApiWrapper {
     }
 
     if (shieldedInputList.size() > 0) {
-      OutputPointInfo.Builder request = OutputPointInfo.newBuilder();
-      for (int i = 0; i < shieldedInputList.size(); ++i) {
-        ShieldedNoteInfo noteInfo = ShieldedWrapper.getInstance().getUtxoMapNote()
-            .get(shieldedInputList.get(i));
-        OutputPoint.Builder outPointBuild = OutputPoint.newBuilder();
-        outPointBuild.setHash(ByteString.copyFrom(ByteArray.fromHexString(noteInfo.getTrxId())));
-        outPointBuild.setIndex(noteInfo.getIndex());
-        request.addOutPoints(outPointBuild.build());
-      }
       Optional<IncrementalMerkleVoucherInfo> merkleVoucherInfo =
-          WalletApi.GetMerkleTreeVoucherInfo(request.build(), true);
+          ShieldedWrapper.getInstance().getMerkleVoucherInfo(shieldedInputList);
       if (!merkleVoucherInfo.isPresent()
           || merkleVoucherInfo.get().getVouchersCount() != shieldedInputList.size()) {
         System.out.println("Can't get all merkel tree, please check the notes.");
@@ -865,17 +871,8 @@ public class WalletApiWrapper {
 
     byte[] ask = new byte[32];
     if (shieldedInputList.size() > 0) {
-      OutputPointInfo.Builder request = OutputPointInfo.newBuilder();
-      for (int i = 0; i < shieldedInputList.size(); ++i) {
-        ShieldedNoteInfo noteInfo = ShieldedWrapper.getInstance().getUtxoMapNote()
-            .get(shieldedInputList.get(i));
-        OutputPoint.Builder outPointBuild = OutputPoint.newBuilder();
-        outPointBuild.setHash(ByteString.copyFrom(ByteArray.fromHexString(noteInfo.getTrxId())));
-        outPointBuild.setIndex(noteInfo.getIndex());
-        request.addOutPoints(outPointBuild.build());
-      }
       Optional<IncrementalMerkleVoucherInfo> merkleVoucherInfo =
-          WalletApi.GetMerkleTreeVoucherInfo(request.build(), true);
+          ShieldedWrapper.getInstance().getMerkleVoucherInfo(shieldedInputList);
       if (!merkleVoucherInfo.isPresent()
           || merkleVoucherInfo.get().getVouchersCount() != shieldedInputList.size()) {
         System.out.println("Can't get all merkel tree, please check the notes.");
@@ -1158,13 +1155,8 @@ public class WalletApiWrapper {
       return null;
     }
 
-    OutputPointInfo.Builder request = OutputPointInfo.newBuilder();
-    OutputPoint.Builder outPointBuild = OutputPoint.newBuilder();
-    outPointBuild.setHash(ByteString.copyFrom(ByteArray.fromHexString(noteInfo.getTrxId())));
-    outPointBuild.setIndex(noteInfo.getIndex());
-    request.addOutPoints(outPointBuild.build());
     Optional<IncrementalMerkleVoucherInfo> merkleVoucherInfo =
-        WalletApi.GetMerkleTreeVoucherInfo(request.build(), true);
+        ShieldedWrapper.getInstance().getMerkleVoucherInfo(Collections.singletonList(index));
     if (!merkleVoucherInfo.isPresent() || merkleVoucherInfo.get().getVouchersCount() < 1) {
       System.out.println("get merkleVoucherInfo failure.");
       return null;
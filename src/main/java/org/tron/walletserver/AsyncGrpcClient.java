@@ -0,0 +1,298 @@
+package org.tron.walletserver;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.tron.api.GrpcAPI;
+import org.tron.api.GrpcAPI.AccountNetMessage;
+import org.tron.api.GrpcAPI.AccountResourceMessage;
+import org.tron.api.GrpcAPI.BlockExtention;
+import org.tron.api.GrpcAPI.BlockLimit;
+import org.tron.api.GrpcAPI.BlockListExtention;
+import org.tron.api.GrpcAPI.BytesMessage;
+import org.tron.api.GrpcAPI.DecryptNotes;
+import org.tron.api.GrpcAPI.DecryptNotesTRC20;
+import org.tron.api.GrpcAPI.EmptyMessage;
+import org.tron.api.GrpcAPI.IvkDecryptParameters;
+import org.tron.api.GrpcAPI.IvkDecryptTRC20Parameters;
+import org.tron.api.GrpcAPI.NfParameters;
+import org.tron.api.GrpcAPI.NfTRC20Parameters;
+import org.tron.api.GrpcAPI.NoteParameters;
+import org.tron.api.GrpcAPI.NullifierResult;
+import org.tron.api.GrpcAPI.NumberMessage;
+import org.tron.api.GrpcAPI.SpendResult;
+import org.tron.api.GrpcAPI.TransactionExtention;
+import org.tron.api.GrpcAPI.TransactionInfoList;
+import org.tron.api.WalletGrpc;
+import org.tron.api.WalletSolidityGrpc;
+import org.tron.common.utils.ByteArray;
+import org.tron.common.utils.ByteArrayWrapper;
+import org.tron.protos.Protocol.Account;
+import org.tron.protos.Protocol.Block;
+import org.tron.protos.Protocol.ChainParameters;
+import org.tron.protos.Protocol.Transaction;
+import org.tron.protos.Protocol.TransactionInfo;
+import org.tron.protos.contract.ShieldContract.IncrementalMerkleVoucherInfo;
+import org.tron.protos.contract.ShieldContract.OutputPointInfo;
+import org.tron.protos.contract.SmartContractOuterClass.SmartContract;
+import org.tron.protos.contract.SmartContractOuterClass.TriggerSmartContract;
+
+/**
+ * Non-blocking counterpart of {@link GrpcClient} built on the gRPC future stubs. Calls are routed
+ * through the same {@link NodePool}s, prefer the soliditynode where {@link GrpcClient} does, and
+ * complete on a gRPC transport thread, so dependent stages should not block.
+ */
+public class AsyncGrpcClient {
+
+  private final NodePool fullNodePool;
+  private final NodePool solidityNodePool;
+  private final long deadlineMillis;
+  private final SingleFlight<ByteArrayWrapper, Account> accountFlight = new SingleFlight<>();
+  private final SingleFlight<ByteArrayWrapper, AccountResourceMessage> accountResourceFlight =
+      new SingleFlight<>();
+  private final SingleFlight<Boolean, ChainParameters> chainParametersFlight =
+      new SingleFlight<>();
+
+  public AsyncGrpcClient(GrpcClient client) {
+    this(client.getFullNodePool(), client.getSolidityNodePool(), 0);
+  }
+
+  /**
+   * @param deadlineMillis per-call deadline, or 0 for none
+   */
+  public AsyncGrpcClient(NodePool fullNodePool, NodePool solidityNodePool, long deadlineMillis) {
+    this.fullNodePool = fullNodePool;
+    this.solidityNodePool = solidityNodePool;
+    this.deadlineMillis = deadlineMillis;
+  }
+
+  public AsyncGrpcClient withDeadline(long duration, TimeUnit unit) {
+    return new AsyncGrpcClient(fullNodePool, solidityNodePool, unit.toMillis(duration));
+  }
+
+  public NodePool getFullNodePool() {
+    return fullNodePool;
+  }
+
+  public NodePool getSolidityNodePool() {
+    return solidityNodePool;
+  }
+
+  private WalletGrpc.WalletFutureStub futureStubFull() {
+    WalletGrpc.WalletFutureStub stub = fullNodePool.select().getFutureStubFull();
+    return deadlineMillis > 0 ? stub.withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS)
+        : stub;
+  }
+
+  private WalletSolidityGrpc.WalletSolidityFutureStub futureStubSolidity() {
+    WalletSolidityGrpc.WalletSolidityFutureStub stub = solidityNodePool.select()
+        .getFutureStubSolidity();
+    return deadlineMillis > 0 ? stub.withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS)
+        : stub;
+  }
+
+  public CompletableFuture<Account> queryAccount(byte[] address) {
+    Account request = Account.newBuilder().setAddress(ByteString.copyFrom(address)).build();
+    return accountFlight.executeAsync(new ByteArrayWrapper(address.clone()), () -> {
+      if (solidityNodePool != null) {
+        return toCompletable(futureStubSolidity().getAccount(request));
+      } else {
+        return toCompletable(futureStubFull().getAccount(request));
+      }
+    });
+  }
+
+  public CompletableFuture<Account> queryAccountById(String accountId) {
+    Account request = Account.newBuilder().setAccountId(ByteString.copyFromUtf8(accountId))
+        .build();
+    if (solidityNodePool != null) {
+      return toCompletable(futureStubSolidity().getAccountById(request));
+    } else {
+      return toCompletable(futureStubFull().getAccountById(request));
+    }
+  }
+
+  public CompletableFuture<AccountNetMessage> getAccountNet(byte[] address) {
+    Account request = Account.newBuilder().setAddress(ByteString.copyFrom(address)).build();
+    return toCompletable(futureStubFull().getAccountNet(request));
+  }
+
+  public CompletableFuture<AccountResourceMessage> getAccountResource(byte[] address) {
+    Account request = Account.newBuilder().setAddress(ByteString.copyFrom(address)).build();
+    return accountResourceFlight.executeAsync(new ByteArrayWrapper(address.clone()),
+        () -> toCompletable(futureStubFull().getAccountResource(request)));
+  }
+
+  public CompletableFuture<ChainParameters> getChainParameters() {
+    return chainParametersFlight.executeAsync(Boolean.TRUE, () -> toCompletable(
+        futureStubFull().getChainParameters(EmptyMessage.getDefaultInstance())));
+  }
+
+  public CompletableFuture<Block> getBlock(long blockNum) {
+    if (blockNum < 0) {
+      if (solidityNodePool != null) {
+        return toCompletable(futureStubSolidity().getNowBlock(EmptyMessage.getDefaultInstance()));
+      } else {
+        return toCompletable(futureStubFull().getNowBlock(EmptyMessage.getDefaultInstance()));
+      }
+    }
+    NumberMessage request = NumberMessage.newBuilder().setNum(blockNum).build();
+    if (solidityNodePool != null) {
+      return toCompletable(futureStubSolidity().getBlockByNum(request));
+    } else {
+      return toCompletable(futureStubFull().getBlockByNum(request));
+    }
+  }
+
+  public CompletableFuture<BlockExtention> getBlock2(long blockNum) {
+    if (blockNum < 0) {
+      if (solidityNodePool != null) {
+        return toCompletable(futureStubSolidity().getNowBlock2(EmptyMessage.getDefaultInstance()));
+      } else {
+        return toCompletable(futureStubFull().getNowBlock2(EmptyMessage.getDefaultInstance()));
+      }
+    }
+    NumberMessage request = NumberMessage.newBuilder().setNum(blockNum).build();
+    if (solidityNodePool != null) {
+      return toCompletable(futureStubSolidity().getBlockByNum2(request));
+    } else {
+      return toCompletable(futureStubFull().getBlockByNum2(request));
+    }
+  }
+
+  public CompletableFuture<Block> getBlockById(String blockID) {
+    BytesMessage request = BytesMessage.newBuilder()
+        .setValue(ByteString.copyFrom(ByteArray.fromHexString(blockID))).build();
+    return toCompletable(futureStubFull().getBlockById(request));
+  }
+
+  public CompletableFuture<BlockListExtention> getBlockByLimitNext2(long start, long end) {
+    BlockLimit request = BlockLimit.newBuilder().setStartNum(start).setEndNum(end).build();
+    return toCompletable(futureStubFull().getBlockByLimitNext2(request));
+  }
+
+  public CompletableFuture<Transaction> getTransactionById(String txID) {
+    BytesMessage request = BytesMessage.newBuilder()
+        .setValue(ByteString.copyFrom(ByteArray.fromHexString(txID))).build();
+    if (solidityNodePool != null) {
+      return toCompletable(futureStubSolidity().getTransactionById(request));
+    } else {
+      return toCompletable(futureStubFull().getTransactionById(request));
+    }
+  }
+
+  public CompletableFuture<TransactionInfo> getTransactionInfoById(String txID) {
+    BytesMessage request = BytesMessage.newBuilder()
+        .setValue(ByteString.copyFrom(ByteArray.fromHexString(txID))).build();
+    if (solidityNodePool != null) {
+      return toCompletable(futureStubSolidity().getTransactionInfoById(request));
+    } else {
+      return toCompletable(futureStubFull().getTransactionInfoById(request));
+    }
+  }
+
+  public CompletableFuture<TransactionInfoList> getTransactionInfoByBlockNum(long blockNum) {
+    NumberMessage request = NumberMessage.newBuilder().setNum(blockNum).build();
+    if (solidityNodePool != null) {
+      return toCompletable(futureStubSolidity().getTransactionInfoByBlockNum(request));
+    } else {
+      return toCompletable(futureStubFull().getTransactionInfoByBlockNum(request));
+    }
+  }
+
+  public CompletableFuture<TransactionExtention> triggerContract(TriggerSmartContract request) {
+    return toCompletable(futureStubFull().triggerContract(request));
+  }
+
+  public CompletableFuture<TransactionExtention> triggerConstantContract(
+      TriggerSmartContract request) {
+    return toCompletable(futureStubFull().triggerConstantContract(request));
+  }
+
+  public CompletableFuture<SmartContract> getContract(byte[] address) {
+    BytesMessage request = BytesMessage.newBuilder().setValue(ByteString.copyFrom(address))
+        .build();
+    return toCompletable(futureStubFull().getContract(request));
+  }
+
+  public CompletableFuture<GrpcAPI.Return> broadcastTransaction(Transaction transaction) {
+    return toCompletable(futureStubFull().broadcastTransaction(transaction));
+  }
+
+  public CompletableFuture<IncrementalMerkleVoucherInfo> getMerkleTreeVoucherInfo(
+      OutputPointInfo info) {
+    if (solidityNodePool != null) {
+      return toCompletable(futureStubSolidity().getMerkleTreeVoucherInfo(info));
+    } else {
+      return toCompletable(futureStubFull().getMerkleTreeVoucherInfo(info));
+    }
+  }
+
+  public CompletableFuture<DecryptNotes> scanNoteByIvk(IvkDecryptParameters parameters) {
+    if (solidityNodePool != null) {
+      return toCompletable(futureStubSolidity().scanNoteByIvk(parameters));
+    } else {
+      return toCompletable(futureStubFull().scanNoteByIvk(parameters));
+    }
+  }
+
+  public CompletableFuture<DecryptNotesTRC20> scanShieldedTRC20NoteByIvk(
+      IvkDecryptTRC20Parameters parameters) {
+    if (solidityNodePool != null) {
+      return toCompletable(futureStubSolidity().scanShieldedTRC20NotesByIvk(parameters));
+    } else {
+      return toCompletable(futureStubFull().scanShieldedTRC20NotesByIvk(parameters));
+    }
+  }
+
+  public CompletableFuture<SpendResult> isNoteSpend(NoteParameters parameters) {
+    if (solidityNodePool != null) {
+      return toCompletable(futureStubSolidity().isSpend(parameters));
+    } else {
+      return toCompletable(futureStubFull().isSpend(parameters));
+    }
+  }
+
+  public CompletableFuture<NullifierResult> isShieldedTRC20ContractNoteSpent(
+      NfTRC20Parameters parameters) {
+    if (solidityNodePool != null) {
+      return toCompletable(futureStubSolidity().isShieldedTRC20ContractNoteSpent(parameters));
+    } else {
+      return toCompletable(futureStubFull().isShieldedTRC20ContractNoteSpent(parameters));
+    }
+  }
+
+  public CompletableFuture<BytesMessage> createShieldedNullifier(NfParameters parameters) {
+    return toCompletable(futureStubFull().createShieldNullifier(parameters));
+  }
+
+  /**
+   * Bridges a gRPC {@link ListenableFuture} to a {@link CompletableFuture}; cancelling the
+   * returned future cancels the RPC.
+   */
+  static <T> CompletableFuture<T> toCompletable(final ListenableFuture<T> future) {
+    final CompletableFuture<T> result = new CompletableFuture<T>() {
+      @Override
+      public boolean cancel(boolean mayInterruptIfRunning) {
+        future.cancel(mayInterruptIfRunning);
+        return super.cancel(mayInterruptIfRunning);
+      }
+    };
+    Futures.addCallback(future, new FutureCallback<T>() {
+      @Override
+      public void onSuccess(T value) {
+        result.complete(value);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        result.completeExceptionally(t);
+      }
+    }, MoreExecutors.directExecutor());
+    return result;
+  }
+}
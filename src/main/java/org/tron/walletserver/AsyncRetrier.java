@@ -0,0 +1,171 @@
+package org.tron.walletserver;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Makes asynchronous node calls, retrying transport failures and the answers a {@link Classifier}
+ * asks to retry after a jittered exponential backoff scheduled on a timer thread, so no thread
+ * sleeps while a call waits.
+ *
+ * <p>Closing it stops retrying: the calls waiting for their next attempt finish at once with the
+ * outcome of {@link Classifier#onClosed}, so nobody waits on them forever.
+ */
+class AsyncRetrier implements AutoCloseable {
+
+  /**
+   * What the answers and failures of a call mean.
+   *
+   * @param <R> the answer of the node
+   * @param <T> the outcome of the call
+   */
+  interface Classifier<R, T> {
+
+    /**
+     * Whether {@code response} asks for the call to be made again.
+     */
+    boolean shouldRetry(R response);
+
+    /**
+     * The outcome of a call answered with {@code response} and not tried again.
+     */
+    T onResponse(R response, int attempts);
+
+    /**
+     * The outcome of a call that failed with {@code status} and is not tried again.
+     */
+    T onFailure(Status status, int attempts);
+
+    /**
+     * The outcome of a call that was waiting for its next attempt when the retrier closed.
+     */
+    T onClosed(int attempts);
+  }
+
+  private final int maxAttempts;
+  private final long baseBackoffMillis;
+  private final long maxBackoffMillis;
+  private final ScheduledExecutorService scheduler;
+  // attempts waiting on the scheduler for their next try
+  private final Set<Attempt<?, ?>> waiting = ConcurrentHashMap.newKeySet();
+
+  AsyncRetrier(String threadName, int maxAttempts, long baseBackoffMillis,
+      long maxBackoffMillis) {
+    if (maxAttempts <= 0) {
+      throw new IllegalArgumentException("maxAttempts must be positive");
+    }
+    this.maxAttempts = maxAttempts;
+    this.baseBackoffMillis = baseBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, threadName);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Makes {@code call}, again as long as {@code classifier} or the failure asks for it and
+   * attempts are left.
+   */
+  <R, T> CompletableFuture<T> call(Supplier<CompletableFuture<R>> call,
+      Classifier<R, T> classifier) {
+    Attempt<R, T> attempt = new Attempt<>(call, classifier);
+    attempt.run();
+    return attempt.future;
+  }
+
+  private long backoffMillis(int attempt) {
+    long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+    return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+    for (Attempt<?, ?> attempt : waiting) {
+      if (waiting.remove(attempt)) {
+        attempt.closed();
+      }
+    }
+  }
+
+  private class Attempt<R, T> implements Runnable {
+
+    private final Supplier<CompletableFuture<R>> call;
+    private final Classifier<R, T> classifier;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+    private int attempts = 0;
+
+    Attempt(Supplier<CompletableFuture<R>> call, Classifier<R, T> classifier) {
+      this.call = call;
+      this.classifier = classifier;
+    }
+
+    @Override
+    public void run() {
+      if (attempts > 0 && !waiting.remove(this)) {
+        return;
+      }
+      attempts++;
+      CompletableFuture<R> response;
+      try {
+        response = call.get();
+      } catch (RuntimeException e) {
+        onFailure(e);
+        return;
+      }
+      response.whenComplete((value, t) -> {
+        if (t != null) {
+          onFailure(t);
+        } else {
+          onResponse(value);
+        }
+      });
+    }
+
+    private void onResponse(R response) {
+      if (classifier.shouldRetry(response) && attempts < maxAttempts) {
+        retry();
+      } else {
+        future.complete(classifier.onResponse(response, attempts));
+      }
+    }
+
+    private void onFailure(Throwable t) {
+      Throwable cause = t instanceof CompletionException && t.getCause() != null
+          ? t.getCause() : t;
+      Status status = cause instanceof StatusRuntimeException
+          ? ((StatusRuntimeException) cause).getStatus() : Status.fromThrowable(cause);
+      if (NodeEndpoint.isNodeFailure(status.getCode()) && attempts < maxAttempts) {
+        retry();
+      } else {
+        future.complete(classifier.onFailure(status, attempts));
+      }
+    }
+
+    private void retry() {
+      waiting.add(this);
+      try {
+        scheduler.schedule(this, backoffMillis(attempts), TimeUnit.MILLISECONDS);
+      } catch (RuntimeException e) {
+        if (waiting.remove(this)) {
+          closed();
+        }
+      }
+    }
+
+    private void closed() {
+      future.complete(classifier.onClosed(attempts));
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package org.tron.walletserver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.api.GrpcAPI.BlockExtention;
+import org.tron.api.GrpcAPI.BlockListExtention;
+
+/**
+ * Streams the blocks of {@code [start, end)} in strict height order while fetching them in
+ * parallel.
+ *
+ * <p>The range is split into chunks of at most {@code chunkSize} blocks (the node answers
+ * {@code GetBlockByLimitNext2} with at most 100 blocks). Up to {@code parallelism} chunks are
+ * requested at once through {@link AsyncGrpcClient}, so they spread over the node pool. A feeder
+ * thread hands the chunks to a bounded queue in order; when the consumer falls behind the queue
+ * fills, the feeder stops, and no further chunks are requested.
+ */
+@Slf4j
+public class BlockRangeStreamer implements Iterator<BlockExtention>, AutoCloseable {
+
+  public static final int MAX_CHUNK_SIZE = 100;
+  private static final int MAX_ATTEMPTS = 3;
+  private static final BlockExtention END = BlockExtention.getDefaultInstance();
+
+  private final AsyncGrpcClient client;
+  private final long end;
+  private final int chunkSize;
+  private final int parallelism;
+  private final BlockingQueue<BlockExtention> queue;
+  private final Thread feeder;
+  // node calls in flight, cancelled when the feeder stops
+  private final Set<CompletableFuture<BlockListExtention>> calls = ConcurrentHashMap.newKeySet();
+  private volatile Throwable failure;
+  private volatile boolean closed;
+  private BlockExtention next;
+
+  public BlockRangeStreamer(AsyncGrpcClient client, long start, long end) {
+    this(client, start, end, MAX_CHUNK_SIZE, 8, 1000);
+  }
+
+  public BlockRangeStreamer(AsyncGrpcClient client, long start, long end, int chunkSize,
+      int parallelism, int queueCapacity) {
+    if (start < 0 || end < start) {
+      throw new IllegalArgumentException("Invalid block range [" + start + ", " + end + ")");
+    }
+    if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE || parallelism <= 0) {
+      throw new IllegalArgumentException("chunkSize must be in [1, " + MAX_CHUNK_SIZE
+          + "] and parallelism positive");
+    }
+    this.client = client;
+    this.end = end;
+    this.chunkSize = chunkSize;
+    this.parallelism = parallelism;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.feeder = new Thread(() -> feed(start), "block-range-" + start + "-" + end);
+    this.feeder.setDaemon(true);
+    this.feeder.start();
+  }
+
+  private void feed(long start) {
+    Deque<CompletableFuture<List<BlockExtention>>> window = new ArrayDeque<>();
+    long nextChunk = start;
+    try {
+      while (!closed) {
+        while (window.size() < parallelism && nextChunk < end) {
+          long chunkEnd = Math.min(nextChunk + chunkSize, end);
+          window.addLast(fetch(nextChunk, chunkEnd, 1));
+          nextChunk = chunkEnd;
+        }
+        if (window.isEmpty()) {
+          queue.put(END);
+          return;
+        }
+        // get() rather than join() so that close() can interrupt the wait on a slow node
+        List<BlockExtention> chunk = window.getFirst().get();
+        window.removeFirst();
+        for (BlockExtention block : chunk) {
+          queue.put(block);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      failure = e.getCause();
+      logger.error("Block range fetch failed", failure);
+    } catch (RuntimeException e) {
+      failure = e.getCause() != null ? e.getCause() : e;
+      logger.error("Block range fetch failed", failure);
+    }
+    // no more retries either
+    closed = true;
+    for (CompletableFuture<List<BlockExtention>> pending : window) {
+      pending.cancel(true);
+    }
+    for (CompletableFuture<BlockListExtention> call : calls) {
+      call.cancel(true);
+    }
+    // the consumer sees the failure right away instead of after the blocks still queued
+    queue.clear();
+    queue.offer(END);
+  }
+
+  /**
+   * Fetches {@code [from, to)} and checks that exactly those blocks came back; a short answer
+   * or a failed call is retried for the missing part.
+   */
+  private CompletableFuture<List<BlockExtention>> fetch(long from, long to, int attempt) {
+    CompletableFuture<BlockListExtention> call = client.getBlockByLimitNext2(from, to);
+    calls.add(call);
+    call.whenComplete((list, t) -> calls.remove(call));
+    return call.handle((list, t) -> {
+      if (t != null) {
+        return retry(from, to, attempt, new ArrayList<>(), t);
+      }
+      List<BlockExtention> blocks = new ArrayList<>(list.getBlockList());
+      blocks.sort(Comparator.comparingLong(BlockRangeStreamer::number));
+      List<BlockExtention> contiguous = new ArrayList<>(blocks.size());
+      long expected = from;
+      for (BlockExtention block : blocks) {
+        if (number(block) == expected) {
+          contiguous.add(block);
+          expected++;
+        }
+      }
+      if (expected == to) {
+        return CompletableFuture.completedFuture(contiguous);
+      }
+      return retry(expected, to, attempt, contiguous,
+          new IllegalStateException("Block " + expected + " is not available"));
+    }).thenCompose(future -> future);
+  }
+
+  private CompletableFuture<List<BlockExtention>> retry(long from, long to, int attempt,
+      List<BlockExtention> prefix, Throwable cause) {
+    if (closed || attempt >= MAX_ATTEMPTS) {
+      CompletableFuture<List<BlockExtention>> failed = new CompletableFuture<>();
+      failed.completeExceptionally(cause);
+      return failed;
+    }
+    return fetch(from, to, attempt + 1).thenApply(rest -> {
+      prefix.addAll(rest);
+      return prefix;
+    });
+  }
+
+  private static long number(BlockExtention block) {
+    return block.getBlockHeader().getRawData().getNumber();
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      try {
+        next = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
+    }
+    if (next == END) {
+      if (failure != null) {
+        throw new IllegalStateException("Block range fetch failed", failure);
+      }
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public BlockExtention next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    BlockExtention block = next;
+    next = null;
+    return block;
+  }
+
+  public Stream<BlockExtention> stream() {
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+        Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    feeder.interrupt();
+  }
+}
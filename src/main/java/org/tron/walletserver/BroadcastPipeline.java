@@ -0,0 +1,160 @@
+package org.tron.walletserver;
+
+import io.grpc.Status;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.api.GrpcAPI;
+import org.tron.api.GrpcAPI.Return.response_code;
+import org.tron.common.utils.TransactionEnvelope;
+import org.tron.protos.Protocol.Transaction;
+
+/**
+ * Broadcasts many signed transactions with a bounded number in flight across the node pool.
+ *
+ * <p>{@code SERVER_BUSY} answers and transport failures are retried by an {@link AsyncRetrier},
+ * so no thread sleeps while a transaction waits. Submitting blocks only while {@code maxInFlight}
+ * broadcasts are outstanding.
+ */
+@Slf4j
+public class BroadcastPipeline implements AutoCloseable {
+
+  private final AsyncGrpcClient client;
+  private final Semaphore window;
+  private final AsyncRetrier retrier;
+
+  public BroadcastPipeline(AsyncGrpcClient client, int maxInFlight) {
+    this(client, maxInFlight, 10, 200, 10_000);
+  }
+
+  public BroadcastPipeline(AsyncGrpcClient client, int maxInFlight, int maxAttempts,
+      long baseBackoffMillis, long maxBackoffMillis) {
+    if (maxInFlight <= 0 || maxAttempts <= 0) {
+      throw new IllegalArgumentException("maxInFlight and maxAttempts must be positive");
+    }
+    this.client = client;
+    this.window = new Semaphore(maxInFlight);
+    this.retrier = new AsyncRetrier("broadcast-retry", maxAttempts, baseBackoffMillis,
+        maxBackoffMillis);
+  }
+
+  /**
+   * Starts broadcasting one transaction, waiting first for a free slot in the window.
+   */
+  public CompletableFuture<Result> submit(Transaction transaction) throws InterruptedException {
+    return submit(TransactionEnvelope.of(transaction));
+  }
+
+  /**
+   * Same as {@link #submit(Transaction)}, reusing the txid already computed when signing.
+   */
+  public CompletableFuture<Result> submit(TransactionEnvelope envelope)
+      throws InterruptedException {
+    window.acquire();
+    Transaction transaction = envelope.getTransaction();
+    CompletableFuture<Result> future = retrier.call(
+        () -> client.broadcastTransaction(transaction), new Outcome(envelope.getTxidHex()));
+    future.whenComplete((result, t) -> window.release());
+    return future;
+  }
+
+  /**
+   * Broadcasts every transaction of the stream and waits for all of them.
+   *
+   * @return one result per transaction, in stream order
+   */
+  public List<Result> broadcastAll(Stream<Transaction> transactions)
+      throws InterruptedException {
+    List<CompletableFuture<Result>> futures = new ArrayList<>();
+    Iterator<Transaction> iterator = transactions.iterator();
+    while (iterator.hasNext()) {
+      futures.add(submit(iterator.next()));
+    }
+    List<Result> results = new ArrayList<>(futures.size());
+    for (CompletableFuture<Result> future : futures) {
+      results.add(future.join());
+    }
+    return results;
+  }
+
+  /**
+   * Stops retrying. Transactions waiting for their next attempt finish as failed, so that
+   * {@link #broadcastAll} returns.
+   */
+  @Override
+  public void close() {
+    retrier.close();
+  }
+
+  private static class Outcome implements AsyncRetrier.Classifier<GrpcAPI.Return, Result> {
+
+    private final String txid;
+    private final long begin = System.nanoTime();
+
+    Outcome(String txid) {
+      this.txid = txid;
+    }
+
+    @Override
+    public boolean shouldRetry(GrpcAPI.Return response) {
+      return !response.getResult() && response.getCode() == response_code.SERVER_BUSY;
+    }
+
+    @Override
+    public Result onResponse(GrpcAPI.Return response, int attempts) {
+      if (response.getResult()) {
+        return finish(true, response_code.SUCCESS, "", attempts);
+      }
+      // an earlier attempt may have reached the node even though we did not see its answer
+      return finish(response.getCode() == response_code.DUP_TRANSACTION_ERROR && attempts > 1,
+          response.getCode(), response.getMessage().toStringUtf8(), attempts);
+    }
+
+    @Override
+    public Result onFailure(Status status, int attempts) {
+      return finish(false, response_code.OTHER_ERROR, status.toString(), attempts);
+    }
+
+    @Override
+    public Result onClosed(int attempts) {
+      return finish(false, response_code.OTHER_ERROR, "pipeline closed", attempts);
+    }
+
+    private Result finish(boolean success, response_code code, String message, int attempts) {
+      if (!success) {
+        logger.debug("Broadcast of {} failed after {} attempts: {} {}", txid, attempts, code,
+            message);
+      }
+      return new Result(txid, success, code, message, attempts,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+    }
+  }
+
+  /**
+   * Outcome of broadcasting one transaction.
+   */
+  @Getter
+  @AllArgsConstructor
+  public static class Result {
+
+    private final String txid;
+    private final boolean success;
+    private final response_code code;
+    private final String message;
+    private final int attempts;
+    private final long elapsedMillis;
+
+    @Override
+    public String toString() {
+      return txid + " " + (success ? "SUCCESS" : code + " " + message)
+          + " attempts=" + attempts + " elapsed=" + elapsedMillis + "ms";
+    }
+  }
+}
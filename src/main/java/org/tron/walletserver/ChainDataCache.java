@@ -0,0 +1,34 @@
+package org.tron.walletserver;
+
+import com.google.protobuf.Message;
+
+/**
+ * Cache consulted by {@link GrpcClient} before asking a node for chain data that is looked up by
+ * id or block number.
+ *
+ * <p>Entries stored as {@code finalized} lie at or below the solidified block and never change,
+ * so implementations may keep them until they need the room. Other entries are close to the
+ * head and must expire quickly.
+ */
+public interface ChainDataCache {
+
+  enum Kind {
+    BLOCK_BY_ID,
+    TRANSACTION_BY_ID,
+    TRANSACTION_INFO_BY_ID,
+    TRANSACTION_INFO_BY_BLOCK_NUM
+  }
+
+  /**
+   * @return the cached value, or null on a miss
+   */
+  <T extends Message> T get(Kind kind, Object key);
+
+  void put(Kind kind, Object key, Message value, boolean finalized);
+
+  void clear();
+
+  long getHitCount(Kind kind);
+
+  long getMissCount(Kind kind);
+}
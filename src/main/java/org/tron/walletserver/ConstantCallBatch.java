@@ -0,0 +1,316 @@
+package org.tron.walletserver;
+
+import io.grpc.Status;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.api.GrpcAPI.Return.response_code;
+import org.tron.api.GrpcAPI.TransactionExtention;
+import org.tron.common.utils.AbiCodec;
+import org.tron.protos.Protocol.Transaction.Result.code;
+import org.tron.protos.contract.SmartContractOuterClass.TriggerSmartContract;
+
+/**
+ * Runs many constant contract calls, such as TRC20 {@code balanceOf} over many holders, with a
+ * bounded number in flight across the node pool, and decodes what they return.
+ *
+ * <p>Each call is encoded once by its {@link AbiCodec}. With an aggregator, a deployed Multicall2
+ * contract, {@link #callAll} packs up to {@code callsPerAggregate} calls into one
+ * {@code tryAggregate(false, calls)} call, so one round trip answers them all; the calls then run
+ * with the aggregator as their sender. When an aggregate call fails as a whole, for instance for
+ * running out of time on the node, its calls are made one by one instead. Transport failures and
+ * {@code SERVER_BUSY} answers are retried by an {@link AsyncRetrier}, as in
+ * {@link BroadcastPipeline}.
+ */
+@Slf4j
+public class ConstantCallBatch implements AutoCloseable {
+
+  private static final AbiCodec TRY_AGGREGATE =
+      AbiCodec.of("tryAggregate(bool,(address,bytes)[])", "(bool,bytes)[]");
+  private static final AbiCodec ERROR = AbiCodec.of("Error(string)");
+  private static final AbiCodec BALANCE_OF = AbiCodec.of("balanceOf(address)", "uint256");
+
+  private final AsyncGrpcClient client;
+  private final Semaphore window;
+  private final AsyncRetrier retrier;
+  private byte[] owner;
+  private byte[] aggregator;
+  private int callsPerAggregate = 1;
+
+  public ConstantCallBatch(AsyncGrpcClient client, int maxInFlight) {
+    this(client, maxInFlight, 5, 200, 10_000);
+  }
+
+  public ConstantCallBatch(AsyncGrpcClient client, int maxInFlight, int maxAttempts,
+      long baseBackoffMillis, long maxBackoffMillis) {
+    if (maxInFlight <= 0 || maxAttempts <= 0) {
+      throw new IllegalArgumentException("maxInFlight and maxAttempts must be positive");
+    }
+    this.client = client;
+    this.window = new Semaphore(maxInFlight);
+    this.retrier = new AsyncRetrier("constant-call-retry", maxAttempts, baseBackoffMillis,
+        maxBackoffMillis);
+    this.owner = new byte[21];
+    this.owner[0] = WalletApi.getAddressPreFixByte();
+  }
+
+  /**
+   * The sender of the calls, the zero address by default.
+   */
+  public ConstantCallBatch withOwner(byte[] owner) {
+    this.owner = owner.clone();
+    return this;
+  }
+
+  /**
+   * Packs the calls of {@link #callAll} into {@code tryAggregate} calls to the Multicall2 contract
+   * at {@code aggregator}, {@code callsPerAggregate} at a time.
+   */
+  public ConstantCallBatch withAggregator(byte[] aggregator, int callsPerAggregate) {
+    if (callsPerAggregate <= 0) {
+      throw new IllegalArgumentException("callsPerAggregate must be positive");
+    }
+    this.aggregator = aggregator.clone();
+    this.callsPerAggregate = callsPerAggregate;
+    return this;
+  }
+
+  /**
+   * Starts one call, waiting first for a free slot in the window.
+   */
+  public CompletableFuture<Result> submit(Call call) throws InterruptedException {
+    window.acquire();
+    CompletableFuture<Result> future = trigger(call.contract, call.data)
+        .thenApply(call::result);
+    future.whenComplete((result, t) -> window.release());
+    return future;
+  }
+
+  /**
+   * Makes every call and waits for all of them.
+   *
+   * @return the result of each call under its key, in the order of {@code calls}
+   */
+  public <K> Map<K, Result> callAll(Map<K, Call> calls) throws InterruptedException {
+    List<K> keys = new ArrayList<>(calls.keySet());
+    List<CompletableFuture<List<Result>>> futures = new ArrayList<>();
+    int chunk = aggregator == null ? 1 : callsPerAggregate;
+    for (int from = 0; from < keys.size(); from += chunk) {
+      List<Call> group = new ArrayList<>();
+      for (K key : keys.subList(from, Math.min(keys.size(), from + chunk))) {
+        group.add(calls.get(key));
+      }
+      if (aggregator == null || group.size() == 1) {
+        futures.add(submit(group.get(0)).thenApply(Collections::singletonList));
+      } else {
+        futures.add(submitAggregate(group));
+      }
+    }
+    Map<K, Result> results = new LinkedHashMap<>();
+    int index = 0;
+    for (CompletableFuture<List<Result>> future : futures) {
+      for (Result result : future.join()) {
+        results.put(keys.get(index++), result);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * The TRC20 balances of {@code holders}, base58check addresses, leaving out those whose call
+   * failed.
+   */
+  public Map<String, BigInteger> balancesOf(byte[] token, Collection<String> holders)
+      throws InterruptedException {
+    Map<String, Call> calls = new LinkedHashMap<>();
+    for (String holder : holders) {
+      calls.put(holder, Call.of(token, BALANCE_OF, holder));
+    }
+    Map<String, BigInteger> balances = new LinkedHashMap<>();
+    for (Map.Entry<String, Result> entry : callAll(calls).entrySet()) {
+      if (entry.getValue().isSuccess()) {
+        balances.put(entry.getKey(), (BigInteger) entry.getValue().getValues().get(0));
+      }
+    }
+    return balances;
+  }
+
+  private CompletableFuture<List<Result>> submitAggregate(List<Call> group)
+      throws InterruptedException {
+    List<Object> targets = new ArrayList<>(group.size());
+    for (Call call : group) {
+      targets.add(Arrays.asList(call.contract, call.data));
+    }
+    byte[] data = TRY_AGGREGATE.encode(false, targets);
+    window.acquire();
+    CompletableFuture<List<Result>> future = trigger(aggregator, data)
+        .thenCompose(response -> {
+          List<Result> results = response.success ? aggregated(group, response) : null;
+          if (results != null) {
+            return CompletableFuture.completedFuture(results);
+          }
+          logger.debug("Aggregate of {} calls failed ({}), calling them one by one",
+              group.size(), response.error);
+          return oneByOne(group, 0, new ArrayList<>());
+        });
+    future.whenComplete((results, t) -> window.release());
+    return future;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Result> aggregated(List<Call> group, Response response) {
+    List<Object> returned;
+    try {
+      returned = (List<Object>) TRY_AGGREGATE.decode(response.data).get(0);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (returned.size() != group.size()) {
+      return null;
+    }
+    List<Result> results = new ArrayList<>(group.size());
+    for (int i = 0; i < group.size(); i++) {
+      List<Object> outcome = (List<Object>) returned.get(i);
+      byte[] returnData = (byte[]) outcome.get(1);
+      results.add(group.get(i).result(new Response((Boolean) outcome.get(0), returnData,
+          (Boolean) outcome.get(0) ? null : revertReason(returnData), response.attempts)));
+    }
+    return results;
+  }
+
+  // under the aggregate's slot in the window, so one after the other
+  private CompletableFuture<List<Result>> oneByOne(List<Call> group, int index,
+      List<Result> results) {
+    if (index == group.size()) {
+      return CompletableFuture.completedFuture(results);
+    }
+    Call call = group.get(index);
+    return trigger(call.contract, call.data).thenCompose(response -> {
+      results.add(call.result(response));
+      return oneByOne(group, index + 1, results);
+    });
+  }
+
+  private CompletableFuture<Response> trigger(byte[] contract, byte[] data) {
+    TriggerSmartContract request = WalletApi.triggerCallContract(owner, contract, 0, data, 0, "");
+    return retrier.call(() -> client.triggerConstantContract(request), new Outcome());
+  }
+
+  private static String revertReason(byte[] returnData) {
+    try {
+      return "REVERT " + ERROR.decodeInput(returnData).get(0);
+    } catch (IllegalArgumentException e) {
+      return "REVERT";
+    }
+  }
+
+  /**
+   * Stops retrying. Calls waiting for their next attempt fail, so that {@link #callAll} returns.
+   */
+  @Override
+  public void close() {
+    retrier.close();
+  }
+
+  private static class Outcome
+      implements AsyncRetrier.Classifier<TransactionExtention, Response> {
+
+    @Override
+    public boolean shouldRetry(TransactionExtention response) {
+      return !response.getResult().getResult()
+          && response.getResult().getCode() == response_code.SERVER_BUSY;
+    }
+
+    @Override
+    public Response onResponse(TransactionExtention response, int attempts) {
+      byte[] data = response.getConstantResultCount() == 0 ? new byte[0]
+          : response.getConstantResult(0).toByteArray();
+      if (!response.getResult().getResult()) {
+        return new Response(false, data, response.getResult().getCode() + " "
+            + response.getResult().getMessage().toStringUtf8(), attempts);
+      } else if (response.getTransaction().getRetCount() != 0
+          && response.getTransaction().getRet(0).getRet() == code.FAILED) {
+        return new Response(false, data, revertReason(data), attempts);
+      }
+      return new Response(true, data, null, attempts);
+    }
+
+    @Override
+    public Response onFailure(Status status, int attempts) {
+      return new Response(false, new byte[0], status.toString(), attempts);
+    }
+
+    @Override
+    public Response onClosed(int attempts) {
+      return new Response(false, new byte[0], "batch closed", attempts);
+    }
+  }
+
+  @AllArgsConstructor
+  private static class Response {
+
+    private final boolean success;
+    private final byte[] data;
+    private final String error;
+    private final int attempts;
+  }
+
+  /**
+   * A constant call, encoded once.
+   */
+  public static class Call {
+
+    private final byte[] contract;
+    private final AbiCodec function;
+    private final byte[] data;
+
+    private Call(byte[] contract, AbiCodec function, byte[] data) {
+      this.contract = contract;
+      this.function = function;
+      this.data = data;
+    }
+
+    public static Call of(byte[] contract, AbiCodec function, Object... args) {
+      return new Call(contract.clone(), function, function.encode(args));
+    }
+
+    private Result result(Response response) {
+      if (!response.success) {
+        return new Result(false, Collections.emptyList(), response.error, response.attempts);
+      }
+      try {
+        return new Result(true, function.decode(response.data), null, response.attempts);
+      } catch (IllegalArgumentException e) {
+        return new Result(false, Collections.emptyList(), e.getMessage(), response.attempts);
+      }
+    }
+  }
+
+  /**
+   * Outcome of one call: the values it returned, or why it failed.
+   */
+  @Getter
+  @AllArgsConstructor
+  public static class Result {
+
+    private final boolean success;
+    private final List<Object> values;
+    private final String error;
+    private final int attempts;
+
+    @Override
+    public String toString() {
+      return (success ? values.toString() : "FAILED " + error) + " attempts=" + attempts;
+    }
+  }
+}
@@ -1,12 +1,13 @@
 package org.tron.walletserver;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
 
 import com.google.protobuf.ByteString;
-import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
+import com.google.protobuf.Message;
+import io.grpc.StatusRuntimeException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
 import org.tron.api.GrpcAPI;
@@ -23,6 +24,8 @@ import org.tron.api.WalletExtensionGrpc;
 import org.tron.api.WalletGrpc;
 import org.tron.api.WalletSolidityGrpc;
 import org.tron.common.utils.ByteArray;
+import org.tron.common.utils.ByteArrayWrapper;
+import org.tron.walletserver.ChainDataCache.Kind;
 import org.tron.protos.Protocol.Account;
 import org.tron.protos.Protocol.Block;
 import org.tron.protos.Protocol.ChainParameters;
@@ -79,11 +82,21 @@ import org.tron.protos.contract.MarketContract.MarketSellAssetContract;
 @Slf4j
 public class GrpcClient {
 
-  private ManagedChannel channelFull = null;
-  private ManagedChannel channelSolidity = null;
-  private WalletGrpc.WalletBlockingStub blockingStubFull = null;
-  private WalletSolidityGrpc.WalletSolidityBlockingStub blockingStubSolidity = null;
-  private WalletExtensionGrpc.WalletExtensionBlockingStub blockingStubExtension = null;
+  private static final long SOLIDIFIED_REFRESH_MILLIS = 3_000L;
+  private static final int FULLNODE_CONFIRMATIONS = 20;
+
+  private NodePool fullNodePool = null;
+  private NodePool solidityNodePool = null;
+  private ChainDataCache chainDataCache = null;
+  private volatile long solidifiedBlockNum = -1;
+  private volatile long solidifiedCheckedAt = 0;
+  private final SingleFlight<ByteArrayWrapper, Account> accountFlight = new SingleFlight<>();
+  private final SingleFlight<ByteArrayWrapper, AccountNetMessage> accountNetFlight =
+      new SingleFlight<>();
+  private final SingleFlight<ByteArrayWrapper, AccountResourceMessage> accountResourceFlight =
+      new SingleFlight<>();
+  private final SingleFlight<Boolean, ChainParameters> chainParametersFlight =
+      new SingleFlight<>();
 
 //  public GrpcClient(String host, int port) {
 //    channel = ManagedChannelBuilder.forAddress(host, port)
@@ -93,71 +106,108 @@ public class GrpcClient {
 //  }
 
   public GrpcClient(String fullnode, String soliditynode) {
-    if (!StringUtils.isEmpty(fullnode)) {
-      channelFull = ManagedChannelBuilder.forTarget(fullnode)
-          .usePlaintext(true)
-          .build();
-      blockingStubFull = WalletGrpc.newBlockingStub(channelFull);
+    this(StringUtils.isEmpty(fullnode) ? Collections.<String>emptyList()
+            : Collections.singletonList(fullnode),
+        StringUtils.isEmpty(soliditynode) ? Collections.<String>emptyList()
+            : Collections.singletonList(soliditynode));
+  }
+
+  /**
+   * Builds a client over every configured node; each call goes to the currently healthiest one.
+   */
+  public GrpcClient(List<String> fullnodes, List<String> soliditynodes) {
+    if (fullnodes != null && !fullnodes.isEmpty()) {
+      fullNodePool = new NodePool(fullnodes, false);
     }
-    if (!StringUtils.isEmpty(soliditynode)) {
-      channelSolidity = ManagedChannelBuilder.forTarget(soliditynode)
-          .usePlaintext(true)
-          .build();
-      blockingStubSolidity = WalletSolidityGrpc.newBlockingStub(channelSolidity);
-      blockingStubExtension = WalletExtensionGrpc.newBlockingStub(channelSolidity);
+    if (soliditynodes != null && !soliditynodes.isEmpty()) {
+      solidityNodePool = new NodePool(soliditynodes, true);
     }
   }
 
+  public NodePool getFullNodePool() {
+    return fullNodePool;
+  }
+
+  public NodePool getSolidityNodePool() {
+    return solidityNodePool;
+  }
+
+  public ChainDataCache getChainDataCache() {
+    return chainDataCache;
+  }
+
+  /**
+   * Installs a cache for blocks, transactions and transaction infos looked up by id or number;
+   * null turns caching off.
+   */
+  public void setChainDataCache(ChainDataCache chainDataCache) {
+    this.chainDataCache = chainDataCache;
+  }
+
+  private WalletGrpc.WalletBlockingStub blockingStubFull() {
+    return fullNodePool == null ? null : fullNodePool.select().getBlockingStubFull();
+  }
+
+  private WalletSolidityGrpc.WalletSolidityBlockingStub blockingStubSolidity() {
+    return solidityNodePool == null ? null : solidityNodePool.select().getBlockingStubSolidity();
+  }
+
+  private WalletExtensionGrpc.WalletExtensionBlockingStub blockingStubExtension() {
+    return solidityNodePool == null ? null : solidityNodePool.select().getBlockingStubExtension();
+  }
+
   public void shutdown() throws InterruptedException {
-    if (channelFull != null) {
-      channelFull.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+    if (fullNodePool != null) {
+      fullNodePool.shutdown();
     }
-    if (channelSolidity != null) {
-      channelSolidity.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+    if (solidityNodePool != null) {
+      solidityNodePool.shutdown();
     }
   }
 
   public Account queryAccount(byte[] address) {
     ByteString addressBS = ByteString.copyFrom(address);
     Account request = Account.newBuilder().setAddress(addressBS).build();
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.getAccount(request);
-    } else {
-      return blockingStubFull.getAccount(request);
-    }
+    return accountFlight.execute(new ByteArrayWrapper(address.clone()), () -> {
+      if (solidityNodePool != null) {
+        return blockingStubSolidity().getAccount(request);
+      } else {
+        return blockingStubFull().getAccount(request);
+      }
+    });
   }
 
   public Account queryAccountById(String accountId) {
     ByteString bsAccountId = ByteString.copyFromUtf8(accountId);
     Account request = Account.newBuilder().setAccountId(bsAccountId).build();
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.getAccountById(request);
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().getAccountById(request);
     } else {
-      return blockingStubFull.getAccountById(request);
+      return blockingStubFull().getAccountById(request);
     }
   }
 
   //Warning: do not invoke this interface provided by others.
   public Transaction signTransaction(TransactionSign transactionSign) {
-    return blockingStubFull.getTransactionSign(transactionSign);
+    return blockingStubFull().getTransactionSign(transactionSign);
   }
 
   //Warning: do not invoke this interface provided by others.
   public TransactionExtention signTransaction2(TransactionSign transactionSign) {
-    return blockingStubFull.getTransactionSign2(transactionSign);
+    return blockingStubFull().getTransactionSign2(transactionSign);
   }
 
   //Warning: do not invoke this interface provided by others.
   public TransactionExtention addSign(TransactionSign transactionSign) {
-    return blockingStubFull.addSign(transactionSign);
+    return blockingStubFull().addSign(transactionSign);
   }
 
   public TransactionSignWeight getTransactionSignWeight(Transaction transaction) {
-    return blockingStubFull.getTransactionSignWeight(transaction);
+    return blockingStubFull().getTransactionSignWeight(transaction);
   }
 
   public TransactionApprovedList getTransactionApprovedList(Transaction transaction) {
-    return blockingStubFull.getTransactionApprovedList(transaction);
+    return blockingStubFull().getTransactionApprovedList(transaction);
   }
 
   //Warning: do not invoke this interface provided by others.
@@ -165,7 +215,7 @@ public class GrpcClient {
     BytesMessage.Builder builder = BytesMessage.newBuilder();
     builder.setValue(ByteString.copyFrom(passPhrase));
 
-    BytesMessage result = blockingStubFull.createAddress(builder.build());
+    BytesMessage result = blockingStubFull().createAddress(builder.build());
     return result.getValue().toByteArray();
   }
 
@@ -176,7 +226,7 @@ public class GrpcClient {
     builder.setToAddress(ByteString.copyFrom(toAddress));
     builder.setAmount(amount);
 
-    return blockingStubFull.easyTransfer(builder.build());
+    return blockingStubFull().easyTransfer(builder.build());
   }
 
   //Warning: do not invoke this interface provided by others.
@@ -187,7 +237,7 @@ public class GrpcClient {
     builder.setToAddress(ByteString.copyFrom(toAddress));
     builder.setAmount(amount);
 
-    return blockingStubFull.easyTransferByPrivate(builder.build());
+    return blockingStubFull().easyTransferByPrivate(builder.build());
   }
 
   //Warning: do not invoke this interface provided by others.
@@ -199,7 +249,7 @@ public class GrpcClient {
     builder.setAssetId(assetId);
     builder.setAmount(amount);
 
-    return blockingStubFull.easyTransferAsset(builder.build());
+    return blockingStubFull().easyTransferAsset(builder.build());
   }
 
   //Warning: do not invoke this interface provided by others.
@@ -212,122 +262,122 @@ public class GrpcClient {
     builder.setAssetId(assetId);
     builder.setAmount(amount);
 
-    return blockingStubFull.easyTransferAssetByPrivate(builder.build());
+    return blockingStubFull().easyTransferAssetByPrivate(builder.build());
   }
 
   public Transaction createTransaction(AccountUpdateContract contract) {
-    return blockingStubFull.updateAccount(contract);
+    return blockingStubFull().updateAccount(contract);
   }
 
   public TransactionExtention createTransaction2(AccountUpdateContract contract) {
-    return blockingStubFull.updateAccount2(contract);
+    return blockingStubFull().updateAccount2(contract);
   }
 
   public Transaction createTransaction(SetAccountIdContract contract) {
-    return blockingStubFull.setAccountId(contract);
+    return blockingStubFull().setAccountId(contract);
   }
 
   public Transaction createTransaction(UpdateAssetContract contract) {
-    return blockingStubFull.updateAsset(contract);
+    return blockingStubFull().updateAsset(contract);
   }
 
   public TransactionExtention createTransaction2(UpdateAssetContract contract) {
-    return blockingStubFull.updateAsset2(contract);
+    return blockingStubFull().updateAsset2(contract);
   }
 
   public Transaction createTransaction(TransferContract contract) {
-    return blockingStubFull.createTransaction(contract);
+    return blockingStubFull().createTransaction(contract);
   }
 
   public TransactionExtention createTransaction2(TransferContract contract) {
-    return blockingStubFull.createTransaction2(contract);
+    return blockingStubFull().createTransaction2(contract);
   }
 
   public Transaction createTransaction(FreezeBalanceContract contract) {
-    return blockingStubFull.freezeBalance(contract);
+    return blockingStubFull().freezeBalance(contract);
   }
 
   public TransactionExtention createTransaction(BuyStorageContract contract) {
-    return blockingStubFull.buyStorage(contract);
+    return blockingStubFull().buyStorage(contract);
   }
 
   public TransactionExtention createTransaction(BuyStorageBytesContract contract) {
-    return blockingStubFull.buyStorageBytes(contract);
+    return blockingStubFull().buyStorageBytes(contract);
   }
 
   public TransactionExtention createTransaction(SellStorageContract contract) {
-    return blockingStubFull.sellStorage(contract);
+    return blockingStubFull().sellStorage(contract);
   }
 
   public TransactionExtention createTransaction2(FreezeBalanceContract contract) {
-    return blockingStubFull.freezeBalance2(contract);
+    return blockingStubFull().freezeBalance2(contract);
   }
 
   public Transaction createTransaction(WithdrawBalanceContract contract) {
-    return blockingStubFull.withdrawBalance(contract);
+    return blockingStubFull().withdrawBalance(contract);
   }
 
   public TransactionExtention createTransaction2(WithdrawBalanceContract contract) {
-    return blockingStubFull.withdrawBalance2(contract);
+    return blockingStubFull().withdrawBalance2(contract);
   }
 
   public Transaction createTransaction(UnfreezeBalanceContract contract) {
-    return blockingStubFull.unfreezeBalance(contract);
+    return blockingStubFull().unfreezeBalance(contract);
   }
 
   public TransactionExtention createTransaction2(UnfreezeBalanceContract contract) {
-    return blockingStubFull.unfreezeBalance2(contract);
+    return blockingStubFull().unfreezeBalance2(contract);
   }
 
   public Transaction createTransaction(UnfreezeAssetContract contract) {
-    return blockingStubFull.unfreezeAsset(contract);
+    return blockingStubFull().unfreezeAsset(contract);
   }
 
   public TransactionExtention createTransaction2(UnfreezeAssetContract contract) {
-    return blockingStubFull.unfreezeAsset2(contract);
+    return blockingStubFull().unfreezeAsset2(contract);
   }
 
   public Transaction createTransferAssetTransaction(TransferAssetContract contract) {
-    return blockingStubFull.transferAsset(contract);
+    return blockingStubFull().transferAsset(contract);
   }
 
   public TransactionExtention createTransferAssetTransaction2(
       TransferAssetContract contract) {
-    return blockingStubFull.transferAsset2(contract);
+    return blockingStubFull().transferAsset2(contract);
   }
 
   public Transaction createParticipateAssetIssueTransaction(
       ParticipateAssetIssueContract contract) {
-    return blockingStubFull.participateAssetIssue(contract);
+    return blockingStubFull().participateAssetIssue(contract);
   }
 
   public TransactionExtention createParticipateAssetIssueTransaction2(
       ParticipateAssetIssueContract contract) {
-    return blockingStubFull.participateAssetIssue2(contract);
+    return blockingStubFull().participateAssetIssue2(contract);
   }
 
   public Transaction createAssetIssue(AssetIssueContract contract) {
-    return blockingStubFull.createAssetIssue(contract);
+    return blockingStubFull().createAssetIssue(contract);
   }
 
   public TransactionExtention createAssetIssue2(AssetIssueContract contract) {
-    return blockingStubFull.createAssetIssue2(contract);
+    return blockingStubFull().createAssetIssue2(contract);
   }
 
   public Transaction voteWitnessAccount(VoteWitnessContract contract) {
-    return blockingStubFull.voteWitnessAccount(contract);
+    return blockingStubFull().voteWitnessAccount(contract);
   }
 
   public TransactionExtention voteWitnessAccount2(VoteWitnessContract contract) {
-    return blockingStubFull.voteWitnessAccount2(contract);
+    return blockingStubFull().voteWitnessAccount2(contract);
   }
 
   public TransactionExtention proposalCreate(ProposalCreateContract contract) {
-    return blockingStubFull.proposalCreate(contract);
+    return blockingStubFull().proposalCreate(contract);
   }
 
   public Optional<ProposalList> listProposals() {
-    ProposalList proposalList = blockingStubFull.listProposals(EmptyMessage.newBuilder().build());
+    ProposalList proposalList = blockingStubFull().listProposals(EmptyMessage.newBuilder().build());
     return Optional.ofNullable(proposalList);
   }
 
@@ -335,7 +385,7 @@ public class GrpcClient {
     BytesMessage request = BytesMessage.newBuilder().setValue(ByteString.copyFrom(
         ByteArray.fromLong(Long.parseLong(id))))
         .build();
-    Proposal proposal = blockingStubFull.getProposalById(request);
+    Proposal proposal = blockingStubFull().getProposalById(request);
     return Optional.ofNullable(proposal);
   }
 
@@ -352,10 +402,10 @@ public class GrpcClient {
         .setToAddress(toAddressBS)
         .build();
     DelegatedResourceList delegatedResource;
-    if (blockingStubSolidity != null) {
-      delegatedResource = blockingStubSolidity.getDelegatedResource(request);
+    if (solidityNodePool != null) {
+      delegatedResource = blockingStubSolidity().getDelegatedResource(request);
     } else {
-      delegatedResource = blockingStubFull.getDelegatedResource(request);
+      delegatedResource = blockingStubFull().getDelegatedResource(request);
     }
     return Optional.ofNullable(delegatedResource);
   }
@@ -363,10 +413,10 @@ public class GrpcClient {
 
   public Optional<ExchangeList> listExchanges() {
     ExchangeList exchangeList;
-    if (blockingStubSolidity != null) {
-      exchangeList = blockingStubSolidity.listExchanges(EmptyMessage.newBuilder().build());
+    if (solidityNodePool != null) {
+      exchangeList = blockingStubSolidity().listExchanges(EmptyMessage.newBuilder().build());
     } else {
-      exchangeList = blockingStubFull.listExchanges(EmptyMessage.newBuilder().build());
+      exchangeList = blockingStubFull().listExchanges(EmptyMessage.newBuilder().build());
     }
 
     return Optional.ofNullable(exchangeList);
@@ -378,84 +428,84 @@ public class GrpcClient {
         .build();
 
     Exchange exchange;
-    if (blockingStubSolidity != null) {
-      exchange = blockingStubSolidity.getExchangeById(request);
+    if (solidityNodePool != null) {
+      exchange = blockingStubSolidity().getExchangeById(request);
     } else {
-      exchange = blockingStubFull.getExchangeById(request);
+      exchange = blockingStubFull().getExchangeById(request);
     }
 
     return Optional.ofNullable(exchange);
   }
 
   public Optional<ChainParameters> getChainParameters() {
-    ChainParameters chainParameters = blockingStubFull
-        .getChainParameters(EmptyMessage.newBuilder().build());
+    ChainParameters chainParameters = chainParametersFlight.execute(Boolean.TRUE,
+        () -> blockingStubFull().getChainParameters(EmptyMessage.newBuilder().build()));
     return Optional.ofNullable(chainParameters);
   }
 
   public TransactionExtention proposalApprove(ProposalApproveContract contract) {
-    return blockingStubFull.proposalApprove(contract);
+    return blockingStubFull().proposalApprove(contract);
   }
 
   public TransactionExtention proposalDelete(ProposalDeleteContract contract) {
-    return blockingStubFull.proposalDelete(contract);
+    return blockingStubFull().proposalDelete(contract);
   }
 
   public TransactionExtention exchangeCreate(ExchangeCreateContract contract) {
-    return blockingStubFull.exchangeCreate(contract);
+    return blockingStubFull().exchangeCreate(contract);
   }
 
   public TransactionExtention exchangeInject(ExchangeInjectContract contract) {
-    return blockingStubFull.exchangeInject(contract);
+    return blockingStubFull().exchangeInject(contract);
   }
 
   public TransactionExtention exchangeWithdraw(ExchangeWithdrawContract contract) {
-    return blockingStubFull.exchangeWithdraw(contract);
+    return blockingStubFull().exchangeWithdraw(contract);
   }
 
   public TransactionExtention exchangeTransaction(ExchangeTransactionContract contract) {
-    return blockingStubFull.exchangeTransaction(contract);
+    return blockingStubFull().exchangeTransaction(contract);
   }
 
   public Transaction createAccount(AccountCreateContract contract) {
-    return blockingStubFull.createAccount(contract);
+    return blockingStubFull().createAccount(contract);
   }
 
   public TransactionExtention createAccount2(AccountCreateContract contract) {
-    return blockingStubFull.createAccount2(contract);
+    return blockingStubFull().createAccount2(contract);
   }
 
   public AddressPrKeyPairMessage generateAddress(EmptyMessage emptyMessage) {
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.generateAddress(emptyMessage);
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().generateAddress(emptyMessage);
     } else {
-      return blockingStubFull.generateAddress(emptyMessage);
+      return blockingStubFull().generateAddress(emptyMessage);
     }
   }
 
   public Transaction createWitness(WitnessCreateContract contract) {
-    return blockingStubFull.createWitness(contract);
+    return blockingStubFull().createWitness(contract);
   }
 
   public TransactionExtention createWitness2(WitnessCreateContract contract) {
-    return blockingStubFull.createWitness2(contract);
+    return blockingStubFull().createWitness2(contract);
   }
 
   public Transaction updateWitness(WitnessUpdateContract contract) {
-    return blockingStubFull.updateWitness(contract);
+    return blockingStubFull().updateWitness(contract);
   }
 
   public TransactionExtention updateWitness2(WitnessUpdateContract contract) {
-    return blockingStubFull.updateWitness2(contract);
+    return blockingStubFull().updateWitness2(contract);
   }
 
   public boolean broadcastTransaction(Transaction signaturedTransaction) {
     int i = 10;
-    GrpcAPI.Return response = blockingStubFull.broadcastTransaction(signaturedTransaction);
+    GrpcAPI.Return response = blockingStubFull().broadcastTransaction(signaturedTransaction);
     while (response.getResult() == false && response.getCode() == response_code.SERVER_BUSY
         && i > 0) {
       i--;
-      response = blockingStubFull.broadcastTransaction(signaturedTransaction);
+      response = blockingStubFull().broadcastTransaction(signaturedTransaction);
       System.out.println("repeat times = " + (11 - i));
       try {
         Thread.sleep(1000);
@@ -472,45 +522,51 @@ public class GrpcClient {
 
   public Block getBlock(long blockNum) {
     if (blockNum < 0) {
-      if (blockingStubSolidity != null) {
-        return blockingStubSolidity.getNowBlock(EmptyMessage.newBuilder().build());
+      Block block;
+      if (solidityNodePool != null) {
+        block = blockingStubSolidity().getNowBlock(EmptyMessage.newBuilder().build());
       } else {
-        return blockingStubFull.getNowBlock(EmptyMessage.newBuilder().build());
+        block = blockingStubFull().getNowBlock(EmptyMessage.newBuilder().build());
       }
+      updateSolidifiedBlockNum(block.getBlockHeader().getRawData().getNumber());
+      return block;
     }
     NumberMessage.Builder builder = NumberMessage.newBuilder();
     builder.setNum(blockNum);
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.getBlockByNum(builder.build());
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().getBlockByNum(builder.build());
     } else {
-      return blockingStubFull.getBlockByNum(builder.build());
+      return blockingStubFull().getBlockByNum(builder.build());
     }
   }
 
   public long getTransactionCountByBlockNum(long blockNum) {
     NumberMessage.Builder builder = NumberMessage.newBuilder();
     builder.setNum(blockNum);
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.getTransactionCountByBlockNum(builder.build()).getNum();
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().getTransactionCountByBlockNum(builder.build()).getNum();
     } else {
-      return blockingStubFull.getTransactionCountByBlockNum(builder.build()).getNum();
+      return blockingStubFull().getTransactionCountByBlockNum(builder.build()).getNum();
     }
   }
 
   public BlockExtention getBlock2(long blockNum) {
     if (blockNum < 0) {
-      if (blockingStubSolidity != null) {
-        return blockingStubSolidity.getNowBlock2(EmptyMessage.newBuilder().build());
+      BlockExtention block;
+      if (solidityNodePool != null) {
+        block = blockingStubSolidity().getNowBlock2(EmptyMessage.newBuilder().build());
       } else {
-        return blockingStubFull.getNowBlock2(EmptyMessage.newBuilder().build());
+        block = blockingStubFull().getNowBlock2(EmptyMessage.newBuilder().build());
       }
+      updateSolidifiedBlockNum(block.getBlockHeader().getRawData().getNumber());
+      return block;
     }
     NumberMessage.Builder builder = NumberMessage.newBuilder();
     builder.setNum(blockNum);
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.getBlockByNum2(builder.build());
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().getBlockByNum2(builder.build());
     } else {
-      return blockingStubFull.getBlockByNum2(builder.build());
+      return blockingStubFull().getBlockByNum2(builder.build());
     }
   }
 
@@ -522,23 +578,23 @@ public class GrpcClient {
 //  }
 
   public Optional<WitnessList> listWitnesses() {
-    if (blockingStubSolidity != null) {
-      WitnessList witnessList = blockingStubSolidity
+    if (solidityNodePool != null) {
+      WitnessList witnessList = blockingStubSolidity()
           .listWitnesses(EmptyMessage.newBuilder().build());
       return Optional.ofNullable(witnessList);
     } else {
-      WitnessList witnessList = blockingStubFull.listWitnesses(EmptyMessage.newBuilder().build());
+      WitnessList witnessList = blockingStubFull().listWitnesses(EmptyMessage.newBuilder().build());
       return Optional.ofNullable(witnessList);
     }
   }
 
   public Optional<AssetIssueList> getAssetIssueList() {
-    if (blockingStubSolidity != null) {
-      AssetIssueList assetIssueList = blockingStubSolidity
+    if (solidityNodePool != null) {
+      AssetIssueList assetIssueList = blockingStubSolidity()
           .getAssetIssueList(EmptyMessage.newBuilder().build());
       return Optional.ofNullable(assetIssueList);
     } else {
-      AssetIssueList assetIssueList = blockingStubFull
+      AssetIssueList assetIssueList = blockingStubFull()
           .getAssetIssueList(EmptyMessage.newBuilder().build());
       return Optional.ofNullable(assetIssueList);
     }
@@ -548,12 +604,12 @@ public class GrpcClient {
     PaginatedMessage.Builder pageMessageBuilder = PaginatedMessage.newBuilder();
     pageMessageBuilder.setOffset(offset);
     pageMessageBuilder.setLimit(limit);
-    if (blockingStubSolidity != null) {
-      AssetIssueList assetIssueList = blockingStubSolidity.
+    if (solidityNodePool != null) {
+      AssetIssueList assetIssueList = blockingStubSolidity().
           getPaginatedAssetIssueList(pageMessageBuilder.build());
       return Optional.ofNullable(assetIssueList);
     } else {
-      AssetIssueList assetIssueList = blockingStubFull
+      AssetIssueList assetIssueList = blockingStubFull()
           .getPaginatedAssetIssueList(pageMessageBuilder.build());
       return Optional.ofNullable(assetIssueList);
     }
@@ -563,7 +619,7 @@ public class GrpcClient {
     PaginatedMessage.Builder pageMessageBuilder = PaginatedMessage.newBuilder();
     pageMessageBuilder.setOffset(offset);
     pageMessageBuilder.setLimit(limit);
-    ProposalList proposalList = blockingStubFull
+    ProposalList proposalList = blockingStubFull()
         .getPaginatedProposalList(pageMessageBuilder.build());
     return Optional.ofNullable(proposalList);
 
@@ -573,54 +629,56 @@ public class GrpcClient {
     PaginatedMessage.Builder pageMessageBuilder = PaginatedMessage.newBuilder();
     pageMessageBuilder.setOffset(offset);
     pageMessageBuilder.setLimit(limit);
-    ExchangeList exchangeList = blockingStubFull
+    ExchangeList exchangeList = blockingStubFull()
         .getPaginatedExchangeList(pageMessageBuilder.build());
     return Optional.ofNullable(exchangeList);
 
   }
 
   public Optional<NodeList> listNodes() {
-    NodeList nodeList = blockingStubFull.listNodes(EmptyMessage.newBuilder().build());
+    NodeList nodeList = blockingStubFull().listNodes(EmptyMessage.newBuilder().build());
     return Optional.ofNullable(nodeList);
   }
 
   public Optional<AssetIssueList> getAssetIssueByAccount(byte[] address) {
     ByteString addressBS = ByteString.copyFrom(address);
     Account request = Account.newBuilder().setAddress(addressBS).build();
-    AssetIssueList assetIssueList = blockingStubFull.getAssetIssueByAccount(request);
+    AssetIssueList assetIssueList = blockingStubFull().getAssetIssueByAccount(request);
     return Optional.ofNullable(assetIssueList);
   }
 
   public AccountNetMessage getAccountNet(byte[] address) {
     ByteString addressBS = ByteString.copyFrom(address);
     Account request = Account.newBuilder().setAddress(addressBS).build();
-    return blockingStubFull.getAccountNet(request);
+    return accountNetFlight.execute(new ByteArrayWrapper(address.clone()),
+        () -> blockingStubFull().getAccountNet(request));
   }
 
   public AccountResourceMessage getAccountResource(byte[] address) {
     ByteString addressBS = ByteString.copyFrom(address);
     Account request = Account.newBuilder().setAddress(addressBS).build();
-    return blockingStubFull.getAccountResource(request);
+    return accountResourceFlight.execute(new ByteArrayWrapper(address.clone()),
+        () -> blockingStubFull().getAccountResource(request));
   }
 
   public AssetIssueContract getAssetIssueByName(String assetName) {
     ByteString assetNameBs = ByteString.copyFrom(assetName.getBytes());
     BytesMessage request = BytesMessage.newBuilder().setValue(assetNameBs).build();
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.getAssetIssueByName(request);
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().getAssetIssueByName(request);
     } else {
-      return blockingStubFull.getAssetIssueByName(request);
+      return blockingStubFull().getAssetIssueByName(request);
     }
   }
 
   public Optional<AssetIssueList> getAssetIssueListByName(String assetName) {
     ByteString assetNameBs = ByteString.copyFrom(assetName.getBytes());
     BytesMessage request = BytesMessage.newBuilder().setValue(assetNameBs).build();
-    if (blockingStubSolidity != null) {
-      AssetIssueList assetIssueList = blockingStubSolidity.getAssetIssueListByName(request);
+    if (solidityNodePool != null) {
+      AssetIssueList assetIssueList = blockingStubSolidity().getAssetIssueListByName(request);
       return Optional.ofNullable(assetIssueList);
     } else {
-      AssetIssueList assetIssueList = blockingStubFull.getAssetIssueListByName(request);
+      AssetIssueList assetIssueList = blockingStubFull().getAssetIssueListByName(request);
       return Optional.ofNullable(assetIssueList);
     }
   }
@@ -628,19 +686,19 @@ public class GrpcClient {
   public AssetIssueContract getAssetIssueById(String assetId) {
     ByteString assetIdBs = ByteString.copyFrom(assetId.getBytes());
     BytesMessage request = BytesMessage.newBuilder().setValue(assetIdBs).build();
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.getAssetIssueById(request);
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().getAssetIssueById(request);
     } else {
-      return blockingStubFull.getAssetIssueById(request);
+      return blockingStubFull().getAssetIssueById(request);
     }
   }
 
   public NumberMessage getTotalTransaction() {
-    return blockingStubFull.totalTransaction(EmptyMessage.newBuilder().build());
+    return blockingStubFull().totalTransaction(EmptyMessage.newBuilder().build());
   }
 
   public NumberMessage getNextMaintenanceTime() {
-    return blockingStubFull.getNextMaintenanceTime(EmptyMessage.newBuilder().build());
+    return blockingStubFull().getNextMaintenanceTime(EmptyMessage.newBuilder().build());
   }
 
 //  public Optional<AssetIssueList> getAssetIssueListByTimestamp(long time) {
@@ -679,7 +737,7 @@ public class GrpcClient {
     accountPaginated.setAccount(account);
     accountPaginated.setOffset(offset);
     accountPaginated.setLimit(limit);
-    TransactionList transactionList = blockingStubExtension
+    TransactionList transactionList = blockingStubExtension()
         .getTransactionsFromThis(accountPaginated.build());
     return Optional.ofNullable(transactionList);
   }
@@ -692,7 +750,7 @@ public class GrpcClient {
     accountPaginated.setAccount(account);
     accountPaginated.setOffset(offset);
     accountPaginated.setLimit(limit);
-    TransactionListExtention transactionList = blockingStubExtension
+    TransactionListExtention transactionList = blockingStubExtension()
         .getTransactionsFromThis2(accountPaginated.build());
     return Optional.ofNullable(transactionList);
   }
@@ -710,7 +768,7 @@ public class GrpcClient {
     accountPaginated.setAccount(account);
     accountPaginated.setOffset(offset);
     accountPaginated.setLimit(limit);
-    TransactionList transactionList = blockingStubExtension
+    TransactionList transactionList = blockingStubExtension()
         .getTransactionsToThis(accountPaginated.build());
     return Optional.ofNullable(transactionList);
   }
@@ -723,7 +781,7 @@ public class GrpcClient {
     accountPaginated.setAccount(account);
     accountPaginated.setOffset(offset);
     accountPaginated.setLimit(limit);
-    TransactionListExtention transactionList = blockingStubExtension
+    TransactionListExtention transactionList = blockingStubExtension()
         .getTransactionsToThis2(accountPaginated.build());
     return Optional.ofNullable(transactionList);
   }
@@ -734,33 +792,58 @@ public class GrpcClient {
 //  }
 
   public Optional<Transaction> getTransactionById(String txID) {
+    String key = txID.toLowerCase();
+    Transaction transaction = cacheGet(Kind.TRANSACTION_BY_ID, key);
+    if (transaction != null) {
+      return Optional.of(transaction);
+    }
     ByteString bsTxid = ByteString.copyFrom(ByteArray.fromHexString(txID));
     BytesMessage request = BytesMessage.newBuilder().setValue(bsTxid).build();
-    Transaction transaction;
-    if (blockingStubSolidity != null) {
-      transaction = blockingStubSolidity.getTransactionById(request);
+    if (solidityNodePool != null) {
+      transaction = blockingStubSolidity().getTransactionById(request);
     } else {
-      transaction = blockingStubFull.getTransactionById(request);
+      transaction = blockingStubFull().getTransactionById(request);
+    }
+    if (transaction != null && transaction.hasRawData()) {
+      // a transaction carries no block number, so only the solidity node vouches for it
+      cachePut(Kind.TRANSACTION_BY_ID, key, transaction, solidityNodePool != null);
     }
     return Optional.ofNullable(transaction);
   }
 
   public Optional<TransactionInfo> getTransactionInfoById(String txID) {
+    String key = txID.toLowerCase();
+    TransactionInfo transactionInfo = cacheGet(Kind.TRANSACTION_INFO_BY_ID, key);
+    if (transactionInfo != null) {
+      return Optional.of(transactionInfo);
+    }
     ByteString bsTxid = ByteString.copyFrom(ByteArray.fromHexString(txID));
     BytesMessage request = BytesMessage.newBuilder().setValue(bsTxid).build();
-    TransactionInfo transactionInfo;
-    if (blockingStubSolidity != null) {
-      transactionInfo = blockingStubSolidity.getTransactionInfoById(request);
+    if (solidityNodePool != null) {
+      transactionInfo = blockingStubSolidity().getTransactionInfoById(request);
     } else {
-      transactionInfo = blockingStubFull.getTransactionInfoById(request);
+      transactionInfo = blockingStubFull().getTransactionInfoById(request);
+    }
+    if (transactionInfo != null && !transactionInfo.getId().isEmpty()) {
+      cachePut(Kind.TRANSACTION_INFO_BY_ID, key, transactionInfo,
+          solidityNodePool != null || isFinalized(transactionInfo.getBlockNumber()));
     }
     return Optional.ofNullable(transactionInfo);
   }
 
   public Optional<Block> getBlockById(String blockID) {
+    String key = blockID.toLowerCase();
+    Block block = cacheGet(Kind.BLOCK_BY_ID, key);
+    if (block != null) {
+      return Optional.of(block);
+    }
     ByteString bsTxid = ByteString.copyFrom(ByteArray.fromHexString(blockID));
     BytesMessage request = BytesMessage.newBuilder().setValue(bsTxid).build();
-    Block block = blockingStubFull.getBlockById(request);
+    block = blockingStubFull().getBlockById(request);
+    if (block != null && block.hasBlockHeader()) {
+      cachePut(Kind.BLOCK_BY_ID, key, block,
+          isFinalized(block.getBlockHeader().getRawData().getNumber()));
+    }
     return Optional.ofNullable(block);
   }
 
@@ -768,7 +851,7 @@ public class GrpcClient {
     BlockLimit.Builder builder = BlockLimit.newBuilder();
     builder.setStartNum(start);
     builder.setEndNum(end);
-    BlockList blockList = blockingStubFull.getBlockByLimitNext(builder.build());
+    BlockList blockList = blockingStubFull().getBlockByLimitNext(builder.build());
     return Optional.ofNullable(blockList);
   }
 
@@ -776,242 +859,296 @@ public class GrpcClient {
     BlockLimit.Builder builder = BlockLimit.newBuilder();
     builder.setStartNum(start);
     builder.setEndNum(end);
-    BlockListExtention blockList = blockingStubFull.getBlockByLimitNext2(builder.build());
+    BlockListExtention blockList = blockingStubFull().getBlockByLimitNext2(builder.build());
     return Optional.ofNullable(blockList);
   }
 
   public Optional<BlockList> getBlockByLatestNum(long num) {
     NumberMessage numberMessage = NumberMessage.newBuilder().setNum(num).build();
-    BlockList blockList = blockingStubFull.getBlockByLatestNum(numberMessage);
+    BlockList blockList = blockingStubFull().getBlockByLatestNum(numberMessage);
     return Optional.ofNullable(blockList);
   }
 
   public Optional<BlockListExtention> getBlockByLatestNum2(long num) {
     NumberMessage numberMessage = NumberMessage.newBuilder().setNum(num).build();
-    BlockListExtention blockList = blockingStubFull.getBlockByLatestNum2(numberMessage);
+    BlockListExtention blockList = blockingStubFull().getBlockByLatestNum2(numberMessage);
     return Optional.ofNullable(blockList);
   }
 
   public TransactionExtention updateSetting(UpdateSettingContract request) {
-    return blockingStubFull.updateSetting(request);
+    return blockingStubFull().updateSetting(request);
   }
 
   public TransactionExtention updateEnergyLimit(
       UpdateEnergyLimitContract request) {
-    return blockingStubFull.updateEnergyLimit(request);
+    return blockingStubFull().updateEnergyLimit(request);
   }
 
   public TransactionExtention clearContractABI(
       ClearABIContract request) {
-    return blockingStubFull.clearContractABI(request);
+    return blockingStubFull().clearContractABI(request);
   }
 
   public TransactionExtention deployContract(CreateSmartContract request) {
-    return blockingStubFull.deployContract(request);
+    return blockingStubFull().deployContract(request);
   }
 
   public TransactionExtention triggerContract(TriggerSmartContract request) {
-    return blockingStubFull.triggerContract(request);
+    return blockingStubFull().triggerContract(request);
   }
 
   public TransactionExtention triggerConstantContract(TriggerSmartContract request) {
-    return blockingStubFull.triggerConstantContract(request);
+    return blockingStubFull().triggerConstantContract(request);
   }
 
   public SmartContract getContract(byte[] address) {
     ByteString byteString = ByteString.copyFrom(address);
     BytesMessage bytesMessage = BytesMessage.newBuilder().setValue(byteString).build();
-    return blockingStubFull.getContract(bytesMessage);
+    return blockingStubFull().getContract(bytesMessage);
   }
 
   public SmartContractDataWrapper getContractInfo(byte[] address) {
     ByteString byteString = ByteString.copyFrom(address);
     BytesMessage bytesMessage = BytesMessage.newBuilder().setValue(byteString).build();
-    return blockingStubFull.getContractInfo(bytesMessage);
+    return blockingStubFull().getContractInfo(bytesMessage);
   }
 
   public TransactionExtention accountPermissionUpdate(
       AccountPermissionUpdateContract request) {
-    return blockingStubFull.accountPermissionUpdate(request);
+    return blockingStubFull().accountPermissionUpdate(request);
   }
 
   public TransactionExtention createShieldedTransaction(PrivateParameters privateParameters) {
-    return blockingStubFull.createShieldedTransaction(privateParameters);
+    return blockingStubFull().createShieldedTransaction(privateParameters);
   }
 
   public IncrementalMerkleVoucherInfo GetMerkleTreeVoucherInfo(OutputPointInfo info) {
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.getMerkleTreeVoucherInfo(info);
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().getMerkleTreeVoucherInfo(info);
     } else {
-      return blockingStubFull.getMerkleTreeVoucherInfo(info);
+      return blockingStubFull().getMerkleTreeVoucherInfo(info);
     }
   }
 
   public DecryptNotes scanNoteByIvk(IvkDecryptParameters ivkDecryptParameters) {
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.scanNoteByIvk(ivkDecryptParameters);
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().scanNoteByIvk(ivkDecryptParameters);
     } else {
-      return blockingStubFull.scanNoteByIvk(ivkDecryptParameters);
+      return blockingStubFull().scanNoteByIvk(ivkDecryptParameters);
     }
   }
 
   public DecryptNotes scanNoteByOvk(OvkDecryptParameters ovkDecryptParameters) {
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.scanNoteByOvk(ovkDecryptParameters);
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().scanNoteByOvk(ovkDecryptParameters);
     } else {
-      return blockingStubFull.scanNoteByOvk(ovkDecryptParameters);
+      return blockingStubFull().scanNoteByOvk(ovkDecryptParameters);
     }
   }
 
   public BytesMessage getSpendingKey() {
-    return blockingStubFull.getSpendingKey(EmptyMessage.newBuilder().build());
+    return blockingStubFull().getSpendingKey(EmptyMessage.newBuilder().build());
   }
 
   public ExpandedSpendingKeyMessage getExpandedSpendingKey(BytesMessage spendingKey) {
-    return blockingStubFull.getExpandedSpendingKey(spendingKey);
+    return blockingStubFull().getExpandedSpendingKey(spendingKey);
   }
 
   public BytesMessage getAkFromAsk(BytesMessage ask) {
-    return blockingStubFull.getAkFromAsk(ask);
+    return blockingStubFull().getAkFromAsk(ask);
   }
 
   public BytesMessage getNkFromNsk(BytesMessage nsk) {
-    return blockingStubFull.getNkFromNsk(nsk);
+    return blockingStubFull().getNkFromNsk(nsk);
   }
 
   public IncomingViewingKeyMessage getIncomingViewingKey(ViewingKeyMessage viewingKeyMessage) {
-    return blockingStubFull.getIncomingViewingKey(viewingKeyMessage);
+    return blockingStubFull().getIncomingViewingKey(viewingKeyMessage);
   }
 
   public DiversifierMessage getDiversifier() {
-    return blockingStubFull.getDiversifier(EmptyMessage.newBuilder().build());
+    return blockingStubFull().getDiversifier(EmptyMessage.newBuilder().build());
   }
 
   public BytesMessage getRcm() {
-    return blockingStubFull.getRcm(EmptyMessage.newBuilder().build());
+    return blockingStubFull().getRcm(EmptyMessage.newBuilder().build());
   }
 
   public SpendResult isNoteSpend(NoteParameters noteParameters) {
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.isSpend(noteParameters);
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().isSpend(noteParameters);
     } else {
-      return blockingStubFull.isSpend(noteParameters);
+      return blockingStubFull().isSpend(noteParameters);
     }
   }
 
   public TransactionExtention createShieldedTransactionWithoutSpendAuthSig(
       PrivateParametersWithoutAsk privateParameters) {
-    return blockingStubFull.createShieldedTransactionWithoutSpendAuthSig(privateParameters);
+    return blockingStubFull().createShieldedTransactionWithoutSpendAuthSig(privateParameters);
   }
 
   public BytesMessage getShieldedTransactionHash(Transaction transaction) {
-    return blockingStubFull.getShieldTransactionHash(transaction);
+    return blockingStubFull().getShieldTransactionHash(transaction);
   }
 
   public BytesMessage createSpendAuthSig(SpendAuthSigParameters parameters) {
-    return blockingStubFull.createSpendAuthSig(parameters);
+    return blockingStubFull().createSpendAuthSig(parameters);
   }
 
   public BytesMessage createShieldedNullifier(NfParameters parameters) {
-    return blockingStubFull.createShieldNullifier(parameters);
+    return blockingStubFull().createShieldNullifier(parameters);
   }
 
   public PaymentAddressMessage getZenPaymentAddress(IncomingViewingKeyDiversifierMessage msg) {
-    return blockingStubFull.getZenPaymentAddress(msg);
+    return blockingStubFull().getZenPaymentAddress(msg);
   }
 
   public DecryptNotesMarked scanAndMarkNoteByIvk(IvkDecryptAndMarkParameters parameters) {
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.scanAndMarkNoteByIvk(parameters);
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().scanAndMarkNoteByIvk(parameters);
     } else {
-      return blockingStubFull.scanAndMarkNoteByIvk(parameters);
+      return blockingStubFull().scanAndMarkNoteByIvk(parameters);
     }
   }
 
   public TransactionExtention updateBrokerage(UpdateBrokerageContract request) {
-    return blockingStubFull.updateBrokerage(request);
+    return blockingStubFull().updateBrokerage(request);
   }
 
   public NumberMessage getReward(byte[] address) {
     BytesMessage bytesMessage = BytesMessage.newBuilder().setValue(ByteString.copyFrom(address))
         .build();
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.getRewardInfo(bytesMessage);
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().getRewardInfo(bytesMessage);
     } else {
-      return blockingStubFull.getRewardInfo(bytesMessage);
+      return blockingStubFull().getRewardInfo(bytesMessage);
     }
   }
 
   public NumberMessage getBrokerage(byte[] address) {
     BytesMessage bytesMessage = BytesMessage.newBuilder().setValue(ByteString.copyFrom(address))
         .build();
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.getBrokerageInfo(bytesMessage);
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().getBrokerageInfo(bytesMessage);
     } else {
-      return blockingStubFull.getBrokerageInfo(bytesMessage);
+      return blockingStubFull().getBrokerageInfo(bytesMessage);
     }
   }
 
   public Optional<TransactionInfoList> getTransactionInfoByBlockNum(long blockNum) {
-    TransactionInfoList transactionInfoList;
+    TransactionInfoList transactionInfoList = cacheGet(Kind.TRANSACTION_INFO_BY_BLOCK_NUM,
+        blockNum);
+    if (transactionInfoList != null) {
+      return Optional.of(transactionInfoList);
+    }
     NumberMessage.Builder builder = NumberMessage.newBuilder();
     builder.setNum(blockNum);
 
-    if (blockingStubSolidity != null) {
-      transactionInfoList = blockingStubSolidity.getTransactionInfoByBlockNum(builder.build());
+    if (solidityNodePool != null) {
+      transactionInfoList = blockingStubSolidity().getTransactionInfoByBlockNum(builder.build());
     } else {
-      transactionInfoList = blockingStubFull.getTransactionInfoByBlockNum(builder.build());
+      transactionInfoList = blockingStubFull().getTransactionInfoByBlockNum(builder.build());
     }
 
+    if (transactionInfoList != null) {
+      // an empty answer may only mean the soliditynode has not reached this block yet
+      boolean finalized = (solidityNodePool != null
+          && transactionInfoList.getTransactionInfoCount() > 0) || isFinalized(blockNum);
+      cachePut(Kind.TRANSACTION_INFO_BY_BLOCK_NUM, blockNum, transactionInfoList, finalized);
+      for (TransactionInfo info : transactionInfoList.getTransactionInfoList()) {
+        cachePut(Kind.TRANSACTION_INFO_BY_ID, ByteArray.toHexString(info.getId().toByteArray()),
+            info, finalized);
+      }
+    }
     return Optional.ofNullable(transactionInfoList);
   }
 
+  private <T extends Message> T cacheGet(Kind kind, Object key) {
+    ChainDataCache cache = chainDataCache;
+    return cache == null ? null : cache.<T>get(kind, key);
+  }
+
+  private void cachePut(Kind kind, Object key, Message value,
+      boolean finalized) {
+    ChainDataCache cache = chainDataCache;
+    if (cache != null) {
+      cache.put(kind, key, value, finalized);
+    }
+  }
+
+  private void updateSolidifiedBlockNum(long headBlockNum) {
+    long solidified = solidityNodePool != null ? headBlockNum
+        : headBlockNum - FULLNODE_CONFIRMATIONS;
+    if (solidified > solidifiedBlockNum) {
+      solidifiedBlockNum = solidified;
+    }
+    solidifiedCheckedAt = System.currentTimeMillis();
+  }
+
+  /**
+   * Whether data of the given block can no longer change. Without a soliditynode the fullnode
+   * head minus {@value #FULLNODE_CONFIRMATIONS} blocks is taken as solidified.
+   */
+  private boolean isFinalized(long blockNum) {
+    if (blockNum <= solidifiedBlockNum) {
+      return true;
+    }
+    if (System.currentTimeMillis() - solidifiedCheckedAt > SOLIDIFIED_REFRESH_MILLIS) {
+      try {
+        getBlock(-1);
+      } catch (StatusRuntimeException e) {
+        solidifiedCheckedAt = System.currentTimeMillis();
+      }
+    }
+    return blockNum <= solidifiedBlockNum;
+  }
+
 
   public DecryptNotesTRC20 scanShieldedTRC20NoteByIvk(IvkDecryptTRC20Parameters parameters) {
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.scanShieldedTRC20NotesByIvk(parameters);
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().scanShieldedTRC20NotesByIvk(parameters);
     } else {
-      return blockingStubFull.scanShieldedTRC20NotesByIvk(parameters);
+      return blockingStubFull().scanShieldedTRC20NotesByIvk(parameters);
     }
   }
 
   public DecryptNotesTRC20 scanShieldedTRC20NoteByOvk(OvkDecryptTRC20Parameters parameters) {
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.scanShieldedTRC20NotesByOvk(parameters);
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().scanShieldedTRC20NotesByOvk(parameters);
     } else {
-      return blockingStubFull.scanShieldedTRC20NotesByOvk(parameters);
+      return blockingStubFull().scanShieldedTRC20NotesByOvk(parameters);
     }
   }
 
   public ShieldedTRC20Parameters createShieldedContractParameters(
       PrivateShieldedTRC20Parameters parameters) {
-    return blockingStubFull.createShieldedContractParameters(parameters);
+    return blockingStubFull().createShieldedContractParameters(parameters);
   }
 
   public ShieldedTRC20Parameters createShieldedContractParametersWithoutAsk(
       PrivateShieldedTRC20ParametersWithoutAsk parameters) {
-    return blockingStubFull.createShieldedContractParametersWithoutAsk(parameters);
+    return blockingStubFull().createShieldedContractParametersWithoutAsk(parameters);
   }
 
   public NullifierResult isShieldedTRC20ContractNoteSpent(NfTRC20Parameters prameters) {
-    if (blockingStubSolidity != null) {
-      return blockingStubSolidity.isShieldedTRC20ContractNoteSpent(prameters);
+    if (solidityNodePool != null) {
+      return blockingStubSolidity().isShieldedTRC20ContractNoteSpent(prameters);
     } else {
-      return blockingStubFull.isShieldedTRC20ContractNoteSpent(prameters);
+      return blockingStubFull().isShieldedTRC20ContractNoteSpent(prameters);
     }
   }
 
   public BytesMessage getTriggerInputForShieldedTRC20Contract(
       ShieldedTRC20TriggerContractParameters parameters) {
-    return blockingStubFull.getTriggerInputForShieldedTRC20Contract(parameters);
+    return blockingStubFull().getTriggerInputForShieldedTRC20Contract(parameters);
   }
 
   public TransactionExtention marketSellAsset(MarketSellAssetContract request) {
-    return blockingStubFull.marketSellAsset(request);
+    return blockingStubFull().marketSellAsset(request);
   }
 
   public TransactionExtention marketCancelOrder(MarketCancelOrderContract request) {
-    return blockingStubFull.marketCancelOrder(request);
+    return blockingStubFull().marketCancelOrder(request);
   }
 
   public Optional<MarketOrderList> getMarketOrderByAccount(byte[] address) {
@@ -1019,10 +1156,10 @@ public class GrpcClient {
     BytesMessage request = BytesMessage.newBuilder().setValue(addressBS).build();
 
     MarketOrderList marketOrderList;
-    if (blockingStubSolidity != null) {
-      marketOrderList = blockingStubSolidity.getMarketOrderByAccount(request);
+    if (solidityNodePool != null) {
+      marketOrderList = blockingStubSolidity().getMarketOrderByAccount(request);
     } else {
-      marketOrderList = blockingStubFull.getMarketOrderByAccount(request);
+      marketOrderList = blockingStubFull().getMarketOrderByAccount(request);
     }
     return Optional.ofNullable(marketOrderList);
   }
@@ -1035,10 +1172,10 @@ public class GrpcClient {
             .build();
 
     MarketPriceList marketPriceList;
-    if (blockingStubSolidity != null) {
-      marketPriceList = blockingStubSolidity.getMarketPriceByPair(request);
+    if (solidityNodePool != null) {
+      marketPriceList = blockingStubSolidity().getMarketPriceByPair(request);
     } else {
-      marketPriceList = blockingStubFull.getMarketPriceByPair(request);
+      marketPriceList = blockingStubFull().getMarketPriceByPair(request);
     }
     return Optional.ofNullable(marketPriceList);
   }
@@ -1052,10 +1189,10 @@ public class GrpcClient {
             .build();
 
     MarketOrderList marketOrderList;
-    if (blockingStubSolidity != null) {
-      marketOrderList = blockingStubSolidity.getMarketOrderListByPair(request);
+    if (solidityNodePool != null) {
+      marketOrderList = blockingStubSolidity().getMarketOrderListByPair(request);
     } else {
-      marketOrderList = blockingStubFull.getMarketOrderListByPair(request);
+      marketOrderList = blockingStubFull().getMarketOrderListByPair(request);
     }
     return Optional.ofNullable(marketOrderList);
   }
@@ -1063,10 +1200,10 @@ public class GrpcClient {
 
   public Optional<MarketOrderPairList> getMarketPairList() {
     MarketOrderPairList orderPairList;
-    if (blockingStubSolidity != null) {
-      orderPairList = blockingStubSolidity.getMarketPairList(EmptyMessage.newBuilder().build());
+    if (solidityNodePool != null) {
+      orderPairList = blockingStubSolidity().getMarketPairList(EmptyMessage.newBuilder().build());
     } else {
-      orderPairList = blockingStubFull.getMarketPairList(EmptyMessage.newBuilder().build());
+      orderPairList = blockingStubFull().getMarketPairList(EmptyMessage.newBuilder().build());
     }
     return Optional.ofNullable(orderPairList);
   }
@@ -1075,10 +1212,10 @@ public class GrpcClient {
     ByteString orderBytes = ByteString.copyFrom(order);
     BytesMessage request = BytesMessage.newBuilder().setValue(orderBytes).build();
     MarketOrder orderPair;
-    if (blockingStubSolidity != null) {
-      orderPair = blockingStubSolidity.getMarketOrderById(request);
+    if (solidityNodePool != null) {
+      orderPair = blockingStubSolidity().getMarketOrderById(request);
     } else {
-      orderPair = blockingStubFull.getMarketOrderById(request);
+      orderPair = blockingStubFull().getMarketOrderById(request);
     }
     return Optional.ofNullable(orderPair);
   }
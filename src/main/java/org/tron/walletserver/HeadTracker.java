@@ -0,0 +1,124 @@
+package org.tron.walletserver;
+
+import com.typesafe.config.Config;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.core.config.Configuration;
+import org.tron.protos.Protocol.Block;
+
+/**
+ * Follows the head block number of the chain so that background work only runs when a new block
+ * has arrived.
+ *
+ * <p>Each poll makes a single {@code GetNowBlock} call and reads the number from its header; the
+ * API has no header-only call. Waiting threads are woken only when the head advances. A failed
+ * poll is logged and the next one is still scheduled.
+ */
+@Slf4j
+public class HeadTracker implements AutoCloseable {
+
+  private static final long REQUEST_TIMEOUT_MILLIS = 10_000L;
+  private static long defaultPollMillis = 1_000L;
+
+  static {
+    Config config = Configuration.getByPath("config.conf");
+    if (config.hasPath("headTracker.pollMillis")) {
+      defaultPollMillis = Math.max(100L, config.getLong("headTracker.pollMillis"));
+    }
+  }
+
+  private final AsyncGrpcClient client;
+  private final long pollMillis;
+  private final ScheduledExecutorService poller;
+  private long head = -1;
+  private volatile boolean closed;
+
+  public HeadTracker(AsyncGrpcClient client) {
+    this(client, defaultPollMillis);
+  }
+
+  public HeadTracker(AsyncGrpcClient client, long pollMillis) {
+    this.client = client.withDeadline(REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    this.pollMillis = pollMillis;
+    this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "head-tracker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    poller.execute(this::poll);
+  }
+
+  /**
+   * Returns the last head block number seen, or -1 before the first one.
+   */
+  public synchronized long getHead() {
+    return head;
+  }
+
+  /**
+   * Waits until the head is above {@code known} or the timeout elapses.
+   *
+   * @return the head, which is not above {@code known} when the wait timed out
+   */
+  public synchronized long awaitHead(long known, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    long remaining;
+    while (head <= known && (remaining = deadline - System.nanoTime()) > 0) {
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return head;
+  }
+
+  private void poll() {
+    if (closed) {
+      return;
+    }
+    try {
+      client.getBlock(-1).whenComplete((block, t) -> {
+        try {
+          if (t != null) {
+            logger.debug("Polling the head block failed: {}", t.getMessage());
+          } else {
+            advance(number(block));
+          }
+        } finally {
+          schedulePoll();
+        }
+      });
+    } catch (RuntimeException e) {
+      logger.warn("Polling the head block failed", e);
+      schedulePoll();
+    }
+  }
+
+  private void schedulePoll() {
+    if (!closed) {
+      try {
+        poller.schedule(this::poll, pollMillis, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        // closed meanwhile
+      }
+    }
+  }
+
+  private synchronized void advance(long number) {
+    if (number > head) {
+      head = number;
+      notifyAll();
+    }
+  }
+
+  private static long number(Block block) {
+    return block.hasBlockHeader() ? block.getBlockHeader().getRawData().getNumber() : -1;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    poller.shutdownNow();
+  }
+}
@@ -0,0 +1,161 @@
+package org.tron.walletserver;
+
+import com.google.protobuf.Message;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Default {@link ChainDataCache}: one access-ordered map bounded by the serialized size of its
+ * values. Finalized entries stay until evicted as least recently used; the others also expire
+ * {@code headTtlMillis} after they were stored.
+ */
+public class LruChainDataCache implements ChainDataCache {
+
+  private final long maxBytes;
+  private final long headTtlMillis;
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+  private long bytes = 0;
+  private final AtomicLong[] hits = new AtomicLong[Kind.values().length];
+  private final AtomicLong[] misses = new AtomicLong[Kind.values().length];
+  private final AtomicLong evictions = new AtomicLong();
+
+  public LruChainDataCache(long maxBytes, long headTtlMillis) {
+    this.maxBytes = maxBytes;
+    this.headTtlMillis = headTtlMillis;
+    for (int i = 0; i < hits.length; i++) {
+      hits[i] = new AtomicLong();
+      misses[i] = new AtomicLong();
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends Message> T get(Kind kind, Object key) {
+    Key k = new Key(kind, key);
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(k);
+      if (entry != null && entry.expiresAt != 0 && entry.expiresAt < System.currentTimeMillis()) {
+        remove(k);
+        entry = null;
+      }
+    }
+    if (entry == null) {
+      misses[kind.ordinal()].incrementAndGet();
+      return null;
+    }
+    hits[kind.ordinal()].incrementAndGet();
+    return (T) entry.value;
+  }
+
+  @Override
+  public void put(Kind kind, Object key, Message value, boolean finalized) {
+    int size = value.getSerializedSize();
+    if (size > maxBytes) {
+      return;
+    }
+    long expiresAt = finalized ? 0 : System.currentTimeMillis() + headTtlMillis;
+    Key k = new Key(kind, key);
+    synchronized (this) {
+      remove(k);
+      entries.put(k, new Entry(value, size, expiresAt));
+      bytes += size;
+      Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+      while (bytes > maxBytes && eldest.hasNext()) {
+        bytes -= eldest.next().getValue().size;
+        eldest.remove();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  private void remove(Key key) {
+    Entry old = entries.remove(key);
+    if (old != null) {
+      bytes -= old.size;
+    }
+  }
+
+  @Override
+  public synchronized void clear() {
+    entries.clear();
+    bytes = 0;
+  }
+
+  @Override
+  public long getHitCount(Kind kind) {
+    return hits[kind.ordinal()].get();
+  }
+
+  @Override
+  public long getMissCount(Kind kind) {
+    return misses[kind.ordinal()].get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("LruChainDataCache[");
+    for (Kind kind : Kind.values()) {
+      builder.append(kind).append(" hit=").append(getHitCount(kind))
+          .append(" miss=").append(getMissCount(kind)).append(", ");
+    }
+    return builder.append("entries=").append(size()).append(", bytes=").append(getBytes())
+        .append(", evictions=").append(getEvictionCount()).append(']').toString();
+  }
+
+  private static class Key {
+
+    private final Kind kind;
+    private final Object key;
+
+    Key(Kind kind, Object key) {
+      this.kind = kind;
+      this.key = key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return kind == other.kind && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(kind, key);
+    }
+  }
+
+  private static class Entry {
+
+    private final Message value;
+    private final int size;
+    private final long expiresAt;
+
+    Entry(Message value, int size, long expiresAt) {
+      this.value = value;
+      this.size = size;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
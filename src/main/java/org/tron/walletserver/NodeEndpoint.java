@@ -0,0 +1,233 @@
+package org.tron.walletserver;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientInterceptors;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.tron.api.GrpcAPI.EmptyMessage;
+import org.tron.api.WalletExtensionGrpc;
+import org.tron.api.WalletGrpc;
+import org.tron.api.WalletSolidityGrpc;
+
+/**
+ * One configured node (fullnode or soliditynode) together with its channel, stubs and the
+ * health statistics the {@link NodePool} routes on. Every call made through the stubs of this
+ * endpoint is timed by an interceptor, so the statistics need no cooperation from callers.
+ */
+public class NodeEndpoint {
+
+  private static final double EWMA_ALPHA = 0.2;
+  private static final long INITIAL_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+  private static final double ERROR_WEIGHT = 8.0;
+  private static final int SUCCESSES_TO_FORGIVE = 100;
+
+  private final String target;
+  private final ManagedChannel managedChannel;
+  private final Channel channel;
+  private final WalletGrpc.WalletBlockingStub blockingStubFull;
+  private final WalletSolidityGrpc.WalletSolidityBlockingStub blockingStubSolidity;
+  private final WalletExtensionGrpc.WalletExtensionBlockingStub blockingStubExtension;
+  private final WalletGrpc.WalletFutureStub futureStubFull;
+  private final WalletSolidityGrpc.WalletSolidityFutureStub futureStubSolidity;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private double latencyNanos = INITIAL_LATENCY_NANOS;
+  private double errorRate = 0;
+  private int consecutiveFailures = 0;
+  private int ejections = 0;
+  private long ejectedUntil = 0;
+  private boolean ejected = false;
+  private int successesSinceReadmit = 0;
+  private long totalCalls = 0;
+  private long totalFailures = 0;
+
+  public NodeEndpoint(String target) {
+    this.target = target;
+    this.managedChannel = ManagedChannelBuilder.forTarget(target)
+        .usePlaintext(true)
+        .build();
+    this.channel = ClientInterceptors.intercept(managedChannel, new HealthInterceptor());
+    this.blockingStubFull = WalletGrpc.newBlockingStub(channel);
+    this.blockingStubSolidity = WalletSolidityGrpc.newBlockingStub(channel);
+    this.blockingStubExtension = WalletExtensionGrpc.newBlockingStub(channel);
+    this.futureStubFull = WalletGrpc.newFutureStub(channel);
+    this.futureStubSolidity = WalletSolidityGrpc.newFutureStub(channel);
+  }
+
+  public String getTarget() {
+    return target;
+  }
+
+  /**
+   * The intercepted channel; stubs built on it feed this endpoint's health statistics.
+   */
+  public Channel getChannel() {
+    return channel;
+  }
+
+  public WalletGrpc.WalletBlockingStub getBlockingStubFull() {
+    return blockingStubFull;
+  }
+
+  public WalletSolidityGrpc.WalletSolidityBlockingStub getBlockingStubSolidity() {
+    return blockingStubSolidity;
+  }
+
+  public WalletExtensionGrpc.WalletExtensionBlockingStub getBlockingStubExtension() {
+    return blockingStubExtension;
+  }
+
+  public WalletGrpc.WalletFutureStub getFutureStubFull() {
+    return futureStubFull;
+  }
+
+  public WalletSolidityGrpc.WalletSolidityFutureStub getFutureStubSolidity() {
+    return futureStubSolidity;
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * Lower is better: recent latency, inflated by the calls already queued on this node and by
+   * its recent error rate.
+   */
+  public synchronized double score() {
+    return latencyNanos * (1 + inFlight.get()) * (1 + ERROR_WEIGHT * errorRate);
+  }
+
+  public synchronized boolean isEjected() {
+    return ejected;
+  }
+
+  synchronized boolean isProbeDue(long now) {
+    return ejected && now >= ejectedUntil;
+  }
+
+  synchronized long getEjectedUntil() {
+    return ejectedUntil;
+  }
+
+  synchronized void record(long elapsedNanos, boolean failure) {
+    totalCalls++;
+    latencyNanos += EWMA_ALPHA * (elapsedNanos - latencyNanos);
+    errorRate += EWMA_ALPHA * ((failure ? 1 : 0) - errorRate);
+    if (failure) {
+      totalFailures++;
+      consecutiveFailures++;
+    } else {
+      consecutiveFailures = 0;
+      if (ejections > 0 && ++successesSinceReadmit >= SUCCESSES_TO_FORGIVE) {
+        ejections = 0;
+      }
+    }
+  }
+
+  synchronized boolean shouldEject(int maxConsecutiveFailures, double maxErrorRate) {
+    return !ejected
+        && (consecutiveFailures >= maxConsecutiveFailures || errorRate >= maxErrorRate);
+  }
+
+  synchronized void eject(long baseMillis, long maxMillis) {
+    ejections++;
+    long backoff = baseMillis << Math.min(ejections - 1, 16);
+    ejectedUntil = System.currentTimeMillis() + Math.min(backoff, maxMillis);
+    ejected = true;
+  }
+
+  synchronized void readmit(long probeLatencyNanos) {
+    ejected = false;
+    successesSinceReadmit = 0;
+    consecutiveFailures = 0;
+    errorRate = 0;
+    latencyNanos = probeLatencyNanos;
+  }
+
+  /**
+   * Issues a cheap call on the raw channel, bypassing the statistics, to see whether an ejected
+   * node answers again.
+   *
+   * @return the round trip time in nanoseconds
+   */
+  long probe(boolean solidity, long timeoutMillis) {
+    long begin = System.nanoTime();
+    if (solidity) {
+      WalletSolidityGrpc.newBlockingStub(managedChannel)
+          .withDeadlineAfter(timeoutMillis, TimeUnit.MILLISECONDS)
+          .getNowBlock(EmptyMessage.getDefaultInstance());
+    } else {
+      WalletGrpc.newBlockingStub(managedChannel)
+          .withDeadlineAfter(timeoutMillis, TimeUnit.MILLISECONDS)
+          .getNowBlock(EmptyMessage.getDefaultInstance());
+    }
+    return System.nanoTime() - begin;
+  }
+
+  public void shutdown() throws InterruptedException {
+    managedChannel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Only failures that say something about the node itself count against it; a rejected
+   * argument or a missing object is the caller's problem.
+   */
+  static boolean isNodeFailure(Status.Code code) {
+    switch (code) {
+      case UNAVAILABLE:
+      case DEADLINE_EXCEEDED:
+      case RESOURCE_EXHAUSTED:
+      case INTERNAL:
+      case UNKNOWN:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "%s[latency=%.1fms, errorRate=%.2f, inFlight=%d, calls=%d, failures=%d%s]",
+        target, latencyNanos / 1e6, errorRate, inFlight.get(), totalCalls, totalFailures,
+        ejected ? ", ejected" : "");
+  }
+
+  private class HealthInterceptor implements ClientInterceptor {
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+        MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+      return new SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+          final long begin = System.nanoTime();
+          inFlight.incrementAndGet();
+          try {
+            super.start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
+              @Override
+              public void onClose(Status status, Metadata trailers) {
+                inFlight.decrementAndGet();
+                record(System.nanoTime() - begin, isNodeFailure(status.getCode()));
+                super.onClose(status, trailers);
+              }
+            }, headers);
+          } catch (RuntimeException e) {
+            inFlight.decrementAndGet();
+            throw e;
+          }
+        }
+      };
+    }
+  }
+}
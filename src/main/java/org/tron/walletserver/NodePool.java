@@ -0,0 +1,164 @@
+package org.tron.walletserver;
+
+import io.grpc.StatusRuntimeException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A pool of endpoints of one kind (all fullnodes or all soliditynodes) from {@code ip.list}.
+ *
+ * <p>Each call is routed to the endpoint with the lowest {@link NodeEndpoint#score()}, which
+ * combines recent latency, recent error rate and the number of calls already in flight, so
+ * load spreads over the nodes in proportion to how fast they answer. Endpoints that keep failing
+ * are ejected and a background task probes them with exponential backoff until they answer again.
+ * The last usable endpoint is never ejected.
+ */
+@Slf4j
+public class NodePool {
+
+  private static final int MAX_CONSECUTIVE_FAILURES = 3;
+  private static final double MAX_ERROR_RATE = 0.5;
+  private static final long EJECT_BASE_MILLIS = 5_000L;
+  private static final long EJECT_MAX_MILLIS = 120_000L;
+  private static final long PROBE_INTERVAL_MILLIS = 1_000L;
+  private static final long PROBE_TIMEOUT_MILLIS = 3_000L;
+
+  private final boolean solidity;
+  private final List<NodeEndpoint> endpoints;
+  private final ScheduledExecutorService prober;
+
+  public NodePool(List<String> targets, boolean solidity) {
+    this.solidity = solidity;
+    List<NodeEndpoint> list = new ArrayList<>();
+    for (String target : targets) {
+      if (!StringUtils.isBlank(target)) {
+        list.add(new NodeEndpoint(target.trim()));
+      }
+    }
+    if (list.isEmpty()) {
+      throw new IllegalArgumentException("NodePool needs at least one endpoint");
+    }
+    this.endpoints = Collections.unmodifiableList(list);
+
+    if (endpoints.size() > 1) {
+      prober = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, solidity ? "solidity-node-prober" : "full-node-prober");
+        thread.setDaemon(true);
+        return thread;
+      });
+      prober.scheduleWithFixedDelay(this::maintain, PROBE_INTERVAL_MILLIS,
+          PROBE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    } else {
+      prober = null;
+    }
+  }
+
+  public boolean isSolidity() {
+    return solidity;
+  }
+
+  public List<NodeEndpoint> getEndpoints() {
+    return endpoints;
+  }
+
+  public int size() {
+    return endpoints.size();
+  }
+
+  /**
+   * Picks the healthy endpoint with the best score. If every endpoint is ejected the one whose
+   * ejection ends first is returned, so callers always get somewhere to send the request.
+   */
+  public NodeEndpoint select() {
+    if (endpoints.size() == 1) {
+      return endpoints.get(0);
+    }
+    NodeEndpoint best = null;
+    double bestScore = Double.MAX_VALUE;
+    for (NodeEndpoint endpoint : endpoints) {
+      if (endpoint.isEjected()) {
+        continue;
+      }
+      double score = endpoint.score();
+      if (score < bestScore) {
+        bestScore = score;
+        best = endpoint;
+      }
+    }
+    if (best != null) {
+      return best;
+    }
+    long earliest = Long.MAX_VALUE;
+    for (NodeEndpoint endpoint : endpoints) {
+      if (endpoint.getEjectedUntil() < earliest) {
+        earliest = endpoint.getEjectedUntil();
+        best = endpoint;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Ejects endpoints that crossed the failure thresholds and probes those whose ejection expired.
+   */
+  void maintain() {
+    try {
+      for (NodeEndpoint endpoint : endpoints) {
+        if (endpoint.shouldEject(MAX_CONSECUTIVE_FAILURES, MAX_ERROR_RATE)
+            && availableCount() > 1) {
+          endpoint.eject(EJECT_BASE_MILLIS, EJECT_MAX_MILLIS);
+          logger.warn("Eject node {}", endpoint);
+        }
+      }
+      long now = System.currentTimeMillis();
+      for (NodeEndpoint endpoint : endpoints) {
+        if (endpoint.isProbeDue(now)) {
+          probe(endpoint);
+        }
+      }
+    } catch (RuntimeException e) {
+      logger.error("Node pool maintenance failed", e);
+    }
+  }
+
+  private void probe(NodeEndpoint endpoint) {
+    try {
+      long latency = endpoint.probe(solidity, PROBE_TIMEOUT_MILLIS);
+      endpoint.readmit(latency);
+      logger.info("Readmit node {}", endpoint);
+    } catch (StatusRuntimeException e) {
+      endpoint.eject(EJECT_BASE_MILLIS, EJECT_MAX_MILLIS);
+      logger.debug("Probe of node {} failed: {}", endpoint.getTarget(), e.getStatus());
+    }
+  }
+
+  private int availableCount() {
+    int count = 0;
+    for (NodeEndpoint endpoint : endpoints) {
+      if (!endpoint.isEjected()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public void shutdown() throws InterruptedException {
+    if (prober != null) {
+      prober.shutdownNow();
+    }
+    for (NodeEndpoint endpoint : endpoints) {
+      endpoint.shutdown();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return (solidity ? "solidity" : "full") + endpoints;
+  }
+}
@@ -0,0 +1,86 @@
+package org.tron.walletserver;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical requests: while a call for a key is running, other callers with
+ * the same key wait for it and receive its result (or its exception) instead of issuing their
+ * own. Nothing is remembered once the call completes.
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+  /**
+   * Runs {@code call} on the calling thread unless a call for {@code key} is already running, in
+   * which case its outcome is shared.
+   */
+  public V execute(K key, Supplier<V> call) {
+    CompletableFuture<V> mine = new CompletableFuture<>();
+    CompletableFuture<V> running = calls.putIfAbsent(key, mine);
+    if (running != null) {
+      return await(running);
+    }
+    try {
+      V value = call.get();
+      mine.complete(value);
+      return value;
+    } catch (RuntimeException | Error e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      calls.remove(key, mine);
+    }
+  }
+
+  /**
+   * Asynchronous variant: callers arriving while the call for {@code key} is pending share its
+   * outcome. Each caller gets its own dependent future, so cancelling or completing one leaves the
+   * others and the running call alone.
+   */
+  public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+    CompletableFuture<V> mine = new CompletableFuture<>();
+    CompletableFuture<V> running = calls.putIfAbsent(key, mine);
+    if (running != null) {
+      return running.thenApply(Function.identity());
+    }
+    try {
+      call.get().whenComplete((value, t) -> {
+        calls.remove(key, mine);
+        if (t != null) {
+          mine.completeExceptionally(t);
+        } else {
+          mine.complete(value);
+        }
+      });
+    } catch (RuntimeException | Error e) {
+      calls.remove(key, mine);
+      mine.completeExceptionally(e);
+    }
+    return mine.thenApply(Function.identity());
+  }
+
+  public int inFlight() {
+    return calls.size();
+  }
+
+  private static <V> V await(CompletableFuture<V> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+}
@@ -22,6 +22,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import lombok.extern.slf4j.Slf4j;
@@ -81,9 +82,12 @@ import org.tron.api.GrpcAPI.WitnessList;
 import org.tron.common.crypto.ECKey;
 import org.tron.common.crypto.Hash;
 import org.tron.common.crypto.Sha256Sm3Hash;
+import org.tron.common.crypto.SignInterface;
 import org.tron.common.crypto.sm2.SM2;
+import org.tron.common.utils.AbiCodec;
 import org.tron.common.utils.Base58;
 import org.tron.common.utils.ByteArray;
+import org.tron.common.utils.TransactionEnvelope;
 import org.tron.common.utils.TransactionUtils;
 import org.tron.common.utils.Utils;
 import org.tron.common.zksnark.JLibrustzcash;
@@ -92,8 +96,14 @@ import org.tron.core.config.Configuration;
 import org.tron.core.config.Parameter.CommonConstant;
 import org.tron.core.exception.CancelException;
 import org.tron.core.exception.CipherException;
+import org.tron.core.exception.ZksnarkException;
+import org.tron.core.zen.ShieldedProver;
+import org.tron.core.zen.ShieldedTransactionBuilder;
 import org.tron.keystore.CheckStrength;
 import org.tron.keystore.Credentials;
+import org.tron.keystore.KeyAgent;
+import org.tron.keystore.KeystoreIndex;
+import org.tron.keystore.SigningSession;
 import org.tron.keystore.Wallet;
 import org.tron.keystore.WalletFile;
 import org.tron.keystore.WalletUtils;
@@ -167,17 +177,19 @@ public class WalletApi {
   private static boolean isEckey = true;
 
   private static GrpcClient rpcCli = init();
+  private static AsyncGrpcClient asyncRpcCli = new AsyncGrpcClient(rpcCli);
+  private static HeadTracker headTracker;
 
   public static GrpcClient init() {
     Config config = Configuration.getByPath("config.conf");
 
-    String fullNode = "";
-    String solidityNode = "";
+    List<String> fullNodes = new ArrayList<>();
+    List<String> solidityNodes = new ArrayList<>();
     if (config.hasPath("soliditynode.ip.list")) {
-      solidityNode = config.getStringList("soliditynode.ip.list").get(0);
+      solidityNodes = config.getStringList("soliditynode.ip.list");
     }
     if (config.hasPath("fullnode.ip.list")) {
-      fullNode = config.getStringList("fullnode.ip.list").get(0);
+      fullNodes = config.getStringList("fullnode.ip.list");
     }
     if (config.hasPath("net.type") && "mainnet".equalsIgnoreCase(config.getString("net.type"))) {
       WalletApi.setAddressPreFixByte(CommonConstant.ADD_PRE_FIX_BYTE_MAINNET);
@@ -192,7 +204,29 @@ public class WalletApi {
       isEckey = config.getString("crypto.engine").equalsIgnoreCase("eckey");
       System.out.println("WalletApi getConfig isEckey: " + isEckey);
     }
-    return new GrpcClient(fullNode, solidityNode);
+    GrpcClient client = new GrpcClient(fullNodes, solidityNodes);
+    if (!config.hasPath("cache.enable") || config.getBoolean("cache.enable")) {
+      long maxBytes = config.hasPath("cache.maxBytes") ? config.getLong("cache.maxBytes")
+          : 64L * 1024 * 1024;
+      long headTtlMillis = config.hasPath("cache.headTtlMillis")
+          ? config.getLong("cache.headTtlMillis") : 3_000L;
+      client.setChainDataCache(new LruChainDataCache(maxBytes, headTtlMillis));
+    }
+    return client;
+  }
+
+  public static AsyncGrpcClient getAsyncRpcCli() {
+    return asyncRpcCli;
+  }
+
+  /**
+   * The head tracker shared by background scanners, started on first use.
+   */
+  public static synchronized HeadTracker getHeadTracker() {
+    if (headTracker == null) {
+      headTracker = new HeadTracker(asyncRpcCli);
+    }
+    return headTracker;
   }
 
   public static String selectFullNode() {
@@ -273,6 +307,9 @@ public class WalletApi {
 
   public void logout() {
     loginState = false;
+    if (KeyAgent.isEnabled()) {
+      KeyAgent.getInstance().lockAll();
+    }
     walletFile.clear();
     this.walletFile = null;
   }
@@ -281,7 +318,14 @@ public class WalletApi {
     loginState = true;
   }
 
+  /**
+   * Checks the password of the keystore; with the key agent enabled, this unlocks it there, or
+   * checks against what the agent kept without decrypting it again.
+   */
   public boolean checkPassword(byte[] passwd) throws CipherException {
+    if (KeyAgent.isEnabled()) {
+      return KeyAgent.getInstance().checkPassword(this.walletFile.get(0), passwd);
+    }
     return Wallet.validPassword(passwd, this.walletFile.get(0));
   }
 
@@ -305,6 +349,13 @@ public class WalletApi {
     return Wallet.decryptSM2(password, walletFile);
   }
 
+  /**
+   * Unlocks the logged-in keystore once for non-interactive batch signing.
+   */
+  public SigningSession openSigningSession(byte[] password) throws CipherException {
+    return SigningSession.unlock(password, this.walletFile.get(0));
+  }
+
   public byte[] getPrivateBytes(byte[] password) throws CipherException, IOException {
     WalletFile walletFile = loadWalletFile();
     return Wallet.decrypt2PrivateBytes(password, walletFile);
@@ -335,7 +386,18 @@ public class WalletApi {
         }
       }
     }
-    return WalletUtils.generateWalletFile(walletFile, file);
+    String keystoreName = WalletUtils.generateWalletFile(walletFile, file);
+    if (KeystoreIndex.isEnabled()) {
+      KeystoreIndex.getInstance().load(new File(file, keystoreName));
+    }
+    return keystoreName;
+  }
+
+  /**
+   * The directory keystores are stored in and chosen from.
+   */
+  public static File getKeystoreDirectory() {
+    return new File(FilePath);
   }
 
   public static File selcetWalletFile() {
@@ -344,7 +406,8 @@ public class WalletApi {
       return null;
     }
 
-    File[] wallets = file.listFiles();
+    File[] wallets = KeystoreIndex.isEnabled()
+        ? KeystoreIndex.getInstance().files().toArray(new File[0]) : file.listFiles();
     if (ArrayUtils.isEmpty(wallets)) {
       return null;
     }
@@ -395,7 +458,7 @@ public class WalletApi {
       }
     }
 
-    WalletFile wallet = WalletUtils.loadWalletFile(file);
+    WalletFile wallet = loadWalletFile(file);
     this.walletFile.add(wallet);
     return wallet;
   }
@@ -409,6 +472,9 @@ public class WalletApi {
     }
     Credentials credentials = WalletUtils.loadCredentials(oldPassword, wallet);
     WalletUtils.updateWalletFile(newPassowrd, credentials.getPair(), wallet, true);
+    if (KeyAgent.isEnabled()) {
+      KeyAgent.getInstance().lock(credentials.getAddress());
+    }
     return true;
   }
 
@@ -418,9 +484,34 @@ public class WalletApi {
       throw new IOException(
           "No keystore file found, please use registerwallet or importwallet first!");
     }
+    return loadWalletFile(wallet);
+  }
+
+  private static WalletFile loadWalletFile(File wallet) throws IOException {
+    if (KeystoreIndex.isEnabled()) {
+      return KeystoreIndex.getInstance().load(wallet);
+    }
     return WalletUtils.loadWalletFile(wallet);
   }
 
+  /**
+   * The keystore of {@code address}, without listing or parsing the keystore directory when the
+   * keystore index is enabled.
+   */
+  public static WalletFile findWalletFile(String address) throws IOException {
+    if (KeystoreIndex.isEnabled()) {
+      return KeystoreIndex.getInstance().get(address).orElse(null);
+    }
+    File[] wallets = new File(FilePath).listFiles((dir, name) -> name.contains(address));
+    for (File wallet : wallets == null ? new File[0] : wallets) {
+      WalletFile walletFile = WalletUtils.loadWalletFile(wallet);
+      if (address.equals(walletFile.getAddress())) {
+        return walletFile;
+      }
+    }
+    return null;
+  }
+
   /**
    * load a Wallet from keystore
    */
@@ -455,7 +546,7 @@ public class WalletApi {
     }
   }
 
-  private Transaction signTransaction(Transaction transaction)
+  private TransactionEnvelope signTransaction(Transaction transaction)
       throws CipherException, IOException, CancelException {
     if (transaction.getRawData().getTimestamp() == 0) {
       transaction = TransactionUtils.setTimestamp(transaction);
@@ -465,21 +556,13 @@ public class WalletApi {
     String tipsString = "Please confirm and input your permission id, if input y or Y means "
         + "default 0, other non-numeric characters will cancel transaction.";
     transaction = TransactionUtils.setPermissionId(transaction, tipsString);
+    TransactionEnvelope envelope = TransactionEnvelope.of(transaction);
     while (true) {
       System.out.println("Please choose your key for sign.");
       WalletFile walletFile = selcetWalletFileE();
-      System.out.println("Please input your password.");
-      char[] password = Utils.inputPassword(false);
-      byte[] passwd = org.tron.keystore.StringUtils.char2Byte(password);
-      org.tron.keystore.StringUtils.clear(password);
-      if (isEckey) {
-        transaction = TransactionUtils.sign(transaction, this.getEcKey(walletFile, passwd));
-      } else {
-        transaction = TransactionUtils.sign(transaction, this.getSM2(walletFile, passwd));
-      }
-      org.tron.keystore.StringUtils.clear(passwd);
+      envelope = signWith(walletFile, envelope::sign);
 
-      TransactionSignWeight weight = getTransactionSignWeight(transaction);
+      TransactionSignWeight weight = getTransactionSignWeight(envelope.getTransaction());
       if (weight.getResult().getCode() == response_code.ENOUGH_PERMISSION) {
         break;
       }
@@ -488,7 +571,7 @@ public class WalletApi {
         System.out.println(Utils.printTransactionSignWeight(weight));
         System.out.println("Please confirm if continue add signature enter y or Y, else any other");
         if (!confirm()) {
-          showTransactionAfterSign(transaction);
+          showTransactionAfterSign(envelope);
           throw new CancelException("User cancelled");
         }
         continue;
@@ -496,7 +579,38 @@ public class WalletApi {
       throw new CancelException(weight.getResult().getMessage());
     }
 
-    return transaction;
+    return envelope;
+  }
+
+  /**
+   * Signs with the key of {@code walletFile}: the key agent's copy if it holds one, else the key
+   * decrypted with the password asked for, which the agent then keeps when enabled.
+   */
+  private <T> T signWith(WalletFile walletFile, Function<SignInterface, T> sign)
+      throws IOException, CipherException {
+    if (KeyAgent.isEnabled()) {
+      Optional<T> signed = KeyAgent.getInstance().withKey(walletFile, sign);
+      if (signed.isPresent()) {
+        return signed.get();
+      }
+    }
+    System.out.println("Please input your password.");
+    char[] password = Utils.inputPassword(false);
+    byte[] passwd = org.tron.keystore.StringUtils.char2Byte(password);
+    org.tron.keystore.StringUtils.clear(password);
+    try {
+      if (KeyAgent.isEnabled()) {
+        KeyAgent.getInstance().checkPassword(walletFile, passwd);
+        Optional<T> signed = KeyAgent.getInstance().withKey(walletFile, sign);
+        if (signed.isPresent()) {
+          return signed.get();
+        }
+      }
+      return sign.apply(isEckey ? this.getEcKey(walletFile, passwd)
+          : this.getSM2(walletFile, passwd));
+    } finally {
+      org.tron.keystore.StringUtils.clear(passwd);
+    }
   }
 
   private Transaction signOnlyForShieldedTransaction(Transaction transaction)
@@ -507,17 +621,8 @@ public class WalletApi {
     while (true) {
       System.out.println("Please choose your key for sign.");
       WalletFile walletFile = selcetWalletFileE();
-      System.out.println("Please input your password.");
-      char[] password = Utils.inputPassword(false);
-      byte[] passwd = org.tron.keystore.StringUtils.char2Byte(password);
-      org.tron.keystore.StringUtils.clear(password);
-
-      if (isEckey) {
-        transaction = TransactionUtils.sign(transaction, this.getEcKey(walletFile, passwd));
-      } else {
-        transaction = TransactionUtils.sign(transaction, this.getSM2(walletFile, passwd));
-      }
-      org.tron.keystore.StringUtils.clear(passwd);
+      Transaction unsigned = transaction;
+      transaction = signWith(walletFile, key -> TransactionUtils.sign(unsigned, key));
 
       TransactionSignWeight weight = getTransactionSignWeight(transaction);
       if (weight.getResult().getCode() == response_code.ENOUGH_PERMISSION) {
@@ -562,23 +667,23 @@ public class WalletApi {
     System.out.println(Utils.printTransactionExceptId(transactionExtention.getTransaction()));
     System.out.println("before sign transaction hex string is " +
         ByteArray.toHexString(transaction.toByteArray()));
-    transaction = signTransaction(transaction);
-    showTransactionAfterSign(transaction);
-    return rpcCli.broadcastTransaction(transaction);
+    TransactionEnvelope signed = signTransaction(transaction);
+    showTransactionAfterSign(signed);
+    return rpcCli.broadcastTransaction(signed.getTransaction());
   }
 
-  private void showTransactionAfterSign(Transaction transaction)
+  private void showTransactionAfterSign(TransactionEnvelope envelope)
       throws InvalidProtocolBufferException {
+    Transaction transaction = envelope.getTransaction();
     System.out.println("after sign transaction hex string is " +
         ByteArray.toHexString(transaction.toByteArray()));
-    System.out.println("txid is " +
-        ByteArray.toHexString(Sha256Sm3Hash.hash(transaction.getRawData().toByteArray())));
+    System.out.println("txid is " + envelope.getTxidHex());
 
     if (transaction.getRawData().getContract(0).getType() == ContractType.CreateSmartContract) {
       CreateSmartContract createSmartContract = transaction.getRawData().getContract(0)
           .getParameter().unpack(CreateSmartContract.class);
-      byte[] contractAddress = generateContractAddress(
-          createSmartContract.getOwnerAddress().toByteArray(), transaction);
+      byte[] contractAddress = Utils.generateContractAddress(
+          envelope, createSmartContract.getOwnerAddress().toByteArray());
       System.out.println(
           "Your smart contract address will be: " + WalletApi.encode58Check(contractAddress));
     }
@@ -620,9 +725,7 @@ public class WalletApi {
 
     System.out.println(
         "transaction hex string is " + ByteArray.toHexString(transaction.toByteArray()));
-    System.out.println(
-        "txid is "
-            + ByteArray.toHexString(Sha256Sm3Hash.hash(transaction.getRawData().toByteArray())));
+    System.out.println("txid is " + TransactionEnvelope.of(transaction).getTxidHex());
 
     return rpcCli.broadcastTransaction(transaction);
   }
@@ -638,10 +741,10 @@ public class WalletApi {
         "before sign transaction hex string is "
             + ByteArray.toHexString(transaction.toByteArray()));
 
-    transaction = signTransaction(transaction);
+    TransactionEnvelope signed = signTransaction(transaction);
 
-    showTransactionAfterSign(transaction);
-    return rpcCli.broadcastTransaction(transaction);
+    showTransactionAfterSign(signed);
+    return rpcCli.broadcastTransaction(signed.getTransaction());
   }
 
   // Warning: do not invoke this interface provided by others.
@@ -1998,15 +2101,7 @@ public class WalletApi {
   }
 
   public byte[] generateContractAddress(byte[] ownerAddress, Transaction trx) {
-    // get tx hash
-    byte[] txRawDataHash = Sha256Sm3Hash.of(trx.getRawData().toByteArray()).getBytes();
-
-    // combine
-    byte[] combined = new byte[txRawDataHash.length + ownerAddress.length];
-    System.arraycopy(txRawDataHash, 0, combined, 0, txRawDataHash.length);
-    System.arraycopy(ownerAddress, 0, combined, txRawDataHash.length, ownerAddress.length);
-
-    return Hash.sha3omit12(combined);
+    return Utils.generateContractAddress(trx, ownerAddress);
   }
 
   public boolean updateSetting(byte[] owner, byte[] contractAddress,
@@ -2307,18 +2402,8 @@ public class WalletApi {
 
     System.out.println("Please choose your key for sign.");
     WalletFile walletFile = selcetWalletFileE();
-    System.out.println("Please input your password.");
-    char[] password = Utils.inputPassword(false);
-    byte[] passwd = org.tron.keystore.StringUtils.char2Byte(password);
-    org.tron.keystore.StringUtils.clear(password);
-
-    if (isEckey) {
-      transaction = TransactionUtils.sign(transaction, this.getEcKey(walletFile, passwd));
-    } else {
-      transaction = TransactionUtils.sign(transaction, this.getSM2(walletFile, passwd));
-    }
-    org.tron.keystore.StringUtils.clear(passwd);
-    return transaction;
+    Transaction unsigned = transaction;
+    return signWith(walletFile, key -> TransactionUtils.sign(unsigned, key));
   }
 
   public static Optional<IncrementalMerkleVoucherInfo> GetMerkleTreeVoucherInfo(
@@ -2436,12 +2521,69 @@ public class WalletApi {
 
   public static boolean sendShieldedCoin(PrivateParameters privateParameters, WalletApi wallet)
       throws CipherException, IOException, CancelException {
+    if (ShieldedProver.isEnabled()) {
+      return sendShieldedCoinLocal(ShieldedTransactionBuilder.of(privateParameters), wallet);
+    }
     TransactionExtention transactionExtention = rpcCli.createShieldedTransaction(privateParameters);
     return processShieldedTransaction(transactionExtention, wallet);
   }
 
+  /**
+   * Builds the shielded transaction and its proofs here; only its hash is asked from the node.
+   */
+  private static boolean sendShieldedCoinLocal(ShieldedTransactionBuilder builder,
+      WalletApi wallet) throws CipherException, IOException, CancelException {
+    BlockExtention head = rpcCli.getBlock2(-1);
+    byte[] refBlockNum = ByteArray.fromLong(head.getBlockHeader().getRawData().getNumber());
+    Transaction template = TransactionUtils.setExpirationTime(Transaction.newBuilder()
+        .setRawData(Transaction.raw.newBuilder()
+            .setRefBlockBytes(ByteString.copyFrom(ByteArray.subArray(refBlockNum, 6, 8)))
+            .setRefBlockHash(ByteString.copyFrom(
+                ByteArray.subArray(head.getBlockid().toByteArray(), 8, 16)))
+            .setTimestamp(System.currentTimeMillis()))
+        .build());
+
+    ShieldedTransferContract contract;
+    try {
+      contract = ShieldedProver.getInstance().build(builder, unsigned -> {
+        BytesMessage hash =
+            rpcCli.getShieldedTransactionHash(withShieldedContract(template, unsigned));
+        if (hash == null || hash.getValue().size() != 32) {
+          throw new ZksnarkException("Get shielded transaction hash failure.");
+        }
+        return hash.getValue().toByteArray();
+      });
+    } catch (ZksnarkException e) {
+      System.out.println("Build shielded transaction failed: " + e.getMessage());
+      return false;
+    }
+    for (ShieldedTransactionBuilder.ProofTiming timing : builder.getTimings()) {
+      System.out.println(timing);
+    }
+    System.out.println(ShieldedProver.getInstance());
+
+    TransactionExtention transactionExtention = TransactionExtention.newBuilder()
+        .setTransaction(withShieldedContract(template, contract))
+        .setResult(Return.newBuilder().setResult(true))
+        .build();
+    return processShieldedTransaction(transactionExtention, wallet);
+  }
+
+  private static Transaction withShieldedContract(Transaction transaction,
+      ShieldedTransferContract contract) {
+    Transaction.raw.Builder rawBuilder = transaction.getRawData().toBuilder()
+        .clearContract()
+        .addContract(Transaction.Contract.newBuilder()
+            .setType(ContractType.ShieldedTransferContract)
+            .setParameter(Any.pack(contract)));
+    return transaction.toBuilder().setRawData(rawBuilder).build();
+  }
+
   public static boolean sendShieldedCoinWithoutAsk(PrivateParametersWithoutAsk privateParameters,
       byte[] ask, WalletApi wallet) throws CipherException, IOException, CancelException {
+    if (ShieldedProver.isEnabled()) {
+      return sendShieldedCoinLocal(ShieldedTransactionBuilder.of(privateParameters, ask), wallet);
+    }
     TransactionExtention transactionExtention =
         rpcCli.createShieldedTransactionWithoutSpendAuthSig(privateParameters);
     if (transactionExtention == null) {
@@ -2617,6 +2759,28 @@ public class WalletApi {
     return Optional.empty();
   }
 
+  /**
+   * Calls a constant function and decodes what it returns.
+   *
+   * @return empty if the call failed or reverted
+   */
+  public static Optional<List<Object>> callConstant(byte[] owner, byte[] contractAddress,
+      AbiCodec function, Object... args) {
+    TriggerSmartContract triggerContract = triggerCallContract(owner, contractAddress, 0,
+        function.encode(args), 0, "");
+    TransactionExtention transactionExtention = rpcCli.triggerConstantContract(triggerContract);
+    if (transactionExtention == null || !transactionExtention.getResult().getResult()
+        || transactionExtention.getConstantResultCount() == 0) {
+      return Optional.empty();
+    }
+    Transaction transaction = transactionExtention.getTransaction();
+    if (transaction.getRetCount() != 0
+        && transaction.getRet(0).getRet() == Result.code.FAILED) {
+      return Optional.empty();
+    }
+    return Optional.of(function.decode(transactionExtention.getConstantResult(0).toByteArray()));
+  }
+
   public String constantCallShieldedContract(byte[] contractAddress, byte[] data, String functionName) {
     byte[] address = getAddress();
     TriggerSmartContract triggerContract =
@@ -0,0 +1,101 @@
+package org.tron.common.crypto;
+
+import java.security.MessageDigest;
+import java.security.Security;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.crypto.digests.SM3Digest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.tron.common.crypto.jce.TronCastleProvider;
+
+/**
+ * Compares hashing with a digest looked up or created per call against the per-thread digests of
+ * {@link Digests}, for inputs the size of a public key (address derivation) and of a function
+ * signature (ABI selectors). Run with {@code main}; it is not a unit test.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DigestBenchmark {
+
+  @Param({"20", "64"})
+  private int size;
+
+  private byte[] input;
+  private final byte[] out = new byte[32];
+
+  @Setup
+  public void setup() {
+    Security.addProvider(TronCastleProvider.getInstance());
+    input = new byte[size];
+    for (int i = 0; i < size; i++) {
+      input[i] = (byte) i;
+    }
+  }
+
+  @Benchmark
+  public byte[] keccakProviderLookup() throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("TRON-KECCAK-256", "BC");
+    digest.update(input);
+    return digest.digest();
+  }
+
+  @Benchmark
+  public byte[] keccakPooled() {
+    return Hash.sha3(input);
+  }
+
+  @Benchmark
+  public byte[] keccakPooledInto() {
+    Hash.sha3(input, 0, input.length, out, 0);
+    return out;
+  }
+
+  @Benchmark
+  public byte[] sha256New() throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    digest.update(input);
+    return digest.digest();
+  }
+
+  @Benchmark
+  public byte[] sha256Pooled() {
+    MessageDigest digest = Digests.sha256();
+    digest.update(input);
+    return digest.digest();
+  }
+
+  @Benchmark
+  public byte[] sm3New() {
+    SM3Digest digest = new SM3Digest();
+    digest.update(input, 0, input.length);
+    byte[] hash = new byte[32];
+    digest.doFinal(hash, 0);
+    return hash;
+  }
+
+  @Benchmark
+  public byte[] sm3PooledInto() {
+    SM3Hash.hash(input, 0, input.length, out, 0);
+    return out;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(DigestBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,87 @@
+package org.tron.common.crypto;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tron.common.crypto.ECKey.ECDSASignature;
+import org.tron.common.crypto.sm2.SM2;
+import org.tron.common.crypto.sm2.SM2.SM2Signature;
+
+/**
+ * The recovery ids read from the nonce point when signing must be the ones trial recovery finds.
+ */
+public class RecoveryIdTest {
+
+  private static final int KEYS = 64;
+  private final SecureRandom random = new SecureRandom();
+
+  private byte[] randomHash() {
+    byte[] hash = new byte[32];
+    random.nextBytes(hash);
+    return hash;
+  }
+
+  // the recId the signers used to find by trying each one in turn
+  private static int trialRecId(ECDSASignature sig, byte[] hash, byte[] pub) {
+    for (int i = 0; i < 4; i++) {
+      if (Arrays.equals(ECKey.recoverPubBytesFromSignature(i, sig, hash), pub)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int trialRecId(SM2Signature sig, byte[] hash, byte[] pub) {
+    for (int i = 0; i < 4; i++) {
+      if (Arrays.equals(SM2.recoverPubBytesFromSignature(i, sig, hash), pub)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Test
+  public void ecKeyRecIdRecoversSigner() {
+    for (int i = 0; i < KEYS; i++) {
+      ECKey key = new ECKey(random);
+      byte[] hash = randomHash();
+      ECDSASignature sig = key.sign(hash);
+      int recId = sig.v - 27;
+      Assert.assertArrayEquals(key.getPubKey(),
+          ECKey.recoverPubBytesFromSignature(recId, sig, hash));
+      Assert.assertEquals(trialRecId(sig, hash, key.getPubKey()), recId);
+      // still the RFC 6979 signature of doSign
+      ECDSASignature old = key.doSign(hash);
+      Assert.assertEquals(old.r, sig.r);
+      Assert.assertEquals(old.s, sig.s);
+    }
+  }
+
+  @Test
+  public void sm2HashRecIdRecoversSigner() {
+    for (int i = 0; i < KEYS; i++) {
+      SM2 key = new SM2(random);
+      byte[] hash = randomHash();
+      SM2Signature sig = key.sign(hash);
+      int recId = sig.v - 27;
+      Assert.assertArrayEquals(key.getPubKey(),
+          SM2.recoverPubBytesFromSignature(recId, sig, hash));
+      Assert.assertEquals(trialRecId(sig, hash, key.getPubKey()), recId);
+    }
+  }
+
+  @Test
+  public void sm2MessageRecIdRecoversSigner() {
+    for (int i = 0; i < KEYS; i++) {
+      SM2 key = new SM2(random);
+      byte[] message = randomHash();
+      SM2Signature sig = key.signMessage(message, null);
+      byte[] hash = key.getSM2SignerForHash().generateSM3Hash(message);
+      int recId = sig.v - 27;
+      Assert.assertArrayEquals(key.getPubKey(),
+          SM2.recoverPubBytesFromSignature(recId, sig, hash));
+      Assert.assertEquals(trialRecId(sig, hash, key.getPubKey()), recId);
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package org.tron.common.utils;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tron.common.crypto.ECKey;
+import org.tron.walletserver.WalletApi;
+
+public class AbiCodecTest {
+
+  private static final String ADDRESS = address();
+
+  private static String address() {
+    byte[] address = new ECKey().getAddress();
+    address[0] = WalletApi.getAddressPreFixByte();
+    return WalletApi.encode58Check(address);
+  }
+
+  @Test
+  public void encodesLikeAbiUtil() {
+    String method = "test(uint256,string,string,uint256[],bytes32,bytes)";
+    byte[] expected = Hex.decode(AbiUtil.parseMethod(method,
+        "5,\"B\",\"C\",[1,2,3],\"0112313\",\"abcdef\""));
+    byte[] encoded = AbiCodec.of(method).encode(5, "B", "C", Arrays.asList(1, 2, 3),
+        "0112313", Hex.decode("abcdef"));
+    Assert.assertArrayEquals(expected, encoded);
+    Assert.assertSame(AbiCodec.of(method), AbiCodec.of(method));
+  }
+
+  @Test
+  public void transferSelector() {
+    AbiCodec transfer = AbiCodec.of("transfer(address, uint)", "bool");
+    Assert.assertEquals("transfer(address,uint256)", transfer.getSignature());
+    Assert.assertEquals("a9059cbb", Hex.toHexString(transfer.getSelector()));
+    byte[] data = transfer.encode(ADDRESS, new BigInteger("1000000"));
+    Assert.assertEquals(4 + 64, data.length);
+    Assert.assertEquals(Arrays.asList(ADDRESS, BigInteger.valueOf(1000000)),
+        transfer.decodeInput(data));
+    byte[] ok = new byte[32];
+    ok[31] = 1;
+    Assert.assertEquals(Arrays.asList(true), transfer.decode(ok));
+  }
+
+  @Test
+  public void roundTripsNestedTypes() {
+    AbiCodec codec = AbiCodec.of("f((address,bytes)[],int8,string[2])",
+        "(uint256,bytes[]),int8[]");
+    List<Object> calls = Arrays.asList(
+        Arrays.asList(ADDRESS, new byte[] {1, 2, 3}),
+        Arrays.asList(ADDRESS, new byte[40]));
+    byte[] data = codec.encode(calls, -128, new String[] {"a", "bc"});
+    List<Object> args = codec.decodeInput(data);
+    Assert.assertEquals(BigInteger.valueOf(-128), args.get(1));
+    Assert.assertEquals(Arrays.asList("a", "bc"), args.get(2));
+    @SuppressWarnings("unchecked")
+    List<List<Object>> decodedCalls = (List<List<Object>>) args.get(0);
+    Assert.assertEquals(2, decodedCalls.size());
+    Assert.assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) decodedCalls.get(0).get(1));
+    Assert.assertArrayEquals(new byte[40], (byte[]) decodedCalls.get(1).get(1));
+
+    byte[] returnData = AbiCodec.of("r((uint256,bytes[]),int8[])").encodeArguments(
+        Arrays.asList(7, Arrays.asList("ok".getBytes(StandardCharsets.UTF_8), new byte[0])),
+        Arrays.asList(-1, 1));
+    List<Object> returned = codec.decode(returnData);
+    @SuppressWarnings("unchecked")
+    List<Object> tuple = (List<Object>) returned.get(0);
+    Assert.assertEquals(BigInteger.valueOf(7), tuple.get(0));
+    Assert.assertEquals(Arrays.asList(BigInteger.valueOf(-1), BigInteger.ONE), returned.get(1));
+  }
+
+  @Test
+  public void rejectsBadValuesAndData() {
+    AbiCodec codec = AbiCodec.of("f(uint8)", "string");
+    try {
+      codec.encode(256);
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      // too large for uint8
+    }
+    try {
+      codec.decode(new byte[31]);
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      // truncated
+    }
+    byte[] hugeLength = new byte[64];
+    hugeLength[31] = 32;
+    hugeLength[60] = 1;
+    try {
+      codec.decode(hugeLength);
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      // the string runs past the data
+    }
+  }
+
+  @Test
+  public void encodesBoolsStrictly() {
+    AbiCodec codec = AbiCodec.of("f(bool)");
+    for (Object yes : new Object[] {true, "true", "1", 1, 1L, BigInteger.ONE}) {
+      Assert.assertEquals(Arrays.asList(true), codec.decodeInput(codec.encode(yes)));
+    }
+    for (Object no : new Object[] {false, "false", "0", 0, 0.0}) {
+      Assert.assertEquals(Arrays.asList(false), codec.decodeInput(codec.encode(no)));
+    }
+    for (Object bad : new Object[] {"yes", "", 2, -1, 0.5, null}) {
+      try {
+        codec.encode(bad);
+        Assert.fail(String.valueOf(bad));
+      } catch (IllegalArgumentException e) {
+        // not a bool
+      }
+    }
+  }
+}
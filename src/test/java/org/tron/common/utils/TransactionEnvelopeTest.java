@@ -0,0 +1,25 @@
+package org.tron.common.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tron.common.crypto.ECKey;
+import org.tron.common.crypto.Sha256Sm3Hash;
+import org.tron.protos.Protocol.Transaction;
+
+public class TransactionEnvelopeTest {
+
+  @Test
+  public void signKeepsTheCachedTxid() {
+    Transaction transaction = Transaction.newBuilder()
+        .setRawData(Transaction.raw.newBuilder().setExpiration(1))
+        .build();
+    TransactionEnvelope envelope = TransactionEnvelope.of(transaction);
+    byte[] txid = envelope.getTxid();
+    Assert.assertArrayEquals(Sha256Sm3Hash.hash(transaction.getRawData().toByteArray()), txid);
+
+    TransactionEnvelope signed = envelope.sign(new ECKey());
+    Assert.assertSame(txid, signed.getTxid());
+    Assert.assertSame(envelope.getRawBytes(), signed.getRawBytes());
+    Assert.assertEquals(1, signed.getTransaction().getSignatureCount());
+  }
+}
@@ -0,0 +1,35 @@
+package org.tron.core.zen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tron.core.zen.LocalNoteScanner.ShieldedOutput;
+
+public class LocalNoteScannerTest {
+
+  private final AtomicInteger fetches = new AtomicInteger();
+
+  // outputs no key can decrypt, one per block
+  private final LocalNoteScanner scanner = new LocalNoteScanner((start, end) -> {
+    fetches.incrementAndGet();
+    List<ShieldedOutput> outputs = new ArrayList<>();
+    for (long blockNum = start; blockNum < end; blockNum++) {
+      outputs.add(new ShieldedOutput(blockNum, new byte[32], 0, -1, new byte[32], new byte[0],
+          new byte[NoteDecryptor.ENC_CIPHERTEXT_SIZE]));
+    }
+    return outputs;
+  }, 4);
+
+  @Test
+  public void fetchesAWindowOnceForAllKeys() throws Exception {
+    Assert.assertTrue(scanner.scan(new byte[32], 100, 200).get().isEmpty());
+    Assert.assertTrue(scanner.scan(new byte[32], 100, 200).get().isEmpty());
+    Assert.assertTrue(scanner.scan(new byte[32], 150, 180).get().isEmpty());
+    Assert.assertEquals(1, fetches.get());
+
+    Assert.assertTrue(scanner.scan(new byte[32], 150, 250).get().isEmpty());
+    Assert.assertEquals(2, fetches.get());
+  }
+}
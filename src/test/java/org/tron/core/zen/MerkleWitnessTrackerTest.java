@@ -0,0 +1,114 @@
+package org.tron.core.zen;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tron.common.crypto.Digests;
+import org.tron.core.zen.LocalNoteScanner.ShieldedOutput;
+import org.tron.protos.contract.ShieldContract.IncrementalMerkleVoucherInfo;
+
+public class MerkleWitnessTrackerTest {
+
+  // stands in for the Pedersen hash, which needs the native library
+  private static final MerkleWitnessTracker.Hasher SHA256 = new MerkleWitnessTracker.Hasher() {
+    @Override
+    public byte[] uncommitted() {
+      return new byte[32];
+    }
+
+    @Override
+    public byte[] combine(byte[] left, byte[] right, int depth) {
+      MessageDigest digest = Digests.sha256();
+      digest.update((byte) depth);
+      digest.update(left);
+      digest.update(right);
+      return digest.digest();
+    }
+  };
+
+  private static ShieldedOutput output(long blockNum, int index) {
+    byte[] cm = new byte[32];
+    cm[0] = (byte) blockNum;
+    cm[1] = (byte) index;
+    return new ShieldedOutput(blockNum, new byte[] {(byte) blockNum}, index, -1, cm, new byte[32],
+        new byte[0]);
+  }
+
+  private static byte[] rootFromPath(byte[] leaf, byte[] path) throws Exception {
+    Assert.assertEquals(1 + MerkleWitnessTracker.DEPTH * 33 + 8, path.length);
+    long position = 0;
+    for (int i = 7; i >= 0; i--) {
+      position = (position << 8) | (path[path.length - 8 + i] & 0xff);
+    }
+    byte[] node = leaf;
+    for (int depth = 0; depth < MerkleWitnessTracker.DEPTH; depth++) {
+      int offset = 1 + (MerkleWitnessTracker.DEPTH - 1 - depth) * 33;
+      Assert.assertEquals(32, path[offset]);
+      byte[] sibling = Arrays.copyOfRange(path, offset + 1, offset + 33);
+      node = (position >>> depth & 1) == 0 ? SHA256.combine(node, sibling, depth)
+          : SHA256.combine(sibling, node, depth);
+    }
+    return node;
+  }
+
+  @Test
+  public void witnessesFollowTheTree() throws Exception {
+    MerkleWitnessTracker tracker = new MerkleWitnessTracker(SHA256, 10);
+    List<Long> owned = new ArrayList<>();
+    List<byte[]> ownedCms = new ArrayList<>();
+    long noteIndex = 0;
+    for (long blockNum = 10; blockNum < 30; blockNum++) {
+      List<ShieldedOutput> outputs = new ArrayList<>();
+      for (int index = 0; index < blockNum % 4; index++) {
+        outputs.add(output(blockNum, index));
+      }
+      long next = noteIndex;
+      tracker.appendBlock(blockNum, outputs, output -> {
+        if (output.getBlockNum() % 3 == 0 && output.getIndex() == 0) {
+          ownedCms.add(output.getCm());
+          return next;
+        }
+        return null;
+      });
+      if (ownedCms.size() > owned.size()) {
+        owned.add(noteIndex++);
+      }
+    }
+    Assert.assertEquals(30, tracker.getNextBlock());
+
+    Optional<IncrementalMerkleVoucherInfo> info = tracker.getVoucherInfo(owned);
+    Assert.assertTrue(info.isPresent());
+    for (int i = 0; i < owned.size(); i++) {
+      byte[] rt = info.get().getVouchers(i).getRt().toByteArray();
+      Assert.assertArrayEquals(tracker.root(), rt);
+      Assert.assertArrayEquals(rt,
+          rootFromPath(ownedCms.get(i), info.get().getPaths(i).toByteArray()));
+    }
+
+    MerkleWitnessTracker restored = new MerkleWitnessTracker(SHA256, 10);
+    restored.restore(tracker.getNextBlock(), tracker.getFrontier(), tracker.getWitnesses());
+    List<ShieldedOutput> more = Arrays.asList(output(30, 0), output(30, 1));
+    tracker.appendBlock(30, more, output -> null);
+    restored.appendBlock(30, more, output -> null);
+    Assert.assertEquals(tracker.getVoucherInfo(owned), restored.getVoucherInfo(owned));
+  }
+
+  @Test
+  public void spentNotesAreForgotten() throws Exception {
+    MerkleWitnessTracker tracker = new MerkleWitnessTracker(SHA256, 0);
+    tracker.appendBlock(0, Arrays.asList(output(0, 0), output(0, 1)),
+        output -> (long) output.getIndex());
+    Assert.assertTrue(tracker.forget(0));
+    Assert.assertFalse(tracker.hasWitness(0));
+    Assert.assertFalse(tracker.getVoucherInfo(Arrays.asList(0L, 1L)).isPresent());
+    Assert.assertTrue(tracker.getVoucherInfo(Collections.singletonList(1L)).isPresent());
+    tracker.clear();
+    Assert.assertEquals(0, tracker.getNextBlock());
+    Assert.assertFalse(tracker.hasWitness(1));
+  }
+}
@@ -0,0 +1,169 @@
+package org.tron.core.zen;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tron.core.zen.NoteDatabase.Status;
+
+public class NoteDatabaseTest {
+
+  private static final byte[] KEY = "key".getBytes(StandardCharsets.UTF_8);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void indexesAcrossReopen() throws Exception {
+    String prefix = new File(folder.getRoot(), "notes").getPath();
+    try (NoteDatabase database = NoteDatabase.open(prefix, KEY)) {
+      for (long i = 0; i < 10000; i++) {
+        database.put(i, i % 2 == 0 ? "even" : "odd", bytes("note" + i), Status.UNSPENT);
+      }
+      database.setStatus(3, Status.SPENT);
+      database.setStatus(7, Status.SPENT);
+      database.put(5, "odd", bytes("again"), Status.SPENT);
+      database.sync();
+    }
+
+    try (NoteDatabase database = NoteDatabase.open(prefix, KEY)) {
+      Assert.assertEquals(10000, database.nextNoteIndex());
+      Assert.assertEquals(Arrays.asList(3L, 5L, 7L), database.noteIndexes(Status.SPENT, 0, 10));
+      Assert.assertEquals(Arrays.asList(4L, 6L, 8L), database.noteIndexes(Status.UNSPENT, 4, 3));
+      Assert.assertEquals(Collections.singletonList(7L),
+          database.noteIndexes(Status.SPENT, 6, 10));
+      Assert.assertEquals(5000, database.noteIndexes("even").size());
+      Assert.assertTrue(database.noteIndexes("none").isEmpty());
+      Assert.assertArrayEquals(bytes("again"), database.read(5));
+      Assert.assertArrayEquals(bytes("note9999"), database.read(9999));
+      Assert.assertNull(database.read(10000));
+    }
+  }
+
+  @Test
+  public void notesBecomeValidOnSync() throws Exception {
+    String prefix = new File(folder.getRoot(), "notes").getPath();
+    try (NoteDatabase database = NoteDatabase.open(prefix, KEY)) {
+      database.put(0, "a", bytes("first"), Status.UNSPENT);
+      database.sync();
+      database.put(1, "a", bytes("second"), Status.UNSPENT);
+      database.setStatus(1, Status.SPENT);
+      Assert.assertArrayEquals(bytes("second"), database.read(1));
+
+      // as a crash before the next sync leaves the files
+      try (NoteDatabase crashed = NoteDatabase.open(prefix, KEY)) {
+        Assert.assertEquals(Collections.singletonList(0L),
+            crashed.noteIndexes(Status.UNSPENT, 0, 10));
+        Assert.assertFalse(crashed.contains(1));
+      }
+
+      database.sync();
+    }
+    try (NoteDatabase database = NoteDatabase.open(prefix, KEY)) {
+      Assert.assertEquals(Collections.singletonList(1L), database.noteIndexes(Status.SPENT, 0, 10));
+      Assert.assertArrayEquals(bytes("second"), database.read(1));
+    }
+  }
+
+  @Test
+  public void dropsRecordsPastTheData() throws Exception {
+    String prefix = new File(folder.getRoot(), "notes").getPath();
+    try (NoteDatabase database = NoteDatabase.open(prefix, KEY)) {
+      database.put(0, "a", bytes("first"), Status.UNSPENT);
+      database.put(1, "a", bytes("second"), Status.UNSPENT);
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(prefix + ".dat", "rw")) {
+      raf.setLength(raf.length() - 1);
+    }
+
+    try (NoteDatabase database = NoteDatabase.open(prefix, KEY)) {
+      Assert.assertEquals(Collections.singletonList(0L),
+          database.noteIndexes(Status.UNSPENT, 0, 10));
+      database.put(1, "a", bytes("third"), Status.UNSPENT);
+      Assert.assertArrayEquals(bytes("third"), database.read(1));
+      database.clear();
+      Assert.assertEquals(0, database.nextNoteIndex());
+    }
+  }
+
+  @Test
+  public void compactsRewrittenNotes() throws Exception {
+    String prefix = new File(folder.getRoot(), "notes").getPath();
+    byte[] note = new byte[1024];
+    try (NoteDatabase database = NoteDatabase.open(prefix, KEY)) {
+      for (int round = 0; round < 20; round++) {
+        for (long i = 0; i < 100; i++) {
+          note[0] = (byte) round;
+          database.put(i, "a", note, round % 2 == 0 ? Status.UNSPENT : Status.SPENT);
+        }
+        database.sync();
+      }
+      // 2 MiB were written, at most 1 MiB of it is left superseded
+      Assert.assertTrue(new File(prefix + ".dat").length() <= 1024 * 1024 + 2 * 100 * note.length);
+      Assert.assertEquals(19, database.read(42)[0]);
+    }
+    try (NoteDatabase database = NoteDatabase.open(prefix, KEY)) {
+      Assert.assertEquals(100, database.count(Status.SPENT));
+      Assert.assertEquals(100, database.noteIndexes("a").size());
+      for (long i = 0; i < 100; i++) {
+        Assert.assertEquals(19, database.read(i)[0]);
+      }
+    }
+  }
+
+  @Test
+  public void finishesInterruptedCompactionOnlyWithMarker() throws Exception {
+    String prefix = new File(folder.getRoot(), "notes").getPath();
+    File old = folder.newFolder("old");
+    try (NoteDatabase database = NoteDatabase.open(prefix, KEY)) {
+      database.put(0, "a", bytes("old"), Status.UNSPENT);
+    }
+    Files.copy(Paths.get(prefix + ".idx"), old.toPath().resolve("notes.idx"));
+    Files.copy(Paths.get(prefix + ".dat"), old.toPath().resolve("notes.dat"));
+    try (NoteDatabase database = NoteDatabase.open(prefix, KEY)) {
+      database.put(0, "a", bytes("new"), Status.SPENT);
+    }
+    // as left by a crash after the compacted files were written
+    for (String suffix : new String[]{".idx", ".dat"}) {
+      Files.move(Paths.get(prefix + suffix), Paths.get(prefix + suffix + ".compact"));
+      Files.copy(old.toPath().resolve("notes" + suffix), Paths.get(prefix + suffix));
+    }
+
+    try (NoteDatabase database = NoteDatabase.open(prefix, KEY)) {
+      Assert.assertArrayEquals(bytes("old"), database.read(0));
+    }
+    Assert.assertFalse(new File(prefix + ".dat.compact").exists());
+
+    for (String suffix : new String[]{".idx", ".dat"}) {
+      Files.copy(Paths.get(prefix + suffix), Paths.get(prefix + suffix + ".compact"));
+      Files.copy(old.toPath().resolve("notes" + suffix), Paths.get(prefix + suffix),
+          StandardCopyOption.REPLACE_EXISTING);
+    }
+    try (NoteDatabase database = NoteDatabase.open(prefix, KEY)) {
+      database.put(0, "a", bytes("newer"), Status.SPENT);
+    }
+    for (String suffix : new String[]{".idx", ".dat"}) {
+      Files.move(Paths.get(prefix + suffix), Paths.get(prefix + suffix + ".compact"),
+          StandardCopyOption.REPLACE_EXISTING);
+      Files.copy(old.toPath().resolve("notes" + suffix), Paths.get(prefix + suffix));
+    }
+    Files.createFile(Paths.get(prefix + ".compacted"));
+    try (NoteDatabase database = NoteDatabase.open(prefix, KEY)) {
+      Assert.assertArrayEquals(bytes("newer"), database.read(0));
+      Assert.assertEquals(Collections.singletonList(0L), database.noteIndexes(Status.SPENT, 0, 1));
+    }
+    Assert.assertFalse(new File(prefix + ".compacted").exists());
+  }
+}
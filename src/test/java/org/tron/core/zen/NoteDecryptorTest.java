@@ -0,0 +1,123 @@
+package org.tron.core.zen;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.tron.common.zksnark.JLibrustzcash;
+import org.tron.common.zksnark.JLibsodium;
+import org.tron.common.zksnark.JLibsodiumParam.Chacha20Poly1305IetfEncryptParams;
+import org.tron.common.zksnark.LibrustzcashParam.ComputeCmParams;
+import org.tron.common.zksnark.LibrustzcashParam.KaAgreeParams;
+import org.tron.common.zksnark.LibrustzcashParam.KaDerivepublicParams;
+import org.tron.core.exception.ZksnarkException;
+import org.tron.core.zen.NoteDecryptor.DecryptedNote;
+import org.tron.core.zen.address.DiversifierT;
+import org.tron.core.zen.address.IncomingViewingKey;
+import org.tron.core.zen.address.KeyIo;
+import org.tron.core.zen.address.PaymentAddress;
+import org.tron.core.zen.address.SpendingKey;
+import org.tron.keystore.Wallet;
+
+public class NoteDecryptorTest {
+
+  private static Boolean zksnarkAvailable;
+
+  /**
+   * Whether the native librustzcash and libsodium of the zksnark SDK can be loaded here.
+   */
+  static synchronized boolean zksnarkAvailable() {
+    if (zksnarkAvailable == null) {
+      try {
+        JLibrustzcash.librustzcashSaplingGenerateR(new byte[32]);
+        JLibsodium.initState();
+        zksnarkAvailable = true;
+      } catch (Throwable t) {
+        zksnarkAvailable = false;
+      }
+    }
+    return zksnarkAvailable;
+  }
+
+  @Test
+  public void encodesNotePlaintext() {
+    byte[] d = new byte[11];
+    Arrays.fill(d, (byte) 1);
+    byte[] rcm = new byte[32];
+    Arrays.fill(rcm, (byte) 2);
+    byte[] plaintext = NoteDecryptor.encodePlaintext(d, 0x0102030405L, rcm, new byte[] {'m'});
+
+    Assert.assertEquals(NoteDecryptor.ENC_PLAINTEXT_SIZE, plaintext.length);
+    Assert.assertEquals(0x01, plaintext[0]);
+    Assert.assertArrayEquals(d, Arrays.copyOfRange(plaintext, 1, 12));
+    Assert.assertArrayEquals(new byte[] {5, 4, 3, 2, 1, 0, 0, 0},
+        Arrays.copyOfRange(plaintext, 12, 20));
+    Assert.assertArrayEquals(rcm, Arrays.copyOfRange(plaintext, 20, 52));
+    Assert.assertEquals('m', plaintext[52]);
+    Assert.assertEquals(0, plaintext[53]);
+  }
+
+  @Test
+  public void rejectsMalformedOutputs() throws ZksnarkException {
+    byte[] key = new byte[32];
+    Assert.assertNull(NoteDecryptor.tryDecrypt(key, new byte[31], new byte[580], new byte[32]));
+    Assert.assertNull(NoteDecryptor.tryDecrypt(key, new byte[32], new byte[579], new byte[32]));
+    Assert.assertNull(NoteDecryptor.tryDecrypt(key, new byte[32], new byte[580], new byte[33]));
+  }
+
+  private static class Recipient {
+
+    private final byte[] ivk;
+    private final PaymentAddress address;
+
+    Recipient() throws ZksnarkException {
+      IncomingViewingKey key = new SpendingKey(Wallet.generateRandomBytes(32)).fullViewingKey()
+          .inViewingKey();
+      ivk = key.getValue();
+      address = key.address(new DiversifierT().random()).get();
+    }
+  }
+
+  @Test
+  public void decryptsOutputsForItsKeyOnly() throws ZksnarkException {
+    Assume.assumeTrue("zksnark native libraries are not available", zksnarkAvailable());
+    Recipient recipient = new Recipient();
+    byte[] d = recipient.address.getD().getData();
+    byte[] pkD = recipient.address.getPkD();
+    long value = 123_456_789L;
+    byte[] rcm = JLibrustzcash.librustzcashSaplingGenerateR(new byte[32]);
+    byte[] memo = "payout 42".getBytes(StandardCharsets.UTF_8);
+    byte[] cm = new byte[32];
+    Assert.assertTrue(JLibrustzcash.librustzcashComputeCm(
+        new ComputeCmParams(d, pkD, value, rcm, cm)));
+
+    // encrypt as a sender does
+    byte[] esk = JLibrustzcash.librustzcashSaplingGenerateR(new byte[32]);
+    byte[] epk = new byte[32];
+    Assert.assertTrue(JLibrustzcash.librustzcashSaplingKaDerivepublic(
+        new KaDerivepublicParams(d, esk, epk)));
+    byte[] sharedSecret = new byte[32];
+    Assert.assertTrue(JLibrustzcash.librustzcashKaAgree(
+        new KaAgreeParams(pkD, esk, sharedSecret)));
+    byte[] plaintext = NoteDecryptor.encodePlaintext(d, value, rcm, memo);
+    byte[] cEnc = new byte[NoteDecryptor.ENC_CIPHERTEXT_SIZE];
+    JLibsodium.cryptoAeadChacha20Poly1305IetfEncrypt(new Chacha20Poly1305IetfEncryptParams(
+        cEnc, new long[1], plaintext, plaintext.length, null, 0, null,
+        new byte[JLibsodium.CRYPTO_AEAD_CHACHA20POLY1305_IETF_NPUBBYTES],
+        NoteDecryptor.kdf(sharedSecret, epk)));
+
+    DecryptedNote note = NoteDecryptor.tryDecrypt(recipient.ivk, epk, cEnc, cm);
+    Assert.assertNotNull(note);
+    Assert.assertEquals(value, note.getValue());
+    Assert.assertArrayEquals(rcm, note.getRcm());
+    Assert.assertArrayEquals(memo, Arrays.copyOf(note.getMemo(), memo.length));
+    Assert.assertEquals(KeyIo.encodePaymentAddress(recipient.address),
+        note.getPaymentAddress());
+
+    Assert.assertNull(NoteDecryptor.tryDecrypt(new Recipient().ivk, epk, cEnc, cm));
+    byte[] otherCm = cm.clone();
+    otherCm[0] ^= 1;
+    Assert.assertNull(NoteDecryptor.tryDecrypt(recipient.ivk, epk, cEnc, otherCm));
+  }
+}
@@ -0,0 +1,129 @@
+package org.tron.core.zen;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NoteLogStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void reloadsLatestValues() throws Exception {
+    String fileName = new File(folder.getRoot(), "notes.log").getPath();
+    try (NoteLogStore store = NoteLogStore.open(fileName)) {
+      store.put("unspent/1", bytes("a"));
+      store.put("unspent/2", bytes("b"));
+      store.put("unspent/1", bytes("c"));
+      store.remove("unspent/2");
+      store.put("scan/x", bytes("d"));
+      store.sync();
+    }
+
+    try (NoteLogStore store = NoteLogStore.open(fileName)) {
+      Map<String, byte[]> unspent = store.readAll("unspent/");
+      Assert.assertEquals(1, unspent.size());
+      Assert.assertArrayEquals(bytes("c"), unspent.get("unspent/1"));
+      Assert.assertArrayEquals(bytes("d"), store.get("scan/x"));
+      Assert.assertNull(store.get("unspent/2"));
+    }
+  }
+
+  @Test
+  public void dropsTornTail() throws Exception {
+    File file = new File(folder.getRoot(), "notes.log");
+    long intact;
+    try (NoteLogStore store = NoteLogStore.open(file.getPath())) {
+      store.put("unspent/1", bytes("a"));
+      store.sync();
+      intact = store.size();
+      store.put("unspent/2", bytes("b"));
+      store.sync();
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 3);
+    }
+
+    try (NoteLogStore store = NoteLogStore.open(file.getPath())) {
+      Assert.assertEquals(intact, store.size());
+      Assert.assertArrayEquals(bytes("a"), store.get("unspent/1"));
+      Assert.assertFalse(store.contains("unspent/2"));
+      store.put("unspent/3", bytes("c"));
+      store.sync();
+    }
+    try (NoteLogStore store = NoteLogStore.open(file.getPath())) {
+      Assert.assertEquals(2, store.readAll("unspent/").size());
+    }
+  }
+
+  @Test
+  public void compactsToLiveRecords() throws Exception {
+    String fileName = new File(folder.getRoot(), "notes.log").getPath();
+    try (NoteLogStore store = NoteLogStore.open(fileName)) {
+      for (int i = 0; i < 100; i++) {
+        store.put("scan/" + (i % 3), bytes("value" + i));
+      }
+      store.remove("scan/0");
+      long before = store.size();
+      store.compact();
+      Assert.assertTrue(store.size() < before);
+      Assert.assertArrayEquals(bytes("value97"), store.get("scan/1"));
+      store.put("scan/4", bytes("e"));
+      store.sync();
+    }
+
+    try (NoteLogStore store = NoteLogStore.open(fileName)) {
+      Map<String, byte[]> all = store.readAll("scan/");
+      Assert.assertEquals(3, all.size());
+      Assert.assertArrayEquals(bytes("value98"), all.get("scan/2"));
+      Assert.assertArrayEquals(bytes("e"), all.get("scan/4"));
+    }
+  }
+
+  @Test
+  public void compactionKeepsWriteOrder() throws Exception {
+    String fileName = new File(folder.getRoot(), "notes.log").getPath();
+    try (NoteLogStore store = NoteLogStore.open(fileName)) {
+      for (int i = 0; i < 50; i++) {
+        store.put("scan/" + i, bytes("old"));
+      }
+      for (int i = 49; i >= 0; i--) {
+        store.put("scan/" + i, bytes("value" + i));
+      }
+      store.compact();
+      int expected = 49;
+      for (Map.Entry<String, byte[]> entry : store.readAll("scan/").entrySet()) {
+        Assert.assertEquals("scan/" + expected, entry.getKey());
+        Assert.assertArrayEquals(bytes("value" + expected), entry.getValue());
+        expected--;
+      }
+      Assert.assertEquals(-1, expected);
+    }
+  }
+
+  @Test
+  public void failedWriteIsNotIndexed() throws Exception {
+    String fileName = new File(folder.getRoot(), "notes.log").getPath();
+    NoteLogStore store = NoteLogStore.open(fileName);
+    store.put("scan/1", bytes("a"));
+    store.close();
+    try {
+      // larger than the buffer, so written straight to the closed channel
+      store.put("scan/2", new byte[128 * 1024]);
+      Assert.fail();
+    } catch (IOException expected) {
+      Assert.assertFalse(store.contains("scan/2"));
+    }
+  }
+}
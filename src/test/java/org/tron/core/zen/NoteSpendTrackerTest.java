@@ -0,0 +1,95 @@
+package org.tron.core.zen;
+
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tron.api.GrpcAPI.BlockExtention;
+import org.tron.api.GrpcAPI.TransactionExtention;
+import org.tron.protos.Protocol.BlockHeader;
+import org.tron.protos.Protocol.Transaction;
+
+public class NoteSpendTrackerTest {
+
+  private final Set<Long> spentOnChain = new HashSet<>();
+  // block number to the note whose nullifier it reveals
+  private final List<long[]> spends = new ArrayList<>();
+  private final List<Long> spentChecks = new ArrayList<>();
+  private final List<Long> fetchedBlocks = new ArrayList<>();
+
+  private static byte[] nullifier(long note) {
+    byte[] nullifier = new byte[32];
+    Arrays.fill(nullifier, (byte) note);
+    return nullifier;
+  }
+
+  private final NoteSpendTracker tracker = new NoteSpendTracker(
+      new NoteSpendTracker.SpendSource() {
+        @Override
+        public CompletableFuture<byte[]> nullifier(long noteIndex) {
+          return CompletableFuture.completedFuture(NoteSpendTrackerTest.nullifier(noteIndex));
+        }
+
+        @Override
+        public CompletableFuture<Boolean> isSpent(long noteIndex) {
+          spentChecks.add(noteIndex);
+          return CompletableFuture.completedFuture(spentOnChain.contains(noteIndex));
+        }
+
+        @Override
+        public void collectNullifiers(Transaction transaction, Consumer<byte[]> sink) {
+          sink.accept(transaction.getRawData().getData().toByteArray());
+        }
+      },
+      (start, end) -> LongStream.range(start, end).mapToObj(number -> {
+        fetchedBlocks.add(number);
+        BlockExtention.Builder block = BlockExtention.newBuilder().setBlockHeader(
+            BlockHeader.newBuilder().setRawData(BlockHeader.raw.newBuilder().setNumber(number)));
+        for (long[] spend : spends) {
+          if (spend[0] == number) {
+            Transaction.raw raw = Transaction.raw.newBuilder()
+                .setData(ByteString.copyFrom(nullifier(spend[1]))).build();
+            block.addTransactions(TransactionExtention.newBuilder()
+                .setTransaction(Transaction.newBuilder().setRawData(raw)));
+          }
+        }
+        return block.build();
+      }));
+
+  @Test
+  public void checksOnlyNotesWhoseNullifierAppears() throws Exception {
+    List<Long> notes = Arrays.asList(1L, 2L, 3L);
+    Assert.assertTrue(tracker.check(notes, 100).isEmpty());
+    Assert.assertEquals(3, spentChecks.size());
+
+    spentChecks.clear();
+    Assert.assertTrue(tracker.check(notes, 100).isEmpty());
+    Assert.assertTrue(spentChecks.isEmpty());
+
+    spentOnChain.add(2L);
+    spends.add(new long[] {102, 2});
+    Assert.assertEquals(Collections.singleton(2L), tracker.check(notes, 102));
+    Assert.assertEquals(Collections.singletonList(2L), spentChecks);
+    Assert.assertEquals(Arrays.asList(101L, 102L), fetchedBlocks);
+  }
+
+  @Test
+  public void checksDirectlyWhenTheGapIsLarge() throws Exception {
+    List<Long> notes = Arrays.asList(1L, 2L);
+    tracker.check(notes, 100);
+    spentChecks.clear();
+
+    spentOnChain.add(1L);
+    Assert.assertEquals(Collections.singleton(1L), tracker.check(notes, 110));
+    Assert.assertEquals(2, spentChecks.size());
+    Assert.assertTrue(fetchedBlocks.isEmpty());
+  }
+}
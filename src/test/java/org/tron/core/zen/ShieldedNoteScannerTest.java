@@ -0,0 +1,109 @@
+package org.tron.core.zen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ShieldedNoteScannerTest {
+
+  private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private CompletableFuture<String> complete(String value, boolean fail) {
+    CompletableFuture<String> future = new CompletableFuture<>();
+    executor.schedule(() -> {
+      if (fail) {
+        future.completeExceptionally(new IllegalStateException(value));
+      } else {
+        future.complete(value);
+      }
+    }, ThreadLocalRandom.current().nextInt(20), TimeUnit.MILLISECONDS);
+    return future;
+  }
+
+  @Test
+  public void consumesContiguousWindowsInOrder() throws Exception {
+    ShieldedNoteScanner<String> scanner = new ShieldedNoteScanner<>(
+        (key, start, end) -> complete(key + start, false), String::length, 3, 10, 10, 40);
+    Map<String, Long> checkpoints = new HashMap<>();
+    checkpoints.put("a", 0L);
+    checkpoints.put("b", 15L);
+    checkpoints.put("c", 100L);
+    Map<String, List<Long>> consumed = new HashMap<>();
+
+    boolean complete = scanner.scan(checkpoints, 100, (key, start, end, notes) -> {
+      Assert.assertEquals(key + start, notes);
+      List<Long> ends = consumed.computeIfAbsent(key, k -> new ArrayList<>());
+      long expectedStart = ends.isEmpty() ? checkpoints.get(key) : ends.get(ends.size() - 1);
+      Assert.assertEquals(expectedStart, start);
+      ends.add(end);
+    });
+
+    Assert.assertTrue(complete);
+    Assert.assertEquals(Long.valueOf(100), consumed.get("a").get(consumed.get("a").size() - 1));
+    Assert.assertEquals(Long.valueOf(100), consumed.get("b").get(consumed.get("b").size() - 1));
+    Assert.assertNull(consumed.get("c"));
+  }
+
+  @Test
+  public void growsThroughEmptyRanges() throws Exception {
+    ShieldedNoteScanner<String> scanner = new ShieldedNoteScanner<>(
+        (key, start, end) -> complete("", false), String::length, 2, 10, 10, 1000);
+    Map<String, Long> checkpoints = new HashMap<>();
+    checkpoints.put("a", 0L);
+
+    Assert.assertTrue(scanner.scan(checkpoints, 20_000,
+        (key, start, end, notes) -> checkpoints.put(key, end)));
+    Assert.assertEquals(Long.valueOf(20_000), checkpoints.get("a"));
+    Assert.assertEquals(1000, scanner.getWindowSize("a"));
+    Assert.assertTrue(scanner.getWindowCount() < 100);
+    Assert.assertEquals(20_000, scanner.getScannedBlockCount());
+  }
+
+  @Test
+  public void shrinksAndRetriesFailedWindows() throws Exception {
+    ShieldedNoteScanner<String> scanner = new ShieldedNoteScanner<>(
+        (key, start, end) -> complete("", end - start > 25), String::length, 4, 100, 10, 100);
+    Map<String, Long> checkpoints = new HashMap<>();
+    checkpoints.put("a", 0L);
+
+    Assert.assertTrue(scanner.scan(checkpoints, 1000,
+        (key, start, end, notes) -> {
+          Assert.assertEquals(checkpoints.get(key), Long.valueOf(start));
+          checkpoints.put(key, end);
+        }));
+    Assert.assertEquals(Long.valueOf(1000), checkpoints.get("a"));
+    Assert.assertTrue(scanner.getFailedWindowCount() > 0);
+    Assert.assertTrue(scanner.getWindowSize("a") < 100);
+  }
+
+  @Test
+  public void stopsKeyAtFailedMinimumWindow() throws Exception {
+    ShieldedNoteScanner<String> scanner = new ShieldedNoteScanner<>(
+        (key, start, end) -> complete(key, key.equals("a") && start <= 35 && 35 < end),
+        String::length, 4, 10, 10, 40);
+    Map<String, Long> checkpoints = new HashMap<>();
+    checkpoints.put("a", 0L);
+    checkpoints.put("b", 0L);
+
+    boolean complete = scanner.scan(checkpoints, 80,
+        (key, start, end, notes) -> checkpoints.put(key, end));
+
+    Assert.assertFalse(complete);
+    Assert.assertTrue(checkpoints.get("a") > 25 && checkpoints.get("a") <= 35);
+    Assert.assertEquals(Long.valueOf(80), checkpoints.get("b"));
+  }
+}
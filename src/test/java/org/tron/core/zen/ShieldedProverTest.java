@@ -0,0 +1,105 @@
+package org.tron.core.zen;
+
+import com.google.protobuf.ByteString;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.tron.api.GrpcAPI.Note;
+import org.tron.common.zksnark.JLibrustzcash;
+import org.tron.core.exception.ZksnarkException;
+import org.tron.core.zen.NoteDecryptor.DecryptedNote;
+import org.tron.core.zen.address.DiversifierT;
+import org.tron.core.zen.address.IncomingViewingKey;
+import org.tron.core.zen.address.KeyIo;
+import org.tron.core.zen.address.PaymentAddress;
+import org.tron.core.zen.address.SpendingKey;
+import org.tron.keystore.Wallet;
+import org.tron.protos.contract.ShieldContract.ReceiveDescription;
+import org.tron.protos.contract.ShieldContract.ShieldedTransferContract;
+
+public class ShieldedProverTest {
+
+  @Test(timeout = 5000)
+  public void forkRunsOnProverThreads() {
+    ShieldedProver prover = new ShieldedProver(2, 1);
+    String thread = prover.fork(() -> Thread.currentThread().getName()).join();
+    Assert.assertTrue(thread, thread.startsWith("shielded-prover-"));
+  }
+
+  @Test(timeout = 5000)
+  public void awaitAllWaitsForEveryTaskBeforeFailing() throws InterruptedException {
+    ShieldedProver prover = new ShieldedProver(2, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<Object> failed = prover.fork(() -> {
+      throw new ZksnarkException("Failed to prove output 0");
+    });
+    CompletableFuture<Object> slow = prover.fork(() -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return "done";
+    });
+    AtomicReference<Throwable> thrown = new AtomicReference<>();
+    Thread waiter = new Thread(() -> {
+      try {
+        ShieldedProver.awaitAll(Arrays.asList(failed, slow));
+      } catch (Throwable t) {
+        thrown.set(t);
+      }
+    });
+    waiter.start();
+    waiter.join(200);
+    Assert.assertTrue("returned while a task was still running", waiter.isAlive());
+    release.countDown();
+    waiter.join();
+    Assert.assertTrue(slow.isDone());
+    Assert.assertTrue(thrown.get() instanceof ZksnarkException);
+    Assert.assertEquals("Failed to prove output 0", thrown.get().getMessage());
+  }
+
+  @Test
+  public void buildsOutputsInOrder() throws ZksnarkException {
+    Assume.assumeTrue("zksnark native libraries are not available",
+        NoteDecryptorTest.zksnarkAvailable());
+    Assume.assumeTrue("Sapling parameters are not available",
+        new File("params", "sapling-spend.params").exists()
+            && new File("params", "sapling-output.params").exists());
+    IncomingViewingKey ivk = new SpendingKey(Wallet.generateRandomBytes(32)).fullViewingKey()
+        .inViewingKey();
+    PaymentAddress address = ivk.address(new DiversifierT().random()).get();
+    ShieldedTransactionBuilder builder = new ShieldedTransactionBuilder(null, null,
+        Wallet.generateRandomBytes(32)).setTransparentInput(new byte[21], 30);
+    for (long value = 10; value <= 20; value += 10) {
+      builder.addOutput(Note.newBuilder()
+          .setPaymentAddress(KeyIo.encodePaymentAddress(address))
+          .setValue(value)
+          .setRcm(ByteString.copyFrom(JLibrustzcash.librustzcashSaplingGenerateR(new byte[32])))
+          .build());
+    }
+
+    ShieldedTransferContract contract = new ShieldedProver(2, 1)
+        .build(builder, unsigned -> new byte[32]);
+
+    List<ReceiveDescription> outputs = contract.getReceiveDescriptionList();
+    Assert.assertEquals(2, outputs.size());
+    for (int i = 0; i < outputs.size(); i++) {
+      ReceiveDescription output = outputs.get(i);
+      DecryptedNote note = NoteDecryptor.tryDecrypt(ivk.getValue(),
+          output.getEpk().toByteArray(), output.getCEnc().toByteArray(),
+          output.getNoteCommitment().toByteArray());
+      Assert.assertNotNull(note);
+      Assert.assertEquals(10 * (i + 1), note.getValue());
+    }
+    Assert.assertEquals(2, builder.getTimings().size());
+    Assert.assertEquals(64, contract.getBindingSignature().size());
+  }
+}
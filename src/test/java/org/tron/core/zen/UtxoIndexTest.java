@@ -0,0 +1,48 @@
+package org.tron.core.zen;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tron.core.zen.UtxoIndex.Strategy;
+
+public class UtxoIndexTest {
+
+  private final UtxoIndex<long[]> index = new UtxoIndex<>(note -> note[0],
+      note -> note[1] == 0 ? "a" : "b");
+
+  @Before
+  public void addNotes() {
+    // note index -> {value, address}
+    index.add(1, new long[] {50, 0});
+    index.add(2, new long[] {30, 0});
+    index.add(3, new long[] {20, 0});
+    index.add(4, new long[] {5, 0});
+    index.add(5, new long[] {100, 1});
+  }
+
+  @Test
+  public void selectsByStrategy() {
+    Assert.assertEquals(Arrays.asList(1L, 2L), index.select("a", 60, Strategy.LARGEST_FIRST, 5));
+    Assert.assertEquals(Arrays.asList(1L, 3L), index.select("a", 60, Strategy.MINIMAL_INPUTS, 5));
+    Assert.assertEquals(Collections.singletonList(2L),
+        index.select("a", 25, Strategy.BEST_FIT, 5));
+    Assert.assertEquals(Arrays.asList(1L, 4L), index.select("a", 55, Strategy.BEST_FIT, 5));
+    Assert.assertTrue(index.select("a", 100, Strategy.LARGEST_FIRST, 2).isEmpty());
+    Assert.assertEquals(Arrays.asList(1L, 2L, 3L),
+        index.select("a", 100, Strategy.LARGEST_FIRST, 3));
+  }
+
+  @Test
+  public void followsAddsAndSpends() {
+    Assert.assertEquals(Collections.singletonList(5L),
+        index.select(null, 60, Strategy.MINIMAL_INPUTS, 5));
+    index.remove(5);
+    Assert.assertEquals(Arrays.asList(1L, 3L), index.select(null, 60, Strategy.MINIMAL_INPUTS, 5));
+    index.add(6, new long[] {30, 0});
+    Assert.assertEquals(4, index.select("a", 130, Strategy.LARGEST_FIRST, 5).size());
+    Assert.assertEquals(Arrays.asList(1L, 6L, 2L, 3L, 4L),
+        Arrays.asList(index.descending().stream().map(e -> e.getKey()).toArray(Long[]::new)));
+  }
+}
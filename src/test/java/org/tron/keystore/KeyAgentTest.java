@@ -0,0 +1,73 @@
+package org.tron.keystore;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tron.common.crypto.ECKey;
+import org.tron.core.exception.CipherException;
+
+public class KeyAgentTest {
+
+  private static final byte[] PASSWORD = "password123".getBytes(StandardCharsets.UTF_8);
+
+  private static WalletFile walletFile(ECKey key) throws CipherException {
+    return Wallet.createLight(PASSWORD, key);
+  }
+
+  @Test
+  public void unlockedKeySigns() throws Exception {
+    ECKey key = new ECKey();
+    WalletFile walletFile = walletFile(key);
+    KeyAgent agent = new KeyAgent(60_000, 10);
+    Assert.assertFalse(agent.withKey(walletFile, k -> k.getAddress()).isPresent());
+
+    Assert.assertTrue(agent.checkPassword(walletFile, PASSWORD));
+    Assert.assertTrue(agent.isUnlocked(walletFile));
+    Optional<byte[]> address = agent.withKey(walletFile, k -> k.getAddress());
+    Assert.assertTrue(address.isPresent());
+    Assert.assertArrayEquals(key.getAddress(), address.get());
+    Assert.assertTrue(agent.checkPassword(walletFile, PASSWORD));
+
+    try {
+      agent.checkPassword(walletFile, "wrong".getBytes(StandardCharsets.UTF_8));
+      Assert.fail();
+    } catch (CipherException e) {
+      Assert.assertTrue(agent.isUnlocked(walletFile));
+    }
+
+    agent.lockAll();
+    Assert.assertFalse(agent.isUnlocked(walletFile));
+  }
+
+  @Test
+  public void wrongPasswordDoesNotUnlock() throws Exception {
+    WalletFile walletFile = walletFile(new ECKey());
+    KeyAgent agent = new KeyAgent(60_000, 10);
+    try {
+      agent.checkPassword(walletFile, "wrong".getBytes(StandardCharsets.UTF_8));
+      Assert.fail();
+    } catch (CipherException e) {
+      Assert.assertFalse(agent.isUnlocked(walletFile));
+    }
+  }
+
+  @Test
+  public void keysLockAfterMaxUsesAndIdling() throws Exception {
+    WalletFile walletFile = walletFile(new ECKey());
+    KeyAgent agent = new KeyAgent(60_000, 2);
+    agent.checkPassword(walletFile, PASSWORD);
+    byte[][] seen = new byte[1][];
+    Assert.assertTrue(agent.withPrivateKey(walletFile, k -> seen[0] = k).isPresent());
+    Assert.assertTrue(Arrays.equals(new byte[seen[0].length], seen[0]));
+    Assert.assertTrue(agent.withPrivateKey(walletFile, k -> k.length).isPresent());
+    Assert.assertFalse(agent.isUnlocked(walletFile));
+
+    KeyAgent idle = new KeyAgent(1, 10);
+    idle.checkPassword(walletFile, PASSWORD);
+    Thread.sleep(5);
+    idle.lockIdle();
+    Assert.assertFalse(idle.isUnlocked(walletFile));
+  }
+}
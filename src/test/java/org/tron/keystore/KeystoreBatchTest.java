@@ -0,0 +1,90 @@
+package org.tron.keystore;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tron.common.crypto.ECKey;
+import org.tron.walletserver.WalletApi;
+
+public class KeystoreBatchTest {
+
+  private static final byte[] OLD = "oldPassword1".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] NEW = "newPassword2".getBytes(StandardCharsets.UTF_8);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private List<File> keystores(int count) throws Exception {
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      WalletFile walletFile = Wallet.createLight(OLD, new ECKey());
+      File file = new File(folder.getRoot(), WalletUtils.getWalletFileName(walletFile));
+      WalletUtils.writeWalletFileAtomically(walletFile, file);
+      files.add(file);
+    }
+    return files;
+  }
+
+  @Test
+  public void reencryptAndMigrate() throws Exception {
+    List<File> files = keystores(4);
+    File broken = folder.newFile("broken.json");
+    List<File> all = new ArrayList<>(files);
+    all.add(broken);
+    // room for one light derivation at a time
+    KeystoreBatch batch = new KeystoreBatch(4, KeystoreBatch.Kdf.LIGHT.memoryCost());
+
+    KeystoreBatch.Report report = batch.validate(all, OLD);
+    Assert.assertEquals(5, report.getDone());
+    Assert.assertEquals(1, report.getFailed());
+    Assert.assertEquals("broken.json", report.getFailures().get(0).getName());
+
+    String id = WalletUtils.loadWalletFile(files.get(0)).getId();
+    report = batch.reencrypt(files, OLD, NEW, KeystoreBatch.Kdf.KEEP);
+    Assert.assertEquals(0, report.getFailed());
+    Assert.assertEquals(1, batch.validate(files.subList(0, 1), OLD).getFailed());
+    Assert.assertEquals(0, batch.validate(files, NEW).getFailed());
+    Assert.assertEquals(id, WalletUtils.loadWalletFile(files.get(0)).getId());
+
+    report = batch.migrate(files, NEW, KeystoreBatch.Kdf.pbkdf2(1000));
+    Assert.assertEquals(0, report.getFailed());
+    for (File file : files) {
+      WalletFile walletFile = WalletUtils.loadWalletFile(file);
+      Assert.assertEquals(Wallet.AES_128_CTR, walletFile.getCrypto().getKdf());
+      Assert.assertTrue(Wallet.validPassword(NEW, walletFile));
+    }
+    Assert.assertEquals(0, batch.migrate(files, NEW, KeystoreBatch.Kdf.LIGHT).getFailed());
+    Assert.assertEquals(Wallet.SCRYPT,
+        WalletUtils.loadWalletFile(files.get(0)).getCrypto().getKdf());
+    // only the keystores and the broken file are left, no temporary files
+    Assert.assertEquals(5, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void importFailsKnownKeys() throws Exception {
+    ECKey known = new ECKey();
+    File directory = folder.newFolder();
+    WalletFile existing = Wallet.createLight(OLD, known);
+    WalletUtils.writeWalletFileAtomically(existing,
+        new File(directory, WalletUtils.getWalletFileName(existing)));
+    ECKey fresh = new ECKey();
+    List<byte[]> keys = Arrays.asList(known.getPrivKeyBytes(), fresh.getPrivKeyBytes(),
+        fresh.getPrivKeyBytes());
+
+    KeystoreBatch.Report report = new KeystoreBatch(2, 1 << 30)
+        .importKeys(keys, NEW, KeystoreBatch.Kdf.LIGHT, directory);
+    Assert.assertEquals(3, report.getDone());
+    Assert.assertEquals(2, report.getFailed());
+    Assert.assertEquals(2, directory.listFiles().length);
+    String address = WalletApi.encode58Check(fresh.getAddress());
+    File[] imported = directory.listFiles((dir, name) -> name.endsWith(address + ".json"));
+    Assert.assertEquals(1, imported.length);
+    Assert.assertTrue(Wallet.validPassword(NEW, WalletUtils.loadWalletFile(imported[0])));
+  }
+}
@@ -0,0 +1,112 @@
+package org.tron.keystore;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Optional;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tron.common.crypto.ECKey;
+
+public class KeystoreIndexTest {
+
+  private static final byte[] PASSWORD = "password123".getBytes(StandardCharsets.UTF_8);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static WalletFile write(File directory) throws Exception {
+    WalletFile walletFile = Wallet.createLight(PASSWORD, new ECKey());
+    WalletUtils.generateWalletFile(walletFile, directory);
+    return walletFile;
+  }
+
+  @Test
+  public void indexSurvivesThroughTheSidecar() throws Exception {
+    File directory = folder.newFolder("Wallet");
+    WalletFile first = write(directory);
+    WalletFile second = write(directory);
+
+    KeystoreIndex index = new KeystoreIndex(directory, false);
+    index.refresh();
+    Assert.assertEquals(2, index.size());
+    Assert.assertEquals(first, index.get(first.getAddress()).get());
+    Assert.assertTrue(index.getFile(second.getAddress()).get().getName()
+        .endsWith(second.getAddress() + ".json"));
+    Assert.assertTrue(new File(folder.getRoot(), "Wallet.index").isFile());
+
+    KeystoreIndex reopened = new KeystoreIndex(directory, false);
+    reopened.refresh();
+    Assert.assertEquals(second, reopened.get(second.getAddress()).get());
+    Assert.assertTrue(Wallet.validPassword(PASSWORD, reopened.get(first.getAddress()).get()));
+
+    Assert.assertTrue(reopened.getFile(first.getAddress()).get().delete());
+    reopened.refresh();
+    Assert.assertFalse(reopened.get(first.getAddress()).isPresent());
+    Assert.assertEquals(1, reopened.files().size());
+  }
+
+  @Test
+  public void sidecarHoldsNoKeys() throws Exception {
+    File directory = folder.newFolder("Wallet");
+    WalletFile walletFile = write(directory);
+    new KeystoreIndex(directory, false).refresh();
+
+    String sidecar = new String(Files.readAllBytes(new File(folder.getRoot(), "Wallet.index")
+        .toPath()), StandardCharsets.ISO_8859_1);
+    Assert.assertTrue(sidecar.contains(walletFile.getAddress()));
+    Assert.assertFalse(sidecar.contains(walletFile.getCrypto().getCiphertext()));
+    Assert.assertFalse(sidecar.contains(walletFile.getCrypto().getMac()));
+  }
+
+  @Test
+  public void unwatchedIndexSeesChangesOnAccess() throws Exception {
+    File directory = folder.newFolder("Wallet");
+    WalletFile first = write(directory);
+    KeystoreIndex index = new KeystoreIndex(directory, false);
+    index.refresh();
+    File firstFile = index.getFile(first.getAddress()).get();
+
+    // as KeystoreBatch imports and re-encrypts
+    Thread.sleep(20);
+    WalletFile second = Wallet.createLight(PASSWORD, new ECKey());
+    WalletUtils.writeWalletFileAtomically(second,
+        new File(directory, WalletUtils.getWalletFileName(second)));
+    Assert.assertEquals(2, index.files().size());
+    Assert.assertEquals(second, index.get(second.getAddress()).get());
+    // parsed once while the file is unchanged
+    Assert.assertSame(index.get(second.getAddress()).get(), index.get(second.getAddress()).get());
+    Assert.assertSame(index.get(second.getAddress()).get(), index.load(
+        index.getFile(second.getAddress()).get()));
+
+    WalletFile rewritten = Wallet.createLight(PASSWORD, ECKey.fromPrivate(
+        Wallet.decrypt2PrivateBytes(PASSWORD, first)));
+    Assert.assertEquals(first.getAddress(), rewritten.getAddress());
+    WalletUtils.writeWalletFileAtomically(rewritten, firstFile);
+    Assert.assertEquals(rewritten, index.get(first.getAddress()).get());
+
+    Assert.assertTrue(firstFile.delete());
+    Assert.assertFalse(index.get(first.getAddress()).isPresent());
+    Assert.assertEquals(1, index.size());
+  }
+
+  @Test
+  public void watchedDirectoryIsFollowed() throws Exception {
+    File directory = folder.newFolder("Wallet");
+    KeystoreIndex index = new KeystoreIndex(directory, true);
+    index.refresh();
+    try {
+      WalletFile walletFile = write(directory);
+      Optional<WalletFile> found = Optional.empty();
+      for (int i = 0; i < 100 && !found.isPresent(); i++) {
+        Thread.sleep(100);
+        found = index.get(walletFile.getAddress());
+      }
+      Assert.assertEquals(walletFile, found.orElse(null));
+    } finally {
+      index.close();
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package org.tron.walletserver;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tron.api.GrpcAPI.BlockExtention;
+import org.tron.api.GrpcAPI.BlockListExtention;
+import org.tron.protos.Protocol.BlockHeader;
+
+public class BlockRangeStreamerTest {
+
+  private static BlockExtention block(long number) {
+    return BlockExtention.newBuilder()
+        .setBlockHeader(BlockHeader.newBuilder()
+            .setRawData(BlockHeader.raw.newBuilder().setNumber(number)))
+        .build();
+  }
+
+  /**
+   * A node answering each chunk after a random delay, with its blocks shuffled, or never when
+   * {@code hang} is set.
+   */
+  private static class SlowNode extends AsyncGrpcClient {
+
+    private final List<CompletableFuture<BlockListExtention>> calls =
+        new CopyOnWriteArrayList<>();
+    private final boolean hang;
+
+    SlowNode(boolean hang) {
+      super(null, null, 0);
+      this.hang = hang;
+    }
+
+    @Override
+    public CompletableFuture<BlockListExtention> getBlockByLimitNext2(long start, long end) {
+      CompletableFuture<BlockListExtention> future = new CompletableFuture<>();
+      calls.add(future);
+      if (!hang) {
+        BlockListExtention.Builder list = BlockListExtention.newBuilder();
+        LongStream.range(start, end).map(n -> start + end - 1 - n)
+            .forEach(n -> list.addBlock(block(n)));
+        CompletableFuture.runAsync(() -> {
+          try {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(5));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          future.complete(list.build());
+        });
+      }
+      return future;
+    }
+  }
+
+  @Test
+  public void streamsInOrder() {
+    SlowNode node = new SlowNode(false);
+    try (BlockRangeStreamer streamer = new BlockRangeStreamer(node, 10, 250, 7, 4, 20)) {
+      List<Long> numbers = streamer.stream()
+          .map(block -> block.getBlockHeader().getRawData().getNumber())
+          .collect(Collectors.toList());
+      Assert.assertEquals(LongStream.range(10, 250).boxed().collect(Collectors.toList()),
+          numbers);
+    }
+    Assert.assertEquals((240 + 6) / 7, node.calls.size());
+  }
+
+  @Test(timeout = 5000)
+  public void closeStopsFeederWaitingOnNode() throws InterruptedException {
+    SlowNode node = new SlowNode(true);
+    BlockRangeStreamer streamer = new BlockRangeStreamer(node, 0, 1000, 100, 2, 20);
+    while (node.calls.size() < 2) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    streamer.close();
+    Assert.assertFalse(streamer.hasNext());
+    for (CompletableFuture<BlockListExtention> call : node.calls) {
+      Assert.assertTrue(call.isCancelled());
+    }
+  }
+}
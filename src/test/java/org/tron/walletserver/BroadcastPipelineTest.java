@@ -0,0 +1,89 @@
+package org.tron.walletserver;
+
+import com.google.protobuf.ByteString;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tron.api.GrpcAPI;
+import org.tron.api.GrpcAPI.Return.response_code;
+import org.tron.protos.Protocol.Transaction;
+
+public class BroadcastPipelineTest {
+
+  /**
+   * A node answering {@code SERVER_BUSY} to the first {@code busyAnswers} broadcasts.
+   */
+  private static class BusyNode extends AsyncGrpcClient {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final int busyAnswers;
+
+    BusyNode(int busyAnswers) {
+      super(null, null, 0);
+      this.busyAnswers = busyAnswers;
+    }
+
+    @Override
+    public CompletableFuture<GrpcAPI.Return> broadcastTransaction(Transaction transaction) {
+      boolean busy = calls.incrementAndGet() <= busyAnswers;
+      return CompletableFuture.completedFuture(GrpcAPI.Return.newBuilder()
+          .setResult(!busy)
+          .setCode(busy ? response_code.SERVER_BUSY : response_code.SUCCESS)
+          .build());
+    }
+  }
+
+  private static Transaction transaction(int id) {
+    return Transaction.newBuilder()
+        .setRawData(Transaction.raw.newBuilder()
+            .setRefBlockBytes(ByteString.copyFrom(new byte[]{(byte) id})))
+        .build();
+  }
+
+  @Test
+  public void retriesBusyNode() throws InterruptedException {
+    BusyNode node = new BusyNode(3);
+    try (BroadcastPipeline pipeline = new BroadcastPipeline(node, 2, 10, 1, 5)) {
+      List<BroadcastPipeline.Result> results =
+          pipeline.broadcastAll(IntStream.range(0, 4).mapToObj(BroadcastPipelineTest::transaction));
+      Assert.assertEquals(4, results.size());
+      for (BroadcastPipeline.Result result : results) {
+        Assert.assertTrue(result.toString(), result.isSuccess());
+      }
+    }
+    Assert.assertEquals(4 + 3, node.calls.get());
+  }
+
+  @Test
+  public void closeFinishesPendingRetries()
+      throws InterruptedException, ExecutionException, TimeoutException {
+    BusyNode node = new BusyNode(Integer.MAX_VALUE);
+    BroadcastPipeline pipeline = new BroadcastPipeline(node, 2, 10, 60_000, 60_000);
+    ExecutorService caller = Executors.newSingleThreadExecutor();
+    try {
+      Future<List<BroadcastPipeline.Result>> broadcast = caller.submit(() -> pipeline.broadcastAll(
+          IntStream.range(0, 2).mapToObj(BroadcastPipelineTest::transaction)));
+      while (node.calls.get() < 2) {
+        Thread.sleep(10);
+      }
+      pipeline.close();
+      List<BroadcastPipeline.Result> results = broadcast.get(5, TimeUnit.SECONDS);
+      Assert.assertEquals(2, results.size());
+      for (BroadcastPipeline.Result result : results) {
+        Assert.assertFalse(result.isSuccess());
+        Assert.assertEquals("pipeline closed", result.getMessage());
+      }
+    } finally {
+      caller.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package org.tron.walletserver;
+
+import com.google.protobuf.ByteString;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tron.api.GrpcAPI.Return;
+import org.tron.api.GrpcAPI.Return.response_code;
+import org.tron.api.GrpcAPI.TransactionExtention;
+import org.tron.common.utils.AbiCodec;
+import org.tron.protos.Protocol.Transaction;
+import org.tron.protos.Protocol.Transaction.Result.code;
+import org.tron.protos.contract.SmartContractOuterClass.TriggerSmartContract;
+
+public class ConstantCallBatchTest {
+
+  private static final AbiCodec BALANCE_OF = AbiCodec.of("balanceOf(address)", "uint256");
+  private static final AbiCodec TRY_AGGREGATE =
+      AbiCodec.of("tryAggregate(bool,(address,bytes)[])");
+  private static final AbiCodec AGGREGATE_RETURN = AbiCodec.of("r((bool,bytes)[])");
+  private static final AbiCodec UINT = AbiCodec.of("r(uint256)");
+
+  private static byte[] address(int id) {
+    byte[] address = new byte[21];
+    address[0] = WalletApi.getAddressPreFixByte();
+    address[20] = (byte) id;
+    return address;
+  }
+
+  /**
+   * A node holding token contracts whose balanceOf is the last byte of the holder, reverting for
+   * holder 0, and an aggregator that fails as a whole when {@code aggregatorBroken} is set.
+   */
+  private static class FakeNode extends AsyncGrpcClient {
+
+    private final byte[] aggregator = address(200);
+    private final AtomicInteger calls = new AtomicInteger();
+    private boolean aggregatorBroken;
+
+    FakeNode() {
+      super(null, null, 0);
+    }
+
+    @Override
+    public CompletableFuture<TransactionExtention> triggerConstantContract(
+        TriggerSmartContract request) {
+      calls.incrementAndGet();
+      byte[] data = request.getData().toByteArray();
+      if (request.getContractAddress().equals(ByteString.copyFrom(aggregator))) {
+        if (aggregatorBroken) {
+          return CompletableFuture.completedFuture(answer(false, new byte[0]));
+        }
+        List<Object> outcomes = new ArrayList<>();
+        for (Object target : (List<?>) TRY_AGGREGATE.decodeInput(data).get(1)) {
+          byte[] callData = (byte[]) ((List<?>) target).get(1);
+          outcomes.add(Arrays.asList(callData[callData.length - 1] != 0,
+              balanceOf(callData)));
+        }
+        return CompletableFuture.completedFuture(
+            answer(true, AGGREGATE_RETURN.encodeArguments(outcomes)));
+      }
+      return CompletableFuture.completedFuture(
+          answer(data[data.length - 1] != 0, balanceOf(data)));
+    }
+
+    private static byte[] balanceOf(byte[] data) {
+      int holder = data[data.length - 1] & 0xff;
+      return holder == 0 ? AbiCodec.of("Error(string)").encode("no holder")
+          : UINT.encodeArguments(BigInteger.valueOf(holder));
+    }
+
+    private static TransactionExtention answer(boolean success, byte[] result) {
+      return TransactionExtention.newBuilder()
+          .setResult(Return.newBuilder().setResult(true))
+          .setTransaction(Transaction.newBuilder().addRet(Transaction.Result.newBuilder()
+              .setRet(success ? code.SUCESS : code.FAILED)))
+          .addConstantResult(ByteString.copyFrom(result))
+          .build();
+    }
+  }
+
+  private static Map<String, ConstantCallBatch.Call> balanceCalls(int count) {
+    Map<String, ConstantCallBatch.Call> calls = new LinkedHashMap<>();
+    for (int i = 0; i < count; i++) {
+      String holder = WalletApi.encode58Check(address(i));
+      calls.put("holder" + i, ConstantCallBatch.Call.of(address(100), BALANCE_OF, holder));
+    }
+    return calls;
+  }
+
+  private static void assertBalances(Map<String, ConstantCallBatch.Result> results, int count) {
+    Assert.assertEquals(count, results.size());
+    ConstantCallBatch.Result reverted = results.get("holder0");
+    Assert.assertFalse(reverted.isSuccess());
+    Assert.assertEquals("REVERT no holder", reverted.getError());
+    for (int i = 1; i < count; i++) {
+      ConstantCallBatch.Result result = results.get("holder" + i);
+      Assert.assertTrue(result.toString(), result.isSuccess());
+      Assert.assertEquals(BigInteger.valueOf(i), result.getValues().get(0));
+    }
+  }
+
+  @Test
+  public void callsOneByOne() throws InterruptedException {
+    FakeNode node = new FakeNode();
+    try (ConstantCallBatch batch = new ConstantCallBatch(node, 4)) {
+      assertBalances(batch.callAll(balanceCalls(10)), 10);
+    }
+    Assert.assertEquals(10, node.calls.get());
+  }
+
+  @Test
+  public void packsCallsIntoAggregates() throws InterruptedException {
+    FakeNode node = new FakeNode();
+    try (ConstantCallBatch batch = new ConstantCallBatch(node, 4)
+        .withAggregator(node.aggregator, 4)) {
+      assertBalances(batch.callAll(balanceCalls(10)), 10);
+    }
+    Assert.assertEquals(3, node.calls.get());
+  }
+
+  @Test
+  public void fallsBackWhenAggregateFails() throws InterruptedException {
+    FakeNode node = new FakeNode();
+    node.aggregatorBroken = true;
+    try (ConstantCallBatch batch = new ConstantCallBatch(node, 2)
+        .withAggregator(node.aggregator, 4)) {
+      assertBalances(batch.callAll(balanceCalls(10)), 10);
+    }
+    Assert.assertEquals(3 + 10, node.calls.get());
+  }
+
+  @Test
+  public void closeFinishesPendingRetries() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    AsyncGrpcClient busyNode = new AsyncGrpcClient(null, null, 0) {
+      @Override
+      public CompletableFuture<TransactionExtention> triggerConstantContract(
+          TriggerSmartContract request) {
+        calls.incrementAndGet();
+        return CompletableFuture.completedFuture(TransactionExtention.newBuilder()
+            .setResult(Return.newBuilder().setCode(response_code.SERVER_BUSY))
+            .build());
+      }
+    };
+    ConstantCallBatch batch = new ConstantCallBatch(busyNode, 2, 5, 60_000, 60_000);
+    ExecutorService caller = Executors.newSingleThreadExecutor();
+    try {
+      Future<Map<String, ConstantCallBatch.Result>> results =
+          caller.submit(() -> batch.callAll(balanceCalls(2)));
+      while (calls.get() < 2) {
+        Thread.sleep(10);
+      }
+      batch.close();
+      Map<String, ConstantCallBatch.Result> closed = results.get(5, TimeUnit.SECONDS);
+      Assert.assertEquals(2, closed.size());
+      for (ConstantCallBatch.Result result : closed.values()) {
+        Assert.assertFalse(result.isSuccess());
+        Assert.assertEquals("batch closed", result.getError());
+      }
+    } finally {
+      caller.shutdownNow();
+    }
+  }
+}
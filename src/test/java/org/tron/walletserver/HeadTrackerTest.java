@@ -0,0 +1,56 @@
+package org.tron.walletserver;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tron.protos.Protocol.Block;
+import org.tron.protos.Protocol.BlockHeader;
+
+public class HeadTrackerTest {
+
+  /**
+   * A node whose first {@code failures} calls throw before returning a future.
+   */
+  private static class FlakyNode extends AsyncGrpcClient {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicLong head = new AtomicLong(5);
+    private final int failures;
+
+    FlakyNode(int failures) {
+      super(null, null, 0);
+      this.failures = failures;
+    }
+
+    @Override
+    public AsyncGrpcClient withDeadline(long duration, TimeUnit unit) {
+      return this;
+    }
+
+    @Override
+    public CompletableFuture<Block> getBlock(long blockNum) {
+      Assert.assertEquals(-1, blockNum);
+      if (calls.incrementAndGet() <= failures) {
+        throw new IllegalStateException("channel shut down");
+      }
+      return CompletableFuture.completedFuture(Block.newBuilder()
+          .setBlockHeader(BlockHeader.newBuilder()
+              .setRawData(BlockHeader.raw.newBuilder().setNumber(head.get())))
+          .build());
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void keepsPollingAfterSynchronousFailure() throws InterruptedException {
+    FlakyNode node = new FlakyNode(3);
+    try (HeadTracker tracker = new HeadTracker(node, 10)) {
+      Assert.assertEquals(5, tracker.awaitHead(-1, 5, TimeUnit.SECONDS));
+      node.head.set(7);
+      Assert.assertEquals(7, tracker.awaitHead(5, 5, TimeUnit.SECONDS));
+    }
+    Assert.assertTrue(node.calls.get() > 3);
+  }
+}
@@ -0,0 +1,55 @@
+package org.tron.walletserver;
+
+import com.google.protobuf.ByteString;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tron.protos.Protocol.TransactionInfo;
+import org.tron.walletserver.ChainDataCache.Kind;
+
+public class LruChainDataCacheTest {
+
+  private static TransactionInfo info(int id) {
+    return TransactionInfo.newBuilder()
+        .setId(ByteString.copyFrom(new byte[]{(byte) id}))
+        .setBlockNumber(id)
+        .build();
+  }
+
+  @Test
+  public void hitAndMiss() {
+    LruChainDataCache cache = new LruChainDataCache(1024, 60_000);
+    Assert.assertNull(cache.get(Kind.TRANSACTION_INFO_BY_ID, "01"));
+    cache.put(Kind.TRANSACTION_INFO_BY_ID, "01", info(1), true);
+    Assert.assertEquals(info(1), cache.get(Kind.TRANSACTION_INFO_BY_ID, "01"));
+    Assert.assertNull(cache.get(Kind.TRANSACTION_BY_ID, "01"));
+    Assert.assertEquals(1, cache.getHitCount(Kind.TRANSACTION_INFO_BY_ID));
+    Assert.assertEquals(1, cache.getMissCount(Kind.TRANSACTION_INFO_BY_ID));
+    Assert.assertEquals(1, cache.getMissCount(Kind.TRANSACTION_BY_ID));
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    int size = info(1).getSerializedSize();
+    LruChainDataCache cache = new LruChainDataCache(size * 2, 60_000);
+    cache.put(Kind.TRANSACTION_INFO_BY_ID, "01", info(1), true);
+    cache.put(Kind.TRANSACTION_INFO_BY_ID, "02", info(2), true);
+    cache.get(Kind.TRANSACTION_INFO_BY_ID, "01");
+    cache.put(Kind.TRANSACTION_INFO_BY_ID, "03", info(3), true);
+    Assert.assertNotNull(cache.get(Kind.TRANSACTION_INFO_BY_ID, "01"));
+    Assert.assertNull(cache.get(Kind.TRANSACTION_INFO_BY_ID, "02"));
+    Assert.assertNotNull(cache.get(Kind.TRANSACTION_INFO_BY_ID, "03"));
+    Assert.assertEquals(1, cache.getEvictionCount());
+    Assert.assertEquals(size * 2, cache.getBytes());
+  }
+
+  @Test
+  public void headEntriesExpire() throws InterruptedException {
+    LruChainDataCache cache = new LruChainDataCache(1024, 10);
+    cache.put(Kind.TRANSACTION_INFO_BY_BLOCK_NUM, 1L, info(1), true);
+    cache.put(Kind.TRANSACTION_INFO_BY_BLOCK_NUM, 2L, info(2), false);
+    Thread.sleep(50);
+    Assert.assertNotNull(cache.get(Kind.TRANSACTION_INFO_BY_BLOCK_NUM, 1L));
+    Assert.assertNull(cache.get(Kind.TRANSACTION_INFO_BY_BLOCK_NUM, 2L));
+    Assert.assertEquals(1, cache.size());
+  }
+}
@@ -0,0 +1,107 @@
+package org.tron.walletserver;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+  @Test(timeout = 5000)
+  public void coalescesConcurrentCalls() throws Exception {
+    SingleFlight<String, Integer> flight = new SingleFlight<>();
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try {
+      Future<Integer> first = pool.submit(() -> flight.execute("key", () -> {
+        calls.incrementAndGet();
+        started.countDown();
+        await(release);
+        return 42;
+      }));
+      started.await();
+      AtomicInteger second = new AtomicInteger();
+      Thread waiter = new Thread(() -> second.set(flight.execute("key", () -> {
+        calls.incrementAndGet();
+        return 0;
+      })));
+      waiter.start();
+      while (waiter.getState() != Thread.State.WAITING) {
+        TimeUnit.MILLISECONDS.sleep(5);
+      }
+      release.countDown();
+      waiter.join();
+      Assert.assertEquals(42, (int) first.get());
+      Assert.assertEquals(42, second.get());
+      Assert.assertEquals(1, calls.get());
+      Assert.assertEquals(0, flight.inFlight());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void sharesFailureAndForgetsKey() throws InterruptedException {
+    SingleFlight<String, Integer> flight = new SingleFlight<>();
+    CompletableFuture<Integer> call = new CompletableFuture<>();
+    CompletableFuture<Integer> first = flight.executeAsync("key", () -> call);
+    CompletableFuture<Integer> second = flight.executeAsync("key", () -> {
+      throw new AssertionError("should have been coalesced");
+    });
+    Assert.assertEquals(1, flight.inFlight());
+    IllegalStateException failure = new IllegalStateException("node down");
+    call.completeExceptionally(failure);
+    for (CompletableFuture<Integer> future : Arrays.asList(first, second)) {
+      try {
+        future.get();
+        Assert.fail();
+      } catch (ExecutionException e) {
+        Assert.assertSame(failure, e.getCause());
+      }
+    }
+    Assert.assertEquals(0, flight.inFlight());
+    Assert.assertEquals(7, (int) flight.executeAsync("key",
+        () -> CompletableFuture.completedFuture(7)).join());
+  }
+
+  @Test
+  public void cancellingOneCallerLeavesTheOthers() {
+    SingleFlight<String, Integer> flight = new SingleFlight<>();
+    CompletableFuture<Integer> call = new CompletableFuture<>();
+    CompletableFuture<Integer> first = flight.executeAsync("key", () -> call);
+    CompletableFuture<Integer> second = flight.executeAsync("key", () -> call);
+    CompletableFuture<Integer> third = flight.executeAsync("key", () -> call);
+    second.cancel(true);
+    third.obtrudeValue(-1);
+    Assert.assertFalse(call.isDone());
+    Assert.assertEquals(1, flight.inFlight());
+    call.complete(42);
+    Assert.assertEquals(42, (int) first.join());
+    Assert.assertEquals(-1, (int) third.join());
+    try {
+      second.join();
+      Assert.fail();
+    } catch (CancellationException expected) {
+      // only this caller gave up
+    }
+    Assert.assertEquals(0, flight.inFlight());
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}